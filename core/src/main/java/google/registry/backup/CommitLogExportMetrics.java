@@ -0,0 +1,70 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.backup;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.monitoring.metrics.EventMetric;
+import com.google.monitoring.metrics.IncrementableMetric;
+import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.MetricRegistryImpl;
+import org.joda.time.Duration;
+
+/** Instrumentation for {@link ExportCommitLogDiffAction}. */
+class CommitLogExportMetrics {
+
+  private static final ImmutableSet<LabelDescriptor> NO_LABEL_DESCRIPTORS = ImmutableSet.of();
+
+  /** Metric counting the number of commit log manifests exported. */
+  @VisibleForTesting
+  static final IncrementableMetric manifestsExported =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/commit_logs/export/manifests",
+              "Count of commit log manifests exported",
+              "count",
+              NO_LABEL_DESCRIPTORS);
+
+  /** Metric counting the number of bytes written to commit log diff files. */
+  @VisibleForTesting
+  static final IncrementableMetric bytesExported =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/commit_logs/export/bytes",
+              "Count of bytes written to commit log diff files",
+              "bytes",
+              NO_LABEL_DESCRIPTORS);
+
+  /** Metric recording the rate at which each diff export processed manifests. */
+  @VisibleForTesting
+  static final EventMetric exportThroughput =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/commit_logs/export/throughput",
+              "Rate at which commit log manifests were exported",
+              "manifests/second",
+              NO_LABEL_DESCRIPTORS,
+              EventMetric.DEFAULT_FITTER);
+
+  private CommitLogExportMetrics() {}
+
+  static void recordExport(int manifestCount, long byteCount, Duration duration) {
+    manifestsExported.incrementBy(manifestCount);
+    bytesExported.incrementBy(byteCount);
+    if (manifestCount > 0) {
+      exportThroughput.record(manifestCount * 1000.0 / Math.max(duration.getMillis(), 1));
+    }
+  }
+}
@@ -14,12 +14,18 @@
 
 package google.registry.backup;
 
+import static com.google.appengine.api.ThreadManager.currentRequestThreadFactory;
 import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.throwIfInstanceOf;
+import static com.google.common.base.Throwables.throwIfUnchecked;
 import static com.google.common.base.Verify.verifyNotNull;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.Iterables.concat;
 import static com.google.common.collect.Lists.partition;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
+import static com.google.common.util.concurrent.Uninterruptibles.getUninterruptibly;
 import static google.registry.backup.BackupUtils.GcsMetadataKeys.LOWER_BOUND_CHECKPOINT;
 import static google.registry.backup.BackupUtils.GcsMetadataKeys.NUM_TRANSACTIONS;
 import static google.registry.backup.BackupUtils.GcsMetadataKeys.UPPER_BOUND_CHECKPOINT;
@@ -30,14 +36,16 @@ import static google.registry.util.DateTimeUtils.START_OF_TIME;
 import static google.registry.util.DateTimeUtils.isAtOrAfter;
 import static java.nio.channels.Channels.newOutputStream;
 import static java.util.Comparator.comparingLong;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import com.google.appengine.tools.cloudstorage.GcsFileOptions;
 import com.google.appengine.tools.cloudstorage.GcsFilename;
 import com.google.appengine.tools.cloudstorage.GcsService;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Streams;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.io.CountingOutputStream;
 import com.googlecode.objectify.Key;
 import google.registry.config.RegistryConfig.Config;
 import google.registry.model.ImmutableObject;
@@ -48,14 +56,20 @@ import google.registry.model.ofy.CommitLogMutation;
 import google.registry.request.Action;
 import google.registry.request.Parameter;
 import google.registry.request.auth.Auth;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
 
 /** Action that exports the diff between two commit log checkpoints to GCS. */
 @Action(
@@ -95,48 +109,60 @@ public final class ExportCommitLogDiffAction implements Runnable {
     CommitLogCheckpoint upperCheckpoint =
         verifyNotNull(ofy().load().key(CommitLogCheckpoint.createKey(upperCheckpointTime)).now());
 
+    Stopwatch stopwatch = Stopwatch.createStarted();
     // Load the keys of all the manifests to include in this diff.
     List<Key<CommitLogManifest>> sortedKeys = loadAllDiffKeys(lowerCheckpoint, upperCheckpoint);
     logger.atInfo().log("Found %d manifests to export", sortedKeys.size());
     // Open an output channel to GCS, wrapped in a stream for convenience.
-    try (OutputStream gcsStream = newOutputStream(gcsService.createOrReplace(
-        new GcsFilename(gcsBucket, DIFF_FILE_PREFIX + upperCheckpointTime),
-        new GcsFileOptions.Builder()
-            .addUserMetadata(LOWER_BOUND_CHECKPOINT, lowerCheckpointTime.toString())
-            .addUserMetadata(UPPER_BOUND_CHECKPOINT, upperCheckpointTime.toString())
-            .addUserMetadata(NUM_TRANSACTIONS, Integer.toString(sortedKeys.size()))
-            .build()))) {
+    try (CountingOutputStream gcsStream = new CountingOutputStream(newOutputStream(
+        gcsService.createOrReplace(
+            new GcsFilename(gcsBucket, DIFF_FILE_PREFIX + upperCheckpointTime),
+            new GcsFileOptions.Builder()
+                .addUserMetadata(LOWER_BOUND_CHECKPOINT, lowerCheckpointTime.toString())
+                .addUserMetadata(UPPER_BOUND_CHECKPOINT, upperCheckpointTime.toString())
+                .addUserMetadata(NUM_TRANSACTIONS, Integer.toString(sortedKeys.size()))
+                .build())))) {
       // Export the upper checkpoint itself.
       serializeEntity(upperCheckpoint, gcsStream);
       // If there are no manifests to export, stop early, now that we've written out the file with
       // the checkpoint itself (which is needed for restores, even if it's empty).
       if (sortedKeys.isEmpty()) {
+        CommitLogExportMetrics.recordExport(
+            0, gcsStream.getCount(), Duration.millis(stopwatch.elapsed(MILLISECONDS)));
         return;
       }
       // Export to GCS in chunks, one per fixed batch of commit logs.  While processing one batch,
-      // asynchronously load the entities for the next one.
+      // asynchronously load the entities for the next one, and while one batch is being written
+      // out to GCS, load and serialize the next one.
       List<List<Key<CommitLogManifest>>> keyChunks = partition(sortedKeys, batchSize);
       // Objectify's map return type is asynchronous. Calling .values() will block until it loads.
       Map<?, CommitLogManifest> nextChunkToExport = ofy().load().keys(keyChunks.get(0));
-      for (int i = 0; i < keyChunks.size(); i++) {
-        // Force the async load to finish.
-        Collection<CommitLogManifest> chunkValues = nextChunkToExport.values();
-        logger.atInfo().log("Loaded %d manifests", chunkValues.size());
-        // Since there is no hard bound on how much data this might be, take care not to let the
-        // Objectify session cache fill up and potentially run out of memory. This is the only safe
-        // point to do this since at this point there is no async load in progress.
-        ofy().clearSessionCache();
-        // Kick off the next async load, which can happen in parallel to the current GCS export.
-        if (i + 1 < keyChunks.size()) {
-          nextChunkToExport = ofy().load().keys(keyChunks.get(i + 1));
+      try (PipelinedWriter writer = new PipelinedWriter(gcsStream)) {
+        for (int i = 0; i < keyChunks.size(); i++) {
+          // Force the async load to finish.
+          Collection<CommitLogManifest> chunkValues = nextChunkToExport.values();
+          logger.atInfo().log("Loaded %d manifests", chunkValues.size());
+          // Since there is no hard bound on how much data this might be, take care not to let the
+          // Objectify session cache fill up and potentially run out of memory. This is the only
+          // safe point to do this since at this point there is no async load in progress.
+          ofy().clearSessionCache();
+          // Kick off the next async load, which can happen in parallel to the current GCS export.
+          if (i + 1 < keyChunks.size()) {
+            nextChunkToExport = ofy().load().keys(keyChunks.get(i + 1));
+          }
+          writer.write(serializeChunk(chunkValues));
+          logger.atInfo().log("Exported %d manifests", chunkValues.size());
         }
-        exportChunk(gcsStream, chunkValues);
-        logger.atInfo().log("Exported %d manifests", chunkValues.size());
+        writer.awaitPendingWrite();
       }
+      Duration duration = Duration.millis(stopwatch.elapsed(MILLISECONDS));
+      CommitLogExportMetrics.recordExport(sortedKeys.size(), gcsStream.getCount(), duration);
+      logger.atInfo().log(
+          "Exported %d manifests (%d bytes) in total in %s",
+          sortedKeys.size(), gcsStream.getCount(), duration);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
-    logger.atInfo().log("Exported %d manifests in total", sortedKeys.size());
   }
 
   /**
@@ -152,13 +178,15 @@ public final class ExportCommitLogDiffAction implements Runnable {
     // transaction-consistent by virtue of our checkpoint strategy and our customized Ofy; see
     // CommitLogCheckpointStrategy for the proof. We break ties by sorting on bucket ID to ensure
     // a deterministic order.
-    return upperCheckpoint
-        .getBucketTimestamps()
-        .keySet()
-        .stream()
-        .flatMap(
-            bucketNum ->
-                Streams.stream(loadDiffKeysFromBucket(lowerCheckpoint, upperCheckpoint, bucketNum)))
+    //
+    // The per-bucket queries are all started before any of their results are needed, so that they
+    // run concurrently.
+    ImmutableList<List<Key<CommitLogManifest>>> bucketKeys =
+        upperCheckpoint.getBucketTimestamps().keySet().stream()
+            .map(bucketNum -> loadDiffKeysFromBucket(lowerCheckpoint, upperCheckpoint, bucketNum))
+            .collect(toImmutableList());
+    return bucketKeys.stream()
+        .flatMap(List::stream)
         .sorted(
             comparingLong(Key<CommitLogManifest>::getId)
                 .thenComparingLong(a -> a.getParent().getId()))
@@ -172,7 +200,7 @@ public final class ExportCommitLogDiffAction implements Runnable {
    * @param upperCheckpoint inclusive upper bound on keys in this diff
    * @param bucketNum the bucket to load diff keys from
    */
-  private Iterable<Key<CommitLogManifest>> loadDiffKeysFromBucket(
+  private List<Key<CommitLogManifest>> loadDiffKeysFromBucket(
       @Nullable CommitLogCheckpoint lowerCheckpoint,
       CommitLogCheckpoint upperCheckpoint,
       int bucketNum) {
@@ -189,7 +217,7 @@ public final class ExportCommitLogDiffAction implements Runnable {
     DateTime upperBound = upperCheckpoint.getBucketTimestamps().get(bucketNum).plusMillis(1);
     // If the lower and upper bounds are equal, there can't be any results, so skip the query.
     if (lowerBound.equals(upperBound)) {
-      return ImmutableSet.of();
+      return ImmutableList.of();
     }
     Key<CommitLogBucket> bucketKey = getBucketKey(bucketNum);
     return ofy().load()
@@ -197,21 +225,85 @@ public final class ExportCommitLogDiffAction implements Runnable {
         .ancestor(bucketKey)
         .filterKey(">=", CommitLogManifest.createKey(bucketKey, lowerBound))
         .filterKey("<", CommitLogManifest.createKey(bucketKey, upperBound))
-        .keys();
+        .keys()
+        .list();  // Objectify loads the list asynchronously.
   }
 
-  /** Writes a chunks-worth of manifests and associated mutations to GCS. */
-  private void exportChunk(OutputStream gcsStream, Collection<CommitLogManifest> chunk)
-      throws IOException {
-    // Kickoff async loads for all the manifests in the chunk.
+  /** Serializes a chunks-worth of manifests and associated mutations. */
+  private byte[] serializeChunk(Collection<CommitLogManifest> chunk) throws IOException {
+    // Kickoff async loads for all the manifests in the chunk, so that the ancestor queries for
+    // their mutations all run concurrently.
     ImmutableList.Builder<Iterable<? extends ImmutableObject>> entities =
         new ImmutableList.Builder<>();
     for (CommitLogManifest manifest : chunk) {
       entities.add(ImmutableList.of(manifest));
-      entities.add(ofy().load().type(CommitLogMutation.class).ancestor(manifest));
+      entities.add(ofy().load().type(CommitLogMutation.class).ancestor(manifest).list());
     }
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
     for (ImmutableObject entity : concat(entities.build())) {
-      serializeEntity(entity, gcsStream);
+      serializeEntity(entity, output);
+    }
+    return output.toByteArray();
+  }
+
+  /**
+   * Writes serialized chunks out on a separate App Engine request thread, so that the next chunk
+   * can be loaded and serialized while the previous one is being written.
+   *
+   * <p>At most one chunk is written at a time, bounding the memory used to two chunks. If no
+   * request thread factory is available, chunks are written synchronously instead.
+   */
+  private static final class PipelinedWriter implements AutoCloseable {
+    private final OutputStream output;
+    private final ExecutorService executor;
+    private Future<?> pendingWrite = immediateFuture(null);
+
+    PipelinedWriter(OutputStream output) {
+      this.output = output;
+      ThreadFactory threadFactory = currentRequestThreadFactory();
+      this.executor =
+          (threadFactory == null)
+              ? newDirectExecutorService()
+              : newSingleThreadExecutor(threadFactory);
+    }
+
+    /** Waits for the previous chunk to be written, then starts writing the given one. */
+    void write(byte[] chunk) throws IOException {
+      awaitPendingWrite();
+      pendingWrite =
+          executor.submit(
+              () -> {
+                output.write(chunk);
+                return null;
+              });
+    }
+
+    /** Waits for the chunk being written, if any, to be written. */
+    void awaitPendingWrite() throws IOException {
+      try {
+        getUninterruptibly(pendingWrite);
+      } catch (ExecutionException e) {
+        throwIfInstanceOf(e.getCause(), IOException.class);
+        throwIfUnchecked(e.getCause());
+        throw new RuntimeException(e.getCause());
+      }
+    }
+
+    /**
+     * Waits for the chunk being written, if any, then shuts down the writer thread.
+     *
+     * <p>The write is allowed to finish rather than being interrupted, so that nothing touches the
+     * output stream after this returns and the caller closes it. A write failure is only logged
+     * here, since it can only go unreported if the export is already failing for another reason.
+     */
+    @Override
+    public void close() {
+      executor.shutdown();
+      try {
+        getUninterruptibly(pendingWrite);
+      } catch (ExecutionException e) {
+        logger.atWarning().withCause(e.getCause()).log("Chunk write failed while closing.");
+      }
     }
   }
 }
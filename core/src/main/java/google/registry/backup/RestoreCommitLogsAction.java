@@ -14,11 +14,15 @@
 
 package google.registry.backup;
 
+import static com.google.appengine.api.ThreadManager.currentRequestThreadFactory;
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.throwIfUnchecked;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.Iterators.peekingIterator;
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
 import static google.registry.backup.BackupUtils.createDeserializingIterator;
 import static google.registry.model.ofy.ObjectifyService.ofy;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
 
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.Entity;
@@ -26,13 +30,12 @@ import com.google.appengine.api.datastore.EntityTranslator;
 import com.google.appengine.tools.cloudstorage.GcsFileMetadata;
 import com.google.appengine.tools.cloudstorage.GcsService;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
 import com.google.common.collect.PeekingIterator;
 import com.google.common.collect.Streams;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.googlecode.objectify.Key;
-import com.googlecode.objectify.Result;
-import com.googlecode.objectify.util.ResultNow;
 import google.registry.config.RegistryEnvironment;
 import google.registry.model.ImmutableObject;
 import google.registry.model.ofy.CommitLogBucket;
@@ -44,13 +47,19 @@ import google.registry.request.Action;
 import google.registry.request.Parameter;
 import google.registry.request.auth.Auth;
 import google.registry.util.Retrier;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.channels.Channels;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.stream.Stream;
 import javax.inject.Inject;
 import org.joda.time.DateTime;
@@ -68,6 +77,14 @@ public class RestoreCommitLogsAction implements Runnable {
 
   static final int BLOCK_SIZE = 1024 * 1024;  // Buffer 1mb at a time, for no particular reason.
 
+  /**
+   * The number of distinct entities to accumulate across transactions before writing them out.
+   *
+   * <p>Datastore splits batches this large into multiple RPCs itself, but they are still far fewer
+   * than one per transaction.
+   */
+  static final int MAX_BATCH_SIZE = 2000;
+
   public static final String PATH = "/_dr/task/restoreCommitLogs";
   static final String DRY_RUN_PARAM = "dryRun";
   static final String FROM_TIME_PARAM = "fromTime";
@@ -99,21 +116,40 @@ public class RestoreCommitLogsAction implements Runnable {
     }
     Map<Integer, DateTime> bucketTimestamps = new HashMap<>();
     CommitLogCheckpoint lastCheckpoint = null;
-    for (GcsFileMetadata metadata : diffFiles) {
-      logger.atInfo().log("Restoring: %s", metadata.getFilename().getObjectName());
-      try (InputStream input = Channels.newInputStream(
-          gcsService.openPrefetchingReadChannel(metadata.getFilename(), 0, BLOCK_SIZE))) {
-        PeekingIterator<ImmutableObject> commitLogs =
-            peekingIterator(createDeserializingIterator(input));
-        lastCheckpoint = (CommitLogCheckpoint) commitLogs.next();
-        saveOfy(ImmutableList.of(lastCheckpoint));  // Save the checkpoint itself.
-        while (commitLogs.hasNext()) {
-          CommitLogManifest manifest = restoreOneTransaction(commitLogs);
+    MutationBatch batch = new MutationBatch();
+    ThreadFactory threadFactory = currentRequestThreadFactory();
+    // Read the next diff file in the background while the current one is being replayed, unless we
+    // can't get an App Engine thread factory (e.g. in a command-line tool). Only the raw bytes are
+    // prefetched, and the current file is deserialized as it is replayed, so at most two serialized
+    // files are held in memory at once rather than two fully deserialized ones.
+    ExecutorService prefetcher =
+        (threadFactory == null)
+            ? newDirectExecutorService()
+            : newSingleThreadExecutor(threadFactory);
+    try {
+      Future<byte[]> nextFile = prefetcher.submit(() -> readDiffFile(diffFiles.get(0)));
+      for (int i = 0; i < diffFiles.size(); i++) {
+        byte[] diffFileBytes = getFuture(nextFile);
+        if (i + 1 < diffFiles.size()) {
+          GcsFileMetadata nextMetadata = diffFiles.get(i + 1);
+          nextFile = prefetcher.submit(() -> readDiffFile(nextMetadata));
+        }
+        logger.atInfo().log("Restoring: %s", diffFiles.get(i).getFilename().getObjectName());
+        PeekingIterator<ImmutableObject> commitLogIterator =
+            peekingIterator(createDeserializingIterator(new ByteArrayInputStream(diffFileBytes)));
+        lastCheckpoint = (CommitLogCheckpoint) commitLogIterator.next();
+        batch.save(ofy().save().toEntity(lastCheckpoint)); // Save the checkpoint itself.
+        while (commitLogIterator.hasNext()) {
+          CommitLogManifest manifest = restoreOneTransaction(commitLogIterator, batch);
           bucketTimestamps.put(manifest.getBucketId(), manifest.getCommitTime());
+          if (batch.size() >= MAX_BATCH_SIZE) {
+            batch.flush();
+          }
         }
-      } catch (IOException e) {
-        throw new RuntimeException(e);
       }
+      batch.flush();
+    } finally {
+      prefetcher.shutdownNow();
     }
     // Restore the CommitLogCheckpointRoot and CommitLogBuckets.
     saveOfy(
@@ -132,6 +168,25 @@ public class RestoreCommitLogsAction implements Runnable {
     logger.atInfo().log("Restore complete");
   }
 
+  /** Reads the serialized contents of a diff file. */
+  private byte[] readDiffFile(GcsFileMetadata metadata) {
+    try (InputStream input = Channels.newInputStream(
+        gcsService.openPrefetchingReadChannel(metadata.getFilename(), 0, BLOCK_SIZE))) {
+      return ByteStreams.toByteArray(input);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static <T> T getFuture(Future<T> future) {
+    try {
+      return Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException e) {
+      throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
   /**
    * Restore the contents of one transaction to Datastore.
    *
@@ -141,33 +196,73 @@ public class RestoreCommitLogsAction implements Runnable {
    * the commit logs themselves back to Datastore, so that the commit log system itself is
    * transparently restored alongside the data.
    *
+   * <p>The writes are added to the given batch, rather than being made immediately.
+   *
    * @return the manifest, for use in restoring the {@link CommitLogBucket}.
    */
-  private CommitLogManifest restoreOneTransaction(PeekingIterator<ImmutableObject> commitLogs) {
+  private CommitLogManifest restoreOneTransaction(
+      PeekingIterator<ImmutableObject> commitLogs, MutationBatch batch) {
     final CommitLogManifest manifest = (CommitLogManifest) commitLogs.next();
-    Result<?> deleteResult = deleteAsync(manifest.getDeletions());
-    List<Entity> entitiesToSave = Lists.newArrayList(ofy().save().toEntity(manifest));
+    for (Key<?> keyToDelete : manifest.getDeletions()) {
+      batch.delete(keyToDelete.getRaw());
+    }
+    batch.save(ofy().save().toEntity(manifest));
     while (commitLogs.hasNext() && commitLogs.peek() instanceof CommitLogMutation) {
       CommitLogMutation mutation = (CommitLogMutation) commitLogs.next();
-      entitiesToSave.add(ofy().save().toEntity(mutation));
-      entitiesToSave.add(EntityTranslator.createFromPbBytes(mutation.getEntityProtoBytes()));
-    }
-    saveRaw(entitiesToSave);
-    try {
-      deleteResult.now();
-    } catch (Exception e) {
-      retrier.callWithRetry(
-          () -> deleteAsync(manifest.getDeletions()).now(), RuntimeException.class);
+      batch.save(ofy().save().toEntity(mutation));
+      batch.save(EntityTranslator.createFromPbBytes(mutation.getEntityProtoBytes()));
     }
     return manifest;
   }
 
-  private void saveRaw(List<Entity> entitiesToSave) {
-    if (dryRun) {
-      logger.atInfo().log("Would have saved entities: %s", entitiesToSave);
-      return;
+  /**
+   * The combined writes of a run of consecutive transactions, to be made in one large batch.
+   *
+   * <p>Only the last write to each key is kept, so replaying the transactions in order and then
+   * flushing the batch leaves every entity in the same state as replaying them one at a time would
+   * have. Because no key is both saved and deleted, the saves and deletes can be made in any order.
+   */
+  private class MutationBatch {
+
+    /** The entity to save for each key, or absent for keys to delete, in order of last write. */
+    private final Map<com.google.appengine.api.datastore.Key, Optional<Entity>> writes =
+        new LinkedHashMap<>();
+
+    void save(Entity entity) {
+      writes.remove(entity.getKey());
+      writes.put(entity.getKey(), Optional.of(entity));
+    }
+
+    void delete(com.google.appengine.api.datastore.Key key) {
+      writes.remove(key);
+      writes.put(key, Optional.empty());
+    }
+
+    int size() {
+      return writes.size();
+    }
+
+    void flush() {
+      ImmutableList<Entity> entitiesToSave =
+          writes.values().stream().flatMap(Streams::stream).collect(toImmutableList());
+      ImmutableList<com.google.appengine.api.datastore.Key> keysToDelete =
+          writes.entrySet().stream()
+              .filter(entry -> !entry.getValue().isPresent())
+              .map(Map.Entry::getKey)
+              .collect(toImmutableList());
+      writes.clear();
+      if (dryRun) {
+        logger.atInfo().log("Would have saved entities: %s", entitiesToSave);
+        logger.atInfo().log("Would have deleted entities: %s", keysToDelete);
+        return;
+      }
+      if (!keysToDelete.isEmpty()) {
+        retrier.callWithRetry(() -> datastoreService.delete(keysToDelete), RuntimeException.class);
+      }
+      if (!entitiesToSave.isEmpty()) {
+        retrier.callWithRetry(() -> datastoreService.put(entitiesToSave), RuntimeException.class);
+      }
     }
-    retrier.callWithRetry(() -> datastoreService.put(entitiesToSave), RuntimeException.class);
   }
 
   private void saveOfy(Iterable<? extends ImmutableObject> objectsToSave) {
@@ -178,14 +273,4 @@ public class RestoreCommitLogsAction implements Runnable {
     retrier.callWithRetry(
         () -> ofy().saveWithoutBackup().entities(objectsToSave).now(), RuntimeException.class);
   }
-
-  private Result<?> deleteAsync(Set<Key<?>> keysToDelete) {
-    if (dryRun) {
-      logger.atInfo().log("Would have deleted entities: %s", keysToDelete);
-    }
-    return dryRun || keysToDelete.isEmpty()
-        ? new ResultNow<Void>(null)
-        : ofy().deleteWithoutBackup().keys(keysToDelete);
-  }
-
 }
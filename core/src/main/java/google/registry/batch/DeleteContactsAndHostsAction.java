@@ -19,6 +19,7 @@ import static com.google.appengine.api.taskqueue.QueueFactory.getQueue;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static com.google.common.math.IntMath.divide;
 import static com.googlecode.objectify.Key.getKind;
 import static google.registry.batch.AsyncTaskEnqueuer.PARAM_CLIENT_TRANSACTION_ID;
@@ -30,6 +31,7 @@ import static google.registry.batch.AsyncTaskEnqueuer.PARAM_SERVER_TRANSACTION_I
 import static google.registry.batch.AsyncTaskEnqueuer.QUEUE_ASYNC_DELETE;
 import static google.registry.model.EppResourceUtils.isActive;
 import static google.registry.model.EppResourceUtils.isDeleted;
+import static google.registry.model.EppResourceUtils.queryForLinkedDomains;
 import static google.registry.model.ResourceTransferUtils.denyPendingTransfer;
 import static google.registry.model.ResourceTransferUtils.handlePendingTransferOnDelete;
 import static google.registry.model.ResourceTransferUtils.updateForeignKeyIndexDeletionTime;
@@ -52,20 +54,25 @@ import com.google.appengine.api.taskqueue.LeaseOptions;
 import com.google.appengine.api.taskqueue.Queue;
 import com.google.appengine.api.taskqueue.TaskHandle;
 import com.google.appengine.api.taskqueue.TransientFailureException;
+import com.google.appengine.tools.mapreduce.Input;
 import com.google.appengine.tools.mapreduce.Mapper;
 import com.google.appengine.tools.mapreduce.Reducer;
 import com.google.appengine.tools.mapreduce.ReducerInput;
+import com.google.appengine.tools.mapreduce.inputs.InMemoryInput;
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multiset;
 import com.google.common.flogger.FluentLogger;
 import com.googlecode.objectify.Key;
 import google.registry.batch.AsyncTaskMetrics.OperationResult;
 import google.registry.batch.AsyncTaskMetrics.OperationType;
 import google.registry.batch.DeleteContactsAndHostsAction.DeletionResult.Type;
+import google.registry.config.RegistryConfig.Config;
 import google.registry.dns.DnsQueue;
 import google.registry.mapreduce.MapreduceRunner;
 import google.registry.mapreduce.UnlockerOutput;
@@ -105,8 +112,12 @@ import org.joda.time.DateTime;
 import org.joda.time.Duration;
 
 /**
- * A mapreduce that processes batch asynchronous deletions of contact and host resources by mapping
- * over all domains and checking for any references to the contacts/hosts in pending deletion.
+ * A mapreduce that processes batch asynchronous deletions of contact and host resources by checking
+ * for any domain references to the contacts/hosts in pending deletion.
+ *
+ * <p>References are found by querying the indexes on the domains' contact and nameserver fields.
+ * If {@code asyncDeleteVerifyReferenceIndex} is set, it instead maps over all domains, and checks
+ * that the index queries would have reached the same conclusion.
  */
 @Action(
     service = Action.Service.BACKEND,
@@ -122,8 +133,12 @@ public class DeleteContactsAndHostsAction implements Runnable {
   private static final int MAX_REDUCE_SHARDS = 50;
   private static final int DELETES_PER_SHARD = 5;
 
+  /** The number of linked domain keys to load at a time when confirming index query results. */
+  private static final int LINKED_DOMAIN_BATCH_SIZE = 100;
+
   @Inject AsyncTaskMetrics asyncTaskMetrics;
   @Inject Clock clock;
+  @Inject @Config("asyncDeleteVerifyReferenceIndex") boolean verifyReferenceIndex;
   @Inject MapreduceRunner mrRunner;
   @Inject @Named(QUEUE_ASYNC_DELETE) Queue queue;
   @Inject RequestStatusChecker requestStatusChecker;
@@ -221,15 +236,40 @@ public class DeleteContactsAndHostsAction implements Runnable {
       mrRunner
           .setJobName("Check for EPP resource references and then delete")
           .setModuleName("backend")
-          .setDefaultReduceShards(numReducers)
-          .runMapreduce(
-              new DeleteContactsAndHostsMapper(deletionRequests),
-              new DeleteEppResourceReducer(),
-              ImmutableList.of(
-                  // Add an extra shard that maps over a null domain. See the mapper code for why.
-                  new NullInput<>(), EppResourceInputs.createEntityInput(DomainBase.class)),
-              new UnlockerOutput<Void>(lock.get()))
-          .sendLinkToMapreduceConsole(response);
+          .setDefaultReduceShards(numReducers);
+      if (verifyReferenceIndex) {
+        // Scan every domain as before, and have the reducer compare what the scan found against
+        // the answers from the reference index queries.
+        ImmutableMap<Key<? extends EppResource>, Boolean> indexedLinks =
+            deletionRequests.stream()
+                .collect(
+                    toImmutableMap(
+                        DeletionRequest::key,
+                        DeleteContactsAndHostsAction::isLinkedByIndex,
+                        (first, second) -> first));
+        mrRunner
+            .runMapreduce(
+                new DeleteContactsAndHostsMapper(deletionRequests),
+                new DeleteEppResourceReducer(indexedLinks),
+                ImmutableList.of(
+                    // Add an extra shard that maps over a null domain. See the mapper code for why.
+                    new NullInput<>(), EppResourceInputs.createEntityInput(DomainBase.class)),
+                new UnlockerOutput<Void>(lock.get()))
+            .sendLinkToMapreduceConsole(response);
+      } else {
+        Input<DeletionRequest> input =
+            new InMemoryInput<>(
+                Lists.partition(deletionRequests, DELETES_PER_SHARD).stream()
+                    .map(ImmutableList::copyOf)
+                    .collect(toImmutableList()));
+        mrRunner
+            .runMapreduce(
+                new DeleteContactsAndHostsIndexMapper(),
+                new DeleteEppResourceReducer(ImmutableMap.of()),
+                ImmutableList.of(input),
+                new UnlockerOutput<Void>(lock.get()))
+            .sendLinkToMapreduceConsole(response);
+      }
     } catch (Throwable t) {
       logRespondAndUnlock(SEVERE, "Error starting mapreduce to delete contacts/hosts.", lock);
     }
@@ -278,17 +318,67 @@ public class DeleteContactsAndHostsAction implements Runnable {
         getContext().incrementCounter("domains processed");
       }
     }
+  }
 
-    /** Determine whether the target resource is a linked resource on the domain. */
-    private boolean isLinked(DomainBase domain, Key<? extends EppResource> resourceKey) {
-      if (resourceKey.getKind().equals(KIND_CONTACT)) {
-        return domain.getReferencedContacts().contains(resourceKey);
-      } else if (resourceKey.getKind().equals(KIND_HOST)) {
-        return domain.getNameservers().contains(resourceKey);
-      } else {
-        throw new IllegalStateException("EPP resource key of unknown type: " + resourceKey);
+  /**
+   * A mapper that checks each deletion request against the domain reference indexes.
+   *
+   * <p>Rather than scanning every domain, it queries for the keys of the domains that reference
+   * the target resource, then loads those domains to confirm the reference, since the query is
+   * only eventually consistent. It emits the target key and whether an active link was found.
+   */
+  public static class DeleteContactsAndHostsIndexMapper
+      extends Mapper<DeletionRequest, DeletionRequest, Boolean> {
+
+    private static final long serialVersionUID = 4386285637284016785L;
+
+    @Override
+    public void map(DeletionRequest deletionRequest) {
+      boolean linked = isLinkedByIndex(deletionRequest);
+      emit(deletionRequest, linked);
+      if (linked) {
+        getContext()
+            .incrementCounter(
+                String.format("active Domain-%s links found", deletionRequest.key().getKind()));
+      }
+      getContext().incrementCounter("deletion requests processed");
+    }
+  }
+
+  /** Determine whether the target resource is a linked resource on the domain. */
+  private static boolean isLinked(DomainBase domain, Key<? extends EppResource> resourceKey) {
+    if (resourceKey.getKind().equals(KIND_CONTACT)) {
+      return domain.getReferencedContacts().contains(resourceKey);
+    } else if (resourceKey.getKind().equals(KIND_HOST)) {
+      return domain.getNameservers().contains(resourceKey);
+    } else {
+      throw new IllegalStateException("EPP resource key of unknown type: " + resourceKey);
+    }
+  }
+
+  /**
+   * Determine whether any domain that was active as of the request links to the target resource,
+   * using the domain reference indexes.
+   *
+   * <p>The index query only nominates candidates; each one is loaded by key and checked the same
+   * way the full scan would check it, so stale index entries for removed references are ignored.
+   * References added shortly before the request are covered by the async delete delay, just as
+   * they are for the full scan.
+   */
+  static boolean isLinkedByIndex(DeletionRequest deletionRequest) {
+    Key<? extends EppResource> resourceKey = deletionRequest.key();
+    DateTime lastUpdateTime = deletionRequest.lastUpdateTime();
+    for (List<Key<DomainBase>> batch :
+        Iterables.partition(
+            queryForLinkedDomains(resourceKey, lastUpdateTime).keys().iterable(),
+            LINKED_DOMAIN_BATCH_SIZE)) {
+      for (DomainBase domain : ofy().load().keys(batch).values()) {
+        if (isActive(domain, lastUpdateTime) && isLinked(domain, resourceKey)) {
+          return true;
+        }
       }
     }
+    return false;
   }
 
   /**
@@ -304,9 +394,17 @@ public class DeleteContactsAndHostsAction implements Runnable {
     @NonFinalForTesting
     private static AsyncTaskMetrics asyncTaskMetrics = new AsyncTaskMetrics(new SystemClock());
 
+    /** Whether the reference indexes found links, for requests whose answers are being verified. */
+    private final ImmutableMap<Key<? extends EppResource>, Boolean> indexedLinks;
+
+    DeleteEppResourceReducer(ImmutableMap<Key<? extends EppResource>, Boolean> indexedLinks) {
+      this.indexedLinks = indexedLinks;
+    }
+
     @Override
     public void reduce(final DeletionRequest deletionRequest, ReducerInput<Boolean> values) {
       final boolean hasNoActiveReferences = !Iterators.contains(values, true);
+      verifyIndexedLinks(deletionRequest, hasNoActiveReferences);
       logger.atInfo().log("Processing async deletion request for %s", deletionRequest.key());
       DeletionResult result =
           tm()
@@ -328,6 +426,23 @@ public class DeleteContactsAndHostsAction implements Runnable {
           deletionRequest.key(), result.pollMessageText());
     }
 
+    private void verifyIndexedLinks(
+        DeletionRequest deletionRequest, boolean hasNoActiveReferences) {
+      Boolean linkedByIndex = indexedLinks.get(deletionRequest.key());
+      if (linkedByIndex == null) {
+        return;
+      }
+      if (linkedByIndex == hasNoActiveReferences) {
+        logger.atSevere().log(
+            "Reference index disagrees with full scan for %s: index found links: %s, "
+                + "scan found links: %s",
+            deletionRequest.key(), linkedByIndex, !hasNoActiveReferences);
+        getContext().incrementCounter("reference index mismatches");
+      } else {
+        getContext().incrementCounter("reference index matches");
+      }
+    }
+
     private DeletionResult attemptToDeleteResource(
         DeletionRequest deletionRequest, boolean hasNoActiveReferences) {
       DateTime now = tm().getTransactionTime();
@@ -15,6 +15,7 @@
 package google.registry.batch;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.collect.Sets.difference;
 import static google.registry.mapreduce.MapreduceRunner.PARAM_DRY_RUN;
@@ -30,6 +31,7 @@ import static google.registry.util.DateTimeUtils.START_OF_TIME;
 import static google.registry.util.DateTimeUtils.earliestOf;
 import static google.registry.util.DomainNameUtils.getTldFromDomainName;
 
+import com.google.appengine.tools.mapreduce.Input;
 import com.google.appengine.tools.mapreduce.Mapper;
 import com.google.appengine.tools.mapreduce.Reducer;
 import com.google.appengine.tools.mapreduce.ReducerInput;
@@ -41,6 +43,7 @@ import com.google.common.flogger.FluentLogger;
 import com.googlecode.objectify.Key;
 import google.registry.mapreduce.MapreduceRunner;
 import google.registry.mapreduce.inputs.NullInput;
+import google.registry.mapreduce.inputs.RecurringBillingEventInput;
 import google.registry.model.EppResource;
 import google.registry.model.ImmutableObject;
 import google.registry.model.billing.BillingEvent;
@@ -50,6 +53,7 @@ import google.registry.model.billing.BillingEvent.Recurring;
 import google.registry.model.common.Cursor;
 import google.registry.model.domain.DomainBase;
 import google.registry.model.domain.Period;
+import google.registry.model.registry.Registries;
 import google.registry.model.registry.Registry;
 import google.registry.model.reporting.DomainTransactionRecord;
 import google.registry.model.reporting.DomainTransactionRecord.TransactionReportField;
@@ -59,11 +63,13 @@ import google.registry.request.Parameter;
 import google.registry.request.Response;
 import google.registry.request.auth.Auth;
 import google.registry.util.Clock;
+import java.util.Collections;
 import java.util.Optional;
 import java.util.Set;
 import javax.inject.Inject;
 import org.joda.money.Money;
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
 
 /**
  * A mapreduce that expands {@link Recurring} billing events into synthetic {@link OneTime} events.
@@ -71,6 +77,9 @@ import org.joda.time.DateTime;
  * <p>The cursor used throughout this mapreduce (overridden if necessary using the parameter {@code
  * cursorTime}) represents the inclusive lower bound on the range of billing times that will be
  * expanded as a result of the job (the exclusive upper bound being the execution time of the job).
+ *
+ * <p>As long as that range is shorter than a year, only the recurring events that recur within it
+ * are visited, by querying on their time of year. Otherwise every recurring event is visited.
  */
 @Action(
     service = Action.Service.BACKEND,
@@ -80,6 +89,12 @@ public class ExpandRecurringBillingEventsAction implements Runnable {
 
   public static final String PARAM_CURSOR_TIME = "cursorTime";
   private static final String ERROR_COUNTER = "errors";
+  private static final String VISITED_COUNTER = "Recurring billing events encountered";
+  private static final String EXPANDED_COUNTER = "Recurring billing events expanded";
+
+  /** The number of shards to split the window into when only visiting recurrences within it. */
+  private static final int NUM_WINDOW_SHARDS = 50;
+
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
   @Inject Clock clock;
@@ -101,20 +116,57 @@ public class ExpandRecurringBillingEventsAction implements Runnable {
     logger.atInfo().log(
         "Running Recurring billing event expansion for billing time range [%s, %s).",
         cursorTime, executeTime);
+    Optional<Range<DateTime>> eventTimeWindow = getEventTimeWindow(cursorTime, executeTime);
+    Input<Recurring> recurringInput;
+    if (eventTimeWindow.isPresent()) {
+      logger.atInfo().log(
+          "Only visiting Recurring billing events that recur within event time range %s.",
+          eventTimeWindow.get());
+      recurringInput =
+          new RecurringBillingEventInput(
+              eventTimeWindow.get().lowerEndpoint(),
+              eventTimeWindow.get().upperEndpoint(),
+              NUM_WINDOW_SHARDS);
+    } else {
+      logger.atInfo().log("Billing time range is too long to narrow; visiting all Recurrings.");
+      recurringInput =
+          createChildEntityInput(
+              ImmutableSet.of(DomainBase.class), ImmutableSet.of(Recurring.class));
+    }
     mrRunner
         .setJobName("Expand Recurring billing events into synthetic OneTime events.")
         .setModuleName("backend")
         .runMapreduce(
-            new ExpandRecurringBillingEventsMapper(isDryRun, cursorTime, clock.nowUtc()),
+            new ExpandRecurringBillingEventsMapper(isDryRun, cursorTime, executeTime),
             new ExpandRecurringBillingEventsReducer(isDryRun, persistedCursorTime),
             // Add an extra shard that maps over a null recurring event (see the mapper for why).
-            ImmutableList.of(
-                new NullInput<>(),
-                createChildEntityInput(
-                    ImmutableSet.of(DomainBase.class), ImmutableSet.of(Recurring.class))))
+            ImmutableList.of(new NullInput<>(), recurringInput))
         .sendLinkToMapreduceConsole(response);
   }
 
+  /**
+   * Returns the range of event times whose billing times could fall within {@code [cursorTime,
+   * executeTime)}, or absent if that is a year or more and so every recurrence could be in scope.
+   *
+   * <p>Billing times trail event times by the autorenew grace period of the domain's TLD, so the
+   * range is widened to cover the grace periods of all TLDs.
+   */
+  private static Optional<Range<DateTime>> getEventTimeWindow(
+      DateTime cursorTime, DateTime executeTime) {
+    ImmutableSet<Duration> gracePeriods =
+        Registries.getTlds().stream()
+            .map(tld -> Registry.get(tld).getAutoRenewGracePeriodLength())
+            .collect(toImmutableSet());
+    if (gracePeriods.isEmpty()) {
+      return Optional.empty();
+    }
+    DateTime windowStart = cursorTime.minus(Collections.max(gracePeriods));
+    DateTime windowEnd = executeTime.minus(Collections.min(gracePeriods));
+    return windowEnd.isBefore(windowStart.plusYears(1))
+        ? Optional.of(Range.closedOpen(windowStart, windowEnd))
+        : Optional.empty();
+  }
+
   /** Mapper to expand {@link Recurring} billing events into synthetic {@link OneTime} events. */
   public static class ExpandRecurringBillingEventsMapper
       extends Mapper<Recurring, DateTime, DateTime> {
@@ -141,7 +193,7 @@ public class ExpandRecurringBillingEventsAction implements Runnable {
         emit(cursorTime, executeTime);
         return;
       }
-      getContext().incrementCounter("Recurring billing events encountered");
+      getContext().incrementCounter(VISITED_COUNTER);
       // Ignore any recurring billing events that have yet to apply.
       if (recurring.getEventTime().isAfter(executeTime)
           // This second case occurs when a domain is transferred or deleted before first renewal.
@@ -151,29 +203,45 @@ public class ExpandRecurringBillingEventsAction implements Runnable {
       }
       int numBillingEventsSaved = 0;
       try {
-        numBillingEventsSaved = tm().transactNew(() -> {
-          ImmutableSet.Builder<OneTime> syntheticOneTimesBuilder =
-              new ImmutableSet.Builder<>();
-          final Registry tld = Registry.get(getTldFromDomainName(recurring.getTargetId()));
+        final Registry tld = Registry.get(getTldFromDomainName(recurring.getTargetId()));
 
-          // Determine the complete set of times at which this recurring event should occur
-          // (up to and including the runtime of the mapreduce).
-          Iterable<DateTime> eventTimes =
-              recurring.getRecurrenceTimeOfYear().getInstancesInRange(Range.closed(
-                  recurring.getEventTime(),
-                  earliestOf(recurring.getRecurrenceEndTime(), executeTime)));
+        // Determine the complete set of times at which this recurring event should occur
+        // (up to and including the runtime of the mapreduce).
+        Iterable<DateTime> eventTimes =
+            recurring.getRecurrenceTimeOfYear().getInstancesInRange(Range.closed(
+                recurring.getEventTime(),
+                earliestOf(recurring.getRecurrenceEndTime(), executeTime)));
 
-          // Convert these event times to billing times
-          final ImmutableSet<DateTime> billingTimes =
-              getBillingTimesInScope(eventTimes, cursorTime, executeTime, tld);
+        // Convert these event times to billing times
+        final ImmutableSet<DateTime> billingTimes =
+            getBillingTimesInScope(eventTimes, cursorTime, executeTime, tld);
 
+        // Most recurrences have nothing in scope, in which case there's no need for a transaction.
+        if (billingTimes.isEmpty()) {
+          getContext().incrementCounter("Recurring billing events with no billing times in scope");
+          return;
+        }
+
+        numBillingEventsSaved = tm().transactNew(() -> {
+          ImmutableSet.Builder<OneTime> syntheticOneTimesBuilder =
+              new ImmutableSet.Builder<>();
           Key<? extends EppResource> domainKey = recurring.getParentKey().getParent();
-          Iterable<OneTime> oneTimesForDomain =
-              ofy().load().type(OneTime.class).ancestor(domainKey);
 
-          // Determine the billing times that already have OneTime events persisted.
+          // Determine the billing times that already have OneTime events persisted, looking up
+          // only the domain's OneTimes at those billing times rather than all of them.
           ImmutableSet<DateTime> existingBillingTimes =
-              getExistingBillingTimes(oneTimesForDomain, recurring);
+              getExistingBillingTimes(
+                  billingTimes.stream()
+                      .flatMap(
+                          billingTime ->
+                              Streams.stream(
+                                  ofy()
+                                      .load()
+                                      .type(OneTime.class)
+                                      .ancestor(domainKey)
+                                      .filter("billingTime", billingTime)))
+                      .collect(toImmutableList()),
+                  recurring);
 
           ImmutableSet.Builder<HistoryEntry> historyEntriesBuilder =
               new ImmutableSet.Builder<>();
@@ -238,6 +306,9 @@ public class ExpandRecurringBillingEventsAction implements Runnable {
                 "Error while expanding Recurring billing events for %d", recurring.getId()),
             t);
       }
+      if (numBillingEventsSaved > 0) {
+        getContext().incrementCounter(EXPANDED_COUNTER);
+      }
       if (!isDryRun) {
         getContext().incrementCounter("Saved OneTime billing events", numBillingEventsSaved);
       } else {
@@ -309,6 +380,10 @@ public class ExpandRecurringBillingEventsAction implements Runnable {
       logger.atInfo().log(
           "Recurring event expansion %s complete for billing event range [%s, %s).",
           isDryRun ? "(dry run) " : "", cursorTime, executionTime);
+      logger.atInfo().log(
+          "Visited %d Recurring billing events, of which %d were expanded.",
+          getContext().getCounter(VISITED_COUNTER).getValue(),
+          getContext().getCounter(EXPANDED_COUNTER).getValue());
       tm()
           .transact(
               () -> {
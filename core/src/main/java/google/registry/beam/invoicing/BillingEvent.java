@@ -36,7 +36,10 @@ import java.util.stream.Collectors;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.beam.sdk.coders.AtomicCoder;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.DoubleCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.coders.VarLongCoder;
 import org.apache.beam.sdk.io.gcp.bigquery.SchemaAndRecord;
 
 /**
@@ -259,6 +262,71 @@ public abstract class BillingEvent implements Serializable {
         poNumber());
   }
 
+  /**
+   * Coder that provides compact, deterministic (de)serialization for {@code BillingEvent}.
+   *
+   * <p>This avoids the overhead of Java serialization, which writes out class metadata and the full
+   * object graph of each {@link ZonedDateTime} for every element.
+   */
+  static class BillingEventCoder extends AtomicCoder<BillingEvent> {
+
+    private static final Coder<String> STRING_CODER = StringUtf8Coder.of();
+    private static final Coder<Long> LONG_CODER = VarLongCoder.of();
+    private static final Coder<Integer> INT_CODER = VarIntCoder.of();
+    private static final Coder<Double> DOUBLE_CODER = DoubleCoder.of();
+
+    @Override
+    public void encode(BillingEvent value, OutputStream outStream) throws IOException {
+      LONG_CODER.encode(value.id(), outStream);
+      encodeDateTime(value.billingTime(), outStream);
+      encodeDateTime(value.eventTime(), outStream);
+      STRING_CODER.encode(value.registrarId(), outStream);
+      STRING_CODER.encode(value.billingId(), outStream);
+      STRING_CODER.encode(value.poNumber(), outStream);
+      STRING_CODER.encode(value.tld(), outStream);
+      STRING_CODER.encode(value.action(), outStream);
+      STRING_CODER.encode(value.domain(), outStream);
+      STRING_CODER.encode(value.repositoryId(), outStream);
+      INT_CODER.encode(value.years(), outStream);
+      STRING_CODER.encode(value.currency(), outStream);
+      DOUBLE_CODER.encode(value.amount(), outStream);
+      STRING_CODER.encode(value.flags(), outStream);
+    }
+
+    @Override
+    public BillingEvent decode(InputStream inStream) throws IOException {
+      return create(
+          LONG_CODER.decode(inStream),
+          decodeDateTime(inStream),
+          decodeDateTime(inStream),
+          STRING_CODER.decode(inStream),
+          STRING_CODER.decode(inStream),
+          STRING_CODER.decode(inStream),
+          STRING_CODER.decode(inStream),
+          STRING_CODER.decode(inStream),
+          STRING_CODER.decode(inStream),
+          STRING_CODER.decode(inStream),
+          INT_CODER.decode(inStream),
+          STRING_CODER.decode(inStream),
+          DOUBLE_CODER.decode(inStream),
+          STRING_CODER.decode(inStream));
+    }
+
+    private static void encodeDateTime(ZonedDateTime dateTime, OutputStream outStream)
+        throws IOException {
+      Instant instant = dateTime.toInstant();
+      LONG_CODER.encode(instant.getEpochSecond(), outStream);
+      INT_CODER.encode(instant.getNano(), outStream);
+      STRING_CODER.encode(dateTime.getZone().getId(), outStream);
+    }
+
+    private static ZonedDateTime decodeDateTime(InputStream inStream) throws IOException {
+      Instant instant =
+          Instant.ofEpochSecond(LONG_CODER.decode(inStream), INT_CODER.decode(inStream));
+      return instant.atZone(ZoneId.of(STRING_CODER.decode(inStream)));
+    }
+  }
+
   /** Key for each {@code BillingEvent}, when aggregating for the overall invoice. */
   @AutoValue
   abstract static class InvoiceGroupingKey implements Serializable {
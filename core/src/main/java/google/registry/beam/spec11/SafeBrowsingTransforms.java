@@ -15,20 +15,31 @@
 package google.registry.beam.spec11;
 
 
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static com.google.common.util.concurrent.Uninterruptibles.getUninterruptibly;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.http.HttpStatus.SC_OK;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import google.registry.util.Retrier;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Serializable;
 import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Supplier;
 import org.apache.beam.sdk.options.ValueProvider;
 import org.apache.beam.sdk.transforms.DoFn;
@@ -41,6 +52,7 @@ import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.protocol.HTTP;
 import org.joda.time.Instant;
 import org.json.JSONArray;
@@ -70,11 +82,20 @@ public class SafeBrowsingTransforms {
      *
      * <p>The actual max is 500, but we leave a small gap in case of concurrency errors.
      */
-    private static final int BATCH_SIZE = 490;
+    @VisibleForTesting static final int BATCH_SIZE = 490;
+
+    /** Max number of batches each instance of this {@code DoFn} has in flight at once. */
+    @VisibleForTesting static final int MAX_CONCURRENT_BATCHES = 4;
 
     /** Provides the SafeBrowsing API key at runtime. */
     private final ValueProvider<String> apiKeyProvider;
 
+    /**
+     * Provides the max number of SafeBrowsing API calls (including retries) per second, per
+     * instance, at runtime.
+     */
+    private final ValueProvider<Double> maxQueriesPerSecondProvider;
+
     /**
      * Maps a subdomain's {@code fullyQualifiedDomainName} to its corresponding {@link Subdomain} to
      * facilitate batching SafeBrowsing API requests.
@@ -92,21 +113,41 @@ public class SafeBrowsingTransforms {
     /** Retries on receiving transient failures such as {@link IOException}. */
     private final Retrier retrier;
 
+    /**
+     * The HTTP client shared by all batches evaluated by this instance, so that connections to the
+     * API are reused rather than re-established for every batch.
+     */
+    private transient CloseableHttpClient httpClient;
+
+    /** Runs the API calls for up to {@link #MAX_CONCURRENT_BATCHES} batches at once. */
+    private transient ExecutorService executor;
+
+    private transient RateLimiter rateLimiter;
+
+    /** Results of the batches submitted to the {@link #executor}, in submission order. */
+    private transient Deque<Future<ImmutableSet<KV<Subdomain, ThreatMatch>>>> pendingBatches;
+
     /**
      * Constructs a {@link EvaluateSafeBrowsingFn} that gets its API key from the given provider.
      *
      * <p>We need to dual-cast the closeableHttpClientSupplier lambda because all {@code DoFn}
      * member variables need to be serializable. The (Supplier & Serializable) dual cast is safe
      * because class methods are generally serializable, especially a static function such as {@link
-     * HttpClients#createDefault()}.
+     * #createPooledHttpClient()}.
      *
      * @param apiKeyProvider provides the SafeBrowsing API key from {@code KMS} at runtime
+     * @param maxQueriesPerSecondProvider provides the per-instance API call rate limit at runtime
      */
     @SuppressWarnings("unchecked")
-    EvaluateSafeBrowsingFn(ValueProvider<String> apiKeyProvider, Retrier retrier) {
+    EvaluateSafeBrowsingFn(
+        ValueProvider<String> apiKeyProvider,
+        ValueProvider<Double> maxQueriesPerSecondProvider,
+        Retrier retrier) {
       this.apiKeyProvider = apiKeyProvider;
+      this.maxQueriesPerSecondProvider = maxQueriesPerSecondProvider;
       this.retrier = retrier;
-      this.closeableHttpClientSupplier = (Supplier & Serializable) HttpClients::createDefault;
+      this.closeableHttpClientSupplier =
+          (Supplier & Serializable) EvaluateSafeBrowsingFn::createPooledHttpClient;
     }
 
     /**
@@ -118,43 +159,108 @@ public class SafeBrowsingTransforms {
     @VisibleForTesting
     EvaluateSafeBrowsingFn(
         ValueProvider<String> apiKeyProvider,
+        ValueProvider<Double> maxQueriesPerSecondProvider,
         Retrier retrier,
         Supplier<CloseableHttpClient> clientSupplier) {
       this.apiKeyProvider = apiKeyProvider;
+      this.maxQueriesPerSecondProvider = maxQueriesPerSecondProvider;
       this.retrier = retrier;
       this.closeableHttpClientSupplier = clientSupplier;
     }
 
+    /** Creates an HTTP client with enough pooled connections for every concurrent batch. */
+    private static CloseableHttpClient createPooledHttpClient() {
+      PoolingHttpClientConnectionManager connectionManager =
+          new PoolingHttpClientConnectionManager();
+      connectionManager.setMaxTotal(MAX_CONCURRENT_BATCHES);
+      connectionManager.setDefaultMaxPerRoute(MAX_CONCURRENT_BATCHES);
+      return HttpClients.custom().setConnectionManager(connectionManager).build();
+    }
+
+    /** Sets up the HTTP client and the executor, which live as long as this instance. */
+    @Setup
+    public void setup() {
+      httpClient = closeableHttpClientSupplier.get();
+      executor =
+          Executors.newFixedThreadPool(
+              MAX_CONCURRENT_BATCHES,
+              new ThreadFactoryBuilder()
+                  .setNameFormat("safe-browsing-evaluator-%d")
+                  .setDaemon(true)
+                  .build());
+      rateLimiter = RateLimiter.create(maxQueriesPerSecondProvider.get());
+      pendingBatches = new ArrayDeque<>();
+    }
+
+    /** Shuts down the executor and releases the HTTP client's connections. */
+    @Teardown
+    public void teardown() throws IOException {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+      if (httpClient != null) {
+        httpClient.close();
+      }
+    }
+
     /** Evaluates any buffered {@link Subdomain} objects upon completing the bundle. */
     @FinishBundle
     public void finishBundle(FinishBundleContext context) {
       if (!subdomainBuffer.isEmpty()) {
-        ImmutableSet<KV<Subdomain, ThreatMatch>> results = evaluateAndFlush();
-        results.forEach((kv) -> context.output(kv, Instant.now(), GlobalWindow.INSTANCE));
+        submitBatch();
+      }
+      while (!pendingBatches.isEmpty()) {
+        awaitOldestBatch()
+            .forEach((kv) -> context.output(kv, Instant.now(), GlobalWindow.INSTANCE));
       }
     }
 
     /**
-     * Buffers {@link Subdomain} objects until we reach the batch size, then bulk-evaluate the URLs
-     * with the SafeBrowsing API.
+     * Buffers {@link Subdomain} objects until we reach the batch size, then hands the batch off to
+     * be evaluated with the SafeBrowsing API in the background.
+     *
+     * <p>Results are emitted in batch order as they become available. Once {@link
+     * #MAX_CONCURRENT_BATCHES} batches are in flight, this blocks until the oldest one completes.
      */
     @ProcessElement
     public void processElement(ProcessContext context) {
       Subdomain subdomain = context.element();
       subdomainBuffer.put(subdomain.fullyQualifiedDomainName(), subdomain);
       if (subdomainBuffer.size() >= BATCH_SIZE) {
-        ImmutableSet<KV<Subdomain, ThreatMatch>> results = evaluateAndFlush();
-        results.forEach(context::output);
+        submitBatch();
+      }
+      while (!pendingBatches.isEmpty()
+          && (pendingBatches.size() >= MAX_CONCURRENT_BATCHES
+              || pendingBatches.peekFirst().isDone())) {
+        awaitOldestBatch().forEach(context::output);
+      }
+    }
+
+    /** Submits all {@link Subdomain} objects in the buffer for evaluation and flushes it. */
+    private void submitBatch() {
+      ImmutableMap<String, Subdomain> batch = ImmutableMap.copyOf(subdomainBuffer);
+      subdomainBuffer.clear();
+      pendingBatches.addLast(executor.submit(() -> evaluateBatch(batch)));
+    }
+
+    /** Waits for the oldest in-flight batch to complete and returns its results. */
+    private ImmutableSet<KV<Subdomain, ThreatMatch>> awaitOldestBatch() {
+      try {
+        return getUninterruptibly(pendingBatches.removeFirst());
+      } catch (ExecutionException e) {
+        throwIfUnchecked(e.getCause());
+        throw new RuntimeException(e.getCause());
       }
     }
 
     /**
-     * Evaluates all {@link Subdomain} objects in the buffer and returns a list of key-value pairs
+     * Evaluates all {@link Subdomain} objects in the batch and returns a list of key-value pairs
      * from {@link Subdomain} to its SafeBrowsing report.
      *
      * <p>If a {@link Subdomain} is safe according to the API, it will not emit a report.
      */
-    private ImmutableSet<KV<Subdomain, ThreatMatch>> evaluateAndFlush() {
+    private ImmutableSet<KV<Subdomain, ThreatMatch>> evaluateBatch(
+        ImmutableMap<String, Subdomain> batch) {
       ImmutableSet.Builder<KV<Subdomain, ThreatMatch>> resultBuilder = new ImmutableSet.Builder<>();
       try {
         URIBuilder uriBuilder = new URIBuilder(SAFE_BROWSING_URL);
@@ -164,32 +270,30 @@ public class SafeBrowsingTransforms {
         HttpPost httpPost = new HttpPost(uriBuilder.build());
         httpPost.addHeader(HTTP.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
 
-        JSONObject requestBody = createRequestBody();
+        JSONObject requestBody = createRequestBody(batch);
         httpPost.setEntity(new ByteArrayEntity(requestBody.toString().getBytes(UTF_8)));
         // Retry transient exceptions such as IOException
         retrier.callWithRetry(
             () -> {
-              try (CloseableHttpClient client = closeableHttpClientSupplier.get();
-                  CloseableHttpResponse response = client.execute(httpPost)) {
-                processResponse(response, resultBuilder);
+              rateLimiter.acquire();
+              try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+                processResponse(response, batch, resultBuilder);
               }
             },
             IOException.class);
       } catch (URISyntaxException | JSONException  e) {
         // Fail the pipeline on a parsing exception- this indicates the API likely changed.
         throw new RuntimeException("Caught parsing exception, failing pipeline.", e);
-      } finally {
-        // Flush the buffer
-        subdomainBuffer.clear();
       }
       return resultBuilder.build();
     }
 
     /** Creates a JSON object matching the request format for the SafeBrowsing API. */
-    private JSONObject createRequestBody() throws JSONException {
+    private static JSONObject createRequestBody(ImmutableMap<String, Subdomain> batch)
+        throws JSONException {
       // Accumulate all domain names to evaluate.
       JSONArray threatArray = new JSONArray();
-      for (String fullyQualifiedDomainName : subdomainBuffer.keySet()) {
+      for (String fullyQualifiedDomainName : batch.keySet()) {
         threatArray.put(new JSONObject().put("url", fullyQualifiedDomainName));
       }
       // Construct the JSON request body
@@ -215,8 +319,9 @@ public class SafeBrowsingTransforms {
      * Iterates through all threat matches in the API response and adds them to the {@code
      * resultBuilder}.
      */
-    private void processResponse(
+    private static void processResponse(
         CloseableHttpResponse response,
+        ImmutableMap<String, Subdomain> batch,
         ImmutableSet.Builder<KV<Subdomain, ThreatMatch>> resultBuilder)
         throws JSONException, IOException {
       int statusCode = response.getStatusLine().getStatusCode();
@@ -237,7 +342,7 @@ public class SafeBrowsingTransforms {
           for (int i = 0; i < threatMatches.length(); i++) {
             JSONObject match = threatMatches.getJSONObject(i);
             String url = match.getJSONObject("threat").getString("url");
-            Subdomain subdomain = subdomainBuffer.get(url);
+            Subdomain subdomain = batch.get(url);
             resultBuilder.add(
                 KV.of(subdomain, ThreatMatch.create(match, subdomain.fullyQualifiedDomainName())));
           }
@@ -33,6 +33,7 @@ import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.coders.SerializableCoder;
 import org.apache.beam.sdk.io.TextIO;
 import org.apache.beam.sdk.io.gcp.bigquery.BigQueryIO;
+import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.options.ValueProvider;
@@ -129,6 +130,19 @@ public class Spec11Pipeline implements Serializable {
      * "safeBrowsingApiKey" parameter.
      */
     void setSafeBrowsingApiKey(ValueProvider<String> value);
+
+    /** Returns the max number of SafeBrowsing API calls per second, per DoFn instance. */
+    @Description("The max number of SafeBrowsing API calls per second, per DoFn instance.")
+    @Default.Double(10)
+    ValueProvider<Double> getSafeBrowsingMaxQueriesPerSecond();
+
+    /**
+     * Sets the max number of SafeBrowsing API calls per second.
+     *
+     * <p>This can be overridden when executing the Dataflow template, by specifying the
+     * "safeBrowsingMaxQueriesPerSecond" parameter.
+     */
+    void setSafeBrowsingMaxQueriesPerSecond(ValueProvider<Double> value);
   }
 
   /** Deploys the spec11 pipeline as a template on GCS. */
@@ -163,7 +177,10 @@ public class Spec11Pipeline implements Serializable {
 
     evaluateUrlHealth(
         domains,
-        new EvaluateSafeBrowsingFn(options.getSafeBrowsingApiKey(), retrier),
+        new EvaluateSafeBrowsingFn(
+            options.getSafeBrowsingApiKey(),
+            options.getSafeBrowsingMaxQueriesPerSecond(),
+            retrier),
         options.getDate());
     p.run();
   }
@@ -346,6 +346,24 @@ public final class RegistryConfig {
       return Duration.standardSeconds(45);
     }
 
+    /**
+     * How long ReadDnsQueueAction accumulates leased tasks before dispatching them.
+     *
+     * <p>Each lease returns at most 1000 tasks. Accumulating several leases before dispatching lets
+     * repeated refreshes of the same name be published once, and lets each TLD's refreshes be
+     * published in full batches of {@link #provideDnsTldUpdateBatchSize} items, at the cost of
+     * delaying publication by up to this long.
+     *
+     * <p>This must be shorter than {@link #provideReadDnsQueueRuntime}.
+     *
+     * @see google.registry.dns.ReadDnsQueueAction
+     */
+    @Provides
+    @Config("readDnsQueueBatchingWindow")
+    public static Duration provideReadDnsQueueBatchingWindow() {
+      return Duration.standardSeconds(10);
+    }
+
     /**
      * Returns the default time to live for DNS A and AAAA records.
      *
@@ -1092,6 +1110,22 @@ public final class RegistryConfig {
       return Duration.standardSeconds(config.misc.asyncDeleteDelaySeconds);
     }
 
+    /**
+     * Whether asynchronous contact and host deletions should also scan every domain to verify the
+     * answers given by the domain reference indexes.
+     *
+     * <p>When this is off, linked domains are found with index queries on {@code nsHosts} and
+     * {@code allContacts.contact}. When it is on, the full scan is authoritative and any request
+     * for which the index queries disagree with it is logged.
+     *
+     * @see google.registry.batch.DeleteContactsAndHostsAction
+     */
+    @Provides
+    @Config("asyncDeleteVerifyReferenceIndex")
+    public static boolean provideAsyncDeleteVerifyReferenceIndex() {
+      return false;
+    }
+
     /**
      * The server ID used in the 'svID' element of an EPP 'greeting'.
      *
@@ -1383,11 +1417,26 @@ public final class RegistryConfig {
     return makeUrl(CONFIG_SETTINGS.get().appEngine.pubapiServiceUrl);
   }
 
-  /** Returns the amount of time a singleton should be cached, before expiring. */
+  /** Returns the amount of time a singleton should be cached, before being refreshed. */
   public static Duration getSingletonCacheRefreshDuration() {
     return Duration.standardSeconds(CONFIG_SETTINGS.get().caching.singletonCacheRefreshSeconds);
   }
 
+  /**
+   * Returns the maximum age of a cached singleton before callers block on reloading it.
+   *
+   * <p>This is never shorter than {@link #getSingletonCacheRefreshDuration}, since a value can't be
+   * refreshed in the background once callers are already blocking on it.
+   *
+   * @see google.registry.model.CacheUtils#memoizeWithRefreshAhead
+   */
+  public static Duration getSingletonCacheMaxStaleness() {
+    return Duration.standardSeconds(
+        Math.max(
+            CONFIG_SETTINGS.get().caching.singletonCacheMaxStalenessSeconds,
+            CONFIG_SETTINGS.get().caching.singletonCacheRefreshSeconds));
+  }
+
   /**
    * Returns the amount of time a domain label list should be cached in memory before expiring.
    *
@@ -1410,6 +1459,20 @@ public final class RegistryConfig {
     return CONFIG_SETTINGS.get().caching.staticPremiumListMaxCachedEntries;
   }
 
+  /**
+   * Returns whether premium list revisions should be loaded into memory in their entirety.
+   *
+   * @see google.registry.model.registry.label.PremiumListUtils#getPremiumPrice
+   */
+  public static boolean isPremiumListPreloadEnabled() {
+    return CONFIG_SETTINGS.get().caching.premiumListPreloadEnabled;
+  }
+
+  @VisibleForTesting
+  public static void overrideIsPremiumListPreloadEnabledForTesting(boolean enabled) {
+    CONFIG_SETTINGS.get().caching.premiumListPreloadEnabled = enabled;
+  }
+
   public static boolean isEppResourceCachingEnabled() {
     return CONFIG_SETTINGS.get().caching.eppResourceCachingEnabled;
   }
@@ -1426,11 +1489,26 @@ public final class RegistryConfig {
     return Duration.standardSeconds(CONFIG_SETTINGS.get().caching.eppResourceCachingSeconds);
   }
 
-  /** Returns the maximum number of EPP resources and keys to keep in in-memory cache. */
+  /** Returns the maximum number of EPP resources to keep in in-memory cache. */
   public static int getEppResourceMaxCachedEntries() {
     return CONFIG_SETTINGS.get().caching.eppResourceMaxCachedEntries;
   }
 
+  /** Returns the maximum number of contact foreign key index entries to keep in memory. */
+  public static int getContactForeignKeyIndexMaxCachedEntries() {
+    return CONFIG_SETTINGS.get().caching.contactForeignKeyIndexMaxCachedEntries;
+  }
+
+  /** Returns the maximum number of domain foreign key index entries to keep in memory. */
+  public static int getDomainForeignKeyIndexMaxCachedEntries() {
+    return CONFIG_SETTINGS.get().caching.domainForeignKeyIndexMaxCachedEntries;
+  }
+
+  /** Returns the maximum number of host foreign key index entries to keep in memory. */
+  public static int getHostForeignKeyIndexMaxCachedEntries() {
+    return CONFIG_SETTINGS.get().caching.hostForeignKeyIndexMaxCachedEntries;
+  }
+
   /** Returns the email address that outgoing emails from the app are sent from. */
   public static InternetAddress getGSuiteOutgoingEmailAddress() {
     return parseEmailAddress(CONFIG_SETTINGS.get().gSuite.outgoingEmailAddress);
@@ -119,12 +119,17 @@ public class RegistryConfigSettings {
   /** Configuration for caching. */
   public static class Caching {
     public int singletonCacheRefreshSeconds;
+    public int singletonCacheMaxStalenessSeconds;
     public int domainLabelCachingSeconds;
     public int singletonCachePersistSeconds;
     public int staticPremiumListMaxCachedEntries;
+    public boolean premiumListPreloadEnabled;
     public boolean eppResourceCachingEnabled;
     public int eppResourceCachingSeconds;
     public int eppResourceMaxCachedEntries;
+    public int contactForeignKeyIndexMaxCachedEntries;
+    public int domainForeignKeyIndexMaxCachedEntries;
+    public int hostForeignKeyIndexMaxCachedEntries;
   }
 
   /** Configuration for ICANN monthly reporting. */
@@ -37,6 +37,7 @@ import com.google.appengine.api.taskqueue.TaskHandle;
 import com.google.appengine.api.taskqueue.TaskOptions;
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
@@ -57,10 +58,12 @@ import google.registry.util.TaskQueueUtils;
 import java.io.UnsupportedEncodingException;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -101,8 +104,17 @@ public final class ReadDnsQueueAction implements Runnable {
    */
   private static final Duration LEASE_PADDING = Duration.standardMinutes(1);
 
+  /**
+   * Maximum number of leased tasks to hold on to before dispatching them, even if the batching
+   * window hasn't elapsed yet.
+   *
+   * <p>This bounds the memory used while accumulating tasks from a very large queue.
+   */
+  private static final int MAX_PENDING_TASKS = 20000;
+
   @Inject @Config("dnsTldUpdateBatchSize") int tldUpdateBatchSize;
   @Inject @Config("readDnsQueueActionRuntime") Duration requestedMaximumDuration;
+  @Inject @Config("readDnsQueueBatchingWindow") Duration batchingWindow;
   @Inject @Named(DNS_PUBLISH_PUSH_QUEUE_NAME) Queue dnsPublishPushQueue;
   @Inject @Parameter(PARAM_JITTER_SECONDS) Optional<Integer> jitterSeconds;
   @Inject Clock clock;
@@ -134,21 +146,45 @@ public final class ReadDnsQueueAction implements Runnable {
     }
   }
 
-  /** Leases all tasks from the pull queue and creates per-tld update actions for them. */
+  /**
+   * Leases all tasks from the pull queue and creates per-tld update actions for them.
+   *
+   * <p>Leased tasks are accumulated for up to {@link #batchingWindow} before being dispatched
+   * together, so that refreshes of the same name leased in different batches are coalesced, and so
+   * that each TLD's refreshes fill up full publish batches instead of one partial batch per lease.
+   */
   @Override
   public void run() {
     DateTime requestedEndTime = clock.nowUtc().plus(requestedMaximumDuration);
     ImmutableSet<String> tlds = Registries.getTlds();
+    Set<TaskHandle> pendingTasks = new LinkedHashSet<>();
+    DateTime windowEndTime = null;
     while (requestedEndTime.isAfterNow()) {
       List<TaskHandle> tasks = dnsQueue.leaseTasks(requestedMaximumDuration.plus(LEASE_PADDING));
       logger.atInfo().log("Leased %d DNS update tasks.", tasks.size());
-      if (!tasks.isEmpty()) {
-        dispatchTasks(ImmutableSet.copyOf(tasks), tlds);
+      if (pendingTasks.isEmpty()) {
+        windowEndTime = clock.nowUtc().plus(batchingWindow);
+      }
+      pendingTasks.addAll(tasks);
+      boolean queueDrained = tasks.size() < dnsQueue.getLeaseTasksBatchSize();
+      if (queueDrained
+          || !clock.nowUtc().isBefore(windowEndTime)
+          || pendingTasks.size() >= MAX_PENDING_TASKS) {
+        dispatchPendingTasks(pendingTasks, tlds);
       }
-      if (tasks.size() < dnsQueue.getLeaseTasksBatchSize()) {
+      if (queueDrained) {
         return;
       }
     }
+    dispatchPendingTasks(pendingTasks, tlds);
+  }
+
+  /** Dispatches all of the given tasks, if there are any, then clears them. */
+  private void dispatchPendingTasks(Set<TaskHandle> pendingTasks, ImmutableSet<String> tlds) {
+    if (!pendingTasks.isEmpty()) {
+      dispatchTasks(ImmutableSet.copyOf(pendingTasks), tlds);
+      pendingTasks.clear();
+    }
   }
 
   /** A set of tasks grouped based on the action to take on them. */
@@ -317,13 +353,13 @@ public final class ReadDnsQueueAction implements Runnable {
     for (Map.Entry<String, Collection<RefreshItem>> tldRefreshItemsEntry
         : refreshItemsByTld.asMap().entrySet()) {
       String tld = tldRefreshItemsEntry.getKey();
+      ImmutableList<RefreshItem> refreshItems = coalesce(tldRefreshItemsEntry.getValue());
       int numPublishLocks = Registry.get(tld).getNumDnsPublishLocks();
       // 1 lock or less implies no TLD-wide locks, simply enqueue everything under lock 1 of 1
       if (numPublishLocks <= 1) {
-        enqueueUpdates(tld, 1, 1, tldRefreshItemsEntry.getValue());
+        enqueueUpdates(tld, 1, 1, refreshItems);
       } else {
-        tldRefreshItemsEntry
-            .getValue()
+        refreshItems
             .stream()
             .collect(
                 toImmutableSetMultimap(
@@ -337,6 +373,30 @@ public final class ReadDnsQueueAction implements Runnable {
     }
   }
 
+  /**
+   * Collapses multiple refresh requests for the same name into a single one.
+   *
+   * <p>A refresh publishes the current state of the name, so one refresh satisfies every request
+   * for it. The earliest creation time is kept, so that the publish latency we report still
+   * reflects how long the oldest request waited.
+   *
+   * <p>This relies on the items being sorted by type, name and then creation time, as they are in
+   * {@link ClassifiedTasks#refreshItemsByTld}.
+   */
+  private static ImmutableList<RefreshItem> coalesce(Collection<RefreshItem> refreshItems) {
+    ImmutableList.Builder<RefreshItem> coalesced = new ImmutableList.Builder<>();
+    RefreshItem previous = null;
+    for (RefreshItem refreshItem : refreshItems) {
+      if (previous == null
+          || previous.type() != refreshItem.type()
+          || !previous.name().equals(refreshItem.name())) {
+        coalesced.add(refreshItem);
+        previous = refreshItem;
+      }
+    }
+    return coalesced.build();
+  }
+
   /**
    * Returns the lock index for a given refreshItem.
    *
@@ -36,6 +36,8 @@ import java.io.IOException;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import javax.inject.Inject;
 import org.joda.time.Duration;
@@ -48,6 +50,8 @@ import org.xbill.DNS.NSRecord;
 import org.xbill.DNS.Name;
 import org.xbill.DNS.RRset;
 import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
 import org.xbill.DNS.TextParseException;
 import org.xbill.DNS.Type;
 import org.xbill.DNS.Update;
@@ -60,7 +64,8 @@ import org.xbill.DNS.Update;
  *
  * On call to {@link #commit()}, a single UPDATE message is created containing the records required
  * to "synchronize" the DNS with the current (at the time of processing) state of the registry, for
- * the supplied domain/host.
+ * the supplied domain/host. If the batch is too large to fit in a single DNS message, the names are
+ * split across several UPDATE messages, which are all sent over a single connection.
  *
  * <p>The general strategy of the publish methods is to delete <em>all</em> resource records of any
  * <em>type</em> that match the exact domain/host name supplied. And then for create/update cases,
@@ -71,8 +76,9 @@ import org.xbill.DNS.Update;
  * <p>Only NS, DS, A, and AAAA records are published, and in particular no DNSSEC signing is done
  * assuming that this will be done by a third party DNS provider.
  *
- * <p>Each commit call is treated as an atomic update to the DNS. If a commit fails an exception
- * is thrown. The SOA record serial number is implicitly incremented by the server on each UPDATE
+ * <p>Each commit call is treated as an atomic update to the DNS, unless it had to be split into
+ * several messages, in which case each message is atomic. If a commit fails an exception is
+ * thrown. The SOA record serial number is implicitly incremented by the server on each UPDATE
  * message, as required by RFC 2136. Care must be taken to make sure the SOA serial number does not
  * go backwards if the entire TLD (zone) is "reset" to empty and republished.
  */
@@ -89,9 +95,11 @@ public class DnsUpdateWriter extends BaseDnsWriter {
   private final Duration dnsDefaultDsTtl;
   private final DnsMessageTransport transport;
   private final Clock clock;
-  private final Update update;
   private final String zoneName;
 
+  /** The records required to synchronize each published name, in a separate UPDATE per name. */
+  private final List<Update> nameUpdates = new ArrayList<>();
+
   /**
    * Class constructor.
    *
@@ -110,7 +118,6 @@ public class DnsUpdateWriter extends BaseDnsWriter {
       DnsMessageTransport transport,
       Clock clock) {
     this.zoneName = zoneName;
-    this.update = new Update(toAbsoluteName(zoneName));
     this.dnsDefaultATtl = dnsDefaultATtl;
     this.dnsDefaultNsTtl = dnsDefaultNsTtl;
     this.dnsDefaultDsTtl = dnsDefaultDsTtl;
@@ -129,6 +136,8 @@ public class DnsUpdateWriter extends BaseDnsWriter {
   private void publishDomain(String domainName, String requestingHostName) {
     Optional<DomainBase> domainOptional =
         loadByForeignKey(DomainBase.class, domainName, clock.nowUtc());
+    Update update = new Update(toAbsoluteName(zoneName));
+    nameUpdates.add(update);
     update.delete(toAbsoluteName(domainName), Type.ANY);
     // If the domain is now deleted, then don't update DNS for it.
     if (domainOptional.isPresent()) {
@@ -172,18 +181,57 @@ public class DnsUpdateWriter extends BaseDnsWriter {
 
   @Override
   protected void commitUnchecked() {
+    ImmutableList<Update> updates = coalesceNameUpdates();
     try {
-      Message response = transport.send(update);
-      verify(
-          response.getRcode() == Rcode.NOERROR,
-          "DNS server failed domain update for '%s' rcode: %s",
-          zoneName,
-          Rcode.string(response.getRcode()));
+      ImmutableList<Message> responses =
+          (updates.size() == 1)
+              ? ImmutableList.of(transport.send(updates.get(0)))
+              : transport.sendAll(ImmutableList.copyOf(updates));
+      for (Message response : responses) {
+        verify(
+            response.getRcode() == Rcode.NOERROR,
+            "DNS server failed domain update for '%s' rcode: %s",
+            zoneName,
+            Rcode.string(response.getRcode()));
+      }
     } catch (IOException e) {
       throw new RuntimeException("publishDomain failed for zone: " + zoneName, e);
     }
   }
 
+  /**
+   * Combines the per-name updates into as few UPDATE messages as possible.
+   *
+   * <p>Normally this is a single message, but if that would exceed the maximum DNS message size,
+   * names are split across several messages. The records for any single name are never split.
+   * The sum of the sizes of the per-name messages is used as a (conservative) estimate of the size
+   * of the combined message, since the combined message needs only one header and zone section and
+   * can compress names better.
+   */
+  private ImmutableList<Update> coalesceNameUpdates() {
+    ImmutableList.Builder<Update> updates = new ImmutableList.Builder<>();
+    Update update = new Update(toAbsoluteName(zoneName));
+    int firstId = update.getHeader().getID();
+    int updateCount = 1;
+    int updateSize = 0;
+    for (Update nameUpdate : nameUpdates) {
+      int nameUpdateSize = nameUpdate.toWire().length;
+      if (updateSize > 0
+          && updateSize + nameUpdateSize > DnsMessageTransport.MESSAGE_MAXIMUM_LENGTH) {
+        updates.add(update);
+        update = new Update(toAbsoluteName(zoneName));
+        // Pipelined messages on one connection are matched to their responses by ID.
+        update.getHeader().setID((firstId + updateCount++) & 0xFFFF);
+        updateSize = 0;
+      }
+      for (Record record : nameUpdate.getSectionArray(Section.UPDATE)) {
+        update.addRecord(record, Section.UPDATE);
+      }
+      updateSize += nameUpdateSize;
+    }
+    return updates.add(update).build();
+  }
+
   private RRset makeDelegationSignerSet(DomainBase domain) {
     RRset signerSet = new RRset();
     for (DelegationSignerData signerData : domain.getDsData()) {
@@ -14,9 +14,9 @@
 
 package google.registry.flows;
 
+import static google.registry.flows.EppXmlSanitizer.lazySanitizedPrettyXml;
 import static google.registry.flows.FlowUtils.marshalWithLenientRetry;
 import static google.registry.model.eppoutput.Result.Code.SUCCESS_AND_CLOSE;
-import static google.registry.xml.XmlTransformer.prettyPrint;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
@@ -56,8 +56,7 @@ public class EppRequestHandler {
       response.setContentType(APPLICATION_EPP_XML);
       byte[] eppResponseXmlBytes = marshalWithLenientRetry(eppOutput);
       response.setPayload(new String(eppResponseXmlBytes, UTF_8));
-      logger.atInfo().log(
-          "EPP response: %s", prettyPrint(EppXmlSanitizer.sanitizeEppXml(eppResponseXmlBytes)));
+      logger.atInfo().log("EPP response: %s", lazySanitizedPrettyXml(eppResponseXmlBytes, "\n"));
       // Note that we always return 200 (OK) even if the EppController returns an error response.
       // This is because returning a non-OK HTTP status code will cause the proxy server to
       // silently close the connection without returning any data. The only time we will ever return
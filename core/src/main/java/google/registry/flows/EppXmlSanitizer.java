@@ -34,7 +34,9 @@ import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.events.Characters;
 import javax.xml.stream.events.StartDocument;
 import javax.xml.stream.events.XMLEvent;
@@ -75,6 +77,21 @@ public class EppXmlSanitizer {
   private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newFactory();
   private static final XMLEventFactory XML_EVENT_FACTORY = XMLEventFactory.newFactory();
 
+  /** Indentation added for each level of nesting when pretty-printing. */
+  private static final String INDENT = "  ";
+
+  private static final int PRETTY_XML_BUFFER_INITIAL_CAPACITY = 4096;
+
+  /**
+   * Largest per-thread pretty-printing buffer kept for reuse. A buffer that grew past this while
+   * formatting an unusually large message is dropped rather than kept alive with its thread.
+   */
+  private static final int PRETTY_XML_BUFFER_MAX_RETAINED_CAPACITY = 1 << 20;
+
+  /** Per-thread buffer that pretty-printed XML is formatted into, reused across messages. */
+  private static final ThreadLocal<StringBuilder> PRETTY_XML_BUFFER =
+      ThreadLocal.withInitial(() -> new StringBuilder(PRETTY_XML_BUFFER_INITIAL_CAPACITY));
+
   /**
    * Returns sanitized EPP XML message. For malformed XML messages, base64-encoded raw bytes will be
    * returned.
@@ -95,6 +112,52 @@ public class EppXmlSanitizer {
     }
   }
 
+  /**
+   * Returns a log argument whose string form is the sanitized and pretty-printed EPP XML message,
+   * with lines separated by the given line separator.
+   *
+   * <p>The message is only formatted when the log statement is actually emitted, and is then
+   * sanitized and indented in a single streaming pass, in the same format as {@link
+   * google.registry.xml.XmlTransformer#prettyPrint}: elements holding only text are printed on one
+   * line, empty elements are printed as {@code <tag/>}, and whitespace between elements is replaced
+   * by two-space indentation. For malformed XML messages, base64-encoded raw bytes are returned,
+   * as in {@link #sanitizeEppXml}.
+   */
+  static Object lazySanitizedPrettyXml(byte[] inputXmlBytes, String lineSeparator) {
+    return new Object() {
+      @Override
+      public String toString() {
+        return sanitizeAndPrettyPrint(inputXmlBytes, lineSeparator);
+      }
+    };
+  }
+
+  private static String sanitizeAndPrettyPrint(byte[] inputXmlBytes, String lineSeparator) {
+    StringBuilder prettyXml = PRETTY_XML_BUFFER.get();
+    prettyXml.setLength(0);
+    XMLStreamReader xmlStreamReader = null;
+    try {
+      xmlStreamReader =
+          XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(inputXmlBytes));
+      new SanitizingPrettyPrinter(xmlStreamReader, prettyXml, lineSeparator).print();
+      return prettyXml.toString();
+    } catch (XMLStreamException e) {
+      logger.atWarning().withCause(e).log("Failed to sanitize EPP XML message.");
+      return Base64.getMimeEncoder().encodeToString(inputXmlBytes);
+    } finally {
+      if (xmlStreamReader != null) {
+        try {
+          xmlStreamReader.close();
+        } catch (XMLStreamException e) {
+          logger.atWarning().withCause(e).log("Failed to close XML stream reader.");
+        }
+      }
+      if (prettyXml.capacity() > PRETTY_XML_BUFFER_MAX_RETAINED_CAPACITY) {
+        PRETTY_XML_BUFFER.remove();
+      }
+    }
+  }
+
   private static String sanitizeAndEncode(byte[] inputXmlBytes)
       throws XMLStreamException, UnsupportedEncodingException {
     XMLEventReader xmlEventReader =
@@ -159,6 +222,187 @@ public class EppXmlSanitizer {
     return xmlEvent.isEndElement() && xmlEvent.asEndElement().getName().equals(startEventName);
   }
 
+  /**
+   * Writes an EPP XML message read from an {@link XMLStreamReader} as indented XML, masking
+   * sensitive data on the way.
+   *
+   * <p>Text is buffered until the next tag, so that an element holding only text can be printed
+   * on a single line without looking ahead in the stream.
+   */
+  private static class SanitizingPrettyPrinter {
+
+    private final XMLStreamReader reader;
+    private final StringBuilder out;
+    private final String lineSeparator;
+
+    /** Number of currently open elements. */
+    private int depth = 0;
+
+    /** Depth of the outermost open sensitive element, or 0 if not inside one. */
+    private int sensitiveDepth = 0;
+
+    /** Whether the last start tag written still lacks its closing {@code >}. */
+    private boolean startTagOpen = false;
+
+    /** Text read since the last tag. */
+    private String pendingText = "";
+
+    SanitizingPrettyPrinter(XMLStreamReader reader, StringBuilder out, String lineSeparator) {
+      this.reader = reader;
+      this.out = out;
+      this.lineSeparator = lineSeparator;
+    }
+
+    void print() throws XMLStreamException {
+      // The reader starts at the document start, whose encoding declaration is kept in the output.
+      // According to XML spec, UTF-8 is to be used unless input declares otherwise.
+      String inputEncoding =
+          Optional.ofNullable(reader.getCharacterEncodingScheme())
+              .orElse(StandardCharsets.UTF_8.name());
+      out.append("<?xml version=\"1.0\" encoding=\"")
+          .append(inputEncoding)
+          .append("\" standalone=\"yes\"?>");
+      while (reader.hasNext()) {
+        switch (reader.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            startElement();
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            endElement();
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+          case XMLStreamConstants.SPACE:
+            pendingText +=
+                sensitiveDepth > 0 ? maskSensitiveData(reader.getText()) : reader.getText();
+            break;
+          case XMLStreamConstants.COMMENT:
+            closeStartTag();
+            flushText();
+            newLine(depth);
+            out.append("<!--").append(reader.getText()).append("-->");
+            break;
+          default:
+            // Processing instructions, DTDs and entity declarations are not part of EPP messages.
+            break;
+        }
+      }
+      out.append(lineSeparator);
+    }
+
+    private void startElement() {
+      closeStartTag();
+      flushText();
+      newLine(depth);
+      out.append('<');
+      appendName(reader.getPrefix(), reader.getLocalName());
+      for (int i = 0; i < reader.getNamespaceCount(); i++) {
+        out.append(" xmlns");
+        String prefix = reader.getNamespacePrefix(i);
+        if (prefix != null && !prefix.isEmpty()) {
+          out.append(':').append(prefix);
+        }
+        out.append("=\"");
+        appendEscaped(reader.getNamespaceURI(i));
+        out.append('"');
+      }
+      for (int i = 0; i < reader.getAttributeCount(); i++) {
+        out.append(' ');
+        appendName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+        out.append("=\"");
+        appendEscaped(reader.getAttributeValue(i));
+        out.append('"');
+      }
+      startTagOpen = true;
+      depth++;
+      if (sensitiveDepth == 0
+          && EPP_TAGS_IN_LOWER_CASE.contains(reader.getLocalName().toLowerCase(Locale.ROOT))) {
+        sensitiveDepth = depth;
+      }
+    }
+
+    private void endElement() {
+      if (startTagOpen) {
+        // The element has no child elements, so print it on one line.
+        startTagOpen = false;
+        if (CharMatcher.whitespace().matchesAllOf(pendingText)) {
+          out.append("/>");
+        } else {
+          out.append('>');
+          appendEscaped(pendingText);
+          out.append("</");
+          appendName(reader.getPrefix(), reader.getLocalName());
+          out.append('>');
+        }
+        pendingText = "";
+        depth--;
+      } else {
+        flushText();
+        depth--;
+        newLine(depth);
+        out.append("</");
+        appendName(reader.getPrefix(), reader.getLocalName());
+        out.append('>');
+      }
+      if (sensitiveDepth > depth) {
+        sensitiveDepth = 0;
+      }
+    }
+
+    private void closeStartTag() {
+      if (startTagOpen) {
+        out.append('>');
+        startTagOpen = false;
+      }
+    }
+
+    /** Writes buffered text that sits between tags on a line of its own, unless it is blank. */
+    private void flushText() {
+      if (!CharMatcher.whitespace().matchesAllOf(pendingText)) {
+        newLine(depth);
+        appendEscaped(CharMatcher.whitespace().trimFrom(pendingText));
+      }
+      pendingText = "";
+    }
+
+    private void newLine(int indentLevel) {
+      out.append(lineSeparator);
+      for (int i = 0; i < indentLevel; i++) {
+        out.append(INDENT);
+      }
+    }
+
+    private void appendName(String prefix, String localName) {
+      if (prefix != null && !prefix.isEmpty()) {
+        out.append(prefix).append(':');
+      }
+      out.append(localName);
+    }
+
+    /** Appends text escaped for use both as character data and as a quoted attribute value. */
+    private void appendEscaped(String text) {
+      for (int i = 0; i < text.length(); i++) {
+        char c = text.charAt(i);
+        switch (c) {
+          case '&':
+            out.append("&amp;");
+            break;
+          case '<':
+            out.append("&lt;");
+            break;
+          case '>':
+            out.append("&gt;");
+            break;
+          case '"':
+            out.append("&quot;");
+            break;
+          default:
+            out.append(c);
+        }
+      }
+    }
+  }
+
   private static XMLInputFactory createXmlInputFactory() {
     XMLInputFactory xmlInputFactory = XMLInputFactory.newFactory();
     // Coalesce adjacent data, so that all chars in a string will be grouped as one item.
@@ -14,8 +14,8 @@
 
 package google.registry.flows;
 
+import static google.registry.flows.EppXmlSanitizer.lazySanitizedPrettyXml;
 import static google.registry.model.transaction.TransactionManagerFactory.tm;
-import static google.registry.xml.XmlTransformer.prettyPrint;
 
 import com.google.common.base.Strings;
 import com.google.common.flogger.FluentLogger;
@@ -54,14 +54,12 @@ public class FlowRunner {
 
   /** Runs the EPP flow, and records metrics on the given builder. */
   public EppOutput run(final EppMetric.Builder eppMetricBuilder) throws EppException {
-    String prettyXml = prettyPrint(EppXmlSanitizer.sanitizeEppXml(inputXmlBytes));
-
     logger.atInfo().log(
         COMMAND_LOG_FORMAT,
         trid.getServerTransactionId(),
         clientId,
         sessionMetadata,
-        prettyXml.replace("\n", "\n\t"),
+        lazySanitizedPrettyXml(inputXmlBytes, "\n\t"),
         credentials,
         eppRequestSource,
         isDryRun ? "DRY_RUN" : "LIVE",
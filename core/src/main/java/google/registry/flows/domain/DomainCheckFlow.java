@@ -15,10 +15,11 @@
 package google.registry.flows.domain;
 
 import static com.google.common.base.Strings.emptyToNull;
+import static com.google.common.collect.ImmutableSetMultimap.toImmutableSetMultimap;
 import static google.registry.flows.FlowUtils.validateClientIsLoggedIn;
 import static google.registry.flows.ResourceFlowUtils.verifyTargetIdCount;
 import static google.registry.flows.domain.DomainFlowUtils.checkAllowedAccessToTld;
-import static google.registry.flows.domain.DomainFlowUtils.getReservationTypes;
+import static google.registry.flows.domain.DomainFlowUtils.getFeeRequestPriceTime;
 import static google.registry.flows.domain.DomainFlowUtils.handleFeeRequest;
 import static google.registry.flows.domain.DomainFlowUtils.isReserved;
 import static google.registry.flows.domain.DomainFlowUtils.validateDomainName;
@@ -27,10 +28,12 @@ import static google.registry.flows.domain.DomainFlowUtils.verifyNotInPredelegat
 import static google.registry.model.EppResourceUtils.checkResourcesExist;
 import static google.registry.model.registry.Registry.TldState.START_DATE_SUNRISE;
 import static google.registry.model.registry.label.ReservationType.getTypeOfHighestSeverity;
+import static google.registry.pricing.PricingEngineProxy.getPricesForDomainNames;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Maps;
 import com.google.common.net.InternetDomainName;
 import google.registry.config.RegistryConfig.Config;
@@ -60,11 +63,14 @@ import google.registry.model.eppoutput.CheckData.DomainCheck;
 import google.registry.model.eppoutput.CheckData.DomainCheckData;
 import google.registry.model.eppoutput.EppResponse;
 import google.registry.model.eppoutput.EppResponse.ResponseExtension;
+import google.registry.model.pricing.PremiumPricingEngine.DomainPrices;
 import google.registry.model.registry.Registry;
 import google.registry.model.registry.Registry.TldState;
 import google.registry.model.registry.label.ReservationType;
+import google.registry.model.registry.label.ReservedList;
 import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
 import google.registry.util.Clock;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -168,11 +174,16 @@ public final class DomainCheckFlow implements Flow {
         tokenDomainCheckResults
             .map(AllocationTokenDomainCheckResults::domainCheckResults)
             .orElse(ImmutableMap.of());
+    // Existing domains are reported as in use, but their reservations are still needed to price
+    // any fee checks on them.
+    ImmutableMap<String, ImmutableSet<ReservationType>> reservationTypes =
+        getReservationTypesInBatches(domainNames);
     for (String targetId : targetIds) {
       Optional<String> message =
           getMessageForCheck(
               domainNames.get(targetId),
               existingIds,
+              reservationTypes.get(targetId),
               domainCheckResults,
               tldStates);
       checks.add(DomainCheck.create(!message.isPresent(), targetId, message.orElse(null)));
@@ -183,7 +194,8 @@ public final class DomainCheckFlow implements Flow {
         flowCustomLogic.beforeResponse(
             BeforeResponseParameters.newBuilder()
                 .setDomainChecks(checks.build())
-                .setResponseExtensions(getResponseExtensions(domainNames, now, allocationToken))
+                .setResponseExtensions(
+                    getResponseExtensions(domainNames, reservationTypes, now, allocationToken))
                 .setAsOfDate(now)
                 .build());
     return responseBuilder
@@ -195,24 +207,59 @@ public final class DomainCheckFlow implements Flow {
   private Optional<String> getMessageForCheck(
       InternetDomainName domainName,
       Set<String> existingIds,
+      ImmutableSet<ReservationType> reservationTypes,
       ImmutableMap<InternetDomainName, String> tokenCheckResults,
       Map<String, TldState> tldStates) {
     if (existingIds.contains(domainName.toString())) {
       return Optional.of("In use");
     }
     TldState tldState = tldStates.get(domainName.parent().toString());
-    if (isReserved(domainName, START_DATE_SUNRISE.equals(tldState))) {
-      ImmutableSet<ReservationType> reservationTypes = getReservationTypes(domainName);
-      if (!reservationTypes.isEmpty()) {
-        return Optional.of(getTypeOfHighestSeverity(reservationTypes).getMessageForCheck());
-      }
+    if (isReserved(reservationTypes, START_DATE_SUNRISE.equals(tldState))) {
+      return Optional.of(getTypeOfHighestSeverity(reservationTypes).getMessageForCheck());
     }
     return Optional.ofNullable(emptyToNull(tokenCheckResults.get(domainName)));
   }
 
+  /**
+   * Returns the reservation types of each of the given domain names, looking up all of the labels
+   * on each TLD in a single batch.
+   */
+  private static ImmutableMap<String, ImmutableSet<ReservationType>> getReservationTypesInBatches(
+      Map<String, InternetDomainName> domainNames) {
+    ImmutableSetMultimap<String, String> labelsByTld = groupLabelsByTld(domainNames.values());
+    ImmutableMap<String, ImmutableMap<String, ImmutableSet<ReservationType>>> typesByTld =
+        Maps.toMap(
+            labelsByTld.keySet(),
+            tld -> ReservedList.getReservationTypes(labelsByTld.get(tld), tld));
+    return ImmutableMap.copyOf(
+        Maps.transformValues(
+            domainNames,
+            domainName ->
+                typesByTld.get(domainName.parent().toString()).get(domainName.parts().get(0))));
+  }
+
+  /** Returns the prices of each of the given domain names as of each of the given times. */
+  private static ImmutableMap<DateTime, ImmutableMap<String, DomainPrices>> getPricesInBatches(
+      ImmutableSetMultimap<DateTime, String> domainNamesByPriceTime) {
+    return Maps.toMap(
+        domainNamesByPriceTime.keySet(),
+        priceTime -> getPricesForDomainNames(domainNamesByPriceTime.get(priceTime), priceTime));
+  }
+
+  /** Returns the second-level labels of the given domain names, keyed by their TLD. */
+  private static ImmutableSetMultimap<String, String> groupLabelsByTld(
+      Collection<InternetDomainName> domainNames) {
+    return domainNames.stream()
+        .collect(
+            toImmutableSetMultimap(
+                domainName -> domainName.parent().toString(),
+                domainName -> domainName.parts().get(0)));
+  }
+
   /** Handle the fee check extension. */
   private ImmutableList<? extends ResponseExtension> getResponseExtensions(
       ImmutableMap<String, InternetDomainName> domainNames,
+      ImmutableMap<String, ImmutableSet<ReservationType>> reservationTypes,
       DateTime now,
       Optional<AllocationToken> allocationToken)
       throws EppException {
@@ -222,15 +269,30 @@ public final class DomainCheckFlow implements Flow {
       return ImmutableList.of(); // No fee checks were requested.
     }
     FeeCheckCommandExtension<?, ?> feeCheck = feeCheckOpt.get();
+    // Price the fee checked domains up front, in one batch per TLD for each time as of which fees
+    // are requested (which is usually just the current time).
+    ImmutableSetMultimap.Builder<DateTime, String> domainNamesByPriceTime =
+        new ImmutableSetMultimap.Builder<>();
+    for (FeeCheckCommandExtensionItem feeCheckItem : feeCheck.getItems()) {
+      domainNamesByPriceTime.putAll(
+          getFeeRequestPriceTime(feeCheckItem, now),
+          getDomainNamesToCheckForFee(feeCheckItem, domainNames.keySet()));
+    }
+    ImmutableMap<DateTime, ImmutableMap<String, DomainPrices>> pricesByTime =
+        getPricesInBatches(domainNamesByPriceTime.build());
     ImmutableList.Builder<FeeCheckResponseExtensionItem> responseItems =
         new ImmutableList.Builder<>();
     for (FeeCheckCommandExtensionItem feeCheckItem : feeCheck.getItems()) {
+      ImmutableMap<String, DomainPrices> prices =
+          pricesByTime.get(getFeeRequestPriceTime(feeCheckItem, now));
       for (String domainName : getDomainNamesToCheckForFee(feeCheckItem, domainNames.keySet())) {
         FeeCheckResponseExtensionItem.Builder<?> builder = feeCheckItem.createResponseBuilder();
         handleFeeRequest(
             feeCheckItem,
             builder,
             domainNames.get(domainName),
+            reservationTypes.get(domainName),
+            prices.get(domainName),
             feeCheck.getCurrency(),
             now,
             pricingLogic,
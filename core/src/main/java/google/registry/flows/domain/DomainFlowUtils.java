@@ -109,6 +109,7 @@ import google.registry.model.eppcommon.StatusValue;
 import google.registry.model.eppoutput.EppResponse.ResponseExtension;
 import google.registry.model.host.HostResource;
 import google.registry.model.poll.PollMessage;
+import google.registry.model.pricing.PremiumPricingEngine.DomainPrices;
 import google.registry.model.registrar.Registrar;
 import google.registry.model.registrar.Registrar.State;
 import google.registry.model.registry.Registry;
@@ -427,7 +428,11 @@ public class DomainFlowUtils {
       ImmutableSet.of(RESERVED_FOR_SPECIFIC_USE, RESERVED_FOR_ANCHOR_TENANT, FULLY_BLOCKED);
 
   static boolean isReserved(InternetDomainName domainName, boolean isSunrise) {
-    ImmutableSet<ReservationType> types = getReservationTypes(domainName);
+    return isReserved(getReservationTypes(domainName), isSunrise);
+  }
+
+  /** Returns whether a domain with the given reservation types is reserved. */
+  static boolean isReserved(ImmutableSet<ReservationType> types, boolean isSunrise) {
     return !Sets.intersection(types, RESERVED_TYPES).isEmpty()
         || !(isSunrise || intersection(TYPES_ALLOWED_FOR_CREATE_ONLY_IN_SUNRISE, types).isEmpty());
   }
@@ -543,20 +548,25 @@ public class DomainFlowUtils {
   /**
    * Validates a {@link FeeQueryCommandExtensionItem} and sets the appropriate fields on a {@link
    * FeeQueryResponseExtensionItem} builder.
+   *
+   * @param reservationTypes the reservation types of the domain, as returned by {@link
+   *     #getReservationTypes}
+   * @param domainPrices the prices of the domain as of the time returned by {@link
+   *     #getFeeRequestPriceTime}
    */
   static void handleFeeRequest(
       FeeQueryCommandExtensionItem feeRequest,
       FeeQueryResponseExtensionItem.Builder<?, ?> builder,
       InternetDomainName domain,
+      ImmutableSet<ReservationType> reservationTypes,
+      DomainPrices domainPrices,
       @Nullable CurrencyUnit topLevelCurrency,
       DateTime currentDate,
       DomainPricingLogic pricingLogic,
       Optional<AllocationToken> allocationToken)
       throws EppException {
-    DateTime now = currentDate;
-    // Use the custom effective date specified in the fee check request, if there is one.
+    DateTime now = getFeeRequestPriceTime(feeRequest, currentDate);
     if (feeRequest.getEffectiveDate().isPresent()) {
-      now = feeRequest.getEffectiveDate().get();
       builder.setEffectiveDateIfSupported(now);
     }
     String domainNameString = domain.toString();
@@ -578,12 +588,13 @@ public class DomainFlowUtils {
         .setCommand(feeRequest.getCommandName(), feeRequest.getPhase(), feeRequest.getSubphase())
         .setCurrencyIfSupported(registry.getCurrency())
         .setPeriod(feeRequest.getPeriod())
-        .setClass(pricingLogic.getFeeClass(domainNameString, now).orElse(null));
+        .setClass(domainPrices.getFeeClass().orElse(null));
 
     ImmutableList<Fee> fees = ImmutableList.of();
     switch (feeRequest.getCommandName()) {
       case CREATE:
-        if (isReserved(domain, isSunrise)) { // Don't return a create price for reserved names.
+        // Don't return a create price for reserved names.
+        if (isReserved(reservationTypes, isSunrise)) {
           builder.setClass("reserved"); // Override whatever class we've set above.
           builder.setAvailIfSupported(false);
           builder.setReasonIfSupported("reserved");
@@ -591,27 +602,33 @@ public class DomainFlowUtils {
           builder.setAvailIfSupported(true);
           fees =
               pricingLogic
-                  .getCreatePrice(registry, domainNameString, now, years, false, allocationToken)
+                  .getCreatePrice(
+                      registry, domainNameString, domainPrices, now, years, allocationToken)
                   .getFees();
         }
         break;
       case RENEW:
         builder.setAvailIfSupported(true);
-        fees = pricingLogic.getRenewPrice(registry, domainNameString, now, years).getFees();
+        fees =
+            pricingLogic
+                .getRenewPrice(registry, domainNameString, domainPrices, now, years)
+                .getFees();
         break;
       case RESTORE:
         if (years != 1) {
           throw new RestoresAreAlwaysForOneYearException();
         }
         builder.setAvailIfSupported(true);
-        fees = pricingLogic.getRestorePrice(registry, domainNameString, now).getFees();
+        fees =
+            pricingLogic.getRestorePrice(registry, domainNameString, domainPrices, now).getFees();
         break;
       case TRANSFER:
         if (years != 1) {
           throw new TransfersAreAlwaysForOneYearException();
         }
         builder.setAvailIfSupported(true);
-        fees = pricingLogic.getTransferPrice(registry, domainNameString, now).getFees();
+        fees =
+            pricingLogic.getTransferPrice(registry, domainNameString, domainPrices, now).getFees();
         break;
       case UPDATE:
         builder.setAvailIfSupported(true);
@@ -639,6 +656,15 @@ public class DomainFlowUtils {
     }
   }
 
+  /**
+   * Returns the time as of which a fee request should be priced, which is the effective date
+   * specified in the request if there is one.
+   */
+  static DateTime getFeeRequestPriceTime(
+      FeeQueryCommandExtensionItem feeRequest, DateTime currentDate) {
+    return feeRequest.getEffectiveDate().orElse(currentDate);
+  }
+
   /**
    * Validates that fees are acked and match if they are required (typically for premium domains).
    *
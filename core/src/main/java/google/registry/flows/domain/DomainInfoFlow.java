@@ -19,10 +19,13 @@ import static google.registry.flows.FlowUtils.validateClientIsLoggedIn;
 import static google.registry.flows.ResourceFlowUtils.verifyExistence;
 import static google.registry.flows.ResourceFlowUtils.verifyOptionalAuthInfo;
 import static google.registry.flows.domain.DomainFlowUtils.addSecDnsExtensionIfPresent;
+import static google.registry.flows.domain.DomainFlowUtils.getFeeRequestPriceTime;
+import static google.registry.flows.domain.DomainFlowUtils.getReservationTypes;
 import static google.registry.flows.domain.DomainFlowUtils.handleFeeRequest;
 import static google.registry.flows.domain.DomainFlowUtils.loadForeignKeyedDesignatedContacts;
 import static google.registry.model.EppResourceUtils.loadByForeignKey;
 import static google.registry.model.ofy.ObjectifyService.ofy;
+import static google.registry.pricing.PricingEngineProxy.getPricesForDomainName;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -157,10 +160,14 @@ public final class DomainInfoFlow implements Flow {
         eppInput.getSingleExtension(FeeInfoCommandExtensionV06.class);
     if (feeInfo.isPresent()) { // Fee check was requested.
       FeeInfoResponseExtensionV06.Builder builder = new FeeInfoResponseExtensionV06.Builder();
+      InternetDomainName domainName = InternetDomainName.from(targetId);
       handleFeeRequest(
           feeInfo.get(),
           builder,
-          InternetDomainName.from(targetId),
+          domainName,
+          getReservationTypes(domainName),
+          getPricesForDomainName(
+              domainName.toString(), getFeeRequestPriceTime(feeInfo.get(), now)),
           null,
           now,
           pricingLogic,
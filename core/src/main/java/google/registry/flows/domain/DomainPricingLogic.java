@@ -15,8 +15,7 @@
 package google.registry.flows.domain;
 
 import static com.google.common.base.Preconditions.checkArgument;
-import static google.registry.pricing.PricingEngineProxy.getDomainFeeClass;
-import static google.registry.pricing.PricingEngineProxy.getDomainRenewCost;
+import static google.registry.pricing.PricingEngineProxy.getPricesForDomainName;
 
 import com.google.common.net.InternetDomainName;
 import google.registry.flows.EppException;
@@ -33,7 +32,6 @@ import google.registry.model.domain.fee.Fee;
 import google.registry.model.domain.token.AllocationToken;
 import google.registry.model.pricing.PremiumPricingEngine.DomainPrices;
 import google.registry.model.registry.Registry;
-import google.registry.pricing.PricingEngineProxy;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.Optional;
@@ -69,12 +67,48 @@ public final class DomainPricingLogic {
       boolean isAnchorTenant,
       Optional<AllocationToken> allocationToken)
       throws EppException {
-    CurrencyUnit currency = registry.getCurrency();
     // Domain create cost is always zero for anchor tenants
     Money domainCreateCost =
         isAnchorTenant
-            ? Money.of(currency, BigDecimal.ZERO)
-            : getDomainCreateCostWithDiscount(domainName, date, years, allocationToken);
+            ? Money.of(registry.getCurrency(), BigDecimal.ZERO)
+            : getDomainCreateCostWithDiscount(
+                getPricesForDomainName(domainName, date), years, allocationToken);
+    return buildCreatePrice(registry, domainName, date, years, isAnchorTenant, domainCreateCost);
+  }
+
+  /**
+   * Returns a new create price for the pricer, for a non-anchor tenant whose {@link DomainPrices}
+   * as of the given date have already been looked up.
+   *
+   * <p>If {@code allocationToken} is present and the domain is non-premium, that discount will be
+   * applied to the first year.
+   */
+  public FeesAndCredits getCreatePrice(
+      Registry registry,
+      String domainName,
+      DomainPrices domainPrices,
+      DateTime date,
+      int years,
+      Optional<AllocationToken> allocationToken)
+      throws EppException {
+    return buildCreatePrice(
+        registry,
+        domainName,
+        date,
+        years,
+        false,
+        getDomainCreateCostWithDiscount(domainPrices, years, allocationToken));
+  }
+
+  private FeesAndCredits buildCreatePrice(
+      Registry registry,
+      String domainName,
+      DateTime date,
+      int years,
+      boolean isAnchorTenant,
+      Money domainCreateCost)
+      throws EppException {
+    CurrencyUnit currency = registry.getCurrency();
     BaseFee createFeeOrCredit = Fee.create(domainCreateCost.getAmount(), FeeType.CREATE);
 
     // Create fees for the cost and the EAP fee, if any.
@@ -105,7 +139,19 @@ public final class DomainPricingLogic {
       DateTime date,
       int years)
       throws EppException {
-    Money renewCost = getDomainRenewCost(domainName, date, years);
+    return getRenewPrice(
+        registry, domainName, getPricesForDomainName(domainName, date), date, years);
+  }
+
+  /**
+   * Returns a new renew price for the pricer, given the {@link DomainPrices} of the domain as of
+   * the given date.
+   */
+  public FeesAndCredits getRenewPrice(
+      Registry registry, String domainName, DomainPrices domainPrices, DateTime date, int years)
+      throws EppException {
+    checkArgument(years > 0, "Number of years must be positive");
+    Money renewCost = domainPrices.getRenewCost().multipliedBy(years);
     return customLogic.customizeRenewPrice(
         RenewPriceParameters.newBuilder()
             .setFeesAndCredits(
@@ -123,11 +169,20 @@ public final class DomainPricingLogic {
   /** Returns a new restore price for the pricer. */
   public FeesAndCredits getRestorePrice(Registry registry, String domainName, DateTime date)
       throws EppException {
+    return getRestorePrice(registry, domainName, getPricesForDomainName(domainName, date), date);
+  }
+
+  /**
+   * Returns a new restore price for the pricer, given the {@link DomainPrices} of the domain as of
+   * the given date.
+   */
+  public FeesAndCredits getRestorePrice(
+      Registry registry, String domainName, DomainPrices domainPrices, DateTime date)
+      throws EppException {
     FeesAndCredits feesAndCredits =
         new FeesAndCredits.Builder()
             .setCurrency(registry.getCurrency())
-            .addFeeOrCredit(
-                Fee.create(getDomainRenewCost(domainName, date, 1).getAmount(), FeeType.RENEW))
+            .addFeeOrCredit(Fee.create(domainPrices.getRenewCost().getAmount(), FeeType.RENEW))
             .addFeeOrCredit(
                 Fee.create(registry.getStandardRestoreCost().getAmount(), FeeType.RESTORE))
             .build();
@@ -143,7 +198,17 @@ public final class DomainPricingLogic {
   /** Returns a new transfer price for the pricer. */
   public FeesAndCredits getTransferPrice(Registry registry, String domainName, DateTime date)
       throws EppException {
-    Money renewCost = getDomainRenewCost(domainName, date, 1);
+    return getTransferPrice(registry, domainName, getPricesForDomainName(domainName, date), date);
+  }
+
+  /**
+   * Returns a new transfer price for the pricer, given the {@link DomainPrices} of the domain as of
+   * the given date.
+   */
+  public FeesAndCredits getTransferPrice(
+      Registry registry, String domainName, DomainPrices domainPrices, DateTime date)
+      throws EppException {
+    Money renewCost = domainPrices.getRenewCost();
     return customLogic.customizeTransferPrice(
         TransferPriceParameters.newBuilder()
             .setFeesAndCredits(
@@ -176,14 +241,8 @@ public final class DomainPricingLogic {
             .build());
   }
 
-  /** Returns the fee class for a given domain and date. */
-  public Optional<String> getFeeClass(String domainName, DateTime date) {
-    return getDomainFeeClass(domainName, date);
-  }
-
   private Money getDomainCreateCostWithDiscount(
-      String domainName, DateTime date, int years, Optional<AllocationToken> allocationToken) {
-    DomainPrices domainPrices = PricingEngineProxy.getPricesForDomainName(domainName, date);
+      DomainPrices domainPrices, int years, Optional<AllocationToken> allocationToken) {
     checkArgument(
         !allocationToken.isPresent()
             || allocationToken.get().getDiscountFraction() == 0.0
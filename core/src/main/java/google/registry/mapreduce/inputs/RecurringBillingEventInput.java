@@ -0,0 +1,77 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.mapreduce.inputs;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static google.registry.model.common.TimeOfYear.toTimeString;
+import static google.registry.util.DateTimeUtils.earliestOf;
+
+import com.google.appengine.tools.mapreduce.Input;
+import com.google.appengine.tools.mapreduce.InputReader;
+import com.google.common.collect.ImmutableList;
+import google.registry.model.billing.BillingEvent.Recurring;
+import java.util.List;
+import org.joda.time.DateTime;
+
+/**
+ * An {@link Input} that maps over the {@link Recurring} billing events that recur within a window.
+ *
+ * <p>Rather than reading every recurring event, this queries the index on the events' time of year,
+ * so only those with an instance in the window are read. The window is split into equal slices,
+ * each read by its own shard. Since only the time of year is compared, the results include events
+ * that haven't started yet or have already ended; it's up to the mapper to ignore those.
+ */
+public class RecurringBillingEventInput extends Input<Recurring> {
+
+  private static final long serialVersionUID = -1768359271318504519L;
+
+  private final DateTime startTime;
+  private final DateTime endTime;
+  private final int numShards;
+
+  /**
+   * Creates an input over the events recurring in {@code [startTime, endTime)}, which must be
+   * shorter than a year.
+   */
+  public RecurringBillingEventInput(DateTime startTime, DateTime endTime, int numShards) {
+    checkArgument(startTime.isBefore(endTime), "Start time must be before end time");
+    checkArgument(endTime.isBefore(startTime.plusYears(1)), "Window must be shorter than a year");
+    checkArgument(numShards > 0, "Number of shards must be positive");
+    this.startTime = startTime;
+    this.endTime = endTime;
+    this.numShards = numShards;
+  }
+
+  @Override
+  public List<InputReader<Recurring>> createReaders() {
+    ImmutableList.Builder<InputReader<Recurring>> readers = new ImmutableList.Builder<>();
+    long windowMillis = endTime.getMillis() - startTime.getMillis();
+    DateTime sliceStart = startTime;
+    for (int i = 1; i <= numShards && sliceStart.isBefore(endTime); i++) {
+      DateTime sliceEnd = earliestOf(startTime.plus(windowMillis * i / numShards), endTime);
+      String lowerTimeString = toTimeString(sliceStart);
+      String upperTimeString = toTimeString(sliceEnd);
+      if (lowerTimeString.compareTo(upperTimeString) < 0) {
+        readers.add(new RecurringBillingEventReader(lowerTimeString, upperTimeString));
+      } else {
+        // This slice wraps around the end of the year, so it needs two disjoint ranges.
+        readers.add(new RecurringBillingEventReader(lowerTimeString, null));
+        readers.add(new RecurringBillingEventReader(null, upperTimeString));
+      }
+      sliceStart = sliceEnd;
+    }
+    return readers.build();
+  }
+}
@@ -0,0 +1,88 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.mapreduce.inputs;
+
+import static google.registry.model.ofy.ObjectifyService.ofy;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.tools.mapreduce.InputReader;
+import com.googlecode.objectify.cmd.Query;
+import google.registry.model.billing.BillingEvent.Recurring;
+import java.util.NoSuchElementException;
+import javax.annotation.Nullable;
+
+/** {@link InputReader} that maps over {@link Recurring} billing events in a time of year range. */
+class RecurringBillingEventReader extends RetryingInputReader<Recurring, Recurring> {
+
+  /**
+   * Memory estimation for this reader.
+   *
+   * <p>Elements are small (a handful of keys, times and flags), so this should be more than enough.
+   */
+  private static final long MEMORY_ESTIMATE = 100 * 1024;
+
+  private static final long serialVersionUID = 2957152208390436124L;
+
+  /** Inclusive lower bound on the time of year, or null if the range starts at the year start. */
+  @Nullable private final String lowerTimeString;
+
+  /** Exclusive upper bound on the time of year, or null if the range runs to the year end. */
+  @Nullable private final String upperTimeString;
+
+  RecurringBillingEventReader(
+      @Nullable String lowerTimeString, @Nullable String upperTimeString) {
+    this.lowerTimeString = lowerTimeString;
+    this.upperTimeString = upperTimeString;
+  }
+
+  @Override
+  public QueryResultIterator<Recurring> getQueryIterator(@Nullable Cursor cursor) {
+    return startQueryAt(query(), cursor).iterator();
+  }
+
+  @Override
+  public int getTotal() {
+    return query().count();
+  }
+
+  /** Query for recurring events whose time of year falls within this reader's range. */
+  Query<Recurring> query() {
+    Query<Recurring> query = ofy().load().type(Recurring.class);
+    if (lowerTimeString != null) {
+      query = query.filter("recurrenceTimeOfYear.timeString >=", lowerTimeString);
+    }
+    if (upperTimeString != null) {
+      query = query.filter("recurrenceTimeOfYear.timeString <", upperTimeString);
+    }
+    return query;
+  }
+
+  /** Returns the estimated memory that will be used by this reader in bytes. */
+  @Override
+  public long estimateMemoryRequirement() {
+    return MEMORY_ESTIMATE;
+  }
+
+  /**
+   * Get the next {@link Recurring} from the query.
+   *
+   * @throws NoSuchElementException if there are no more elements.
+   */
+  @Override
+  public Recurring next() {
+    return nextQueryResult();
+  }
+}
@@ -14,27 +14,64 @@
 
 package google.registry.model;
 
-import static com.google.common.base.Suppliers.memoizeWithExpiration;
+import static google.registry.config.RegistryConfig.getSingletonCacheMaxStaleness;
 import static google.registry.config.RegistryConfig.getSingletonCacheRefreshDuration;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.joda.time.Duration.ZERO;
 
+import com.google.appengine.api.ThreadManager;
+import com.google.apphosting.api.ApiProxy;
 import com.google.common.base.Supplier;
+import google.registry.util.SystemClock;
+import java.util.concurrent.Executor;
 import org.joda.time.Duration;
 
 /** Utility methods related to caching Datastore entities. */
 public class CacheUtils {
 
   /**
-   * Memoize a supplier, with a short expiration specified in the environment config.
+   * Executor that runs cache refreshes on a new App Engine background thread.
+   *
+   * <p>Request threads can't be used, because they are tied to the request that noticed the stale
+   * value: App Engine either makes that request wait for the reload or interrupts the reload when
+   * the request ends. Background threads outlive the request, but are only available on instances
+   * with manual or basic scaling. On automatic scaling instances, creating the thread fails and
+   * {@link RefreshAheadSupplier} falls back to refreshing on the request thread.
+   *
+   * <p>If there is no App Engine environment (most likely because this is running in a
+   * command-line tool), the refresh happens synchronously instead. Default Java system threads
+   * can't be used, because they can't talk to Datastore.
+   */
+  private static final Executor REFRESH_EXECUTOR =
+      command -> {
+        if (ApiProxy.getCurrentEnvironment() == null) {
+          command.run();
+        } else {
+          ThreadManager.createBackgroundThread(command).start();
+        }
+      };
+
+  /**
+   * Memoize a supplier, refreshing it ahead of expiry as specified in the environment config.
    *
    * <p>Use this for things that might change while code is running. (For example, the various
    * lists downloaded from the TMCH get updated in Datastore and the caches need to be refreshed.)
+   *
+   * <p>Once the value is older than the singleton cache refresh duration, it continues to be
+   * served while it is reloaded in the background, so callers don't block on the reload. Lookups
+   * and load latencies are reported under the given cache name.
+   *
+   * @see RefreshAheadSupplier
    */
-  public static <T> Supplier<T> memoizeWithShortExpiration(Supplier<T> original) {
-    Duration expiration = getSingletonCacheRefreshDuration();
-    return expiration.isEqual(ZERO)
+  public static <T> Supplier<T> memoizeWithRefreshAhead(String cacheName, Supplier<T> original) {
+    Duration refreshDuration = getSingletonCacheRefreshDuration();
+    return refreshDuration.isEqual(ZERO)
         ? original
-        : memoizeWithExpiration(original, expiration.getMillis(), MILLISECONDS);
+        : new RefreshAheadSupplier<>(
+            cacheName,
+            original,
+            refreshDuration,
+            getSingletonCacheMaxStaleness(),
+            REFRESH_EXECUTOR,
+            new SystemClock());
   }
 }
@@ -29,6 +29,7 @@ import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Streams;
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.annotation.Id;
@@ -85,11 +86,37 @@ public class ModelUtils {
                 }
               });
 
+  /**
+   * Caches the same fields as {@link #ALL_FIELDS_CACHE}, in the same order, as an array.
+   *
+   * <p>This is what {@link ImmutableObject#equals}, {@link ImmutableObject#hashCode} and the other
+   * per-instance reflective methods iterate over, since walking an array is much cheaper than
+   * building a map of field values for every call.
+   */
+  private static final LoadingCache<Class<?>, Field[]> FIELD_ARRAY_CACHE =
+      CacheBuilder.newBuilder()
+          .build(
+              new CacheLoader<Class<?>, Field[]>() {
+                @Override
+                public Field[] load(Class<?> clazz) {
+                  return getAllFields(clazz).values().toArray(new Field[0]);
+                }
+              });
+
   /** Lists all instance fields on an object, including non-public and inherited fields. */
   static Map<String, Field> getAllFields(Class<?> clazz) {
     return ALL_FIELDS_CACHE.getUnchecked(clazz);
   }
 
+  /**
+   * Returns all instance fields on an object, in the same order as {@link #getAllFields}.
+   *
+   * <p>The returned array is shared, and must not be modified.
+   */
+  private static Field[] getFieldArray(Class<?> clazz) {
+    return FIELD_ARRAY_CACHE.getUnchecked(clazz);
+  }
+
   /** Return a string representing the persisted schema of a type or enum. */
   static String getSchema(Class<?> clazz) {
     StringBuilder stringBuilder = new StringBuilder();
@@ -187,31 +214,67 @@ public class ModelUtils {
    * Returns a map from Field objects (including non-public and inherited fields) to values.
    *
    * <p>This turns arrays into {@link List} objects so that ImmutableObject can more easily use the
-   * returned map in its implementation of {@link ImmutableObject#toString} and {@link
-   * ImmutableObject#equals}, which work by comparing and printing these maps.
+   * returned map in its implementation of {@link ImmutableObject#toString}, which works by printing
+   * these maps.
    */
   static Map<Field, Object> getFieldValues(Object instance) {
+    Field[] fields = getFieldArray(instance.getClass());
     // Don't make this ImmutableMap because field values can be null.
-    Map<Field, Object> values = new LinkedHashMap<>();
-    for (Field field : getAllFields(instance.getClass()).values()) {
-      Object value = getFieldValue(instance, field);
-      if (value != null && value.getClass().isArray()) {
-        // It's surprisingly difficult to convert arrays into lists if the array might be primitive.
-        final Object arrayValue = value;
-        value = new AbstractList<Object>() {
-            @Override
-            public Object get(int index) {
-              return Array.get(arrayValue, index);
-            }
+    Map<Field, Object> values = Maps.newLinkedHashMapWithExpectedSize(fields.length);
+    for (Field field : fields) {
+      values.put(field, arrayToList(getFieldValue(instance, field)));
+    }
+    return values;
+  }
 
-            @Override
-            public int size() {
-              return Array.getLength(arrayValue);
-            }};
+  /**
+   * Returns whether all fields (including non-public and inherited fields) of two instances of the
+   * same class have equal values.
+   *
+   * <p>Arrays are compared element by element, as if they had been converted to lists.
+   */
+  static boolean fieldValuesEqual(Object instance, Object other) {
+    for (Field field : getFieldArray(instance.getClass())) {
+      Object value = getFieldValue(instance, field);
+      Object otherValue = getFieldValue(other, field);
+      if (value != otherValue && !Objects.equals(arrayToList(value), arrayToList(otherValue))) {
+        return false;
       }
-      values.put(field, value);
     }
-    return values;
+    return true;
+  }
+
+  /**
+   * Returns a hash code of the values of all fields (including non-public and inherited fields).
+   *
+   * <p>This is the same as {@link Arrays#hashCode(Object[])} of the values of {@link
+   * #getFieldValues}, without building the intermediate map.
+   */
+  static int hashFieldValues(Object instance) {
+    int result = 1;
+    for (Field field : getFieldArray(instance.getClass())) {
+      result = 31 * result + Objects.hashCode(arrayToList(getFieldValue(instance, field)));
+    }
+    return result;
+  }
+
+  /** Returns a {@link List} view of the value if it's an array, or else the value itself. */
+  private static Object arrayToList(Object value) {
+    if (value == null || !value.getClass().isArray()) {
+      return value;
+    }
+    // It's surprisingly difficult to convert arrays into lists if the array might be primitive.
+    final Object arrayValue = value;
+    return new AbstractList<Object>() {
+        @Override
+        public Object get(int index) {
+          return Array.get(arrayValue, index);
+        }
+
+        @Override
+        public int size() {
+          return Array.getLength(arrayValue);
+        }};
   }
 
   /** Functional helper for {@link #cloneEmptyToNull}. */
@@ -248,7 +311,7 @@ public class ModelUtils {
     if (obj instanceof ImmutableObject) {
       // Recurse on the fields of an ImmutableObject.
       ImmutableObject copy = ImmutableObject.clone((ImmutableObject) obj);
-      for (Field field : getAllFields(obj.getClass()).values()) {
+      for (Field field : getFieldArray(obj.getClass())) {
         Object oldValue = getFieldValue(obj, field);
         Object newValue = cloneEmptyToNullRecursive(oldValue);
         if (!Objects.equals(oldValue, newValue)) {
@@ -269,5 +332,6 @@ public class ModelUtils {
   @VisibleForTesting
   static void resetCaches() {
     ALL_FIELDS_CACHE.invalidateAll();
+    FIELD_ARRAY_CACHE.invalidateAll();
   }
 }
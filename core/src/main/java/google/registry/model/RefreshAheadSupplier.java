@@ -0,0 +1,150 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Supplier;
+import com.google.common.flogger.FluentLogger;
+import google.registry.monitoring.whitebox.CacheMetrics;
+import google.registry.monitoring.whitebox.CacheMetrics.LoadType;
+import google.registry.monitoring.whitebox.CacheMetrics.LookupOutcome;
+import google.registry.util.Clock;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+/**
+ * A memoizing {@link Supplier} that refreshes its value ahead of expiry, off the calling thread.
+ *
+ * <p>Once a value is older than the refresh duration, the next call to {@link #get} hands a reload
+ * to the executor and immediately returns the stale value; the reloaded value replaces it
+ * atomically when ready. Callers only block on a load when there is no value yet, or when the value
+ * is older than the maximum staleness (e.g. because nothing asked for it in a long time, or because
+ * background refreshes keep failing). If the executor rejects the reload, the caller that noticed
+ * the stale value reloads it itself instead.
+ */
+final class RefreshAheadSupplier<T> implements Supplier<T> {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final String name;
+  private final Supplier<T> delegate;
+  private final Duration refreshDuration;
+  private final Duration maxStaleness;
+  private final Executor refreshExecutor;
+  private final Clock clock;
+
+  private final AtomicBoolean refreshInProgress = new AtomicBoolean();
+
+  /** The current value and when it was loaded, or null if nothing has been loaded yet. */
+  private volatile CachedValue<T> cachedValue;
+
+  RefreshAheadSupplier(
+      String name,
+      Supplier<T> delegate,
+      Duration refreshDuration,
+      Duration maxStaleness,
+      Executor refreshExecutor,
+      Clock clock) {
+    checkArgument(
+        refreshDuration.isLongerThan(Duration.ZERO), "Refresh duration must be positive");
+    checkArgument(
+        !maxStaleness.isShorterThan(refreshDuration),
+        "Maximum staleness must not be shorter than the refresh duration");
+    this.name = checkNotNull(name, "name");
+    this.delegate = checkNotNull(delegate, "delegate");
+    this.refreshDuration = refreshDuration;
+    this.maxStaleness = maxStaleness;
+    this.refreshExecutor = checkNotNull(refreshExecutor, "refreshExecutor");
+    this.clock = checkNotNull(clock, "clock");
+  }
+
+  @Override
+  public T get() {
+    CachedValue<T> current = cachedValue;
+    DateTime now = clock.nowUtc();
+    if (current == null || !now.isBefore(current.loadTime.plus(maxStaleness))) {
+      return loadBlocking(current);
+    }
+    if (!now.isBefore(current.loadTime.plus(refreshDuration))) {
+      CacheMetrics.recordLookup(name, LookupOutcome.STALE_HIT);
+      if (refreshInProgress.compareAndSet(false, true)) {
+        try {
+          refreshExecutor.execute(this::refresh);
+        } catch (RuntimeException e) {
+          // The refresh couldn't be handed off (e.g. because background threads aren't available on
+          // this instance), so do it on this thread rather than let the value go stale.
+          logger.atWarning().withCause(e).log(
+              "Failed to schedule refresh of cache %s, refreshing it inline.", name);
+          refresh();
+          return cachedValue.value;
+        }
+      }
+    } else {
+      CacheMetrics.recordLookup(name, LookupOutcome.HIT);
+    }
+    return current.value;
+  }
+
+  private synchronized T loadBlocking(CachedValue<T> expected) {
+    // Another thread may already have loaded the value while this one was waiting for the lock.
+    CachedValue<T> current = cachedValue;
+    if (current != expected && current != null) {
+      CacheMetrics.recordLookup(name, LookupOutcome.HIT);
+      return current.value;
+    }
+    CacheMetrics.recordLookup(name, LookupOutcome.MISS);
+    return load(LoadType.BLOCKING).value;
+  }
+
+  private void refresh() {
+    try {
+      load(LoadType.REFRESH);
+    } catch (RuntimeException e) {
+      // The stale value continues to be served until the maximum staleness is reached, at which
+      // point callers block on the load and see its failure.
+      logger.atWarning().withCause(e).log("Failed to refresh cache %s.", name);
+    } finally {
+      refreshInProgress.set(false);
+    }
+  }
+
+  private CachedValue<T> load(LoadType type) {
+    DateTime start = clock.nowUtc();
+    boolean success = false;
+    try {
+      CachedValue<T> loaded = new CachedValue<>(delegate.get(), start);
+      cachedValue = loaded;
+      success = true;
+      return loaded;
+    } finally {
+      CacheMetrics.recordLoad(name, type, success, new Duration(start, clock.nowUtc()));
+    }
+  }
+
+  /** An immutable pairing of a loaded value and the time its load began. */
+  private static final class CachedValue<T> {
+    final T value;
+    final DateTime loadTime;
+
+    CachedValue(T value, DateTime loadTime) {
+      this.value = value;
+      this.loadTime = loadTime;
+    }
+  }
+}
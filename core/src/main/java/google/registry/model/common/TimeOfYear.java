@@ -61,14 +61,23 @@ public class TimeOfYear extends ImmutableObject {
   public static TimeOfYear fromDateTime(DateTime dateTime) {
     DateTime nextYear = dateTime.plusYears(1);  // This turns February 29 into February 28.
     TimeOfYear instance = new TimeOfYear();
-    instance.timeString = String.format(
-        "%02d %02d %08d",
-        nextYear.getMonthOfYear(),
-        nextYear.getDayOfMonth(),
-        nextYear.getMillisOfDay());
+    instance.timeString = toTimeString(nextYear);
     return instance;
   }
 
+  /**
+   * Returns the stored format of the month, day and millis of day of a {@link DateTime}, for use as
+   * a bound when querying on the indexed time string.
+   *
+   * <p>Unlike {@link #fromDateTime}, this leaves February 29 as is. That is never a stored value,
+   * but it sorts correctly between February 28 and March 1, which is all a bound needs.
+   */
+  public static String toTimeString(DateTime dateTime) {
+    return String.format(
+        "%02d %02d %08d",
+        dateTime.getMonthOfYear(), dateTime.getDayOfMonth(), dateTime.getMillisOfDay());
+  }
+
   /**
    * Returns an {@link Iterable} of {@link DateTime}s of every recurrence of this particular
    * time of year within a given {@link Range} (usually one spanning many years).
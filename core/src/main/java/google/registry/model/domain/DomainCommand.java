@@ -16,6 +16,7 @@ package google.registry.model.domain;
 
 import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.collect.Iterables.getOnlyElement;
 import static com.google.common.collect.Maps.transformValues;
 import static com.google.common.collect.Sets.difference;
@@ -30,6 +31,8 @@ import com.google.common.base.MoreObjects;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Sets;
 import com.googlecode.objectify.Key;
 import google.registry.model.EppResource;
 import google.registry.model.ImmutableObject;
@@ -175,6 +178,14 @@ public class DomainCommand {
     @Override
     public Create cloneAndLinkReferences(DateTime now) throws InvalidReferencesException {
       Create clone = clone(this);
+      ImmutableSet.Builder<String> contactIds =
+          new ImmutableSet.Builder<String>()
+              .addAll(getContactIds(clone.foreignKeyedDesignatedContacts));
+      if (clone.registrantContactId != null) {
+        contactIds.add(clone.registrantContactId);
+      }
+      prefetchReferences(
+          nullToEmptyImmutableCopy(clone.nameserverFullyQualifiedHostNames), contactIds.build());
       clone.nameservers = linkHosts(clone.nameserverFullyQualifiedHostNames, now);
       if (registrantContactId == null) {
         clone.contacts = linkContacts(clone.foreignKeyedDesignatedContacts, now);
@@ -410,6 +421,20 @@ public class DomainCommand {
     @Override
     public Update cloneAndLinkReferences(DateTime now) throws InvalidReferencesException {
       Update clone = clone(this);
+      AddRemove innerAdd = clone.getInnerAdd();
+      AddRemove innerRemove = clone.getInnerRemove();
+      ImmutableSet.Builder<String> contactIds =
+          new ImmutableSet.Builder<String>()
+              .addAll(getContactIds(innerAdd.foreignKeyedDesignatedContacts))
+              .addAll(getContactIds(innerRemove.foreignKeyedDesignatedContacts));
+      if (!Strings.isNullOrEmpty(clone.getInnerChange().registrantContactId)) {
+        contactIds.add(clone.getInnerChange().registrantContactId);
+      }
+      prefetchReferences(
+          Sets.union(
+              nullToEmpty(innerAdd.nameserverFullyQualifiedHostNames),
+              nullToEmpty(innerRemove.nameserverFullyQualifiedHostNames)),
+          contactIds.build());
       clone.innerAdd = clone.getInnerAdd().cloneAndLinkReferences(now);
       clone.innerRemove = clone.getInnerRemove().cloneAndLinkReferences(now);
       clone.innerChange = clone.getInnerChange().cloneAndLinkReferences(now);
@@ -445,6 +470,26 @@ public class DomainCommand {
     return linkedContacts.build();
   }
 
+  private static ImmutableSet<String> getContactIds(
+      @Nullable Set<ForeignKeyedDesignatedContact> contacts) {
+    return nullToEmpty(contacts).stream()
+        .map(contact -> contact.contactId)
+        .collect(toImmutableSet());
+  }
+
+  /**
+   * Loads the foreign key indexes of all the given hosts and contacts into the cache at once, so
+   * that linking each group of references afterwards doesn't take its own Datastore round trip.
+   */
+  private static void prefetchReferences(
+      Set<String> fullyQualifiedHostNames, Set<String> contactIds) {
+    ForeignKeyIndex.prefetchCached(
+        new ImmutableSetMultimap.Builder<Class<? extends EppResource>, String>()
+            .putAll(HostResource.class, fullyQualifiedHostNames)
+            .putAll(ContactResource.class, contactIds)
+            .build());
+  }
+
   /** Loads keys to cached EPP resources by their foreign keys. */
   private static <T extends EppResource> ImmutableMap<String, Key<T>> loadByForeignKeysCached(
       final Set<String> foreignKeys, final Class<T> clazz, final DateTime now)
@@ -14,10 +14,14 @@
 
 package google.registry.model.index;
 
-import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.Maps.filterValues;
+import static com.google.common.collect.Sets.difference;
+import static google.registry.config.RegistryConfig.getContactForeignKeyIndexMaxCachedEntries;
+import static google.registry.config.RegistryConfig.getDomainForeignKeyIndexMaxCachedEntries;
 import static google.registry.config.RegistryConfig.getEppResourceCachingDuration;
-import static google.registry.config.RegistryConfig.getEppResourceMaxCachedEntries;
+import static google.registry.config.RegistryConfig.getHostForeignKeyIndexMaxCachedEntries;
+import static google.registry.model.index.ForeignKeyIndexMetrics.recordCacheEviction;
+import static google.registry.model.index.ForeignKeyIndexMetrics.recordCacheLookups;
 import static google.registry.model.ofy.ObjectifyService.ofy;
 import static google.registry.model.transaction.TransactionManagerFactory.tm;
 import static google.registry.util.TypeUtils.instantiate;
@@ -27,11 +31,12 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Streams;
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
@@ -43,9 +48,12 @@ import google.registry.model.annotations.ReportedOn;
 import google.registry.model.contact.ContactResource;
 import google.registry.model.domain.DomainBase;
 import google.registry.model.host.HostResource;
+import google.registry.model.index.ForeignKeyIndexMetrics.CacheLookupOutcome;
 import google.registry.util.NonFinalForTesting;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import javax.annotation.Nullable;
 import org.joda.time.DateTime;
@@ -184,31 +192,36 @@ public abstract class ForeignKeyIndex<E extends EppResource> extends BackupGroup
         (ForeignKeyIndex<?> fki) -> now.isBefore(fki.deletionTime));
   }
 
-  static final CacheLoader<Key<ForeignKeyIndex<?>>, Optional<ForeignKeyIndex<?>>> CACHE_LOADER =
-      new CacheLoader<Key<ForeignKeyIndex<?>>, Optional<ForeignKeyIndex<?>>>() {
+  /** Creates a cache loader for the {@link ForeignKeyIndex} entities of the given resource type. */
+  private static CacheLoader<String, Optional<ForeignKeyIndex<?>>> createCacheLoader(
+      Class<? extends EppResource> clazz) {
+    return new CacheLoader<String, Optional<ForeignKeyIndex<?>>>() {
 
-        @Override
-        public Optional<ForeignKeyIndex<?>> load(Key<ForeignKeyIndex<?>> key) {
-          return Optional.ofNullable(tm().doTransactionless(() -> ofy().load().key(key).now()));
-        }
+      @Override
+      public Optional<ForeignKeyIndex<?>> load(String foreignKey) {
+        return Optional.ofNullable(
+            tm().doTransactionless(
+                () -> ofy().load().type(mapToFkiClass(clazz)).id(foreignKey).now()));
+      }
 
-        @Override
-        public Map<Key<ForeignKeyIndex<?>>, Optional<ForeignKeyIndex<?>>> loadAll(
-            Iterable<? extends Key<ForeignKeyIndex<?>>> keys) {
-          ImmutableSet<Key<ForeignKeyIndex<?>>> typedKeys = ImmutableSet.copyOf(keys);
-          Map<Key<ForeignKeyIndex<?>>, ForeignKeyIndex<?>> existingFkis =
-              tm().doTransactionless(() -> ofy().load().keys(typedKeys));
-          // ofy() omits keys that don't have values in Datastore, so re-add them in
-          // here with Optional.empty() values.
-          return Maps.asMap(
-              typedKeys,
-              (Key<ForeignKeyIndex<?>> key) ->
-                  Optional.ofNullable(existingFkis.getOrDefault(key, null)));
-        }
-      };
+      @Override
+      public Map<String, Optional<ForeignKeyIndex<?>>> loadAll(
+          Iterable<? extends String> foreignKeys) {
+        ImmutableSet<String> foreignKeySet = ImmutableSet.copyOf(foreignKeys);
+        Map<String, ? extends ForeignKeyIndex<?>> existingFkis =
+            tm().doTransactionless(
+                () -> ofy().load().type(mapToFkiClass(clazz)).ids(foreignKeySet));
+        // ofy() omits keys that don't have values in Datastore, so re-add them in
+        // here with Optional.empty() values.
+        return Maps.asMap(
+            foreignKeySet,
+            (String foreignKey) -> Optional.ofNullable(existingFkis.get(foreignKey)));
+      }
+    };
+  }
 
   /**
-   * A limited size, limited time cache for foreign key entities.
+   * Limited size, limited time caches for foreign key entities, one per resource type.
    *
    * <p>This is only used to cache foreign key entities for the purposes of checking whether they
    * exist (and if so, what entity they point to) during a few domain flows. Any other operations on
@@ -219,23 +232,50 @@ public abstract class ForeignKeyIndex<E extends EppResource> extends BackupGroup
    * actually exist. So we cache the fact that they *don't* exist by using Optional.empty(), and
    * then several layers up the EPP command will fail with an error message like "The contact with
    * given IDs (blah) don't exist."
+   *
+   * <p>Each resource type has its own, independently sized cache keyed on the bare foreign key
+   * string, so that e.g. heavy domain lookups cannot evict the contacts and hosts that domain
+   * mutations reference.
    */
   @NonFinalForTesting
-  private static LoadingCache<Key<ForeignKeyIndex<?>>, Optional<ForeignKeyIndex<?>>>
-      cacheForeignKeyIndexes = createForeignKeyIndexesCache(getEppResourceCachingDuration());
+  private static ImmutableMap<
+          Class<? extends EppResource>, LoadingCache<String, Optional<ForeignKeyIndex<?>>>>
+      cacheForeignKeyIndexes = createForeignKeyIndexesCaches(getEppResourceCachingDuration());
+
+  private static ImmutableMap<
+          Class<? extends EppResource>, LoadingCache<String, Optional<ForeignKeyIndex<?>>>>
+      createForeignKeyIndexesCaches(Duration expiry) {
+    return ImmutableMap.of(
+        ContactResource.class,
+        createForeignKeyIndexesCache(
+            ContactResource.class, expiry, getContactForeignKeyIndexMaxCachedEntries()),
+        DomainBase.class,
+        createForeignKeyIndexesCache(
+            DomainBase.class, expiry, getDomainForeignKeyIndexMaxCachedEntries()),
+        HostResource.class,
+        createForeignKeyIndexesCache(
+            HostResource.class, expiry, getHostForeignKeyIndexMaxCachedEntries()));
+  }
 
-  private static LoadingCache<Key<ForeignKeyIndex<?>>, Optional<ForeignKeyIndex<?>>>
-      createForeignKeyIndexesCache(Duration expiry) {
+  private static LoadingCache<String, Optional<ForeignKeyIndex<?>>> createForeignKeyIndexesCache(
+      Class<? extends EppResource> clazz, Duration expiry, int maxCachedEntries) {
+    String resourceType = clazz.getSimpleName();
     return CacheBuilder.newBuilder()
         .expireAfterWrite(expiry.getMillis(), MILLISECONDS)
-        .maximumSize(getEppResourceMaxCachedEntries())
-        .build(CACHE_LOADER);
+        .maximumSize(maxCachedEntries)
+        .removalListener(
+            (RemovalNotification<String, Optional<ForeignKeyIndex<?>>> notification) -> {
+              if (notification.wasEvicted()) {
+                recordCacheEviction(resourceType, notification.getCause());
+              }
+            })
+        .build(createCacheLoader(clazz));
   }
 
   @VisibleForTesting
   public static void setCacheForTest(Optional<Duration> expiry) {
     Duration effectiveExpiry = expiry.orElse(getEppResourceCachingDuration());
-    cacheForeignKeyIndexes = createForeignKeyIndexesCache(effectiveExpiry);
+    cacheForeignKeyIndexes = createForeignKeyIndexesCaches(effectiveExpiry);
   }
 
   /**
@@ -253,27 +293,80 @@ public abstract class ForeignKeyIndex<E extends EppResource> extends BackupGroup
     if (!RegistryConfig.isEppResourceCachingEnabled()) {
       return tm().doTransactionless(() -> load(clazz, foreignKeys, now));
     }
-    ImmutableList<Key<ForeignKeyIndex<?>>> fkiKeys =
-        Streams.stream(foreignKeys)
-            .map(fk -> Key.<ForeignKeyIndex<?>>create(mapToFkiClass(clazz), fk))
-            .collect(toImmutableList());
-    try {
-      // This cast is safe because when we loaded ForeignKeyIndexes above we used type clazz, which
-      // is scoped to E.
-      @SuppressWarnings("unchecked")
-      Map<String, ForeignKeyIndex<E>> fkisFromCache = cacheForeignKeyIndexes
-          .getAll(fkiKeys)
-          .entrySet()
-          .stream()
-          .filter(entry -> entry.getValue().isPresent())
-          .filter(entry -> now.isBefore(entry.getValue().get().getDeletionTime()))
-          .collect(
-              ImmutableMap.toImmutableMap(
-                  entry -> entry.getKey().getName(),
-                  entry -> (ForeignKeyIndex<E>) entry.getValue().get()));
-      return fkisFromCache;
-    } catch (ExecutionException e) {
-      throw new RuntimeException("Error loading cached ForeignKeyIndexes", e.getCause());
+    LoadingCache<String, Optional<ForeignKeyIndex<?>>> cache = cacheForeignKeyIndexes.get(clazz);
+    ImmutableSet<String> foreignKeySet = ImmutableSet.copyOf(foreignKeys);
+    Map<String, Optional<ForeignKeyIndex<?>>> cachedFkis =
+        new HashMap<>(cache.getAllPresent(foreignKeySet));
+    ImmutableSet<String> missingForeignKeys =
+        ImmutableSet.copyOf(difference(foreignKeySet, cachedFkis.keySet()));
+    recordCacheLookups(clazz.getSimpleName(), CacheLookupOutcome.HIT, cachedFkis.size());
+    recordCacheLookups(clazz.getSimpleName(), CacheLookupOutcome.MISS, missingForeignKeys.size());
+    if (!missingForeignKeys.isEmpty()) {
+      try {
+        cachedFkis.putAll(cache.getAll(missingForeignKeys));
+      } catch (ExecutionException e) {
+        throw new RuntimeException("Error loading cached ForeignKeyIndexes", e.getCause());
+      }
+    }
+    // This cast is safe because the cache for clazz only ever loads ForeignKeyIndexes of the type
+    // mapped to clazz, which is scoped to E.
+    @SuppressWarnings("unchecked")
+    Map<String, ForeignKeyIndex<E>> fkisFromCache =
+        cachedFkis.entrySet().stream()
+            .filter(entry -> entry.getValue().isPresent())
+            .filter(entry -> now.isBefore(entry.getValue().get().getDeletionTime()))
+            .collect(
+                ImmutableMap.toImmutableMap(
+                    Map.Entry::getKey, entry -> (ForeignKeyIndex<E>) entry.getValue().get()));
+    return fkisFromCache;
+  }
+
+  /**
+   * Loads all of the given foreign keys that are not already cached into the cache, in a single
+   * Datastore batch load across all resource types.
+   *
+   * <p>Flows that are about to call {@link #loadCached} several times, e.g. once for hosts and once
+   * for contacts, should call this first with every foreign key they will touch, so that the
+   * subsequent calls are all cache hits. This does nothing if caching is not enabled.
+   */
+  public static void prefetchCached(
+      ImmutableSetMultimap<Class<? extends EppResource>, String> foreignKeys) {
+    if (!RegistryConfig.isEppResourceCachingEnabled() || foreignKeys.isEmpty()) {
+      return;
+    }
+    ImmutableSetMultimap.Builder<Class<? extends EppResource>, String> missingForeignKeys =
+        new ImmutableSetMultimap.Builder<>();
+    ImmutableList.Builder<Key<ForeignKeyIndex<?>>> missingKeys = new ImmutableList.Builder<>();
+    for (Class<? extends EppResource> clazz : foreignKeys.keySet()) {
+      ImmutableSet<String> foreignKeysOfType = foreignKeys.get(clazz);
+      Set<String> cachedForeignKeys =
+          cacheForeignKeyIndexes.get(clazz).getAllPresent(foreignKeysOfType).keySet();
+      for (String foreignKey : difference(foreignKeysOfType, cachedForeignKeys)) {
+        missingForeignKeys.put(clazz, foreignKey);
+        missingKeys.add(Key.<ForeignKeyIndex<?>>create(mapToFkiClass(clazz), foreignKey));
+      }
+    }
+    ImmutableList<Key<ForeignKeyIndex<?>>> keysToLoad = missingKeys.build();
+    if (keysToLoad.isEmpty()) {
+      return;
     }
+    Map<Key<ForeignKeyIndex<?>>, ForeignKeyIndex<?>> existingFkis =
+        tm().doTransactionless(() -> ofy().load().keys(keysToLoad));
+    missingForeignKeys
+        .build()
+        .asMap()
+        .forEach(
+            (clazz, foreignKeysOfType) -> {
+              recordCacheLookups(
+                  clazz.getSimpleName(), CacheLookupOutcome.PREFETCHED, foreignKeysOfType.size());
+              cacheForeignKeyIndexes
+                  .get(clazz)
+                  .putAll(
+                      Maps.asMap(
+                          ImmutableSet.copyOf(foreignKeysOfType),
+                          foreignKey ->
+                              Optional.ofNullable(
+                                  existingFkis.get(Key.create(mapToFkiClass(clazz), foreignKey)))));
+            });
   }
 }
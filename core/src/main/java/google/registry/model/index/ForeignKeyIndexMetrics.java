@@ -0,0 +1,80 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.index;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.RemovalCause;
+import com.google.common.collect.ImmutableSet;
+import com.google.monitoring.metrics.IncrementableMetric;
+import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.MetricRegistryImpl;
+
+/** Instrumentation for the in-memory {@link ForeignKeyIndex} caches. */
+class ForeignKeyIndexMetrics {
+
+  /** Possible outcomes of looking up a foreign key in the cache. */
+  enum CacheLookupOutcome {
+    /** The foreign key (or the fact that it doesn't exist) was already cached. */
+    HIT,
+
+    /** The foreign key was not cached and had to be loaded from Datastore. */
+    MISS,
+
+    /** The foreign key was not cached and was loaded from Datastore ahead of use by a prefetch. */
+    PREFETCHED
+  }
+
+  private static final ImmutableSet<LabelDescriptor> LOOKUP_LABEL_DESCRIPTORS =
+      ImmutableSet.of(
+          LabelDescriptor.create("resource_type", "Type of the referenced EPP resource."),
+          LabelDescriptor.create("outcome", "Outcome of the cache lookup."));
+
+  private static final ImmutableSet<LabelDescriptor> EVICTION_LABEL_DESCRIPTORS =
+      ImmutableSet.of(
+          LabelDescriptor.create("resource_type", "Type of the referenced EPP resource."),
+          LabelDescriptor.create("cause", "Reason the entry was evicted."));
+
+  /** Metric counting the number of foreign keys looked up in the cache, by outcome. */
+  @VisibleForTesting
+  static final IncrementableMetric cacheLookups =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/foreign_key_index/cache/lookups",
+              "Count of foreign key index cache lookups",
+              "count",
+              LOOKUP_LABEL_DESCRIPTORS);
+
+  /** Metric counting the number of foreign keys evicted from the cache, by cause. */
+  @VisibleForTesting
+  static final IncrementableMetric cacheEvictions =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/foreign_key_index/cache/evictions",
+              "Count of foreign key index cache evictions",
+              "count",
+              EVICTION_LABEL_DESCRIPTORS);
+
+  private ForeignKeyIndexMetrics() {}
+
+  static void recordCacheLookups(String resourceType, CacheLookupOutcome outcome, int count) {
+    if (count > 0) {
+      cacheLookups.incrementBy(count, resourceType, outcome.name());
+    }
+  }
+
+  static void recordCacheEviction(String resourceType, RemovalCause cause) {
+    cacheEvictions.increment(resourceType, cause.name());
+  }
+}
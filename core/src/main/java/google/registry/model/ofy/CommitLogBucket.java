@@ -34,6 +34,7 @@ import google.registry.model.ImmutableObject;
 import google.registry.model.annotations.NotBackedUp;
 import google.registry.model.annotations.NotBackedUp.Reason;
 import google.registry.util.NonFinalForTesting;
+import google.registry.util.SystemClock;
 import java.util.Random;
 import java.util.function.Supplier;
 import org.joda.time.DateTime;
@@ -94,27 +95,34 @@ public class CommitLogBucket extends ImmutableObject implements Buildable {
     return Range.closed(1, getCommitLogBucketCount());
   }
 
-  /** Returns an arbitrary numeric bucket ID.  Default behavior is randomly chosen IDs. */
+  /**
+   * Returns an arbitrary numeric bucket ID. Default behavior is randomly chosen IDs, biased away
+   * from buckets that have recently seen contention.
+   */
   public static int getArbitraryBucketId() {
     return bucketIdSupplier.get();
   }
 
+  /**
+   * Records that a transaction writing to the given bucket had to be retried, so that subsequent
+   * transactions are less likely to choose it.
+   */
+  static void recordContention(int bucketId) {
+    bucketChooser.recordContention(bucketId);
+  }
+
+  private static final CommitLogBucketChooser bucketChooser =
+      new CommitLogBucketChooser(
+          RegistryConfig::getCommitLogBucketCount, new SystemClock(), new Random());
+
   /**
    * Supplier of valid bucket IDs to use for {@link #getArbitraryBucketId()}.
    *
-   * <p>Default supplier is one that returns bucket IDs via uniform random selection, but can be
-   * overridden in tests that rely on predictable bucket assignment for commit logs.
+   * <p>Default supplier is one that returns bucket IDs via {@link CommitLogBucketChooser}, but can
+   * be overridden in tests that rely on predictable bucket assignment for commit logs.
    */
   @NonFinalForTesting
-  private static Supplier<Integer> bucketIdSupplier =
-      new Supplier<Integer>() {
-        private final Random random = new Random();
-
-        @Override
-        public Integer get() {
-          return random.nextInt(getCommitLogBucketCount()) + 1;  // Add 1 since IDs can't be 0.
-        }
-      };
+  private static Supplier<Integer> bucketIdSupplier = bucketChooser::chooseBucketId;
 
   /** Returns the loaded bucket for the given key, or a new object if the bucket doesn't exist. */
   public static CommitLogBucket loadBucket(Key<CommitLogBucket> bucketKey) {
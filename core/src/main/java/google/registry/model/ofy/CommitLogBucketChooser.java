@@ -0,0 +1,95 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.ofy;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import google.registry.util.Clock;
+import java.util.Random;
+import java.util.function.IntSupplier;
+import org.joda.time.Duration;
+
+/**
+ * Chooses commit log buckets for new transactions, steering away from recently contended buckets.
+ *
+ * <p>Every transaction that writes commit logs also writes its bucket, so each bucket is an entity
+ * group that concurrent transactions can contend on. Picking buckets uniformly at random spreads
+ * the load evenly on average, but does nothing to avoid a bucket that is currently hot. This
+ * chooser keeps an exponentially decaying count of the contention observed on each bucket by this
+ * instance, samples two buckets at random, and returns the one with the lower count (the "power of
+ * two choices"). Since it only ever prefers the cooler of two random buckets, load still spreads
+ * across all buckets, and a hot bucket is picked again once its count has decayed.
+ */
+final class CommitLogBucketChooser {
+
+  /** How long it takes for the recorded contention on a bucket to decay by half. */
+  private static final Duration CONTENTION_HALF_LIFE = Duration.standardSeconds(30);
+
+  private final IntSupplier bucketCount;
+  private final Clock clock;
+  private final Random random;
+
+  /** The decayed contention count for each bucket, indexed by bucket ID minus 1. */
+  private double[] contention = new double[0];
+
+  /** When each entry in {@link #contention} was last decayed, in epoch millis. */
+  private long[] lastDecayMillis = new long[0];
+
+  CommitLogBucketChooser(IntSupplier bucketCount, Clock clock, Random random) {
+    this.bucketCount = bucketCount;
+    this.clock = clock;
+    this.random = random;
+  }
+
+  /** Returns the ID of the bucket the next transaction should use. */
+  synchronized int chooseBucketId() {
+    int count = bucketCount.getAsInt();
+    if (count == 1) {
+      return 1;
+    }
+    int first = random.nextInt(count);
+    // Pick a second bucket distinct from the first.
+    int second = (first + 1 + random.nextInt(count - 1)) % count;
+    long nowMillis = clock.nowUtc().getMillis();
+    return (getContention(second, count, nowMillis) < getContention(first, count, nowMillis)
+            ? second
+            : first)
+        + 1; // Add 1 since IDs can't be 0.
+  }
+
+  /** Records that a transaction writing to the given bucket was contended and had to retry. */
+  synchronized void recordContention(int bucketId) {
+    int count = bucketCount.getAsInt();
+    checkArgument(bucketId >= 1 && bucketId <= count, "%s not in [1, %s]", bucketId, count);
+    int index = bucketId - 1;
+    contention[index] = getContention(index, count, clock.nowUtc().getMillis()) + 1;
+  }
+
+  /** Returns the decayed contention count for the bucket with the given index, as of now. */
+  private double getContention(int index, int count, long nowMillis) {
+    if (contention.length != count) {
+      // The bucket count changed (which only happens in tests), so start over.
+      contention = new double[count];
+      lastDecayMillis = new long[count];
+    }
+    long elapsedMillis = nowMillis - lastDecayMillis[index];
+    if (elapsedMillis > 0 && contention[index] > 0) {
+      contention[index] *=
+          Math.pow(0.5, (double) elapsedMillis / CONTENTION_HALF_LIFE.getMillis());
+    }
+    lastDecayMillis[index] = nowMillis;
+    return contention[index];
+  }
+}
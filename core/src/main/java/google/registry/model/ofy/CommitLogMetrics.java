@@ -0,0 +1,85 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.ofy;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.monitoring.metrics.IncrementableMetric;
+import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.MetricRegistryImpl;
+
+/** Instrumentation for commit log writes in {@link CommitLoggedWork}. */
+class CommitLogMetrics {
+
+  /** Possible sources of a {@link TimestampInversionException}. */
+  enum InversionSource {
+    /** The commit log bucket was last written at or after the transaction time. */
+    BUCKET,
+
+    /** A backup group root read or written by the transaction was updated after its time. */
+    BACKUP_GROUP_ROOT
+  }
+
+  private static final ImmutableSet<LabelDescriptor> BUCKET_LABEL_DESCRIPTORS =
+      ImmutableSet.of(LabelDescriptor.create("bucket", "Commit log bucket ID."));
+
+  private static final ImmutableSet<LabelDescriptor> INVERSION_LABEL_DESCRIPTORS =
+      ImmutableSet.of(
+          LabelDescriptor.create("source", "What the transaction time was inverted against."));
+
+  /** Metric counting the number of committed transactions that wrote each bucket. */
+  @VisibleForTesting
+  static final IncrementableMetric bucketWrites =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/commit_logs/bucket/writes",
+              "Count of committed transactions that wrote to each commit log bucket",
+              "count",
+              BUCKET_LABEL_DESCRIPTORS);
+
+  /** Metric counting the number of transaction retries after writing each bucket. */
+  @VisibleForTesting
+  static final IncrementableMetric bucketContentionRetries =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/commit_logs/bucket/contention_retries",
+              "Count of transactions retried after failing to commit a write to each bucket",
+              "count",
+              BUCKET_LABEL_DESCRIPTORS);
+
+  /** Metric counting the number of timestamp inversions detected while writing commit logs. */
+  @VisibleForTesting
+  static final IncrementableMetric timestampInversions =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/commit_logs/timestamp_inversions",
+              "Count of timestamp inversions detected while writing commit logs",
+              "count",
+              INVERSION_LABEL_DESCRIPTORS);
+
+  private CommitLogMetrics() {}
+
+  static void recordBucketWrite(int bucketId) {
+    bucketWrites.increment(String.valueOf(bucketId));
+  }
+
+  static void recordContentionRetry(int bucketId) {
+    bucketContentionRetries.increment(String.valueOf(bucketId));
+  }
+
+  static void recordTimestampInversion(InversionSource source) {
+    timestampInversions.increment(source.name());
+  }
+}
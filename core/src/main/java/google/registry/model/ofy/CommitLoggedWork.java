@@ -30,6 +30,7 @@ import com.google.common.collect.ImmutableSet;
 import com.googlecode.objectify.Key;
 import google.registry.model.BackupGroupRoot;
 import google.registry.model.ImmutableObject;
+import google.registry.model.ofy.CommitLogMetrics.InversionSource;
 import google.registry.model.transaction.TransactionManager.Work;
 import google.registry.util.Clock;
 import java.util.HashSet;
@@ -73,6 +74,15 @@ class CommitLoggedWork<R> implements Runnable {
    */
   protected ImmutableSet<ImmutableObject> mutations = ImmutableSet.of();
 
+  /**
+   * The ID of the commit log bucket written by the most recent attempt, or 0 if that attempt didn't
+   * write commit logs or its outcome has already been recorded.
+   *
+   * <p>If {@link #run} is called again while this is set, the attempt didn't commit, so we record
+   * contention on its bucket.
+   */
+  private int pendingBucketId;
+
   /** Lifecycle marker to track whether {@link #run} has been called. */
   private boolean runCalled;
 
@@ -108,6 +118,11 @@ class CommitLoggedWork<R> implements Runnable {
   public void run() {
     // The previous time will generally be null, except when using transactNew.
     TransactionInfo previous = Ofy.TRANSACTION_INFO.get();
+    if (pendingBucketId != 0) {
+      CommitLogMetrics.recordContentionRetry(pendingBucketId);
+      CommitLogBucket.recordContention(pendingBucketId);
+      pendingBucketId = 0;
+    }
     // Set the time to be used for "now" within the transaction.
     try {
       Ofy.TRANSACTION_INFO.set(createNewTransactionInfo());
@@ -119,6 +134,14 @@ class CommitLoggedWork<R> implements Runnable {
     runCalled = true;
   }
 
+  /** Records that the most recent attempt committed successfully. */
+  void recordCommit() {
+    if (pendingBucketId != 0) {
+      CommitLogMetrics.recordBucketWrite(pendingBucketId);
+      pendingBucketId = 0;
+    }
+  }
+
   /** Records all mutations enrolled by this transaction to a {@link CommitLogManifest} entry. */
   private void saveCommitLog(TransactionInfo info) {
     ImmutableSet<Key<?>> touchedKeys = info.getTouchedKeys();
@@ -128,6 +151,9 @@ class CommitLoggedWork<R> implements Runnable {
     CommitLogBucket bucket = loadBucket(info.bucketKey);
     // Enforce unique monotonic property on CommitLogBucket.getLastWrittenTime().
     if (isBeforeOrAt(info.transactionTime, bucket.getLastWrittenTime())) {
+      // Another writer to this bucket had a clock ahead of ours, so avoid it for a while.
+      CommitLogMetrics.recordTimestampInversion(InversionSource.BUCKET);
+      CommitLogBucket.recordContention(bucket.getBucketNum());
       throw new TimestampInversionException(info.transactionTime, bucket.getLastWrittenTime());
     }
     // The keys read by Objectify during this transaction. This won't include the keys of
@@ -161,6 +187,7 @@ class CommitLoggedWork<R> implements Runnable {
           .addAll(untouchedRootsWithTouchedChildren)
           .build())
       .now();
+    pendingBucketId = bucket.getBucketNum();
   }
 
   /** Check that the timestamp of each BackupGroupRoot is in the past. */
@@ -175,6 +202,7 @@ class CommitLoggedWork<R> implements Runnable {
     }
     ImmutableMap<Key<BackupGroupRoot>, DateTime> problematicRoots = builder.build();
     if (!problematicRoots.isEmpty()) {
+      CommitLogMetrics.recordTimestampInversion(InversionSource.BACKUP_GROUP_ROOT);
       throw new TimestampInversionException(transactionTime, problematicRoots);
     }
   }
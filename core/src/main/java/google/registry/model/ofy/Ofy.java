@@ -250,6 +250,7 @@ public class Ofy {
           work.run();
           return null;
         });
+        work.recordCommit();
         return work.getResult();
       } catch (TransientFailureException
           | TimestampInversionException
@@ -260,6 +261,7 @@ public class Ofy {
         // However, Datastore exceptions might get thrown even if the transaction succeeded.
         if ((e instanceof DatastoreTimeoutException || e instanceof DatastoreFailureException)
             && checkIfAlreadySucceeded(work)) {
+          work.recordCommit();
           return work.getResult();
         }
         if (attempt == NUM_RETRIES) {
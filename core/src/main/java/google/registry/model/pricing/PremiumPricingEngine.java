@@ -14,6 +14,9 @@
 
 package google.registry.model.pricing;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import java.util.Optional;
 import org.joda.money.Money;
 import org.joda.time.DateTime;
@@ -34,6 +37,20 @@ public interface PremiumPricingEngine {
    */
   DomainPrices getDomainPrices(String fullyQualifiedDomainName, DateTime priceTime);
 
+  /**
+   * Returns the prices for each of the given fully qualified domain names at the given time.
+   *
+   * <p>All of the domain names must be on the same TLD. By default each domain name is priced
+   * separately; implementations that can price many domain names more cheaply at once (e.g. with a
+   * single Datastore round trip) should override this.
+   */
+  default ImmutableMap<String, DomainPrices> getDomainPrices(
+      ImmutableSet<String> fullyQualifiedDomainNames, DateTime priceTime) {
+    return Maps.toMap(
+        fullyQualifiedDomainNames,
+        fullyQualifiedDomainName -> getDomainPrices(fullyQualifiedDomainName, priceTime));
+  }
+
   /**
    * A class containing information on premium prices for a specific domain name.
    *
@@ -14,17 +14,24 @@
 
 package google.registry.model.pricing;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Strings.emptyToNull;
 import static google.registry.model.registry.Registry.TldState.START_DATE_SUNRISE;
 import static google.registry.model.registry.label.PremiumListUtils.getPremiumPrice;
+import static google.registry.model.registry.label.PremiumListUtils.getPremiumPrices;
 import static google.registry.model.registry.label.ReservationType.NAME_COLLISION;
 import static google.registry.model.registry.label.ReservedList.getReservationTypes;
 import static google.registry.util.DomainNameUtils.getTldFromDomainName;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 import com.google.common.net.InternetDomainName;
 import google.registry.model.registry.Registry;
+import google.registry.model.registry.label.ReservationType;
 import java.util.Optional;
 import javax.inject.Inject;
 import org.joda.money.Money;
@@ -47,6 +54,54 @@ public final class StaticPremiumListPricingEngine implements PremiumPricingEngin
     boolean isNameCollisionInSunrise =
         registry.getTldState(priceTime).equals(START_DATE_SUNRISE)
             && getReservationTypes(label, tld).contains(NAME_COLLISION);
+    return createDomainPrices(registry, premiumPrice, isNameCollisionInSunrise, priceTime);
+  }
+
+  /**
+   * Returns the prices for each of the given fully qualified domain names at the given time.
+   *
+   * <p>The premium prices (and, during sunrise, the reservations) of all of the labels are looked
+   * up in a single batch.
+   */
+  @Override
+  public ImmutableMap<String, DomainPrices> getDomainPrices(
+      ImmutableSet<String> fullyQualifiedDomainNames, DateTime priceTime) {
+    if (fullyQualifiedDomainNames.isEmpty()) {
+      return ImmutableMap.of();
+    }
+    String tld = getTldFromDomainName(Iterables.get(fullyQualifiedDomainNames, 0));
+    ImmutableMap<String, String> labels =
+        Maps.toMap(
+            fullyQualifiedDomainNames,
+            fullyQualifiedDomainName -> {
+              checkArgument(
+                  tld.equals(getTldFromDomainName(fullyQualifiedDomainName)),
+                  "All domain names must be on the same TLD");
+              return InternetDomainName.from(fullyQualifiedDomainName).parts().get(0);
+            });
+    Registry registry = Registry.get(tld);
+    ImmutableMap<String, Money> premiumPrices = getPremiumPrices(labels.values(), registry);
+    ImmutableMap<String, ImmutableSet<ReservationType>> reservationTypes =
+        registry.getTldState(priceTime).equals(START_DATE_SUNRISE)
+            ? getReservationTypes(ImmutableSet.copyOf(labels.values()), tld)
+            : ImmutableMap.of();
+    return ImmutableMap.copyOf(
+        Maps.transformValues(
+            labels,
+            label ->
+                createDomainPrices(
+                    registry,
+                    Optional.ofNullable(premiumPrices.get(label)),
+                    reservationTypes.getOrDefault(label, ImmutableSet.of())
+                        .contains(NAME_COLLISION),
+                    priceTime)));
+  }
+
+  private static DomainPrices createDomainPrices(
+      Registry registry,
+      Optional<Money> premiumPrice,
+      boolean isNameCollisionInSunrise,
+      DateTime priceTime) {
     String feeClass = emptyToNull(Joiner.on('-').skipNulls().join(
             premiumPrice.isPresent() ? "premium" : null,
             isNameCollisionInSunrise ? "collision" : null));
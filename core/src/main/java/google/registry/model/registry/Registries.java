@@ -21,7 +21,7 @@ import static com.google.common.base.Predicates.not;
 import static com.google.common.base.Strings.emptyToNull;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.collect.Maps.filterValues;
-import static google.registry.model.CacheUtils.memoizeWithShortExpiration;
+import static google.registry.model.CacheUtils.memoizeWithRefreshAhead;
 import static google.registry.model.common.EntityGroupRoot.getCrossTldKey;
 import static google.registry.model.ofy.ObjectifyService.ofy;
 import static google.registry.model.transaction.TransactionManagerFactory.tm;
@@ -51,7 +51,8 @@ public final class Registries {
    * query inside an unrelated client-affecting transaction.
    */
   private static Supplier<ImmutableMap<String, TldType>> createFreshCache() {
-    return memoizeWithShortExpiration(
+    return memoizeWithRefreshAhead(
+        "registries",
         () ->
             tm()
                 .doTransactionless(
@@ -123,6 +124,29 @@ public final class Registries {
     return Optional.empty();
   }
 
+  /**
+   * Returns TLD which the canonical domain name or hostname falls under, no matter how many levels
+   * of sublabels there are.
+   *
+   * <p>This gives the same answer as {@link #findTldForName(InternetDomainName)}, but it skips
+   * parsing and validating the name, and just looks up each of its suffixes in the cached set of
+   * TLDs. It's meant for names that are already known to be canonical, such as those read from
+   * Datastore, when checking a large number of them.
+   *
+   * @param name canonical (puny-coded, lower-case) domain name or host name, but not a TLD
+   * @return TLD or absent if {@code name} has no labels under an authoritative TLD
+   */
+  public static Optional<String> findTldForCanonicalName(String name) {
+    ImmutableSet<String> tlds = getTlds();
+    for (int dot = name.indexOf('.'); dot >= 0; dot = name.indexOf('.', dot + 1)) {
+      String suffix = name.substring(dot + 1);
+      if (tlds.contains(suffix)) {
+        return Optional.of(suffix);
+      }
+    }
+    return Optional.empty();
+  }
+
   /**
    * Returns the registered TLD which this domain name falls under, or throws an exception if no
    * match exists.
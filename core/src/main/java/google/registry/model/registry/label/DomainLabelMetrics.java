@@ -40,7 +40,13 @@ class DomainLabelMetrics {
     UNCACHED_NEGATIVE,
 
     /** Bloom filter thinks it might be premium, and it is, but wasn't in the cache */
-    UNCACHED_POSITIVE
+    UNCACHED_POSITIVE,
+
+    /** The fully preloaded premium price table knows it is not premium */
+    PRELOADED_NEGATIVE,
+
+    /** The fully preloaded premium price table knows it is premium */
+    PRELOADED_POSITIVE
   }
 
   @AutoValue
@@ -221,6 +221,47 @@ public final class PremiumList extends BaseDomainLabelList<Money, PremiumList.Pr
             });
   }
 
+  /**
+   * In-memory cache of fully loaded {@link PremiumPriceTable}s, keyed by {@link
+   * PremiumListRevision}.
+   *
+   * <p>This is only used when premium list preloading is enabled. Each revision is immutable, so
+   * a table never needs to be reloaded once built. Since the key is the revision, publishing a new
+   * revision causes a new table to be loaded in bulk the first time it is used, and the table for
+   * the old revision expires once it stops being accessed.
+   */
+  @NonFinalForTesting
+  static LoadingCache<Key<PremiumListRevision>, PremiumPriceTable> cachePremiumPriceTables =
+      createCachePremiumPriceTables(getDomainLabelListCacheDuration());
+
+  @VisibleForTesting
+  public static void setPremiumPriceTablesCacheForTest(Optional<Duration> expiry) {
+    Duration effectiveExpiry = expiry.orElse(getDomainLabelListCacheDuration());
+    cachePremiumPriceTables = createCachePremiumPriceTables(effectiveExpiry);
+  }
+
+  @VisibleForTesting
+  static LoadingCache<Key<PremiumListRevision>, PremiumPriceTable> createCachePremiumPriceTables(
+      Duration cachePersistDuration) {
+    return CacheBuilder.newBuilder()
+        .expireAfterAccess(cachePersistDuration.getMillis(), MILLISECONDS)
+        .build(
+            new CacheLoader<Key<PremiumListRevision>, PremiumPriceTable>() {
+              @Override
+              public PremiumPriceTable load(final Key<PremiumListRevision> revisionKey) {
+                return tm()
+                    .doTransactionless(
+                        () ->
+                            PremiumPriceTable.create(
+                                ofy()
+                                    .load()
+                                    .type(PremiumListEntry.class)
+                                    .ancestor(revisionKey)
+                                    .iterable()));
+              }
+            });
+  }
+
   @VisibleForTesting
   public Key<PremiumListRevision> getRevisionKey() {
     return revisionKey;
@@ -17,16 +17,20 @@ package google.registry.model.registry.label;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.collect.Iterables.partition;
+import static google.registry.config.RegistryConfig.isPremiumListPreloadEnabled;
 import static google.registry.model.common.EntityGroupRoot.getCrossTldKey;
 import static google.registry.model.ofy.ObjectifyService.ofy;
 import static google.registry.model.registry.label.DomainLabelMetrics.PremiumListCheckOutcome.BLOOM_FILTER_NEGATIVE;
 import static google.registry.model.registry.label.DomainLabelMetrics.PremiumListCheckOutcome.CACHED_NEGATIVE;
 import static google.registry.model.registry.label.DomainLabelMetrics.PremiumListCheckOutcome.CACHED_POSITIVE;
+import static google.registry.model.registry.label.DomainLabelMetrics.PremiumListCheckOutcome.PRELOADED_NEGATIVE;
+import static google.registry.model.registry.label.DomainLabelMetrics.PremiumListCheckOutcome.PRELOADED_POSITIVE;
 import static google.registry.model.registry.label.DomainLabelMetrics.PremiumListCheckOutcome.UNCACHED_NEGATIVE;
 import static google.registry.model.registry.label.DomainLabelMetrics.PremiumListCheckOutcome.UNCACHED_POSITIVE;
 import static google.registry.model.registry.label.PremiumList.cachePremiumListEntries;
 import static google.registry.model.registry.label.PremiumList.cachePremiumListRevisions;
 import static google.registry.model.registry.label.PremiumList.cachePremiumLists;
+import static google.registry.model.registry.label.PremiumList.cachePremiumPriceTables;
 import static google.registry.model.transaction.TransactionManagerFactory.tm;
 import static org.joda.time.DateTimeZone.UTC;
 
@@ -35,13 +39,16 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Streams;
 import com.googlecode.objectify.Key;
 import google.registry.model.registry.Registry;
 import google.registry.model.registry.label.DomainLabelMetrics.PremiumListCheckOutcome;
 import google.registry.model.registry.label.PremiumList.PremiumListEntry;
 import google.registry.model.registry.label.PremiumList.PremiumListRevision;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
@@ -75,10 +82,63 @@ public final class PremiumListUtils {
       return Optional.empty();
     }
     DateTime startTime = DateTime.now(UTC);
+    PremiumList premiumList = getCachedPremiumList(registry);
+    CheckResults checkResults =
+        isPremiumListPreloadEnabled()
+            ? checkPreloadedStatus(premiumList.getRevisionKey(), label)
+            : checkStatus(loadRevision(premiumList), label);
+    DomainLabelMetrics.recordPremiumListCheckOutcome(
+        registry.getTldStr(),
+        premiumList.getName(),
+        checkResults.checkOutcome(),
+        DateTime.now(UTC).getMillis() - startTime.getMillis());
+    return checkResults.premiumPrice();
+  }
+
+  /**
+   * Returns the premium prices for all of the specified labels on the specified registry, omitting
+   * labels that are not premium.
+   *
+   * <p>This is equivalent to calling {@link #getPremiumPrice} for each label, except that all of
+   * the labels that aren't already cached are loaded from Datastore in a single batch, and the
+   * processing time is measured once for the whole batch and split evenly among its labels.
+   */
+  public static ImmutableMap<String, Money> getPremiumPrices(
+      Iterable<String> labels, Registry registry) {
+    // If the registry has no configured premium list, then no labels are premium.
+    if (registry.getPremiumList() == null) {
+      return ImmutableMap.of();
+    }
+    DateTime startTime = DateTime.now(UTC);
+    PremiumList premiumList = getCachedPremiumList(registry);
+    ImmutableMap<String, CheckResults> checkResults =
+        checkStatuses(premiumList, ImmutableSet.copyOf(labels));
+    double elapsedMillisPerLabel =
+        checkResults.isEmpty()
+            ? 0
+            : (double) (DateTime.now(UTC).getMillis() - startTime.getMillis())
+                / checkResults.size();
+    ImmutableMap.Builder<String, Money> premiumPrices = new ImmutableMap.Builder<>();
+    checkResults.forEach(
+        (label, results) -> {
+          DomainLabelMetrics.recordPremiumListCheckOutcome(
+              registry.getTldStr(),
+              premiumList.getName(),
+              results.checkOutcome(),
+              elapsedMillisPerLabel);
+          results.premiumPrice().ifPresent(price -> premiumPrices.put(label, price));
+        });
+    return premiumPrices.build();
+  }
+
+  private static PremiumList getCachedPremiumList(Registry registry) {
     String listName = registry.getPremiumList().getName();
     Optional<PremiumList> optionalPremiumList = PremiumList.getCached(listName);
     checkState(optionalPremiumList.isPresent(), "Could not load premium list '%s'", listName);
-    PremiumList premiumList = optionalPremiumList.get();
+    return optionalPremiumList.get();
+  }
+
+  private static PremiumListRevision loadRevision(PremiumList premiumList) {
     PremiumListRevision revision;
     try {
       revision = cachePremiumListRevisions.get(premiumList.getRevisionKey());
@@ -90,14 +150,25 @@ public final class PremiumListUtils {
         revision.getProbablePremiumLabels() != null,
         "Probable premium labels Bloom filter is null on revision '%s'",
         premiumList.getRevisionKey());
+    return revision;
+  }
 
-    CheckResults checkResults = checkStatus(revision, label);
-    DomainLabelMetrics.recordPremiumListCheckOutcome(
-        registry.getTldStr(),
-        listName,
-        checkResults.checkOutcome(),
-        DateTime.now(UTC).getMillis() - startTime.getMillis());
-    return checkResults.premiumPrice();
+  /**
+   * Checks the premiumness of a label against the fully loaded price table for a revision.
+   *
+   * <p>The entire revision is loaded in a single query the first time it is used, so this never
+   * requires a Datastore round trip per label.
+   */
+  private static CheckResults checkPreloadedStatus(
+      Key<PremiumListRevision> revisionKey, String label) {
+    PremiumPriceTable priceTable;
+    try {
+      priceTable = cachePremiumPriceTables.get(revisionKey);
+    } catch (InvalidCacheLoadException | ExecutionException e) {
+      throw new RuntimeException("Could not load premium price table " + revisionKey, e);
+    }
+    Optional<Money> price = priceTable.getPrice(label);
+    return CheckResults.create(price.isPresent() ? PRELOADED_POSITIVE : PRELOADED_NEGATIVE, price);
   }
 
   private static CheckResults checkStatus(PremiumListRevision premiumListRevision, String label) {
@@ -129,6 +200,52 @@ public final class PremiumListUtils {
     }
   }
 
+  /**
+   * Checks the premiumness of multiple labels at once, loading all uncached entries in one batch.
+   */
+  private static ImmutableMap<String, CheckResults> checkStatuses(
+      PremiumList premiumList, ImmutableSet<String> labels) {
+    if (isPremiumListPreloadEnabled()) {
+      return Maps.toMap(labels, label -> checkPreloadedStatus(premiumList.getRevisionKey(), label));
+    }
+    PremiumListRevision revision = loadRevision(premiumList);
+    Map<String, CheckResults> results = new HashMap<>();
+    Map<Key<PremiumListEntry>, String> uncachedLabels = new HashMap<>();
+    for (String label : labels) {
+      if (!revision.getProbablePremiumLabels().mightContain(label)) {
+        results.put(label, CheckResults.create(BLOOM_FILTER_NEGATIVE, Optional.empty()));
+        continue;
+      }
+      Key<PremiumListEntry> entryKey =
+          Key.create(Key.create(revision), PremiumListEntry.class, label);
+      // getIfPresent() returns null if the key is not in the cache
+      Optional<PremiumListEntry> entry = cachePremiumListEntries.getIfPresent(entryKey);
+      if (entry == null) {
+        uncachedLabels.put(entryKey, label);
+      } else if (entry.isPresent()) {
+        results.put(
+            label, CheckResults.create(CACHED_POSITIVE, Optional.of(entry.get().getValue())));
+      } else {
+        results.put(label, CheckResults.create(CACHED_NEGATIVE, Optional.empty()));
+      }
+    }
+    if (!uncachedLabels.isEmpty()) {
+      Map<Key<PremiumListEntry>, PremiumListEntry> loadedEntries =
+          tm().doTransactionless(() -> ofy().load().keys(uncachedLabels.keySet()));
+      uncachedLabels.forEach(
+          (entryKey, label) -> {
+            Optional<PremiumListEntry> entry = Optional.ofNullable(loadedEntries.get(entryKey));
+            cachePremiumListEntries.put(entryKey, entry);
+            results.put(
+                label,
+                entry.isPresent()
+                    ? CheckResults.create(UNCACHED_POSITIVE, Optional.of(entry.get().getValue()))
+                    : CheckResults.create(UNCACHED_NEGATIVE, Optional.empty()));
+          });
+    }
+    return Maps.toMap(labels, results::get);
+  }
+
   /**
    * Persists a new or updated PremiumList object and its descendant entities to Datastore.
    *
@@ -0,0 +1,105 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.registry.label;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import google.registry.model.registry.label.PremiumList.PremiumListEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+/**
+ * A compact, immutable, fully in-memory label to price table for a single {@link
+ * PremiumList.PremiumListRevision}.
+ *
+ * <p>Labels are held in a sorted array and looked up by binary search, and prices are stored as
+ * minor currency amounts in a parallel primitive array. Almost every premium list uses a single
+ * currency, so the {@link CurrencyUnit} is shared across all entries; a per-entry currency index is
+ * only allocated for the rare list that mixes currencies. This keeps a list of a few hundred
+ * thousand labels to a few tens of megabytes, in exchange for never having to go to Datastore for
+ * an individual label.
+ */
+final class PremiumPriceTable {
+
+  private final String[] labels;
+  private final long[] amountsMinor;
+  private final CurrencyUnit[] currencies;
+
+  /** Index into {@link #currencies} for each label, or null if there is only a single currency. */
+  private final byte[] currencyIndexes;
+
+  private PremiumPriceTable(
+      String[] labels, long[] amountsMinor, CurrencyUnit[] currencies, byte[] currencyIndexes) {
+    this.labels = labels;
+    this.amountsMinor = amountsMinor;
+    this.currencies = currencies;
+    this.currencyIndexes = currencyIndexes;
+  }
+
+  /** Builds a new table from all of the entries of a single premium list revision. */
+  static PremiumPriceTable create(Iterable<PremiumListEntry> entries) {
+    List<PremiumListEntry> sortedEntries = new ArrayList<>();
+    entries.forEach(sortedEntries::add);
+    sortedEntries.sort(Comparator.comparing(PremiumListEntry::getLabel));
+    int size = sortedEntries.size();
+    String[] labels = new String[size];
+    long[] amountsMinor = new long[size];
+    byte[] currencyIndexes = new byte[size];
+    List<CurrencyUnit> currencies = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      PremiumListEntry entry = sortedEntries.get(i);
+      checkArgument(
+          i == 0 || !labels[i - 1].equals(entry.getLabel()),
+          "Duplicate label in premium list revision: %s",
+          entry.getLabel());
+      Money price = entry.getValue();
+      int currencyIndex = currencies.indexOf(price.getCurrencyUnit());
+      if (currencyIndex == -1) {
+        checkArgument(
+            currencies.size() < Byte.MAX_VALUE, "Too many currencies in premium list revision");
+        currencyIndex = currencies.size();
+        currencies.add(price.getCurrencyUnit());
+      }
+      labels[i] = entry.getLabel();
+      amountsMinor[i] = price.getAmountMinorLong();
+      currencyIndexes[i] = (byte) currencyIndex;
+    }
+    return new PremiumPriceTable(
+        labels,
+        amountsMinor,
+        currencies.toArray(new CurrencyUnit[0]),
+        currencies.size() > 1 ? currencyIndexes : null);
+  }
+
+  /** Returns the premium price of the given label, or absent if it is not premium. */
+  Optional<Money> getPrice(String label) {
+    int index = Arrays.binarySearch(labels, label);
+    if (index < 0) {
+      return Optional.empty();
+    }
+    CurrencyUnit currency = currencies[currencyIndexes == null ? 0 : currencyIndexes[index]];
+    return Optional.of(Money.ofMinor(currency, amountsMinor[index]));
+  }
+
+  /** Returns the number of premium labels in this table. */
+  int size() {
+    return labels.length;
+  }
+}
@@ -15,13 +15,18 @@
 package google.registry.model.server;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static google.registry.model.ofy.ObjectifyService.ofy;
 import static google.registry.model.transaction.TransactionManagerFactory.tm;
 import static google.registry.util.DateTimeUtils.isAtOrAfter;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
 import com.google.common.flogger.FluentLogger;
 import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
@@ -31,7 +36,10 @@ import google.registry.model.annotations.NotBackedUp.Reason;
 import google.registry.util.RequestStatusChecker;
 import google.registry.util.RequestStatusCheckerImpl;
 import java.io.Serializable;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -52,6 +60,14 @@ public class Lock extends ImmutableObject implements Serializable {
   private static final long serialVersionUID = 756397280691684645L;
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
+  /**
+   * Maximum number of locks that can be acquired by {@link #acquireAll}.
+   *
+   * <p>Each lock is the root of its own entity group, and a cross-group transaction can touch at
+   * most 25 entity groups.
+   */
+  public static final int MAX_LOCKS_PER_TRANSACTION = 25;
+
   /** Disposition of locking, for monitoring. */
   enum LockState { IN_USE, FREE, TIMED_OUT, OWNER_DIED }
 
@@ -115,17 +131,25 @@ public class Lock extends ImmutableObject implements Serializable {
 
   @AutoValue
   abstract static class AcquireResult {
+    public abstract String resourceName();
     public abstract DateTime transactionTime();
     public abstract @Nullable Lock existingLock();
     public abstract @Nullable Lock newLock();
     public abstract LockState lockState();
 
     public static AcquireResult create(
+        String resourceName,
         DateTime transactionTime,
         @Nullable Lock existingLock,
         @Nullable Lock newLock,
         LockState lockState) {
-      return new AutoValue_Lock_AcquireResult(transactionTime, existingLock, newLock, lockState);
+      return new AutoValue_Lock_AcquireResult(
+          resourceName, transactionTime, existingLock, newLock, lockState);
+    }
+
+    /** Returns a copy of this result for a lock that was acquirable but not actually acquired. */
+    AcquireResult withoutNewLock() {
+      return create(resourceName(), transactionTime(), existingLock(), null, lockState());
     }
   }
 
@@ -172,47 +196,132 @@ public class Lock extends ImmutableObject implements Serializable {
       Duration leaseLength,
       RequestStatusChecker requestStatusChecker,
       boolean checkThreadRunning) {
-    String lockId = makeLockId(resourceName, tld);
+    return acquireAll(
+            ImmutableSortedSet.of(resourceName),
+            tld,
+            leaseLength,
+            requestStatusChecker,
+            checkThreadRunning)
+        .map(Iterables::getOnlyElement);
+  }
+
+  /**
+   * Try to acquire several locks at once, in a single transaction.
+   *
+   * <p>Either all of the locks are acquired, or none of them are. Returns absent if any of them
+   * can't be acquired.
+   */
+  public static Optional<ImmutableList<Lock>> acquireAll(
+      ImmutableSortedSet<String> resourceNames,
+      @Nullable String tld,
+      Duration leaseLength,
+      RequestStatusChecker requestStatusChecker,
+      boolean checkThreadRunning) {
+    checkArgument(!resourceNames.isEmpty(), "resourceNames cannot be empty");
+    checkArgument(
+        resourceNames.size() <= MAX_LOCKS_PER_TRANSACTION,
+        "Cannot acquire more than %s locks at once",
+        MAX_LOCKS_PER_TRANSACTION);
+    resourceNames.forEach(
+        resourceName ->
+            checkArgument(
+                !Strings.isNullOrEmpty(resourceName), "resourceName cannot be null or empty"));
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    AtomicInteger attempts = new AtomicInteger();
     // It's important to use transactNew rather than transact, because a Lock can be used to control
     // access to resources like GCS that can't be transactionally rolled back. Therefore, the lock
     // must be definitively acquired before it is used, even when called inside another transaction.
-    AcquireResult acquireResult =
+    ImmutableList<AcquireResult> acquireResults =
         tm()
             .transactNew(
                 () -> {
+                  attempts.incrementAndGet();
                   DateTime now = tm().getTransactionTime();
-
-                  // Checking if an unexpired lock still exists - if so, the lock can't be acquired.
-                  Lock lock = ofy().load().type(Lock.class).id(lockId).now();
-                  if (lock != null) {
-                    logger.atInfo().log(
-                        "Loaded existing lock: %s for request: %s", lock.lockId, lock.requestLogId);
+                  // Load all of the existing locks at once.
+                  Map<String, Lock> existingLocks =
+                      ofy()
+                          .load()
+                          .type(Lock.class)
+                          .ids(
+                              resourceNames.stream()
+                                  .map(resourceName -> makeLockId(resourceName, tld))
+                                  .collect(toImmutableList()));
+                  ImmutableList<AcquireResult> results =
+                      resourceNames.stream()
+                          .map(
+                              resourceName ->
+                                  tryAcquire(
+                                      resourceName,
+                                      tld,
+                                      leaseLength,
+                                      requestStatusChecker,
+                                      checkThreadRunning,
+                                      existingLocks.get(makeLockId(resourceName, tld)),
+                                      now))
+                          .collect(toImmutableList());
+                  if (results.stream().allMatch(result -> result.newLock() != null)) {
+                    // Locks are not parented under an EntityGroupRoot (so as to avoid write
+                    // contention) and don't need to be backed up.
+                    ofy().saveWithoutBackup().entities(getNewLocks(results));
+                    return results;
                   }
-                  LockState lockState;
-                  if (lock == null) {
-                    lockState = LockState.FREE;
-                  } else if (isAtOrAfter(now, lock.expirationTime)) {
-                    lockState = LockState.TIMED_OUT;
-                  } else if (checkThreadRunning
-                      && !requestStatusChecker.isRunning(lock.requestLogId)) {
-                    lockState = LockState.OWNER_DIED;
-                  } else {
-                    lockState = LockState.IN_USE;
-                    return AcquireResult.create(now, lock, null, lockState);
-                  }
-
-                  Lock newLock =
-                      create(resourceName, tld, requestStatusChecker.getLogId(), now, leaseLength);
-                  // Locks are not parented under an EntityGroupRoot (so as to avoid write
-                  // contention) and
-                  // don't need to be backed up.
-                  ofy().saveWithoutBackup().entity(newLock);
-                  return AcquireResult.create(now, lock, newLock, lockState);
+                  // None of the locks are acquired, including the ones that were free, so drop
+                  // their unsaved new locks.
+                  return results.stream()
+                      .map(AcquireResult::withoutNewLock)
+                      .collect(toImmutableList());
                 });
+    Duration latency = Duration.millis(stopwatch.elapsed(TimeUnit.MILLISECONDS));
+    boolean acquired = acquireResults.stream().allMatch(result -> result.newLock() != null);
+    for (AcquireResult acquireResult : acquireResults) {
+      logAcquireResult(acquireResult);
+      lockMetrics.recordAcquire(
+          acquireResult.resourceName(),
+          tld,
+          acquireResult.lockState(),
+          acquired,
+          attempts.get(),
+          latency);
+    }
+    return acquired ? Optional.of(getNewLocks(acquireResults)) : Optional.empty();
+  }
 
-    logAcquireResult(acquireResult);
-    lockMetrics.recordAcquire(resourceName, tld, acquireResult.lockState());
-    return Optional.ofNullable(acquireResult.newLock());
+  private static ImmutableList<Lock> getNewLocks(ImmutableList<AcquireResult> acquireResults) {
+    return acquireResults.stream().map(AcquireResult::newLock).collect(toImmutableList());
+  }
+
+  /**
+   * Determines, within a transaction, whether the given lock can be acquired.
+   *
+   * <p>If it can, the returned result contains the new lock, which the caller is responsible for
+   * saving.
+   */
+  private static AcquireResult tryAcquire(
+      String resourceName,
+      @Nullable String tld,
+      Duration leaseLength,
+      RequestStatusChecker requestStatusChecker,
+      boolean checkThreadRunning,
+      @Nullable Lock lock,
+      DateTime now) {
+    // Checking if an unexpired lock still exists - if so, the lock can't be acquired.
+    if (lock != null) {
+      logger.atInfo().log(
+          "Loaded existing lock: %s for request: %s", lock.lockId, lock.requestLogId);
+    }
+    LockState lockState;
+    if (lock == null) {
+      lockState = LockState.FREE;
+    } else if (isAtOrAfter(now, lock.expirationTime)) {
+      lockState = LockState.TIMED_OUT;
+    } else if (checkThreadRunning && !requestStatusChecker.isRunning(lock.requestLogId)) {
+      lockState = LockState.OWNER_DIED;
+    } else {
+      lockState = LockState.IN_USE;
+      return AcquireResult.create(resourceName, now, lock, null, lockState);
+    }
+    Lock newLock = create(resourceName, tld, requestStatusChecker.getLogId(), now, leaseLength);
+    return AcquireResult.create(resourceName, now, lock, newLock, lockState);
   }
 
   /** Release the lock. */
@@ -35,6 +35,18 @@ class LockMetrics {
           LabelDescriptor.create(
               "state", "The existing lock state (before attempting to acquire)."));
 
+  private static final ImmutableSet<LabelDescriptor> WAIT_LABEL_DESCRIPTORS =
+      ImmutableSet.of(
+          LabelDescriptor.create("tld", "TLD"),
+          LabelDescriptor.create("resource", "resource name"),
+          LabelDescriptor.create("acquired", "Whether the lock was acquired."));
+
+  private static final ImmutableSet<LabelDescriptor> TRANSACTION_ATTEMPTS_LABEL_DESCRIPTORS =
+      ImmutableSet.of(
+          LabelDescriptor.create("tld", "TLD"),
+          LabelDescriptor.create("resource", "resource name"),
+          LabelDescriptor.create("acquired", "Whether the lock was acquired."));
+
   private static final ImmutableSet<LabelDescriptor> RELEASE_LABEL_DESCRIPTORS =
       ImmutableSet.of(
           LabelDescriptor.create("tld", "TLD"),
@@ -53,6 +65,23 @@ class LockMetrics {
               "count",
               REQUEST_LABEL_DESCRIPTORS);
 
+  private static final IncrementableMetric lockTransactionAttemptsMetric =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/lock/acquire_lock_transaction_attempts",
+              "Count of Datastore transaction attempts made to acquire locks, including retries",
+              "count",
+              TRANSACTION_ATTEMPTS_LABEL_DESCRIPTORS);
+
+  private static final EventMetric lockWaitTimeMetric =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/lock/acquire_lock_wait_time",
+              "Time spent trying to acquire a lock",
+              "milliseconds",
+              WAIT_LABEL_DESCRIPTORS,
+              EXPONENTIAL_FITTER);
+
   private static final EventMetric lockLifetimeMetric =
       MetricRegistryImpl.getDefault()
           .newEventMetric(
@@ -62,8 +91,18 @@ class LockMetrics {
               RELEASE_LABEL_DESCRIPTORS,
               EXPONENTIAL_FITTER);
 
-  void recordAcquire(String resourceName, @Nullable String tld, LockState state) {
+  void recordAcquire(
+      String resourceName,
+      @Nullable String tld,
+      LockState state,
+      boolean acquired,
+      int transactionAttempts,
+      Duration waitTime) {
     lockRequestsMetric.increment(String.valueOf(tld), resourceName, state.name());
+    lockTransactionAttemptsMetric.incrementBy(
+        transactionAttempts, String.valueOf(tld), resourceName, String.valueOf(acquired));
+    lockWaitTimeMetric.record(
+        waitTime.getMillis(), String.valueOf(tld), resourceName, String.valueOf(acquired));
   }
 
   void recordRelease(String resourceName, @Nullable String tld, Duration duration) {
@@ -0,0 +1,172 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.tmch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.UnsignedBytes;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A compact, immutable, in-memory index from claims labels to claims keys.
+ *
+ * <p>The full claims list holds several hundred thousand entries, which as a {@code Map<String,
+ * String>} costs two {@link String} objects and a map entry per claim. Instead, all labels are
+ * encoded as UTF-8, sorted, and concatenated into a single byte array with a parallel array of
+ * offsets, and the claims keys are stored the same way in label order. Lookups are a binary search
+ * over the label bytes.
+ */
+final class ClaimsLabelIndex {
+
+  private static final Comparator<byte[]> BYTES_COMPARATOR =
+      UnsignedBytes.lexicographicalComparator();
+
+  private final byte[] labels;
+  private final int[] labelOffsets;
+  private final byte[] keys;
+  private final int[] keyOffsets;
+
+  private ClaimsLabelIndex(byte[] labels, int[] labelOffsets, byte[] keys, int[] keyOffsets) {
+    this.labels = labels;
+    this.labelOffsets = labelOffsets;
+    this.keys = keys;
+    this.keyOffsets = keyOffsets;
+  }
+
+  /** Builds a new index containing all of the given label to claims key mappings. */
+  static ClaimsLabelIndex create(Map<String, String> labelsToKeys) {
+    int size = labelsToKeys.size();
+    byte[][] sortedLabels = new byte[size][];
+    byte[][] sortedKeys = new byte[size][];
+    Integer[] order = new Integer[size];
+    int i = 0;
+    for (Map.Entry<String, String> entry : labelsToKeys.entrySet()) {
+      sortedLabels[i] = entry.getKey().getBytes(UTF_8);
+      sortedKeys[i] = entry.getValue().getBytes(UTF_8);
+      order[i] = i;
+      i++;
+    }
+    Arrays.sort(order, (a, b) -> BYTES_COMPARATOR.compare(sortedLabels[a], sortedLabels[b]));
+    int[] labelOffsets = new int[size + 1];
+    int[] keyOffsets = new int[size + 1];
+    for (i = 0; i < size; i++) {
+      labelOffsets[i + 1] = labelOffsets[i] + sortedLabels[order[i]].length;
+      keyOffsets[i + 1] = keyOffsets[i] + sortedKeys[order[i]].length;
+    }
+    byte[] labels = new byte[labelOffsets[size]];
+    byte[] keys = new byte[keyOffsets[size]];
+    for (i = 0; i < size; i++) {
+      byte[] label = sortedLabels[order[i]];
+      byte[] key = sortedKeys[order[i]];
+      checkArgument(
+          i == 0 || !Arrays.equals(label, sortedLabels[order[i - 1]]),
+          "Duplicate label in claims list: %s",
+          new String(label, UTF_8));
+      System.arraycopy(label, 0, labels, labelOffsets[i], label.length);
+      System.arraycopy(key, 0, keys, keyOffsets[i], key.length);
+    }
+    return new ClaimsLabelIndex(labels, labelOffsets, keys, keyOffsets);
+  }
+
+  /** Returns the claims key for the given label, or absent if the label isn't claimed. */
+  Optional<String> getClaimKey(String label) {
+    int index = indexOf(label.getBytes(UTF_8));
+    return index < 0 ? Optional.empty() : Optional.of(getKey(index));
+  }
+
+  /** Returns the number of claims in this index. */
+  int size() {
+    return labelOffsets.length - 1;
+  }
+
+  /** Returns the contents of this index as a map, in label order. */
+  ImmutableMap<String, String> toMap() {
+    ImmutableMap.Builder<String, String> builder = ImmutableMap.builderWithExpectedSize(size());
+    for (int i = 0; i < size(); i++) {
+      builder.put(getLabel(i), getKey(i));
+    }
+    return builder.build();
+  }
+
+  private String getLabel(int index) {
+    return new String(
+        labels, labelOffsets[index], labelOffsets[index + 1] - labelOffsets[index], UTF_8);
+  }
+
+  private String getKey(int index) {
+    return new String(keys, keyOffsets[index], keyOffsets[index + 1] - keyOffsets[index], UTF_8);
+  }
+
+  private int indexOf(byte[] label) {
+    int low = 0;
+    int high = size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int comparison = compareLabel(mid, label);
+      if (comparison < 0) {
+        low = mid + 1;
+      } else if (comparison > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /** Compares the label stored at {@code index} to {@code label} as unsigned bytes. */
+  private int compareLabel(int index, byte[] label) {
+    int start = labelOffsets[index];
+    int length = labelOffsets[index + 1] - start;
+    int commonLength = Math.min(length, label.length);
+    for (int i = 0; i < commonLength; i++) {
+      int comparison = UnsignedBytes.compare(labels[start + i], label[i]);
+      if (comparison != 0) {
+        return comparison;
+      }
+    }
+    return length - label.length;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof ClaimsLabelIndex)) {
+      return false;
+    }
+    ClaimsLabelIndex that = (ClaimsLabelIndex) other;
+    return Arrays.equals(labelOffsets, that.labelOffsets)
+        && Arrays.equals(labels, that.labels)
+        && Arrays.equals(keyOffsets, that.keyOffsets)
+        && Arrays.equals(keys, that.keys);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(labels) + Arrays.hashCode(keys);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ClaimsLabelIndex{size=%d}", size());
+  }
+}
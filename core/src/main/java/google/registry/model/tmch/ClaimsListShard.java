@@ -18,7 +18,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Throwables.throwIfUnchecked;
 import static com.google.common.base.Verify.verify;
-import static google.registry.model.CacheUtils.memoizeWithShortExpiration;
+import static google.registry.model.CacheUtils.memoizeWithRefreshAhead;
 import static google.registry.model.ofy.ObjectifyService.allocateId;
 import static google.registry.model.ofy.ObjectifyService.ofy;
 import static google.registry.model.transaction.TransactionManagerFactory.tm;
@@ -57,7 +57,8 @@ import org.joda.time.DateTime;
  *
  * <p>The claims list is actually sharded into multiple {@link ClaimsListShard} entities to work
  * around the Datastore limitation of 1M max size per entity. However, when calling {@link #get} all
- * of the shards are recombined into one {@link ClaimsListShard} object.
+ * of the shards are recombined into one {@link ClaimsListShard} object, whose claims are held in a
+ * compact {@link ClaimsLabelIndex} rather than a map.
  *
  * <p>ClaimsList shards are tied to a specific revision and are persisted individually, then the
  * entire claims list is atomically shifted over to using the new shards by persisting the new
@@ -83,10 +84,14 @@ public class ClaimsListShard extends ImmutableObject {
   /** When the claims list was last updated. */
   DateTime creationTime;
 
-  /** A map from labels to claims keys. */
+  /** A map from labels to claims keys, or null if this is a recombined list. */
   @EmbedMap
   Map<String, String> labelsToKeys;
 
+  /** The index of labels to claims keys of a recombined list, or null if this is not one. */
+  @Ignore
+  ClaimsLabelIndex labelIndex;
+
   /** Indicates that this is a shard rather than a "full" list. */
   @Ignore
   boolean isShard = false;
@@ -142,15 +147,23 @@ public class ClaimsListShard extends ImmutableObject {
             }
           }
         }
-        return create(creationTime, ImmutableMap.copyOf(combinedLabelsToKeys));
+        ClaimsListShard instance = new ClaimsListShard();
+        instance.id = allocateId();
+        instance.creationTime = creationTime;
+        instance.labelIndex = ClaimsLabelIndex.create(combinedLabelsToKeys);
+        return instance;
       };
 
   /**
    * A cached supplier that fetches the claims list shards from Datastore and recombines them into a
    * single {@link ClaimsListShard} object.
+   *
+   * <p>Once stale, the claims list is reloaded in the background while callers keep getting the
+   * previous list, which the reloaded list then atomically replaces.
    */
   private static final Supplier<ClaimsListShard> CACHE =
-      memoizeWithShortExpiration(
+      memoizeWithRefreshAhead(
+          "claims_list",
           () -> LOADER_RETRIER.callWithRetry(LOADER_CALLABLE, IllegalStateException.class));
 
   public DateTime getCreationTime() {
@@ -159,16 +172,18 @@ public class ClaimsListShard extends ImmutableObject {
 
   /** Returns the claim key for a given domain if there is one, empty otherwise. */
   public Optional<String> getClaimKey(String label) {
-    return Optional.ofNullable(labelsToKeys.get(label));
+    return (labelIndex != null)
+        ? labelIndex.getClaimKey(label)
+        : Optional.ofNullable(labelsToKeys.get(label));
   }
 
   public ImmutableMap<String, String> getLabelsToKeys() {
-    return ImmutableMap.copyOf(labelsToKeys);
+    return (labelIndex != null) ? labelIndex.toMap() : ImmutableMap.copyOf(labelsToKeys);
   }
 
   /** Returns the number of claims. */
   public int size() {
-    return labelsToKeys.size();
+    return (labelIndex != null) ? labelIndex.size() : labelsToKeys.size();
   }
 
   /**
@@ -187,7 +202,7 @@ public class ClaimsListShard extends ImmutableObject {
 
     // Save the ClaimsList shards in separate transactions.
     Concurrent.transform(
-        CollectionUtils.partitionMap(labelsToKeys, shardSize),
+        CollectionUtils.partitionMap(getLabelsToKeys(), shardSize),
         (final ImmutableMap<String, String> labelsToKeysShard) ->
             tm()
                 .transactNew(
@@ -0,0 +1,91 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.monitoring.whitebox;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.monitoring.metrics.EventMetric;
+import com.google.monitoring.metrics.IncrementableMetric;
+import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.MetricRegistryImpl;
+import org.joda.time.Duration;
+
+/** Instrumentation for the in-memory singleton caches. */
+public final class CacheMetrics {
+
+  /** Possible outcomes of reading a value from a singleton cache. */
+  public enum LookupOutcome {
+    /** The cached value was fresh. */
+    HIT,
+
+    /** The cached value was stale, so it was returned while a refresh was kicked off. */
+    STALE_HIT,
+
+    /** There was no usable cached value, so the caller had to wait for it to be loaded. */
+    MISS
+  }
+
+  /** Possible reasons for loading a singleton cache value. */
+  public enum LoadType {
+    /** The value was loaded synchronously, blocking the caller. */
+    BLOCKING,
+
+    /** The value was loaded in the background while a stale value continued to be served. */
+    REFRESH
+  }
+
+  private static final ImmutableSet<LabelDescriptor> LOOKUP_LABEL_DESCRIPTORS =
+      ImmutableSet.of(
+          LabelDescriptor.create("cache", "Name of the cache."),
+          LabelDescriptor.create("outcome", "Outcome of the cache lookup."));
+
+  private static final ImmutableSet<LabelDescriptor> LOAD_LABEL_DESCRIPTORS =
+      ImmutableSet.of(
+          LabelDescriptor.create("cache", "Name of the cache."),
+          LabelDescriptor.create("type", "Whether the load blocked a caller or was a refresh."),
+          LabelDescriptor.create("success", "Whether the load succeeded."));
+
+  /** Metric counting the number of singleton cache lookups, by outcome. */
+  @VisibleForTesting
+  public static final IncrementableMetric cacheLookups =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/cache/lookups",
+              "Count of singleton cache lookups",
+              "count",
+              LOOKUP_LABEL_DESCRIPTORS);
+
+  /** Metric recording how long it took to load singleton cache values. */
+  @VisibleForTesting
+  public static final EventMetric cacheLoadLatency =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/cache/load_latency",
+              "Singleton cache load latency",
+              "milliseconds",
+              LOAD_LABEL_DESCRIPTORS,
+              EventMetric.DEFAULT_FITTER);
+
+  private CacheMetrics() {}
+
+  public static void recordLookup(String cacheName, LookupOutcome outcome) {
+    cacheLookups.increment(cacheName, outcome.name());
+  }
+
+  public static void recordLoad(
+      String cacheName, LoadType type, boolean success, Duration latency) {
+    cacheLoadLatency.record(latency.getMillis(), cacheName, type.name(), String.valueOf(success));
+  }
+}
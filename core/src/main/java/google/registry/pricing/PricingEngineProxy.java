@@ -16,8 +16,12 @@ package google.registry.pricing;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableSetMultimap.toImmutableSetMultimap;
 import static google.registry.util.DomainNameUtils.getTldFromDomainName;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Streams;
 import google.registry.model.pricing.PremiumPricingEngine;
 import google.registry.model.pricing.PremiumPricingEngine.DomainPrices;
 import google.registry.model.registry.Registry;
@@ -63,11 +67,34 @@ public final class PricingEngineProxy {
    * domain is under.
    */
   public static DomainPrices getPricesForDomainName(String domainName, DateTime priceTime) {
-    String tld = getTldFromDomainName(domainName);
+    return getPremiumPricingEngine(getTldFromDomainName(domainName))
+        .getDomainPrices(domainName, priceTime);
+  }
+
+  /**
+   * Returns the full {@link DomainPrices} details for each of the given domain names, pricing all
+   * of the domain names on each TLD in a single batch.
+   */
+  public static ImmutableMap<String, DomainPrices> getPricesForDomainNames(
+      Iterable<String> domainNames, DateTime priceTime) {
+    ImmutableSetMultimap<String, String> domainNamesByTld =
+        Streams.stream(domainNames)
+            .collect(
+                toImmutableSetMultimap(
+                    domainName -> getTldFromDomainName(domainName), domainName -> domainName));
+    ImmutableMap.Builder<String, DomainPrices> prices = new ImmutableMap.Builder<>();
+    for (String tld : domainNamesByTld.keySet()) {
+      prices.putAll(
+          getPremiumPricingEngine(tld).getDomainPrices(domainNamesByTld.get(tld), priceTime));
+    }
+    return prices.build();
+  }
+
+  private static PremiumPricingEngine getPremiumPricingEngine(String tld) {
     String clazz = Registry.get(tld).getPremiumPricingEngineClassName();
     PremiumPricingEngine engine = premiumPricingEngines.get(clazz);
     checkState(engine != null, "Could not load pricing engine %s for TLD %s", clazz, tld);
-    return engine.getDomainPrices(domainName, priceTime);
+    return engine;
   }
 
   private PricingEngineProxy() {}
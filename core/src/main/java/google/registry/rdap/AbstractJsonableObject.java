@@ -16,12 +16,17 @@ package google.registry.rdap;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Throwables.throwIfUnchecked;
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
 
 import com.google.common.base.Joiner;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Ordering;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonNull;
@@ -231,41 +236,81 @@ abstract class AbstractJsonableObject implements Jsonable {
     String[] value();
   }
 
-  @Override
-  public final JsonObject toJson() {
-    try {
-      JsonObjectBuilder builder = new JsonObjectBuilder();
+  /**
+   * The {@link JsonableElement} fields and methods of each class, in the order they are output.
+   *
+   * <p>Finding these requires walking the class hierarchy and reading annotations, which is far
+   * too slow to do for every object serialized, since a single RDAP search response can contain
+   * hundreds of nested objects.
+   */
+  private static final LoadingCache<Class<?>, ImmutableList<JsonableMember>>
+      JSONABLE_MEMBERS_CACHE =
+          CacheBuilder.newBuilder()
+              .build(
+                  new CacheLoader<Class<?>, ImmutableList<JsonableMember>>() {
+                    @Override
+                    public ImmutableList<JsonableMember> load(Class<?> clazz) {
+                      ImmutableList.Builder<JsonableMember> builder =
+                          new ImmutableList.Builder<>();
+                      for (Field field : getAllJsonableElementFields(clazz)) {
+                        field.setAccessible(true);
+                        builder.add(
+                            new JsonableMember(field, field.getAnnotation(JsonableElement.class)));
+                      }
+                      for (Method method : getAllJsonableElementMethods(clazz)) {
+                        method.setAccessible(true);
+                        builder.add(
+                            new JsonableMember(
+                                method, method.getAnnotation(JsonableElement.class)));
+                      }
+                      return builder.build();
+                    }
+                  });
+
+  /** The name restrictions of each class, as returned by {@link #getNameRestriction}. */
+  private static final LoadingCache<Class<?>, Optional<ImmutableSet<String>>>
+      NAME_RESTRICTIONS_CACHE =
+          CacheBuilder.newBuilder()
+              .build(CacheLoader.from(AbstractJsonableObject::getNameRestriction));
+
+  /** A {@link JsonableElement} field or method, already made accessible. */
+  private static final class JsonableMember {
+    final Member member;
+    final JsonableElement jsonableElement;
+
+    JsonableMember(Member member, JsonableElement jsonableElement) {
+      this.member = member;
+      this.jsonableElement = jsonableElement;
+    }
 
-      for (Field field : getAllJsonableElementFields()) {
-        JsonableElement jsonableElement = field.getAnnotation(JsonableElement.class);
-        Object object;
+    Object getValue(Object object) {
+      if (member instanceof Field) {
         try {
-          field.setAccessible(true);
-          object = field.get(this);
+          return ((Field) member).get(object);
         } catch (IllegalAccessException e) {
           throw new IllegalStateException(
-              String.format("Error reading value of field '%s'", field), e);
-        } finally {
-          field.setAccessible(false);
+              String.format("Error reading value of field '%s'", member), e);
         }
-        builder.add(jsonableElement, field, object);
       }
-
-      for (Method method : getAllJsonableElementMethods()) {
-        JsonableElement jsonableElement = method.getAnnotation(JsonableElement.class);
-        Object object;
-        try {
-          method.setAccessible(true);
-          object = method.invoke(this);
-        } catch (ReflectiveOperationException e) {
-          throw new IllegalStateException(
-              String.format("Error reading value of method '%s'", method), e);
-        } finally {
-          method.setAccessible(false);
-        }
-        builder.add(jsonableElement, method, object);
+      try {
+        return ((Method) member).invoke(object);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException(
+            String.format("Error reading value of method '%s'", member), e);
       }
+    }
+  }
 
+  @Override
+  public final JsonObject toJson() {
+    try {
+      JsonObjectBuilder builder = new JsonObjectBuilder();
+      for (JsonableMember jsonableMember : getCached(JSONABLE_MEMBERS_CACHE, this.getClass())) {
+        builder.add(
+            jsonableMember.jsonableElement,
+            jsonableMember.member,
+            jsonableMember.getValue(this));
+      }
       return builder.build();
     } catch (Throwable e) {
       throw new JsonableException(
@@ -273,14 +318,24 @@ abstract class AbstractJsonableObject implements Jsonable {
     }
   }
 
+  /** Gets a value from one of the per-class caches, rethrowing any error from loading it. */
+  private static <V> V getCached(LoadingCache<Class<?>, V> cache, Class<?> clazz) {
+    try {
+      return cache.getUnchecked(clazz);
+    } catch (UncheckedExecutionException e) {
+      throwIfUnchecked(e.getCause());
+      throw e;
+    }
+  }
+
   /**
-   * Get all the fields declared on this class.
+   * Get all the fields declared on the given class.
    *
    * <p>We aren't using {@link Class#getFields} because that would return only the public fields.
    */
-  private Iterable<Field> getAllJsonableElementFields() {
+  private static Iterable<Field> getAllJsonableElementFields(Class<?> objectClass) {
     ImmutableList.Builder<Field> builder = new ImmutableList.Builder<>();
-    for (Class<?> clazz = this.getClass();
+    for (Class<?> clazz = objectClass;
         clazz != null;
         clazz = clazz.getSuperclass()) {
       for (Field field : clazz.getDeclaredFields()) {
@@ -295,14 +350,14 @@ abstract class AbstractJsonableObject implements Jsonable {
   }
 
   /**
-   * Get all the methods declared on this class.
+   * Get all the methods declared on the given class.
    *
    * <p>We aren't using {@link Class#getMethods} because that would return only the public methods.
    */
-  private Iterable<Method> getAllJsonableElementMethods() {
+  private static Iterable<Method> getAllJsonableElementMethods(Class<?> objectClass) {
     ImmutableList.Builder<Method> builder = new ImmutableList.Builder<>();
     HashSet<String> seenNames = new HashSet<>();
-    for (Class<?> clazz = this.getClass();
+    for (Class<?> clazz = objectClass;
         clazz != null;
         clazz = clazz.getSuperclass()) {
       for (Method method : clazz.getDeclaredMethods()) {
@@ -386,7 +441,7 @@ abstract class AbstractJsonableObject implements Jsonable {
    * <p>If there's no @RestrictJsonNames annotation, all names are allowed.
    */
   static void verifyAllowedJsonKeyName(String name, @Nullable Member member, Class<?> clazz) {
-    Optional<ImmutableSet<String>> allowedFieldNames = getNameRestriction(clazz);
+    Optional<ImmutableSet<String>> allowedFieldNames = getCached(NAME_RESTRICTIONS_CACHE, clazz);
     if (!allowedFieldNames.isPresent()) {
       return;
     }
@@ -14,8 +14,18 @@
 
 package google.registry.rde;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import com.google.auto.value.AutoValue;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /** Container of Datastore resource marshalled by {@link RdeMarshaller}. */
 @AutoValue
@@ -32,4 +42,54 @@ public abstract class DepositFragment implements Serializable {
   }
 
   DepositFragment() {}
+
+  /**
+   * Replaces this fragment with a compact form when it is serialized.
+   *
+   * <p>Fragments are serialized when {@link RdeStagingMapper} emits them into the mapreduce
+   * shuffle, once for every pending deposit that includes them, so contacts and hosts in particular
+   * go through the shuffle many times over. Deflating the XML shrinks it several times, which
+   * directly cuts the bytes written to and read back from the shuffle.
+   */
+  Object writeReplace() {
+    return new SerializedForm(this);
+  }
+
+  /** Serialized form of a {@link DepositFragment}, with its XML deflated. */
+  private static final class SerializedForm implements Serializable {
+
+    private static final long serialVersionUID = 3512764816437316592L;
+
+    private final RdeResourceType type;
+    private final byte[] deflatedXml;
+    private final String error;
+
+    SerializedForm(DepositFragment fragment) {
+      this.type = fragment.type();
+      this.deflatedXml = deflate(fragment.xml());
+      this.error = fragment.error();
+    }
+
+    private Object readResolve() {
+      return create(type, inflate(deflatedXml), error);
+    }
+
+    private static byte[] deflate(String xml) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (OutputStream deflater = new DeflaterOutputStream(bytes)) {
+        deflater.write(xml.getBytes(UTF_8));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return bytes.toByteArray();
+    }
+
+    private static String inflate(byte[] deflatedXml) {
+      try (InputStream inflater = new InflaterInputStream(new ByteArrayInputStream(deflatedXml))) {
+        return new String(ByteStreams.toByteArray(inflater), UTF_8);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
 }
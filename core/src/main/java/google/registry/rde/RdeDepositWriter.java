@@ -0,0 +1,273 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import static com.google.appengine.api.taskqueue.QueueFactory.getQueue;
+import static com.google.appengine.api.taskqueue.TaskOptions.Builder.withUrl;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Verify.verify;
+import static google.registry.model.common.Cursor.getCursorTimeOrStartOfTime;
+import static google.registry.model.ofy.ObjectifyService.ofy;
+import static google.registry.model.transaction.TransactionManagerFactory.tm;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.appengine.tools.cloudstorage.GcsFilename;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.io.Closer;
+import google.registry.gcs.GcsUtils;
+import google.registry.model.common.Cursor;
+import google.registry.model.rde.RdeMode;
+import google.registry.model.rde.RdeNamingUtils;
+import google.registry.model.rde.RdeRevision;
+import google.registry.model.registry.Registry;
+import google.registry.request.RequestParameters;
+import google.registry.tldconfig.idn.IdnTableEnum;
+import google.registry.util.TaskQueueUtils;
+import google.registry.xjc.rdeheader.XjcRdeHeader;
+import google.registry.xjc.rdeheader.XjcRdeHeaderElement;
+import google.registry.xml.XmlException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Optional;
+import javax.annotation.concurrent.NotThreadSafe;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.joda.time.DateTime;
+
+/**
+ * Streams the XML fragments of a single escrow deposit to GCS and then rolls its cursor forward.
+ *
+ * <p>The deposit is written to a ghostryde file as fragments are handed to {@link #write}, so
+ * memory use doesn't depend on the size of the deposit. Once all fragments have been written,
+ * {@link #finish} completes the XML, writes the report and transactionally rolls the cursor
+ * forward and enqueues the upload. This is shared by {@link RdeStagingReducer}, which writes one
+ * deposit per reduce shard, and {@link RdeStagingStreamer}, which writes many at once.
+ */
+@NotThreadSafe
+final class RdeDepositWriter implements Closeable {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final PendingDeposit key;
+  private final RdeMarshaller marshaller;
+  private final GcsUtils cloudStorage;
+  private final PGPPublicKey stagingKey;
+  private final RdeCounter counter = new RdeCounter();
+  private final int revision;
+  private final String id;
+  private final GcsFilename reportFilename;
+
+  // We use a Closer to handle the stream .close, to make sure it's done correctly.
+  private final Closer closer = Closer.create();
+  private final Writer output;
+
+  private boolean failed = false;
+  private boolean closed = false;
+
+  private RdeDepositWriter(
+      PendingDeposit key,
+      RdeMarshaller marshaller,
+      GcsUtils cloudStorage,
+      String bucket,
+      PGPPublicKey stagingKey)
+      throws IOException {
+    this.key = key;
+    this.marshaller = marshaller;
+    this.cloudStorage = cloudStorage;
+    this.stagingKey = stagingKey;
+
+    // Determine some basic things about the deposit.
+    this.revision =
+        Optional.ofNullable(key.revision())
+            .orElse(RdeRevision.getNextRevision(key.tld(), key.watermark(), key.mode()));
+    this.id = RdeUtil.timestampToId(key.watermark());
+    String prefix =
+        RdeNamingUtils.makeRydeFilename(key.tld(), key.watermark(), key.mode(), 1, revision);
+    if (key.manual()) {
+      checkState(key.directoryWithTrailingSlash() != null, "Manual subdirectory not specified");
+      prefix = "manual/" + key.directoryWithTrailingSlash() + prefix;
+    }
+    GcsFilename xmlFilename = new GcsFilename(bucket, prefix + ".xml.ghostryde");
+    // This file will contain the byte length (ASCII) of the raw unencrypted XML.
+    //
+    // This is necessary because RdeUploadAction creates a tar file which requires that the length
+    // be outputted. We don't want to have to decrypt the entire ghostryde file to determine the
+    // length, so we just save it separately.
+    GcsFilename xmlLengthFilename = new GcsFilename(bucket, prefix + ".xml.length");
+    this.reportFilename = new GcsFilename(bucket, prefix + "-report.xml.ghostryde");
+
+    // Write a gigantic XML file to GCS. We'll start by opening encrypted out/err file handles.
+    logger.atInfo().log("Writing %s and %s", xmlFilename, xmlLengthFilename);
+    try {
+      OutputStream gcsOutput = closer.register(cloudStorage.openOutputStream(xmlFilename));
+      OutputStream lengthOutput =
+          closer.register(cloudStorage.openOutputStream(xmlLengthFilename));
+      OutputStream ghostrydeEncoder =
+          closer.register(Ghostryde.encoder(gcsOutput, stagingKey, lengthOutput));
+      this.output = closer.register(new OutputStreamWriter(ghostrydeEncoder, UTF_8));
+
+      // Output the top portion of the XML document.
+      output.write(
+          marshaller.makeHeader(
+              id, key.watermark(), RdeResourceType.getUris(key.mode()), revision));
+    } catch (Throwable e) {
+      throw closer.rethrow(e, IOException.class);
+    }
+  }
+
+  /** Opens the deposit files for {@code key} and writes the top of the XML document. */
+  static RdeDepositWriter open(
+      PendingDeposit key,
+      RdeMarshaller marshaller,
+      GcsUtils cloudStorage,
+      String bucket,
+      PGPPublicKey stagingKey) {
+    try {
+      return new RdeDepositWriter(key, marshaller, cloudStorage, bucket, stagingKey);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Returns the deposit being written. */
+  PendingDeposit getPendingDeposit() {
+    return key;
+  }
+
+  /** Writes a fragment emitted by {@link RdeStagingMapper} into the deposit, counting it. */
+  void write(DepositFragment fragment) {
+    checkState(!closed, "Deposit %s has already been closed", key);
+    if (!fragment.xml().isEmpty()) {
+      try {
+        output.write(fragment.xml());
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      counter.increment(fragment.type());
+    }
+    if (!fragment.error().isEmpty()) {
+      failed = true;
+      logger.atSevere().log("Fragment error: %s", fragment.error());
+    }
+  }
+
+  /**
+   * Completes the deposit, then rolls its cursor forward and enqueues the upload.
+   *
+   * <p>The cursor is left alone if any of the written fragments was broken, or if this is a
+   * deposit in manual operation.
+   */
+  void finish(TaskQueueUtils taskQueueUtils) {
+    checkState(!closed, "Deposit %s has already been closed", key);
+    final RdeMode mode = key.mode();
+    final String tld = key.tld();
+    final DateTime watermark = key.watermark();
+    XjcRdeHeader header;
+    try {
+      for (IdnTableEnum idn : IdnTableEnum.values()) {
+        output.write(marshaller.marshalIdn(idn.getTable()));
+        counter.increment(RdeResourceType.IDN);
+      }
+
+      // Output XML that says how many resources were emitted.
+      header = counter.makeHeader(tld, mode);
+      output.write(marshaller.marshalOrDie(new XjcRdeHeaderElement(header)));
+
+      // Output the bottom of the XML document.
+      output.write(marshaller.makeFooter());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      close();
+    }
+
+    // If an entity was broken, abort after writing as much logs/deposit data as possible.
+    verify(!failed, "RDE staging failed for TLD %s", tld);
+
+    // Write a tiny XML file to GCS containing some information about the deposit.
+    //
+    // This will be sent to ICANN once we're done uploading the big XML to the escrow provider.
+    if (mode == RdeMode.FULL) {
+      logger.atInfo().log("Writing %s", reportFilename);
+      try (OutputStream gcsOutput = cloudStorage.openOutputStream(reportFilename);
+          OutputStream ghostrydeEncoder = Ghostryde.encoder(gcsOutput, stagingKey)) {
+        counter.makeReport(id, watermark, header, revision).marshal(ghostrydeEncoder, UTF_8);
+      } catch (IOException | XmlException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    // Now that we're done, kick off RdeUploadAction and roll forward the cursor transactionally.
+    if (key.manual()) {
+      logger.atInfo().log("Manual operation; not advancing cursor or enqueuing upload task");
+      return;
+    }
+    tm()
+        .transact(
+            () -> {
+              Registry registry = Registry.get(tld);
+              DateTime position =
+                  getCursorTimeOrStartOfTime(
+                      ofy().load().key(Cursor.createKey(key.cursor(), registry)).now());
+              checkState(key.interval() != null, "Interval must be present");
+              DateTime newPosition = key.watermark().plus(key.interval());
+              if (!position.isBefore(newPosition)) {
+                logger.atWarning().log("Cursor has already been rolled forward.");
+                return;
+              }
+              verify(
+                  position.equals(key.watermark()),
+                  "Partial ordering of RDE deposits broken: %s %s",
+                  position,
+                  key);
+              ofy().save().entity(Cursor.create(key.cursor(), newPosition, registry)).now();
+              logger.atInfo().log(
+                  "Rolled forward %s on %s cursor to %s", key.cursor(), tld, newPosition);
+              RdeRevision.saveRevision(tld, watermark, mode, revision);
+              if (mode == RdeMode.FULL) {
+                taskQueueUtils.enqueue(
+                    getQueue("rde-upload"),
+                    withUrl(RdeUploadAction.PATH).param(RequestParameters.PARAM_TLD, tld));
+              } else {
+                taskQueueUtils.enqueue(
+                    getQueue("brda"),
+                    withUrl(BrdaCopyAction.PATH)
+                        .param(RequestParameters.PARAM_TLD, tld)
+                        .param(RdeModule.PARAM_WATERMARK, watermark.toString()));
+              }
+            });
+  }
+
+  /**
+   * Closes the deposit files without rolling the cursor forward.
+   *
+   * <p>Cloud Storage file handles get committed on close, so a deposit abandoned halfway through
+   * leaves a truncated file behind. It is overwritten when the deposit is retried.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      closer.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -49,6 +49,7 @@ public abstract class RdeModule {
   public static final String PARAM_MODE = "mode";
   public static final String PARAM_REVISION = "revision";
   public static final String PARAM_LENIENT = "lenient";
+  public static final String PARAM_STREAMING = "streaming";
 
   @Provides
   @Parameter(PARAM_WATERMARK)
@@ -92,6 +93,12 @@ public abstract class RdeModule {
     return extractBooleanParameter(req, PARAM_REVISION);
   }
 
+  @Provides
+  @Parameter(PARAM_STREAMING)
+  static boolean provideStreaming(HttpServletRequest req) {
+    return extractBooleanParameter(req, PARAM_STREAMING);
+  }
+
   @Provides
   @Named("brda")
   static Queue provideQueueBrda() {
@@ -82,6 +82,15 @@ import org.joda.time.Duration;
  * <p>To generate escrow deposits manually and locally, use the {@code nomulus} tool command {@code
  * GenerateEscrowDepositCommand}.
  *
+ * <h3>Streaming Operation</h3>
+ *
+ * <p>If the {@code streaming} parameter is present and true, the deposits are staged by {@link
+ * RdeStagingStreamer} within the request instead of by a MapReduce. It makes a single pass over
+ * every {@link EppResource} and writes each XML fragment straight to the ghostryde outputs of the
+ * deposits that need it, rather than emitting a copy per deposit into the MapReduce shuffle. The
+ * deposits, cursors and upload tasks it produces are the same. It can be combined with manual
+ * operation.
+ *
  * <h3>Logging</h3>
  *
  * <p>To identify the reduce worker request for a deposit in App Engine's log viewer, you can use
@@ -205,6 +214,7 @@ public final class RdeStagingAction implements Runnable {
   @Inject Clock clock;
   @Inject PendingDepositChecker pendingDepositChecker;
   @Inject RdeStagingReducer.Factory reducerFactory;
+  @Inject RdeStagingStreamer streamer;
   @Inject Response response;
   @Inject MapreduceRunner mrRunner;
   @Inject @Config("transactionCooldown") Duration transactionCooldown;
@@ -215,6 +225,7 @@ public final class RdeStagingAction implements Runnable {
   @Inject @Parameter(RdeModule.PARAM_WATERMARKS) ImmutableSet<DateTime> watermarks;
   @Inject @Parameter(RdeModule.PARAM_REVISION) Optional<Integer> revision;
   @Inject @Parameter(RdeModule.PARAM_LENIENT) boolean lenient;
+  @Inject @Parameter(RdeModule.PARAM_STREAMING) boolean streaming;
 
   @Inject RdeStagingAction() {}
 
@@ -233,6 +244,11 @@ public final class RdeStagingAction implements Runnable {
       logger.atInfo().log("Pending deposit: %s", pending);
     }
     ValidationMode validationMode = lenient ? LENIENT : STRICT;
+    if (streaming) {
+      streamer.stage(validationMode, pendings);
+      response.setPayload("Staged escrow deposits without a mapreduce");
+      return;
+    }
     RdeStagingMapper mapper = new RdeStagingMapper(validationMode, pendings);
     RdeStagingReducer reducer = reducerFactory.create(validationMode);
 
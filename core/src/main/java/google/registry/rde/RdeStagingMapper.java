@@ -36,6 +36,7 @@ import google.registry.xml.ValidationMode;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import javax.annotation.Nullable;
 import org.joda.time.DateTime;
 
 /** Mapper for {@link RdeStagingAction}. */
@@ -54,6 +55,28 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
 
   @Override
   public final void map(final EppResource resource) {
+    marshalForPendingDeposits(
+        resource,
+        new FragmentSink() {
+          @Override
+          public void emit(PendingDeposit pending, DepositFragment fragment) {
+            RdeStagingMapper.this.emit(pending, fragment);
+          }
+
+          @Override
+          public void incrementCounter(String name, long delta) {
+            getContext().incrementCounter(name, delta);
+          }
+        });
+  }
+
+  /**
+   * Marshals a resource into an XML fragment for each pending deposit it belongs in.
+   *
+   * <p>This is where the fragments fan out to the deposits, whether they then go through the
+   * mapreduce shuffle or are written out directly by {@link RdeStagingStreamer}.
+   */
+  void marshalForPendingDeposits(@Nullable EppResource resource, FragmentSink sink) {
     // The mapreduce has one special input that provides a null resource. This is used as a sentinel
     // to indicate that we should emit the Registrar objects on this map shard, as these need to be
     // added to every deposit. It is important that these be emitted as part of the mapreduce and
@@ -65,11 +88,11 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
       for (Registrar registrar : Registrar.loadAllCached()) {
         DepositFragment fragment = marshaller.marshalRegistrar(registrar);
         for (PendingDeposit pending : pendings.values()) {
-          emit(pending, fragment);
+          sink.emit(pending, fragment);
           registrarsEmitted++;
         }
       }
-      getContext().incrementCounter("registrars emitted", registrarsEmitted);
+      sink.incrementCounter("registrars emitted", registrarsEmitted);
       return;
     }
 
@@ -77,7 +100,7 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
     if (!(resource instanceof ContactResource
         || resource instanceof DomainBase
         || resource instanceof HostResource)) {
-      getContext().incrementCounter("polymorphic entities skipped");
+      sink.incrementCounter("polymorphic entities skipped", 1);
       return;
     }
 
@@ -85,7 +108,7 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
     if (nullToEmpty(resource.getCreationClientId()).startsWith("prober-")
         || nullToEmpty(resource.getPersistedCurrentSponsorClientId()).startsWith("prober-")
         || nullToEmpty(resource.getLastEppUpdateClientId()).startsWith("prober-")) {
-      getContext().incrementCounter("prober data skipped");
+      sink.incrementCounter("prober data skipped", 1);
       return;
     }
 
@@ -94,13 +117,13 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
     if (resource instanceof DomainBase) {
       String tld = ((DomainBase) resource).getTld();
       if (!pendings.containsKey(tld)) {
-        getContext().incrementCounter("DomainBase of an unneeded TLD skipped");
+        sink.incrementCounter("DomainBase of an unneeded TLD skipped", 1);
         return;
       }
-      getContext().incrementCounter("DomainBase instances");
+      sink.incrementCounter("DomainBase instances", 1);
       tlds = ImmutableSet.of(tld);
     } else {
-      getContext().incrementCounter("non-DomainBase instances");
+      sink.incrementCounter("non-DomainBase instances", 1);
       // Contacts and hosts get emitted on all TLDs, even if domains don't reference them.
       tlds = pendings.keySet();
     }
@@ -133,15 +156,15 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
         Optional<DepositFragment> fragment =
             fragmenter.marshal(pending.watermark(), pending.mode());
         if (fragment.isPresent()) {
-          emit(pending, fragment.get());
+          sink.emit(pending, fragment.get());
           resourcesEmitted++;
         }
       }
     }
-    getContext().incrementCounter("resources emitted", resourcesEmitted);
-    getContext().incrementCounter("fragmenter cache hits", fragmenter.cacheHits);
-    getContext().incrementCounter("fragmenter resources not found", fragmenter.resourcesNotFound);
-    getContext().incrementCounter("fragmenter resources found", fragmenter.resourcesFound);
+    sink.incrementCounter("resources emitted", resourcesEmitted);
+    sink.incrementCounter("fragmenter cache hits", fragmenter.cacheHits);
+    sink.incrementCounter("fragmenter resources not found", fragmenter.resourcesNotFound);
+    sink.incrementCounter("fragmenter resources found", fragmenter.resourcesFound);
 
     // Avoid running out of memory.
     ofy().clearSessionCache();
@@ -202,6 +225,16 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
     }
   }
 
+  /** Receives the fragments marshalled by {@link #marshalForPendingDeposits}. */
+  interface FragmentSink {
+
+    /** Adds a fragment to a pending deposit. */
+    void emit(PendingDeposit pending, DepositFragment fragment);
+
+    /** Increments a counter describing the resources that were marshalled. */
+    void incrementCounter(String name, long delta);
+  }
+
   /** Map key for {@link Fragmenter} cache. */
   @AutoValue
   abstract static class WatermarkModePair {
@@ -0,0 +1,223 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static google.registry.mapreduce.inputs.RetryingInputReader.startQueryAt;
+import static google.registry.model.ofy.ObjectifyService.ofy;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.Streams;
+import com.google.common.flogger.FluentLogger;
+import com.googlecode.objectify.Key;
+import google.registry.config.RegistryConfig.Config;
+import google.registry.gcs.GcsUtils;
+import google.registry.keyring.api.KeyModule;
+import google.registry.model.EppResource;
+import google.registry.model.index.EppResourceIndex;
+import google.registry.model.index.EppResourceIndexBucket;
+import google.registry.model.rde.RdeMode;
+import google.registry.rde.RdeStagingMapper.FragmentSink;
+import google.registry.request.lock.LockHandler;
+import google.registry.util.TaskQueueUtils;
+import google.registry.xml.ValidationMode;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import javax.inject.Inject;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.joda.time.Duration;
+
+/**
+ * Stages escrow deposits for {@link RdeStagingAction} in a single pass, without a mapreduce.
+ *
+ * <p>The mapreduce emits a copy of every fragment for each deposit it belongs in, and all of those
+ * copies go through the shuffle before a reducer writes them out. This instead opens a ghostryde
+ * output for every pending deposit up front, then walks every {@link EppResourceIndexBucket} once
+ * and writes each resource's fragments straight to the outputs of the deposits that need it.
+ * Nothing is shuffled, and memory use is bounded by one batch of resources plus the buffers of
+ * the open outputs, however large the registry is.
+ *
+ * <p>Each deposit is written under the same lock that {@link RdeStagingReducer} takes, so the two
+ * can't stage the same deposit at once. Deposits whose lock is in use are skipped and retried on
+ * the next run. The whole pass has to fit in the {@code rdeStagingLockTimeout} lock lease.
+ */
+public final class RdeStagingStreamer {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /**
+   * The number of resources loaded from Datastore at a time.
+   *
+   * <p>Resources are a few kilobytes each and at most 1MB, so this keeps a batch well within the
+   * memory of a backend instance.
+   */
+  private static final int DEFAULT_BATCH_SIZE = 100;
+
+  @Inject TaskQueueUtils taskQueueUtils;
+  @Inject LockHandler lockHandler;
+  @Inject GcsUtils cloudStorage;
+  @Inject @Config("rdeBucket") String bucket;
+  @Inject @Config("rdeStagingLockTimeout") Duration lockTimeout;
+  @Inject @KeyModule.Key("rdeStagingEncryptionKey") PGPPublicKey stagingKey;
+
+  @VisibleForTesting int batchSize = DEFAULT_BATCH_SIZE;
+
+  @Inject RdeStagingStreamer() {}
+
+  /** Stages the given deposits, skipping any whose lock is held by another staging run. */
+  void stage(ValidationMode validationMode, ImmutableSetMultimap<String, PendingDeposit> pendings) {
+    // Deposits of the same TLD and mode share a lock, so group them to take each lock only once.
+    ImmutableListMultimap<Map.Entry<String, RdeMode>, PendingDeposit> pendingsByLock =
+        Multimaps.index(
+            pendings.values(), pending -> Maps.immutableEntry(pending.tld(), pending.mode()));
+    stageWithLocks(
+        validationMode, ImmutableList.copyOf(pendingsByLock.asMap().values()), ImmutableList.of());
+  }
+
+  /** Takes the lock of each group of deposits in turn, then stages all the locked deposits. */
+  private void stageWithLocks(
+      ValidationMode validationMode,
+      ImmutableList<Collection<PendingDeposit>> lockGroups,
+      ImmutableList<PendingDeposit> locked) {
+    if (lockGroups.isEmpty()) {
+      if (!locked.isEmpty()) {
+        streamDeposits(validationMode, Multimaps.index(locked, PendingDeposit::tld));
+      }
+      return;
+    }
+    Collection<PendingDeposit> group = lockGroups.get(0);
+    ImmutableList<Collection<PendingDeposit>> remainingGroups =
+        lockGroups.subList(1, lockGroups.size());
+    PendingDeposit first = group.iterator().next();
+    Callable<Void> lockRunner =
+        () -> {
+          stageWithLocks(
+              validationMode,
+              remainingGroups,
+              new ImmutableList.Builder<PendingDeposit>().addAll(locked).addAll(group).build());
+          return null;
+        };
+    String lockName = String.format("RdeStaging %s", first.mode());
+    if (!lockHandler.executeWithLocks(lockRunner, first.tld(), lockTimeout, lockName)) {
+      logger.atWarning().log("Lock in use for %s: %s", first.tld(), lockName);
+      stageWithLocks(validationMode, remainingGroups, locked);
+    }
+  }
+
+  private void streamDeposits(
+      ValidationMode validationMode, ImmutableListMultimap<String, PendingDeposit> pendings) {
+    RdeMarshaller marshaller = new RdeMarshaller(validationMode);
+    RdeStagingMapper fragmenter =
+        new RdeStagingMapper(validationMode, ImmutableSetMultimap.copyOf(pendings));
+    Map<PendingDeposit, RdeDepositWriter> writers = new LinkedHashMap<>();
+    Map<String, Long> counters = new TreeMap<>();
+    FragmentSink sink =
+        new FragmentSink() {
+          @Override
+          public void emit(PendingDeposit pending, DepositFragment fragment) {
+            writers.get(pending).write(fragment);
+          }
+
+          @Override
+          public void incrementCounter(String name, long delta) {
+            counters.merge(name, delta, Long::sum);
+          }
+        };
+    try {
+      for (PendingDeposit pending : pendings.values()) {
+        logger.atInfo().log("RdeStagingStreamer %s", pending);
+        writers.put(
+            pending, RdeDepositWriter.open(pending, marshaller, cloudStorage, bucket, stagingKey));
+      }
+      // Registrars are included in every deposit; the mapper marshals them for a null resource.
+      fragmenter.marshalForPendingDeposits(null, sink);
+      for (Key<EppResourceIndexBucket> bucketKey : EppResourceIndexBucket.getAllBuckets()) {
+        streamBucket(bucketKey, fragmenter, sink);
+      }
+      logger.atInfo().log("Streamed all resources: %s", counters);
+      finishDeposits(writers.values());
+    } finally {
+      // Deposits that failed partway through are closed without rolling their cursors forward.
+      writers.values().forEach(RdeDepositWriter::close);
+    }
+  }
+
+  /** Marshals every resource in a bucket, loading them a batch at a time. */
+  private void streamBucket(
+      Key<EppResourceIndexBucket> bucketKey, RdeStagingMapper fragmenter, FragmentSink sink) {
+    Cursor cursor = null;
+    int resourcesInBatch;
+    do {
+      QueryResultIterator<EppResourceIndex> indexes =
+          startQueryAt(
+                  ofy().load().type(EppResourceIndex.class).ancestor(bucketKey).limit(batchSize),
+                  cursor)
+              .iterator();
+      // This cast is safe because, in Objectify, Key<? extends EppResource> can also be
+      // treated as a Key<EppResource>.
+      @SuppressWarnings("unchecked")
+      ImmutableList<Key<EppResource>> keys =
+          Streams.stream(indexes)
+              .map(index -> (Key<EppResource>) index.getKey())
+              .collect(toImmutableList());
+      cursor = indexes.getCursor();
+      resourcesInBatch = keys.size();
+      Map<Key<EppResource>, EppResource> resources = ofy().load().keys(keys);
+      for (Key<EppResource> key : keys) {
+        EppResource resource = resources.get(key);
+        if (resource == null) {
+          logger.atSevere().log("EppResourceIndex key %s points at a missing resource", key);
+          continue;
+        }
+        fragmenter.marshalForPendingDeposits(resource, sink);
+      }
+    } while (resourcesInBatch == batchSize);
+  }
+
+  /**
+   * Finishes every deposit, even if some of them fail.
+   *
+   * <p>A broken entity only fails the deposits that contain it, so the others still get their
+   * cursors rolled forward. The first failure is rethrown once all deposits have been finished.
+   */
+  private void finishDeposits(Collection<RdeDepositWriter> writers) {
+    RuntimeException failure = null;
+    for (RdeDepositWriter writer : writers) {
+      try {
+        writer.finish(taskQueueUtils);
+      } catch (RuntimeException e) {
+        logger.atSevere().withCause(e).log("Failed to stage %s", writer.getPendingDeposit());
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+}
@@ -20,6 +20,7 @@ import static com.google.common.base.Throwables.throwIfUnchecked;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.util.concurrent.UncheckedExecutionException;
@@ -108,12 +109,19 @@ public class LockHandlerImpl implements LockHandler {
     return Lock.acquire(lockName, tld, leaseLength, requestStatusChecker, true);
   }
 
+  /** Allows injection of mock Locks in tests. */
+  @VisibleForTesting
+  Optional<ImmutableList<Lock>> acquireAll(
+      ImmutableSortedSet<String> lockNames, @Nullable String tld, Duration leaseLength) {
+    return Lock.acquireAll(lockNames, tld, leaseLength, requestStatusChecker, true);
+  }
+
   /** A {@link Callable} that acquires and releases a lock around a delegate {@link Callable}. */
   private class LockingCallable implements Callable<Boolean> {
     final Callable<Void> delegate;
     @Nullable final String tld;
     final Duration leaseLength;
-    final Set<String> lockNames;
+    final ImmutableSortedSet<String> lockNames;
 
     LockingCallable(
         Callable<Void> delegate, String tld, Duration leaseLength, String... lockNames) {
@@ -129,14 +137,25 @@ public class LockHandlerImpl implements LockHandler {
     public Boolean call() throws Exception {
       Set<Lock> acquiredLocks = new HashSet<>();
       try {
-        for (String lockName : lockNames) {
-          Optional<Lock> lock = acquire(lockName, tld, leaseLength);
-          if (!lock.isPresent()) {
-            logger.atInfo().log("Couldn't acquire lock named: %s for TLD: %s", lockName, tld);
+        if (lockNames.size() > 1 && lockNames.size() <= Lock.MAX_LOCKS_PER_TRANSACTION) {
+          // Acquire all of the locks in a single transaction, rather than one transaction each.
+          Optional<ImmutableList<Lock>> locks = acquireAll(lockNames, tld, leaseLength);
+          if (!locks.isPresent()) {
+            logger.atInfo().log("Couldn't acquire locks named: %s for TLD: %s", lockNames, tld);
             return false;
           }
-          logger.atInfo().log("Acquired lock: %s", lock);
-          acquiredLocks.add(lock.get());
+          logger.atInfo().log("Acquired locks: %s", locks.get());
+          acquiredLocks.addAll(locks.get());
+        } else {
+          for (String lockName : lockNames) {
+            Optional<Lock> lock = acquire(lockName, tld, leaseLength);
+            if (!lock.isPresent()) {
+              logger.atInfo().log("Couldn't acquire lock named: %s for TLD: %s", lockName, tld);
+              return false;
+            }
+            logger.atInfo().log("Acquired lock: %s", lock);
+            acquiredLocks.add(lock.get());
+          }
         }
         delegate.call();
         return true;
@@ -0,0 +1,84 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.tldconfig.idn;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.errorprone.annotations.Immutable;
+
+/**
+ * A compact, immutable set of Unicode codepoints, stored as a two-level bitmap.
+ *
+ * <p>The codepoint space is split into blocks of 256, and each block that contains any codepoint in
+ * the set gets its own 256-bit bitmap. Blocks with nothing in them are left null. IDN tables only
+ * ever cover a handful of scripts, so this is much smaller than a flat bitmap of the whole space,
+ * and lookups are two array reads with no boxing.
+ */
+@Immutable
+final class CodepointSet {
+
+  private static final int BLOCK_SHIFT = 8;
+  private static final int WORDS_PER_BLOCK = (1 << BLOCK_SHIFT) / Long.SIZE;
+  private static final int NUM_BLOCKS = (Character.MAX_CODE_POINT + 1) >>> BLOCK_SHIFT;
+
+  /** Bitmaps of the codepoints in each block, or null for blocks that contain none. */
+  @SuppressWarnings("Immutable") // The arrays are never modified once the set is built.
+  private final long[][] blocks;
+
+  private CodepointSet(long[][] blocks) {
+    this.blocks = blocks;
+  }
+
+  /** Returns true if the given codepoint is in this set. */
+  boolean contains(int codepoint) {
+    if (codepoint < 0 || codepoint > Character.MAX_CODE_POINT) {
+      return false;
+    }
+    long[] block = blocks[codepoint >>> BLOCK_SHIFT];
+    // Shifting a long only uses the low six bits of the distance, i.e. the codepoint's bit index.
+    return block != null
+        && (block[(codepoint >>> 6) & (WORDS_PER_BLOCK - 1)] & (1L << codepoint)) != 0;
+  }
+
+  /** A builder for {@link CodepointSet}. */
+  static final class Builder {
+
+    private final long[][] blocks = new long[NUM_BLOCKS][];
+
+    /** Adds a codepoint to the set. */
+    Builder add(int codepoint) {
+      checkArgument(
+          codepoint >= 0 && codepoint <= Character.MAX_CODE_POINT,
+          "Invalid codepoint: %s",
+          codepoint);
+      int blockIndex = codepoint >>> BLOCK_SHIFT;
+      if (blocks[blockIndex] == null) {
+        blocks[blockIndex] = new long[WORDS_PER_BLOCK];
+      }
+      blocks[blockIndex][(codepoint >>> 6) & (WORDS_PER_BLOCK - 1)] |= 1L << codepoint;
+      return this;
+    }
+
+    CodepointSet build() {
+      long[][] copy = new long[NUM_BLOCKS][];
+      for (int i = 0; i < NUM_BLOCKS; i++) {
+        if (blocks[i] != null) {
+          copy[i] = blocks[i].clone();
+        }
+      }
+      return new CodepointSet(copy);
+    }
+  }
+}
@@ -20,6 +20,7 @@ import static google.registry.tldconfig.idn.IdnTableEnum.JA;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import google.registry.util.Idn;
+import java.util.Arrays;
 import java.util.Optional;
 
 /** Validates whether a given IDN label can be provisioned for a particular TLD. */
@@ -49,13 +50,34 @@ public final class IdnLabelValidator {
    *
    * <p>A label is valid if it is considered valid by at least one configured IDN table for that
    * TLD. If no match is found, an absent value is returned.
+   *
+   * <p>The label's codepoints are checked against all of the TLD's tables in a single pass, which
+   * stops early once no table is left that could match.
    */
   public Optional<String> findValidIdnTableForTld(String label, String tld) {
     String unicodeString = Idn.toUnicode(label);
-    for (IdnTableEnum idnTable :
-        Optional.ofNullable(idnTableListsPerTld.get(tld)).orElse(DEFAULT_IDN_TABLES)) {
-      if (idnTable.getTable().isValidLabel(unicodeString)) {
-        return Optional.of(idnTable.getTable().getName());
+    ImmutableList<IdnTableEnum> idnTables =
+        Optional.ofNullable(idnTableListsPerTld.get(tld)).orElse(DEFAULT_IDN_TABLES);
+    boolean[] isCandidate = new boolean[idnTables.size()];
+    Arrays.fill(isCandidate, true);
+    int numCandidates = idnTables.size();
+    final int length = unicodeString.length();
+    for (int i = 0; i < length && numCandidates > 0; ) {
+      int codepoint = unicodeString.codePointAt(i);
+      for (int t = 0; t < isCandidate.length; t++) {
+        if (isCandidate[t] && !idnTables.get(t).getTable().isValidCodepoint(codepoint)) {
+          isCandidate[t] = false;
+          numCandidates--;
+        }
+      }
+      // Some codepoints take up more than one character in Java strings (e.g. high and low
+      // surrogates).
+      i += Character.charCount(codepoint);
+    }
+    for (int t = 0; t < isCandidate.length; t++) {
+      IdnTable idnTable = idnTables.get(t).getTable();
+      if (isCandidate[t] && idnTable.isValidLabelForLanguage(unicodeString)) {
+        return Optional.of(idnTable.getName());
       }
     }
     return Optional.empty();
@@ -14,54 +14,359 @@
 
 package google.registry.tools;
 
-import com.google.common.collect.ImmutableSet;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.io.RecursiveDeleteOption.ALLOW_INSECURE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
-import com.google.common.collect.Sets.SetView;
+import com.google.common.collect.Streams;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
-/** Compare two database backups. */
+/**
+ * Compare two database backups.
+ *
+ * <p>Backups can be far larger than the heap, so they are never loaded in full. Instead, the
+ * records of each backup are streamed and spread across a number of partition files on local disk
+ * by a hash of their entity key, so that any two matching entities end up in the same partition.
+ * The partitions are then diffed independently and in parallel.
+ *
+ * <p>The number of partitions grows with the size of the backups: any partition that ends up much
+ * larger than the target size (because there are more of them than can be written at once) is split
+ * again, by a different hash, before it is diffed. Each diff therefore only needs enough memory for
+ * about twice the target size, whatever the size of the backups.
+ */
 class CompareDbBackups {
 
+  /** The target number of raw record bytes per partition, which bounds the memory used. */
+  private static final long PARTITION_SIZE_BYTES = 16L * 1024 * 1024;
+
+  /** The maximum number of partitions per split, which bounds the number of files open at once. */
+  private static final int MAX_PARTITIONS_PER_SPLIT = 512;
+
+  /**
+   * The maximum number of times that a partition is split again.
+   *
+   * <p>This is far more than backups of any realistic size need. It only stops partitions made up
+   * of records whose keys all have the same hash from being split forever.
+   */
+  private static final int MAX_SPLIT_DEPTH = 4;
+
+  private final long partitionSizeBytes;
+  private final int maxPartitionsPerSplit;
+
+  private final AtomicLong count1 = new AtomicLong();
+  private final AtomicLong count2 = new AtomicLong();
+  private final AtomicLong removedCount = new AtomicLong();
+  private final AtomicLong addedCount = new AtomicLong();
+  private final AtomicLong largestDiffedPartitionBytes = new AtomicLong();
+
+  @VisibleForTesting
+  CompareDbBackups(long partitionSizeBytes, int maxPartitionsPerSplit) {
+    checkArgument(partitionSizeBytes > 0, "Partition size must be positive");
+    checkArgument(maxPartitionsPerSplit > 1, "Must be able to split into multiple partitions");
+    this.partitionSizeBytes = partitionSizeBytes;
+    this.maxPartitionsPerSplit = maxPartitionsPerSplit;
+  }
+
   public static void main(String[] args) {
     if (args.length != 2) {
       System.err.println("Usage: compare_db_backups <directory1> <directory2>");
       return;
     }
 
-    ImmutableSet<ComparableEntity> entities1 =
-        new RecordAccumulator().readDirectory(new File(args[0])).getComparableEntitySet();
-    ImmutableSet<ComparableEntity> entities2 =
-        new RecordAccumulator().readDirectory(new File(args[1])).getComparableEntitySet();
+    new CompareDbBackups(PARTITION_SIZE_BYTES, MAX_PARTITIONS_PER_SPLIT)
+        .compare(new File(args[0]), new File(args[1]), System.out);
+  }
+
+  /** Compares the backups in the two directories, printing the differences to {@code out}. */
+  @VisibleForTesting
+  void compare(File dir1, File dir2, PrintStream out) {
+    ImmutableList<Path> files1 = RecordAccumulator.listFiles(dir1);
+    ImmutableList<Path> files2 = RecordAccumulator.listFiles(dir2);
+    int numPartitions = getNumPartitions(totalSize(files1) + totalSize(files2));
+
+    Path tempDir = null;
+    try {
+      tempDir = Files.createTempDirectory("compare_db_backups");
+      Path partitions1 = Files.createDirectory(tempDir.resolve("first"));
+      Path partitions2 = Files.createDirectory(tempDir.resolve("second"));
+      split(readRecords(files1), partitions1, numPartitions, 0);
+      split(readRecords(files2), partitions2, numPartitions, 0);
+
+      // Diff each partition, spooling the differences to disk so that the totals can be printed
+      // before the differences themselves.
+      Path removedFile = tempDir.resolve("removed");
+      Path addedFile = tempDir.resolve("added");
+      try (Writer removedWriter = Files.newBufferedWriter(removedFile, UTF_8);
+          Writer addedWriter = Files.newBufferedWriter(addedFile, UTF_8)) {
+        IntStream.range(0, numPartitions)
+            .parallel()
+            .forEach(
+                i ->
+                    diffPartition(
+                        partitionFile(partitions1, i),
+                        partitionFile(partitions2, i),
+                        0,
+                        removedWriter,
+                        addedWriter));
+      }
+
+      printHeader(
+          out,
+          String.format("First backup: %d records", count1.get()),
+          String.format("Second backup: %d records", count2.get()));
+
+      if (removedCount.get() > 0) {
+        printHeader(out, removedCount.get() + " records were removed:");
+        Files.copy(removedFile, out);
+      }
+
+      if (addedCount.get() > 0) {
+        printHeader(out, addedCount.get() + " records were added:");
+        Files.copy(addedFile, out);
+      }
+      out.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      if (tempDir != null) {
+        try {
+          MoreFiles.deleteRecursively(tempDir, ALLOW_INSECURE);
+        } catch (IOException e) {
+          System.err.println("Failed to delete temporary directory " + tempDir);
+        }
+      }
+    }
+  }
+
+  /** Returns the raw size in bytes of the largest pair of partitions diffed so far. */
+  @VisibleForTesting
+  long getLargestDiffedPartitionBytes() {
+    return largestDiffedPartitionBytes.get();
+  }
+
+  /** Returns the number of partitions to split the given number of raw record bytes into. */
+  private int getNumPartitions(long sizeBytes) {
+    return (int) Math.min(maxPartitionsPerSplit, 1 + sizeBytes / partitionSizeBytes);
+  }
+
+  /**
+   * Diffs a pair of corresponding partition files, one from each backup.
+   *
+   * <p>If the pair is too large to diff in memory, both partitions are first split further into
+   * pairs of sub-partitions, which are diffed in turn.
+   */
+  private void diffPartition(
+      Path partition1, Path partition2, int depth, Writer removedWriter, Writer addedWriter) {
+    try {
+      long size = Files.size(partition1) + Files.size(partition2);
+      if (size > 2 * partitionSizeBytes && depth < MAX_SPLIT_DEPTH) {
+        int numSubpartitions = getNumPartitions(size);
+        Path subpartitions1 = splitPartition(partition1, numSubpartitions, depth + 1);
+        Path subpartitions2 = splitPartition(partition2, numSubpartitions, depth + 1);
+        for (int i = 0; i < numSubpartitions; i++) {
+          diffPartition(
+              partitionFile(subpartitions1, i),
+              partitionFile(subpartitions2, i),
+              depth + 1,
+              removedWriter,
+              addedWriter);
+        }
+        return;
+      }
+      largestDiffedPartitionBytes.accumulateAndGet(size, Math::max);
+      Set<ComparableEntity> entities1 = readEntities(partition1);
+      Set<ComparableEntity> entities2 = readEntities(partition2);
+      count1.addAndGet(entities1.size());
+      count2.addAndGet(entities2.size());
+      // Calculate the entities added and removed.
+      removedCount.addAndGet(write(removedWriter, Sets.difference(entities1, entities2)));
+      addedCount.addAndGet(write(addedWriter, Sets.difference(entities2, entities1)));
+      Files.delete(partition1);
+      Files.delete(partition2);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Splits a partition file into sub-partitions, in a new directory next to it, and deletes it.
+   *
+   * @return the directory of the sub-partitions
+   */
+  private static Path splitPartition(Path partition, int numSubpartitions, int depth)
+      throws IOException {
+    Path subpartitionDir =
+        Files.createDirectory(partition.resolveSibling(partition.getFileName() + "-split"));
+    split(readPartition(partition), subpartitionDir, numSubpartitions, depth);
+    Files.delete(partition);
+    return subpartitionDir;
+  }
 
-    // Calculate the entities added and removed.
-    SetView<ComparableEntity> added = Sets.difference(entities2, entities1);
-    SetView<ComparableEntity> removed = Sets.difference(entities1, entities2);
+  private static long totalSize(ImmutableList<Path> files) {
+    long size = 0;
+    for (Path file : files) {
+      size += file.toFile().length();
+    }
+    return size;
+  }
 
-    printHeader(
-        String.format("First backup: %d records", entities1.size()),
-        String.format("Second backup: %d records", entities2.size()));
+  /** Returns a stream of the records of all of the files, which are read in parallel. */
+  private static Stream<HashedRecord> readRecords(ImmutableList<Path> files) {
+    return files
+        .parallelStream()
+        .flatMap(RecordAccumulator::streamRecords)
+        .map(
+            record -> {
+              int keyHash = RecordAccumulator.parseEntity(record).getKey().hashCode();
+              return new HashedRecord(keyHash, record);
+            });
+  }
 
-    if (!removed.isEmpty()) {
-      printHeader(removed.size() + " records were removed:");
-      for (ComparableEntity entity : removed) {
-        System.out.println(entity);
+  /**
+   * Spreads the records across partition files in the given directory, by a hash of their entity
+   * key that depends on the depth of the split.
+   *
+   * <p>A different hash is used at each depth, so that the records of a partition that is split
+   * again are spread evenly across its sub-partitions.
+   */
+  private static void split(
+      Stream<HashedRecord> records, Path partitionDir, int numPartitions, int depth)
+      throws IOException {
+    DataOutputStream[] partitions = new DataOutputStream[numPartitions];
+    try (Stream<HashedRecord> closingRecords = records) {
+      for (int i = 0; i < numPartitions; i++) {
+        partitions[i] =
+            new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(partitionFile(partitionDir, i))));
+      }
+      closingRecords.forEach(
+          record -> {
+            int hash = Hashing.murmur3_32(depth).hashInt(record.keyHash).asInt();
+            DataOutputStream partition = partitions[Math.floorMod(hash, numPartitions)];
+            synchronized (partition) {
+              try {
+                partition.writeInt(record.keyHash);
+                partition.writeInt(record.bytes.length);
+                partition.write(record.bytes);
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            }
+          });
+    } finally {
+      for (DataOutputStream partition : partitions) {
+        if (partition != null) {
+          partition.close();
+        }
       }
     }
+  }
+
+  /**
+   * Returns a lazily read stream of the records in a single partition file.
+   *
+   * <p>The stream must be closed to release the underlying file.
+   */
+  private static Stream<HashedRecord> readPartition(Path partition) throws IOException {
+    DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(partition)));
+    return Streams.stream(
+            new AbstractIterator<HashedRecord>() {
+              @Override
+              protected HashedRecord computeNext() {
+                try {
+                  int keyHash;
+                  try {
+                    keyHash = in.readInt();
+                  } catch (EOFException e) {
+                    return endOfData();
+                  }
+                  byte[] bytes = new byte[in.readInt()];
+                  in.readFully(bytes);
+                  return new HashedRecord(keyHash, bytes);
+                } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+              }
+            })
+        .onClose(
+            () -> {
+              try {
+                in.close();
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            });
+  }
+
+  /** Reads all of the distinct entities in a single partition file. */
+  private static Set<ComparableEntity> readEntities(Path partition) throws IOException {
+    Set<ComparableEntity> entities = new HashSet<>();
+    try (Stream<HashedRecord> records = readPartition(partition)) {
+      records.forEach(record -> entities.add(RecordAccumulator.parseEntity(record.bytes)));
+    }
+    return entities;
+  }
+
+  private static Path partitionFile(Path partitionDir, int partition) {
+    return partitionDir.resolve(Integer.toString(partition));
+  }
 
-    if (!added.isEmpty()) {
-      printHeader(added.size() + " records were added:");
-      for (ComparableEntity entity : added) {
-        System.out.println(entity);
+  /** Writes out the entities, returning how many there were. */
+  private static int write(Writer writer, Set<ComparableEntity> entities) {
+    StringBuilder output = new StringBuilder();
+    for (ComparableEntity entity : entities) {
+      output.append(entity).append(System.lineSeparator());
+    }
+    try {
+      synchronized (writer) {
+        writer.write(output.toString());
       }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
+    return entities.size();
   }
 
   /** Print out multi-line text in a pretty ASCII header frame. */
-  private static void printHeader(String... headerLines) {
-    System.out.println("========================================================================");
+  private static void printHeader(PrintStream out, String... headerLines) {
+    out.println("========================================================================");
     for (String line : headerLines) {
-      System.out.println("| " + line);
+      out.println("| " + line);
+    }
+    out.println("========================================================================");
+  }
+
+  /** A raw record, along with the hash of the key of the entity that it holds. */
+  private static final class HashedRecord {
+    final int keyHash;
+    final byte[] bytes;
+
+    HashedRecord(int keyHash, byte[] bytes) {
+      this.keyHash = keyHash;
+      this.bytes = bytes;
     }
-    System.out.println("========================================================================");
   }
 }
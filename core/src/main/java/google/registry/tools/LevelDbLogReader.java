@@ -14,17 +14,36 @@
 
 package google.registry.tools;
 
+import static java.nio.file.StandardOpenOption.READ;
+
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Streams;
+import com.google.common.io.ByteStreams;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
- * Reads records from a set of LevelDB files and builds a gigantic ImmutableList from them.
+ * Reads records from a set of LevelDB files.
+ *
+ * <p>Records can either be accumulated into a gigantic ImmutableList with {@link #readFrom} and
+ * {@link #getRecords}, or lazily streamed from a single memory-mapped file with {@link
+ * #readRecords}, which only ever holds a block's worth of records (plus any record spanning
+ * multiple blocks) in memory.
  *
  * <p>See <a
  * href="https://github.com/google/leveldb/blob/master/doc/log_format.md">log_format.md</a> for the
@@ -43,28 +62,45 @@ public final class LevelDbLogReader {
   @VisibleForTesting static final int BLOCK_SIZE = 32 * 1024;
   @VisibleForTesting static final int HEADER_SIZE = 7;
 
+  /** The maximum number of bytes of a file to memory-map at once, which must be whole blocks. */
+  @VisibleForTesting static final int MAX_MAPPED_SIZE = BLOCK_SIZE * 16 * 1024;
+
   private final ByteArrayOutputStream recordContents = new ByteArrayOutputStream();
   private final ImmutableList.Builder<byte[]> recordListBuilder = new ImmutableList.Builder<>();
 
-  /** Read a complete block, which must be exactly 32 KB. */
-  private void processBlock(byte[] block) {
+  /**
+   * Read a complete block, passing each record completed in it to the consumer.
+   *
+   * <p>The block must be exactly 32 KB, unless it is the last block of the file.
+   */
+  private void processBlock(ByteBuffer block, Consumer<byte[]> recordConsumer) {
     // Read records from the block until there is no longer enough space for a record (i.e. until
     // we're at HEADER_SIZE - 1 bytes from the end of the block).
     int i = 0;
-    while (i < BLOCK_SIZE - (HEADER_SIZE - 1)) {
+    while (i <= block.limit() - HEADER_SIZE) {
       RecordHeader recordHeader = readRecordHeader(block, i);
       if (recordHeader.type == ChunkType.END) {
         // A type of zero indicates that we've reached the padding zeroes at the end of the block.
         break;
       }
 
-      // Copy the contents of the record into recordContents.
-      recordContents.write(block, i + HEADER_SIZE, recordHeader.size);
+      byte[] chunk = new byte[recordHeader.size];
+      ByteBuffer source = block.duplicate();
+      source.position(i + HEADER_SIZE);
+      source.get(chunk);
 
-      // If this is the last (or only) chunk in the record, store the full contents into the List.
-      if (recordHeader.type == ChunkType.FULL || recordHeader.type == ChunkType.LAST) {
-        recordListBuilder.add(recordContents.toByteArray());
-        recordContents.reset();
+      if (recordHeader.type == ChunkType.FULL && recordContents.size() == 0) {
+        // The common case of a record that fits in a single chunk needs no further copying.
+        recordConsumer.accept(chunk);
+      } else {
+        // Copy the contents of the record into recordContents.
+        recordContents.write(chunk, 0, chunk.length);
+
+        // If this is the last (or only) chunk in the record, pass along the full contents.
+        if (recordHeader.type == ChunkType.FULL || recordHeader.type == ChunkType.LAST) {
+          recordConsumer.accept(recordContents.toByteArray());
+          recordContents.reset();
+        }
       }
 
       i += recordHeader.size + HEADER_SIZE;
@@ -76,12 +112,12 @@ public final class LevelDbLogReader {
    *
    * <p>Java bytes are signed, which doesn't work very well for our bit-shifting operations.
    */
-  private int getUnsignedByte(byte[] block, int pos) {
-    return block[pos] & 0xFF;
+  private int getUnsignedByte(ByteBuffer block, int pos) {
+    return block.get(pos) & 0xFF;
   }
 
   /** Reads the 7 byte record header. */
-  private RecordHeader readRecordHeader(byte[] block, int pos) {
+  private RecordHeader readRecordHeader(ByteBuffer block, int pos) {
     // Read checksum (4 bytes, LE).
     int checksum =
         getUnsignedByte(block, pos)
@@ -102,19 +138,20 @@ public final class LevelDbLogReader {
 
     // read until we have no more.
     while (true) {
-      int amountRead = source.read(block, 0, BLOCK_SIZE);
+      int amountRead = ByteStreams.read(source, block, 0, BLOCK_SIZE);
       if (amountRead <= 0) {
         break;
       }
-      assert amountRead == BLOCK_SIZE;
 
-      processBlock(block);
+      processBlock(ByteBuffer.wrap(block, 0, amountRead).slice(), recordListBuilder::add);
     }
   }
 
   /** Reads all records from the file specified by "path" into the record set. */
   public void readFrom(Path path) throws IOException {
-    readFrom(Files.newInputStream(path));
+    try (InputStream source = Files.newInputStream(path)) {
+      readFrom(source);
+    }
   }
 
   /** Reads all records from the specified file into the record set. */
@@ -132,6 +169,82 @@ public final class LevelDbLogReader {
     return recordListBuilder.build();
   }
 
+  /**
+   * Returns a lazily populated stream of all records in the file specified by "path".
+   *
+   * <p>The file is memory-mapped rather than read onto the heap, and records are only parsed as
+   * the stream is consumed. The stream must be closed to release the underlying file.
+   */
+  public static Stream<byte[]> readRecords(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, READ);
+    LevelDbLogReader reader = new LevelDbLogReader();
+    return Streams.stream(reader.new RecordIterator(new MappedBlockIterator(channel)))
+        .onClose(
+            () -> {
+              try {
+                channel.close();
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            });
+  }
+
+  /** Iterates over the records of a sequence of blocks, processing one block at a time. */
+  private final class RecordIterator extends AbstractIterator<byte[]> {
+    private final Iterator<ByteBuffer> blocks;
+    private final Queue<byte[]> blockRecords = new ArrayDeque<>();
+
+    RecordIterator(Iterator<ByteBuffer> blocks) {
+      this.blocks = blocks;
+    }
+
+    @Override
+    protected byte[] computeNext() {
+      while (blockRecords.isEmpty()) {
+        if (!blocks.hasNext()) {
+          return endOfData();
+        }
+        processBlock(blocks.next(), blockRecords::add);
+      }
+      return blockRecords.remove();
+    }
+  }
+
+  /**
+   * Iterates over the blocks of a file, memory-mapping at most {@link #MAX_MAPPED_SIZE} bytes of it
+   * at a time.
+   */
+  private static final class MappedBlockIterator extends AbstractIterator<ByteBuffer> {
+    private final FileChannel channel;
+    private long mappedEnd = 0;
+    private ByteBuffer mapped;
+
+    MappedBlockIterator(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    protected ByteBuffer computeNext() {
+      try {
+        if (mapped == null || !mapped.hasRemaining()) {
+          long size = channel.size();
+          if (mappedEnd >= size) {
+            return endOfData();
+          }
+          long mappedSize = Math.min(MAX_MAPPED_SIZE, size - mappedEnd);
+          mapped = channel.map(MapMode.READ_ONLY, mappedEnd, mappedSize);
+          mappedEnd += mappedSize;
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      ByteBuffer block = mapped.slice();
+      block.limit(Math.min(BLOCK_SIZE, mapped.remaining()));
+      mapped.position(mapped.position() + block.limit());
+      return block;
+    }
+  }
+
   /** Aggregates the fields in a record header. */
   private static final class RecordHeader {
     final int checksum;
@@ -14,12 +14,19 @@
 
 package google.registry.tools;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
 import com.google.appengine.api.datastore.EntityTranslator;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.storage.onestore.v3.OnestoreEntity.EntityProto;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
 
 /** Utility class that accumulates Entity records from level db files. */
 class RecordAccumulator {
@@ -27,15 +34,11 @@ class RecordAccumulator {
 
   /** Recursively reads all records in the directory. */
   public final RecordAccumulator readDirectory(File dir) {
-    for (File child : dir.listFiles()) {
-      if (child.isDirectory()) {
-        readDirectory(child);
-      } else if (child.isFile()) {
-        try {
-          reader.readFrom(new FileInputStream(child));
-        } catch (IOException e) {
-          throw new RuntimeException("IOException reading from file: " + child, e);
-        }
+    for (Path file : listFiles(dir)) {
+      try {
+        reader.readFrom(file);
+      } catch (IOException e) {
+        throw new RuntimeException("IOException reading from file: " + file, e);
       }
     }
 
@@ -44,16 +47,37 @@ class RecordAccumulator {
 
   /** Creates an entity set from the current set of raw records. */
   ImmutableSet<ComparableEntity> getComparableEntitySet() {
-    ImmutableSet.Builder<ComparableEntity> builder = new ImmutableSet.Builder<>();
-    for (byte[] rawRecord : reader.getRecords()) {
-      // Parse the entity proto and create an Entity object from it.
-      EntityProto proto = new EntityProto();
-      proto.parseFrom(rawRecord);
-      ComparableEntity entity = new ComparableEntity(EntityTranslator.createFromPb(proto));
-
-      builder.add(entity);
+    return reader.getRecords().stream()
+        .map(RecordAccumulator::parseEntity)
+        .collect(toImmutableSet());
+  }
+
+  /** Recursively lists all files in the directory. */
+  static ImmutableList<Path> listFiles(File dir) {
+    try (Stream<Path> paths = Files.walk(dir.toPath())) {
+      return paths.filter(Files::isRegularFile).sorted().collect(toImmutableList());
+    } catch (IOException e) {
+      throw new UncheckedIOException("IOException listing directory: " + dir, e);
     }
+  }
+
+  /**
+   * Returns a lazily read stream of the raw records in a single file.
+   *
+   * <p>The stream must be closed to release the underlying file.
+   */
+  static Stream<byte[]> streamRecords(Path file) {
+    try {
+      return LevelDbLogReader.readRecords(file);
+    } catch (IOException e) {
+      throw new UncheckedIOException("IOException reading from file: " + file, e);
+    }
+  }
 
-    return builder.build();
+  /** Parses the entity proto in a raw record and creates a {@link ComparableEntity} from it. */
+  static ComparableEntity parseEntity(byte[] rawRecord) {
+    EntityProto proto = new EntityProto();
+    proto.parseFrom(rawRecord);
+    return new ComparableEntity(EntityTranslator.createFromPb(proto));
   }
 }
@@ -22,7 +22,6 @@ import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Streams;
-import com.google.common.net.InternetDomainName;
 import google.registry.model.host.HostResource;
 import google.registry.model.registry.Registries;
 import java.net.InetAddress;
@@ -51,8 +50,7 @@ final class NameserverLookupByIpCommand implements WhoisCommand {
         Streams.stream(queryNotDeleted(HostResource.class, now, "inetAddresses", ipAddress))
             .filter(
                 host ->
-                    Registries.findTldForName(
-                            InternetDomainName.from(host.getFullyQualifiedHostName()))
+                    Registries.findTldForCanonicalName(host.getFullyQualifiedHostName())
                         .isPresent())
             .collect(toImmutableList());
     if (hosts.isEmpty()) {
@@ -16,12 +16,16 @@ package google.registry.whois;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static google.registry.model.ofy.ObjectifyService.ofy;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.net.InetAddresses;
+import com.googlecode.objectify.Key;
+import google.registry.model.domain.DomainBase;
 import google.registry.model.host.HostResource;
 import google.registry.model.registrar.Registrar;
+import java.util.Map;
 import java.util.Optional;
 import org.joda.time.DateTime;
 
@@ -45,11 +49,21 @@ final class NameserverWhoisResponse extends WhoisResponseImpl {
   @Override
   public WhoisResponseResults getResponse(boolean preferUnicode, String disclaimer) {
     BasicEmitter emitter = new BasicEmitter();
+    // A lookup by IP can return a great many hosts, so load their superordinate domains in a single
+    // batch rather than one at a time.
+    Map<Key<DomainBase>, DomainBase> superordinateDomains =
+        ofy()
+            .load()
+            .keys(
+                hosts.stream()
+                    .filter(HostResource::isSubordinate)
+                    .map(HostResource::getSuperordinateDomain)
+                    .collect(toImmutableSet()));
     for (int i = 0; i < hosts.size(); i++) {
       HostResource host = hosts.get(i);
       String clientId =
           host.isSubordinate()
-              ? ofy().load().key(host.getSuperordinateDomain()).now()
+              ? superordinateDomains.get(host.getSuperordinateDomain())
                   .cloneProjectedAtTime(getTimestamp())
                   .getCurrentSponsorClientId()
               : host.getPersistedCurrentSponsorClientId();
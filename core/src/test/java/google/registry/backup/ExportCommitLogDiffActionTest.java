@@ -16,6 +16,7 @@ package google.registry.backup;
 
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth.assertWithMessage;
+import static com.google.monitoring.metrics.contrib.LongMetricSubject.assertThat;
 import static google.registry.backup.BackupUtils.GcsMetadataKeys.LOWER_BOUND_CHECKPOINT;
 import static google.registry.backup.BackupUtils.GcsMetadataKeys.NUM_TRANSACTIONS;
 import static google.registry.backup.BackupUtils.GcsMetadataKeys.UPPER_BOUND_CHECKPOINT;
@@ -67,6 +68,8 @@ public class ExportCommitLogDiffActionTest {
     task.gcsService = gcsService;
     task.gcsBucket = "gcs bucket";
     task.batchSize = 5;
+    CommitLogExportMetrics.manifestsExported.reset();
+    CommitLogExportMetrics.bytesExported.reset();
   }
 
   @Test
@@ -283,6 +286,14 @@ public class ExportCommitLogDiffActionTest {
         manifest6,
         createMutation(manifest6))
             .inOrder();
+    assertThat(CommitLogExportMetrics.manifestsExported)
+        .hasValueForLabels(6)
+        .and()
+        .hasNoOtherValues();
+    assertThat(CommitLogExportMetrics.bytesExported)
+        .hasValueForLabels(GcsTestingUtils.readGcsFile(gcsService, expectedFilename).length)
+        .and()
+        .hasNoOtherValues();
   }
 
   @Test
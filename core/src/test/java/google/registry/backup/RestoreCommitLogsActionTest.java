@@ -225,6 +225,34 @@ public class RestoreCommitLogsActionTest {
     assertCommitLogBuckets(ImmutableMap.of(1, now));
   }
 
+  @Test
+  public void testRestore_deletedEntityRecreatedInLaterTransaction() throws Exception {
+    ofy().saveWithoutBackup().entity(TestObject.create("recreated", "a")).now();
+    Key<CommitLogManifest> manifest1Key =
+        CommitLogManifest.createKey(getBucketKey(1), now.minusMinutes(2));
+    Key<CommitLogManifest> manifest3Key =
+        CommitLogManifest.createKey(getBucketKey(1), now.minusMinutes(1));
+    saveDiffFileNotToRestore(now.minusMinutes(1));
+    // The entity is updated, then deleted, then recreated; only the final state should stick.
+    Iterable<ImmutableObject> commitLogs = saveDiffFile(
+        createCheckpoint(now),
+        CommitLogManifest.create(getBucketKey(1), now.minusMinutes(2), null),
+        CommitLogMutation.create(manifest1Key, TestObject.create("recreated", "b")),
+        CommitLogManifest.create(
+            getBucketKey(2),
+            now.minusMinutes(2).plusMillis(1),
+            ImmutableSet.of(Key.create(TestObject.create("recreated")))),
+        CommitLogManifest.create(getBucketKey(1), now.minusMinutes(1), null),
+        CommitLogMutation.create(manifest3Key, TestObject.create("recreated", "c")));
+    action.run();
+    ofy().clearSessionCache();
+    assertThat(ofy().load().entity(TestObject.create("recreated")).now().getField())
+        .isEqualTo("c");
+    assertInDatastore(commitLogs);
+    assertCommitLogBuckets(
+        ImmutableMap.of(1, now.minusMinutes(1), 2, now.minusMinutes(2).plusMillis(1)));
+  }
+
   // This should be harmless; deletes are idempotent.
   @Test
   public void testRestore_deleteMissingEntity() throws Exception {
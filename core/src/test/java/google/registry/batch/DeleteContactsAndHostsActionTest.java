@@ -635,6 +635,26 @@ public class DeleteContactsAndHostsActionTest
     runSuccessfulHostDeletionTest(Optional.of("fakeClientTrid"));
   }
 
+  @Test
+  public void testSuccess_verifyReferenceIndex_host_notReferenced_getsDeleted() throws Exception {
+    action.verifyReferenceIndex = true;
+    runSuccessfulHostDeletionTest(Optional.of("fakeClientTrid"));
+  }
+
+  @Test
+  public void testSuccess_verifyReferenceIndex_host_referencedByActiveDomain_doesNotGetDeleted()
+      throws Exception {
+    action.verifyReferenceIndex = true;
+    testSuccess_host_referencedByActiveDomain_doesNotGetDeleted();
+  }
+
+  @Test
+  public void testSuccess_verifyReferenceIndex_contact_referencedByDeletedDomain_getsDeleted()
+      throws Exception {
+    action.verifyReferenceIndex = true;
+    testSuccess_contact_referencedByDeletedDomain_getsDeleted();
+  }
+
   @Test
   public void testSuccess_host_andNoClientTrid_deletesSuccessfully() throws Exception {
     runSuccessfulHostDeletionTest(Optional.empty());
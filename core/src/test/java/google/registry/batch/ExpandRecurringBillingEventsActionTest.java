@@ -390,6 +390,42 @@ public class ExpandRecurringBillingEventsActionTest
     assertCursorAt(beginningOfTest);
   }
 
+  @Test
+  public void testSuccess_expandSingleEvent_withCursor_windowWrapsAroundYearEnd()
+      throws Exception {
+    persistResource(recurring);
+    // Less the autorenew grace period, this window of billing times covers the event times from
+    // 2000-12-27 to 2001-01-11, which spans the end of the year.
+    saveCursor(DateTime.parse("2001-02-10T00:00:00Z"));
+    DateTime testTime = DateTime.parse("2001-02-25T00:00:00Z");
+    clock.setTo(testTime);
+    runMapreduce();
+    HistoryEntry persistedEntry = getOnlyHistoryEntryOfType(domain, DOMAIN_AUTORENEW);
+    assertHistoryEntryMatches(
+        domain, persistedEntry, "TheRegistrar", DateTime.parse("2001-02-19T00:00:00Z"));
+    BillingEvent.OneTime expected =
+        defaultOneTimeBuilder()
+            .setBillingTime(DateTime.parse("2001-02-19T00:00:00Z"))
+            .setEventTime(DateTime.parse("2001-01-05T00:00:00Z"))
+            .setParent(persistedEntry)
+            .setSyntheticCreationTime(testTime)
+            .build();
+    assertBillingEventsForResource(domain, expected, recurring);
+    assertCursorAt(testTime);
+  }
+
+  @Test
+  public void testSuccess_expandSingleEvent_withCursor_windowMissesRecurrence() throws Exception {
+    persistResource(recurring);
+    saveCursor(DateTime.parse("2001-03-01T00:00:00Z"));
+    DateTime testTime = DateTime.parse("2001-03-15T00:00:00Z");
+    clock.setTo(testTime);
+    runMapreduce();
+    assertThat(getHistoryEntriesOfType(domain, DOMAIN_AUTORENEW)).isEmpty();
+    assertBillingEventsForResource(domain, recurring);
+    assertCursorAt(testTime);
+  }
+
   @Test
   public void testSuccess_expandSingleEvent_recurrenceEndBeforeEvent() throws Exception {
     // This can occur when a domain is transferred or deleted before a domain comes up for renewal.
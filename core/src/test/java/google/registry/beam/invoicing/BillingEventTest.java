@@ -17,6 +17,7 @@ package google.registry.beam.invoicing;
 import static com.google.common.truth.Truth.assertThat;
 import static google.registry.testing.JUnitBackports.assertThrows;
 
+import google.registry.beam.invoicing.BillingEvent.BillingEventCoder;
 import google.registry.beam.invoicing.BillingEvent.InvoiceGroupingKey;
 import google.registry.beam.invoicing.BillingEvent.InvoiceGroupingKey.InvoiceGroupingKeyCoder;
 import java.io.ByteArrayInputStream;
@@ -187,6 +188,16 @@ public class BillingEventTest {
     assertThat(coder.decode(inStream)).isEqualTo(invoiceKey);
   }
 
+  @Test
+  public void testBillingEventCoder_deterministicSerialization() throws IOException {
+    BillingEvent event = BillingEvent.parseFromRecord(schemaAndRecord);
+    BillingEventCoder coder = new BillingEventCoder();
+    ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+    coder.encode(event, outStream);
+    InputStream inStream = new ByteArrayInputStream(outStream.toByteArray());
+    assertThat(coder.decode(inStream)).isEqualTo(event);
+  }
+
   @Test
   public void testGetDetailReportHeader() {
     assertThat(BillingEvent.getHeader())
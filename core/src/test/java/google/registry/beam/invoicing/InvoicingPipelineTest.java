@@ -19,6 +19,7 @@ import static com.google.common.truth.Truth.assertThat;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import google.registry.beam.invoicing.BillingEvent.BillingEventCoder;
 import google.registry.util.GoogleCredentialsBundle;
 import google.registry.util.ResourceUtils;
 import java.io.File;
@@ -188,7 +189,8 @@ public class InvoicingPipelineTest {
   @Test
   public void testEndToEndPipeline_generatesExpectedFiles() throws Exception {
     ImmutableList<BillingEvent> inputRows = getInputEvents();
-    PCollection<BillingEvent> input = p.apply(Create.of(inputRows));
+    PCollection<BillingEvent> input =
+        p.apply(Create.of(inputRows).withCoder(new BillingEventCoder()));
     invoicingPipeline.applyTerminalTransforms(input, StaticValueProvider.of("2017-10"));
     p.run();
 
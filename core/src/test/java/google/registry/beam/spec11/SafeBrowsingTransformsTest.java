@@ -0,0 +1,295 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.beam.spec11;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.testing.JUnitBackports.assertThrows;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.io.CharStreams;
+import google.registry.beam.spec11.SafeBrowsingTransforms.EvaluateSafeBrowsingFn;
+import google.registry.testing.FakeClock;
+import google.registry.testing.FakeSleeper;
+import google.registry.util.Retrier;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import org.apache.beam.sdk.options.ValueProvider.StaticValueProvider;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.values.KV;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicStatusLine;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link SafeBrowsingTransforms}. */
+@RunWith(JUnit4.class)
+public class SafeBrowsingTransformsTest {
+
+  private static final int BATCH_SIZE = EvaluateSafeBrowsingFn.BATCH_SIZE;
+  private static final int MAX_CONCURRENT_BATCHES = EvaluateSafeBrowsingFn.MAX_CONCURRENT_BATCHES;
+
+  /** Stub SafeBrowsing API that reports every URL starting with "bad" as a threat. */
+  private final StubSafeBrowsingApi api = new StubSafeBrowsingApi();
+
+  private final List<String> outputDomainNames = Collections.synchronizedList(new ArrayList<>());
+  private final ExecutorService feeder = Executors.newSingleThreadExecutor();
+
+  private CloseableHttpClient httpClient;
+  private Subdomain currentElement;
+  private DoFn<Subdomain, KV<Subdomain, ThreatMatch>>.ProcessContext processContext;
+  private DoFn<Subdomain, KV<Subdomain, ThreatMatch>>.FinishBundleContext finishBundleContext;
+  private EvaluateSafeBrowsingFn evaluateSafeBrowsingFn;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void before() throws Exception {
+    httpClient = mock(CloseableHttpClient.class);
+    when(httpClient.execute(any(HttpPost.class)))
+        .thenAnswer(invocation -> api.handle((HttpPost) invocation.getArguments()[0]));
+    processContext = mock(DoFn.ProcessContext.class);
+    when(processContext.element()).thenAnswer(invocation -> currentElement);
+    doAnswer(
+            invocation ->
+                outputDomainNames.add(
+                    ((KV<Subdomain, ThreatMatch>) invocation.getArguments()[0])
+                        .getKey()
+                        .fullyQualifiedDomainName()))
+        .when(processContext)
+        .output(any());
+    finishBundleContext = mock(DoFn.FinishBundleContext.class);
+    doAnswer(
+            invocation ->
+                outputDomainNames.add(
+                    ((KV<Subdomain, ThreatMatch>) invocation.getArguments()[0])
+                        .getKey()
+                        .fullyQualifiedDomainName()))
+        .when(finishBundleContext)
+        .output(any(), any(), any());
+    evaluateSafeBrowsingFn =
+        new EvaluateSafeBrowsingFn(
+            StaticValueProvider.of("apikey"),
+            // High enough that the rate limiter never slows the tests down.
+            StaticValueProvider.of(1000.0),
+            new Retrier(new FakeSleeper(new FakeClock()), 3),
+            () -> httpClient);
+    evaluateSafeBrowsingFn.setup();
+  }
+
+  @After
+  public void after() throws Exception {
+    api.openGate();
+    feeder.shutdownNow();
+    evaluateSafeBrowsingFn.teardown();
+  }
+
+  @Test
+  public void testProcessElement_concurrentBatches_emittedInSubmissionOrder() throws Exception {
+    api.blockRequestsContaining("bad0.com");
+    processBatches(3);
+    // The first batch is still in flight, so the later ones aren't emitted even once done.
+    assertThat(api.awaitRequests(3)).isTrue();
+    assertThat(outputDomainNames).isEmpty();
+
+    api.openGate();
+    evaluateSafeBrowsingFn.finishBundle(finishBundleContext);
+    assertThat(outputDomainNames).containsExactly("bad0.com", "bad1.com", "bad2.com").inOrder();
+  }
+
+  @Test
+  public void testFinishBundle_evaluatesPartialBatchAndDrainsPendingBatches() throws Exception {
+    processBatches(1);
+    processElement(createSubdomain("bad-partial.com"));
+    processElement(createSubdomain("good-partial.com"));
+
+    evaluateSafeBrowsingFn.finishBundle(finishBundleContext);
+    assertThat(outputDomainNames).containsExactly("bad0.com", "bad-partial.com").inOrder();
+    assertThat(api.getRequestCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testFinishBundle_noBufferedElements_noRequests() throws Exception {
+    evaluateSafeBrowsingFn.finishBundle(finishBundleContext);
+    assertThat(outputDomainNames).isEmpty();
+    assertThat(api.getRequestCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testProcessElement_overlapsUpToMaxConcurrentBatches() throws Exception {
+    api.blockRequestsContaining(".com");
+    Future<?> feeding = feeder.submit(() -> processBatches(MAX_CONCURRENT_BATCHES + 1));
+
+    // All of the first batches are sent to the API at once, after which the feeder waits for the
+    // oldest one before submitting any more.
+    assertThat(api.awaitRequests(MAX_CONCURRENT_BATCHES)).isTrue();
+    assertThat(api.getRequestsInFlight()).isEqualTo(MAX_CONCURRENT_BATCHES);
+    assertThat(api.getRequestCount()).isEqualTo(MAX_CONCURRENT_BATCHES);
+    assertThat(feeding.isDone()).isFalse();
+
+    api.openGate();
+    feeding.get(10, SECONDS);
+    evaluateSafeBrowsingFn.finishBundle(finishBundleContext);
+    assertThat(api.getRequestCount()).isEqualTo(MAX_CONCURRENT_BATCHES + 1);
+    assertThat(api.getMaxRequestsInFlight()).isEqualTo(MAX_CONCURRENT_BATCHES);
+    assertThat(outputDomainNames)
+        .containsExactly("bad0.com", "bad1.com", "bad2.com", "bad3.com", "bad4.com")
+        .inOrder();
+  }
+
+  @Test
+  public void testTeardown_closesClientAndStopsEvaluating() throws Exception {
+    evaluateSafeBrowsingFn.teardown();
+    verify(httpClient).close();
+    assertThrows(RejectedExecutionException.class, () -> processBatches(1));
+  }
+
+  /** Processes full batches, each holding one threat named "bad<batch number>.com". */
+  private void processBatches(int numBatches) {
+    for (int batch = 0; batch < numBatches; batch++) {
+      processElement(createSubdomain(String.format("bad%d.com", batch)));
+      for (int i = 1; i < BATCH_SIZE; i++) {
+        processElement(createSubdomain(String.format("good-%d-%d.com", batch, i)));
+      }
+    }
+  }
+
+  private void processElement(Subdomain subdomain) {
+    currentElement = subdomain;
+    evaluateSafeBrowsingFn.processElement(processContext);
+  }
+
+  private static Subdomain createSubdomain(String fullyQualifiedDomainName) {
+    return Subdomain.create(fullyQualifiedDomainName, "theRegistrar", "fake@theRegistrar.com");
+  }
+
+  /**
+   * Stub of the SafeBrowsing Lookup API that answers requests made through the mocked client.
+   *
+   * <p>Requests containing a given string can be held at a gate, to control the order in which
+   * concurrent batches complete.
+   */
+  private static class StubSafeBrowsingApi {
+
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private volatile String blockedRequestContent;
+
+    private int requestCount = 0;
+    private int requestsInFlight = 0;
+    private int maxRequestsInFlight = 0;
+
+    void blockRequestsContaining(String content) {
+      blockedRequestContent = content;
+    }
+
+    void openGate() {
+      gate.countDown();
+    }
+
+    synchronized int getRequestCount() {
+      return requestCount;
+    }
+
+    synchronized int getRequestsInFlight() {
+      return requestsInFlight;
+    }
+
+    synchronized int getMaxRequestsInFlight() {
+      return maxRequestsInFlight;
+    }
+
+    /** Waits until the given number of requests have been received in total. */
+    synchronized boolean awaitRequests(int numRequests) throws InterruptedException {
+      long deadline = System.nanoTime() + SECONDS.toNanos(10);
+      while (requestCount < numRequests) {
+        long remainingNanos = deadline - System.nanoTime();
+        if (remainingNanos <= 0) {
+          return false;
+        }
+        NANOSECONDS.timedWait(this, remainingNanos);
+      }
+      return true;
+    }
+
+    CloseableHttpResponse handle(HttpPost request) throws Exception {
+      String requestBody =
+          CharStreams.toString(new InputStreamReader(request.getEntity().getContent(), UTF_8));
+      synchronized (this) {
+        requestCount++;
+        requestsInFlight++;
+        maxRequestsInFlight = Math.max(maxRequestsInFlight, requestsInFlight);
+        notifyAll();
+      }
+      try {
+        if (blockedRequestContent != null && requestBody.contains(blockedRequestContent)) {
+          gate.await(10, SECONDS);
+        }
+        return createResponse(requestBody);
+      } finally {
+        synchronized (this) {
+          requestsInFlight--;
+        }
+      }
+    }
+
+    private static CloseableHttpResponse createResponse(String requestBody) throws Exception {
+      JSONArray threatEntries =
+          new JSONObject(requestBody).getJSONObject("threatInfo").getJSONArray("threatEntries");
+      JSONArray matches = new JSONArray();
+      for (int i = 0; i < threatEntries.length(); i++) {
+        String url = threatEntries.getJSONObject(i).getString("url");
+        if (url.startsWith("bad")) {
+          matches.put(
+              new JSONObject()
+                  .put("threatType", "MALWARE")
+                  .put("platformType", "WINDOWS")
+                  .put("threatEntryType", "URL")
+                  .put("threat", new JSONObject().put("url", url)));
+        }
+      }
+      // The API responds with an empty object if there are no threats.
+      JSONObject responseBody = new JSONObject();
+      if (matches.length() > 0) {
+        responseBody.put("matches", matches);
+      }
+      CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+      when(response.getStatusLine())
+          .thenReturn(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "OK"));
+      when(response.getEntity()).thenReturn(new StringEntity(responseBody.toString(), UTF_8));
+      return response;
+    }
+  }
+}
@@ -136,6 +136,7 @@ public class Spec11PipelineTest {
     EvaluateSafeBrowsingFn evalFn =
         new EvaluateSafeBrowsingFn(
             StaticValueProvider.of("apikey"),
+            StaticValueProvider.of(10.0),
             new Retrier(new FakeSleeper(new FakeClock()), 3),
             (Serializable & Supplier) () -> httpClient);
 
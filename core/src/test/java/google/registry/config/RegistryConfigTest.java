@@ -17,7 +17,10 @@ package google.registry.config;
 import static com.google.common.truth.Truth.assertThat;
 import static google.registry.config.RegistryConfig.CONFIG_SETTINGS;
 import static google.registry.config.RegistryConfig.ConfigModule.provideReservedTermsExportDisclaimer;
+import static google.registry.config.RegistryConfig.getSingletonCacheMaxStaleness;
 
+import google.registry.config.RegistryConfigSettings.Caching;
+import org.joda.time.Duration;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -30,4 +33,21 @@ public class RegistryConfigTest {
     assertThat(provideReservedTermsExportDisclaimer(CONFIG_SETTINGS.get()))
         .isEqualTo("# Disclaimer line 1.\n" + "# Line 2 is this 1.");
   }
+
+  @Test
+  public void test_singletonCacheMaxStaleness_isNeverShorterThanRefreshDuration() {
+    Caching caching = CONFIG_SETTINGS.get().caching;
+    int originalRefreshSeconds = caching.singletonCacheRefreshSeconds;
+    int originalMaxStalenessSeconds = caching.singletonCacheMaxStalenessSeconds;
+    try {
+      caching.singletonCacheRefreshSeconds = 7200;
+      caching.singletonCacheMaxStalenessSeconds = 3600;
+      assertThat(getSingletonCacheMaxStaleness()).isEqualTo(Duration.standardHours(2));
+      caching.singletonCacheMaxStalenessSeconds = 10800;
+      assertThat(getSingletonCacheMaxStaleness()).isEqualTo(Duration.standardHours(3));
+    } finally {
+      caching.singletonCacheRefreshSeconds = originalRefreshSeconds;
+      caching.singletonCacheMaxStalenessSeconds = originalMaxStalenessSeconds;
+    }
+  }
 }
@@ -119,6 +119,7 @@ public class ReadDnsQueueActionTest {
     ReadDnsQueueAction action = new ReadDnsQueueAction();
     action.tldUpdateBatchSize = TEST_TLD_UPDATE_BATCH_SIZE;
     action.requestedMaximumDuration = Duration.standardSeconds(10);
+    action.batchingWindow = Duration.standardSeconds(5);
     action.clock = clock;
     action.dnsQueue = dnsQueue;
     action.dnsPublishPushQueue = QueueFactory.getQueue(DNS_PUBLISH_PUSH_QUEUE_NAME);
@@ -263,6 +264,50 @@ public class ReadDnsQueueActionTest {
                 "numPublishLocks", "1");
   }
 
+  @Test
+  public void testSuccess_duplicateRefreshes_coalesced() {
+    clock.setTo(DateTime.parse("3000-02-03TZ"));
+    dnsQueue.addDomainRefreshTask("domain1.com");
+    dnsQueue.addHostRefreshTask("ns1.domain1.com");
+    clock.setTo(DateTime.parse("3000-02-04TZ"));
+    dnsQueue.addDomainRefreshTask("domain1.com");
+    dnsQueue.addDomainRefreshTask("domain2.com");
+    dnsQueue.addHostRefreshTask("ns1.domain1.com");
+
+    run();
+
+    assertNoTasksEnqueued(DNS_PULL_QUEUE_NAME);
+    assertThat(getQueuedParams(DNS_PUBLISH_PUSH_QUEUE_NAME)).hasSize(1);
+    assertThat(getQueuedParams(DNS_PUBLISH_PUSH_QUEUE_NAME).get(0))
+        .containsExactly(
+                "enqueued", "3000-02-04T01:00:00.000Z",
+                "itemsCreated", "3000-02-03T00:00:00.000Z",
+                "tld", "com",
+                "dnsWriter", "comWriter",
+                "domains", "domain1.com,domain2.com",
+                "hosts", "ns1.domain1.com",
+                "lockIndex", "1",
+                "numPublishLocks", "1");
+  }
+
+  @Test
+  public void testSuccess_multipleLeasesWithinBatchingWindow_dispatchedTogether() {
+    dnsQueue.leaseTasksBatchSize = 2;
+    dnsQueue.addDomainRefreshTask("domain1.com");
+    dnsQueue.addDomainRefreshTask("domain2.com");
+    dnsQueue.addDomainRefreshTask("domain3.com");
+    dnsQueue.addDomainRefreshTask("domain1.com");
+
+    run();
+
+    assertNoTasksEnqueued(DNS_PULL_QUEUE_NAME);
+    // All three leases fall within the batching window, so their tasks are coalesced and published
+    // in a single batch.
+    assertThat(getQueuedParams(DNS_PUBLISH_PUSH_QUEUE_NAME)).hasSize(1);
+    assertThat(getQueuedParams(DNS_PUBLISH_PUSH_QUEUE_NAME).get(0))
+        .containsEntry("domains", "domain1.com,domain2.com,domain3.com");
+  }
+
   @Test
   public void testSuccess_oneTldPaused_returnedToQueue() {
     persistResource(Registry.get("net").asBuilder().setDnsPaused(true).build());
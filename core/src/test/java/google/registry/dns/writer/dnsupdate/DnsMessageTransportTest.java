@@ -16,12 +16,15 @@ package google.registry.dns.writer.dnsupdate;
 
 import static com.google.common.io.BaseEncoding.base16;
 import static com.google.common.truth.Truth.assertThat;
+import static google.registry.dns.writer.dnsupdate.DnsMessageTransport.DNS_PORT;
 import static google.registry.testing.JUnitBackports.assertThrows;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.base.VerifyException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Bytes;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
@@ -171,6 +174,61 @@ public class DnsMessageTransportTest {
         .contains("response opcode 'STATUS' does not match query opcode 'QUERY'");
   }
 
+  @Test
+  public void testSendAll_pipelinesMessagesOverOneConnection() throws Exception {
+    Message secondQuery =
+        Message.newQuery(Record.newRecord(Name.fromString("example.net."), Type.A, DClass.IN));
+    secondQuery.getHeader().setID((simpleQuery.getHeader().getID() + 1) & 0xFFFF);
+    Message secondResponse = responseMessageWithCode(secondQuery, Rcode.SERVFAIL);
+    // The responses arrive out of order, and must be matched to their queries by ID.
+    when(mockSocket.getInputStream())
+        .thenReturn(
+            new ByteArrayInputStream(
+                Bytes.concat(
+                    messageToBytesWithLength(secondResponse),
+                    messageToBytesWithLength(expectedResponse))));
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    when(mockSocket.getOutputStream()).thenReturn(outputStream);
+
+    ImmutableList<Message> responses = resolver.sendAll(ImmutableList.of(simpleQuery, secondQuery));
+
+    assertThat(responses).hasSize(2);
+    assertThat(base16().encode(responses.get(0).toWire()))
+        .isEqualTo(base16().encode(expectedResponse.toWire()));
+    assertThat(base16().encode(responses.get(1).toWire()))
+        .isEqualTo(base16().encode(secondResponse.toWire()));
+    assertThat(base16().encode(outputStream.toByteArray()))
+        .isEqualTo(
+            base16()
+                .encode(
+                    Bytes.concat(
+                        messageToBytesWithLength(simpleQuery),
+                        messageToBytesWithLength(secondQuery))));
+    verify(mockFactory).createSocket(InetAddress.getByName(UPDATE_HOST), DNS_PORT);
+  }
+
+  @Test
+  public void testSendAll_duplicateIdsThrowsException() {
+    Message secondQuery = new Message(simpleQuery.getHeader().getID());
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> resolver.sendAll(ImmutableList.of(simpleQuery, secondQuery)));
+    assertThat(thrown).hasMessageThat().contains("Duplicate DNS message ID");
+  }
+
+  @Test
+  public void testSendAll_unexpectedResponseIdThrowsException() throws Exception {
+    expectedResponse.getHeader().setID((simpleQuery.getHeader().getID() + 1) & 0xFFFF);
+    when(mockSocket.getInputStream())
+        .thenReturn(new ByteArrayInputStream(messageToBytesWithLength(expectedResponse)));
+    when(mockSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+    VerifyException thrown =
+        assertThrows(
+            VerifyException.class, () -> resolver.sendAll(ImmutableList.of(simpleQuery)));
+    assertThat(thrown).hasMessageThat().contains("does not match any outstanding query ID");
+  }
+
   private Message responseMessageWithCode(Message query, int responseCode) {
     Message message = new Message(query.getHeader().getID());
     message.getHeader().setOpcode(query.getHeader().getOpcode());
@@ -14,6 +14,7 @@
 
 package google.registry.dns.writer.dnsupdate;
 
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.io.BaseEncoding.base16;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth.assert_;
@@ -32,6 +33,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import com.google.common.base.Strings;
 import com.google.common.base.VerifyException;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -48,6 +50,7 @@ import google.registry.testing.InjectRule;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.stream.IntStream;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.junit.Before;
@@ -83,6 +86,7 @@ public class DnsUpdateWriterTest {
 
   @Mock private DnsMessageTransport mockResolver;
   @Captor private ArgumentCaptor<Update> updateCaptor;
+  @Captor private ArgumentCaptor<ImmutableList<Message>> messagesCaptor;
 
   private final FakeClock clock = new FakeClock(DateTime.parse("1971-01-01TZ"));
 
@@ -201,6 +205,47 @@ public class DnsUpdateWriterTest {
     assertThatTotalUpdateSetsIs(update, 3); // The delete, the NS, and DS sets
   }
 
+  @Test
+  public void testPublishDomains_tooLargeForOneMessage_splitsBetweenNames() throws Exception {
+    for (String domainName : ImmutableList.of("example1.tld", "example2.tld", "example3.tld")) {
+      persistResource(
+          persistActiveDomain(domainName)
+              .asBuilder()
+              .setDsData(
+                  IntStream.range(0, 500)
+                      .mapToObj(
+                          i ->
+                              DelegationSignerData.create(
+                                  i, 8, 2, base16().decode(Strings.repeat("AB", 32))))
+                      .collect(toImmutableSet()))
+              .build());
+    }
+    when(mockResolver.sendAll(any()))
+        .thenReturn(
+            ImmutableList.of(
+                messageWithResponseCode(Rcode.NOERROR), messageWithResponseCode(Rcode.NOERROR)));
+
+    writer.publishDomain("example1.tld");
+    writer.publishDomain("example2.tld");
+    writer.publishDomain("example3.tld");
+    writer.commit();
+
+    verify(mockResolver).sendAll(messagesCaptor.capture());
+    ImmutableList<Message> messages = messagesCaptor.getValue();
+    assertThat(messages).hasSize(2);
+    assertThat(messages.get(0).getHeader().getID())
+        .isNotEqualTo(messages.get(1).getHeader().getID());
+    Update first = (Update) messages.get(0);
+    assertThatUpdatedZoneIs(first, "tld.");
+    assertThatUpdateDeletes(first, "example1.tld.", Type.ANY);
+    assertThatUpdateDeletes(first, "example2.tld.", Type.ANY);
+    assertThatTotalUpdateSetsIs(first, 4); // The delete and DS sets for two domains
+    Update second = (Update) messages.get(1);
+    assertThatUpdatedZoneIs(second, "tld.");
+    assertThatUpdateDeletes(second, "example3.tld.", Type.ANY);
+    assertThatTotalUpdateSetsIs(second, 2); // The delete and DS sets for one domain
+  }
+
   @Test
   public void testPublishDomainWhenNotActive_removesDnsRecords() throws Exception {
     DomainBase domain =
@@ -15,11 +15,13 @@
 package google.registry.flows;
 
 import static com.google.common.truth.Truth.assertThat;
+import static google.registry.flows.EppXmlSanitizer.lazySanitizedPrettyXml;
 import static google.registry.flows.EppXmlSanitizer.sanitizeEppXml;
 import static google.registry.testing.TestDataHelper.loadBytes;
 import static java.nio.charset.StandardCharsets.UTF_16LE;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
 import google.registry.testing.EppLoader;
 import java.util.Base64;
@@ -32,6 +34,8 @@ import org.junit.runners.JUnit4;
 public class EppXmlSanitizerTest {
 
   private static final String UTF8_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+  private static final String PRETTY_PRINTED_HEADER =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>";
 
   @Test
   public void testSanitize_noSensitiveData_noop() throws Exception {
@@ -138,4 +142,86 @@ public class EppXmlSanitizerTest {
     String sanitizedXml = sanitizeEppXml(inputXml.getBytes(UTF_16LE));
     assertThat(sanitizedXml).isEqualTo(inputXml);
   }
+
+  @Test
+  public void testLazySanitizedPrettyXml_loginPasswords_sanitizedAndIndented() {
+    String inputXml =
+        new EppLoader(
+                this,
+                "login_update_password.xml",
+                ImmutableMap.of("CLID", "NewRegistrar", "PW", "oldpass", "NEWPW", "newPw"))
+            .getEppXml();
+    String expectedXml =
+        Joiner.on("\n\t")
+            .join(
+                PRETTY_PRINTED_HEADER,
+                "<epp xmlns=\"urn:ietf:params:xml:ns:epp-1.0\">",
+                "  <command>",
+                "    <login>",
+                "      <clID>NewRegistrar</clID>",
+                "      <pw>*******</pw>",
+                "      <newPW>*****</newPW>",
+                "      <options>",
+                "        <version>1.0</version>",
+                "        <lang>en</lang>",
+                "      </options>",
+                "      <svcs>",
+                "        <objURI>urn:ietf:params:xml:ns:host-1.0</objURI>",
+                "        <objURI>urn:ietf:params:xml:ns:domain-1.0</objURI>",
+                "        <objURI>urn:ietf:params:xml:ns:contact-1.0</objURI>",
+                "        <svcExtension>",
+                "          <extURI>urn:ietf:params:xml:ns:launch-1.0</extURI>",
+                "          <extURI>urn:ietf:params:xml:ns:rgp-1.0</extURI>",
+                "        </svcExtension>",
+                "      </svcs>",
+                "    </login>",
+                "    <clTRID>ABC-12345</clTRID>",
+                "  </command>",
+                "</epp>",
+                "");
+
+    assertThat(lazySanitizedPrettyXml(inputXml.getBytes(UTF_8), "\n\t").toString())
+        .isEqualTo(expectedXml);
+  }
+
+  @Test
+  public void testLazySanitizedPrettyXml_namespacesAttributesAndComments_preserved() {
+    String inputXml =
+        "<epp xmlns=\"urn:ietf:params:xml:ns:epp-1.0\"><response><result code=\"1000\">"
+            + "<msg lang=\"en\">Command &amp; &lt;ok&gt;</msg></result><!-- note --><resData>"
+            + "<contact:infData xmlns:contact=\"urn:ietf:params:xml:ns:contact-1.0\">"
+            + "<contact:authInfo><contact:pw>2fooBAR</contact:pw></contact:authInfo>"
+            + "<contact:voice x=\"\"/></contact:infData></resData></response></epp>";
+    String expectedXml =
+        Joiner.on("\n")
+            .join(
+                PRETTY_PRINTED_HEADER,
+                "<epp xmlns=\"urn:ietf:params:xml:ns:epp-1.0\">",
+                "  <response>",
+                "    <result code=\"1000\">",
+                "      <msg lang=\"en\">Command &amp; &lt;ok&gt;</msg>",
+                "    </result>",
+                "    <!-- note -->",
+                "    <resData>",
+                "      <contact:infData xmlns:contact=\"urn:ietf:params:xml:ns:contact-1.0\">",
+                "        <contact:authInfo>",
+                "          <contact:pw>*******</contact:pw>",
+                "        </contact:authInfo>",
+                "        <contact:voice x=\"\"/>",
+                "      </contact:infData>",
+                "    </resData>",
+                "  </response>",
+                "</epp>",
+                "");
+
+    assertThat(lazySanitizedPrettyXml(inputXml.getBytes(UTF_8), "\n").toString())
+        .isEqualTo(expectedXml);
+  }
+
+  @Test
+  public void testLazySanitizedPrettyXml_invalidXml_encodedToBase64() {
+    byte[] inputXmlBytes = "<pw>".getBytes(UTF_8);
+    assertThat(lazySanitizedPrettyXml(inputXmlBytes, "\n").toString())
+        .isEqualTo(Base64.getMimeEncoder().encodeToString(inputXmlBytes));
+  }
 }
@@ -0,0 +1,140 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.mapreduce.inputs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.testing.DatastoreHelper.createTld;
+import static google.registry.testing.DatastoreHelper.persistActiveDomain;
+import static google.registry.testing.DatastoreHelper.persistResource;
+import static google.registry.testing.JUnitBackports.assertThrows;
+import static google.registry.util.DateTimeUtils.END_OF_TIME;
+
+import com.google.appengine.tools.mapreduce.InputReader;
+import com.google.common.collect.ImmutableSet;
+import google.registry.model.billing.BillingEvent.Flag;
+import google.registry.model.billing.BillingEvent.Reason;
+import google.registry.model.billing.BillingEvent.Recurring;
+import google.registry.model.domain.DomainBase;
+import google.registry.model.reporting.HistoryEntry;
+import google.registry.testing.AppEngineRule;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link RecurringBillingEventInput}. */
+@RunWith(JUnit4.class)
+public final class RecurringBillingEventInputTest {
+
+  @Rule
+  public final AppEngineRule appEngine = AppEngineRule.builder().withDatastore().build();
+
+  private HistoryEntry historyEntry;
+
+  @Before
+  public void before() {
+    createTld("tld");
+    DomainBase domain = persistActiveDomain("example.tld");
+    historyEntry = persistResource(new HistoryEntry.Builder().setParent(domain).build());
+  }
+
+  private Recurring persistRecurring(long id, String eventTime) {
+    return persistResource(
+        new Recurring.Builder()
+            .setId(id)
+            .setParent(historyEntry)
+            .setClientId("TheRegistrar")
+            .setEventTime(DateTime.parse(eventTime))
+            .setFlags(ImmutableSet.of(Flag.AUTO_RENEW))
+            .setReason(Reason.RENEW)
+            .setRecurrenceEndTime(END_OF_TIME)
+            .setTargetId("example.tld")
+            .build());
+  }
+
+  private static List<Recurring> readAll(RecurringBillingEventInput input) {
+    List<Recurring> seen = new ArrayList<>();
+    for (InputReader<Recurring> reader : input.createReaders()) {
+      reader.beginShard();
+      reader.beginSlice();
+      try {
+        while (true) {
+          seen.add(reader.next());
+        }
+      } catch (NoSuchElementException expected) {
+        // Reached the end of this shard.
+      }
+    }
+    return seen;
+  }
+
+  @Test
+  public void testInput_onlyReadsEventsRecurringInWindow() {
+    Recurring inWindow = persistRecurring(1L, "2001-03-05T00:00:00Z");
+    Recurring alsoInWindow = persistRecurring(2L, "2005-03-09T23:59:59Z");
+    persistRecurring(3L, "2001-03-10T00:00:00Z");
+    persistRecurring(4L, "2001-03-04T23:59:59Z");
+    assertThat(
+            readAll(
+                new RecurringBillingEventInput(
+                    DateTime.parse("2003-03-05T00:00:00Z"),
+                    DateTime.parse("2003-03-10T00:00:00Z"),
+                    3)))
+        .containsExactly(inWindow, alsoInWindow);
+  }
+
+  @Test
+  public void testInput_windowWrapsAroundYearEnd() {
+    Recurring december = persistRecurring(1L, "2001-12-30T00:00:00Z");
+    Recurring january = persistRecurring(2L, "2001-01-02T00:00:00Z");
+    persistRecurring(3L, "2001-06-01T00:00:00Z");
+    assertThat(
+            readAll(
+                new RecurringBillingEventInput(
+                    DateTime.parse("2003-12-29T00:00:00Z"),
+                    DateTime.parse("2004-01-03T00:00:00Z"),
+                    1)))
+        .containsExactly(december, january);
+  }
+
+  @Test
+  public void testCreateReaders_splitsWindowIntoShards() {
+    assertThat(
+            new RecurringBillingEventInput(
+                    DateTime.parse("2003-03-01T00:00:00Z"),
+                    DateTime.parse("2003-04-01T00:00:00Z"),
+                    10)
+                .createReaders())
+        .hasSize(10);
+  }
+
+  @Test
+  public void testFailure_windowOfAYear() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                new RecurringBillingEventInput(
+                    DateTime.parse("2003-03-01T00:00:00Z"),
+                    DateTime.parse("2004-03-01T00:00:00Z"),
+                    10));
+    assertThat(thrown).hasMessageThat().isEqualTo("Window must be shorter than a year");
+  }
+}
@@ -20,6 +20,7 @@ import com.google.common.collect.ImmutableMap;
 import com.googlecode.objectify.annotation.Id;
 import google.registry.testing.AppEngineRule;
 import java.lang.reflect.Field;
+import java.util.Arrays;
 import java.util.Map;
 import org.junit.Before;
 import org.junit.Rule;
@@ -79,6 +80,12 @@ public class ModelUtilsTest {
     }
   }
 
+  /** Test class with array fields. */
+  public static class ArrayTestClass extends ImmutableObject {
+    int[] ints;
+    String[] strings;
+  }
+
   @Before
   public void resetCaches() {
     ModelUtils.resetCaches();
@@ -134,4 +141,40 @@ public class ModelUtilsTest {
     // The hashCode is now cached and is stale (but that's the expected behavior).
     assertThat(cloned.hashCode()).isNotEqualTo(original.hashCode());
   }
+
+  @Test
+  public void testFieldValuesEqual() {
+    TestClass first = new TestClass();
+    first.id = "foo";
+    first.a = "a";
+    TestClass second = new TestClass();
+    second.id = "foo";
+    second.a = "a";
+    assertThat(ModelUtils.fieldValuesEqual(first, second)).isTrue();
+    second.b = "b";
+    assertThat(ModelUtils.fieldValuesEqual(first, second)).isFalse();
+  }
+
+  @Test
+  public void testFieldValuesEqual_comparesArrayContents() {
+    ArrayTestClass first = new ArrayTestClass();
+    first.ints = new int[] {1, 2, 3};
+    first.strings = new String[] {"a", null};
+    ArrayTestClass second = new ArrayTestClass();
+    second.ints = new int[] {1, 2, 3};
+    second.strings = new String[] {"a", null};
+    assertThat(ModelUtils.fieldValuesEqual(first, second)).isTrue();
+    assertThat(first).isEqualTo(second);
+    assertThat(first.hashCode()).isEqualTo(second.hashCode());
+    second.ints = new int[] {1, 2, 4};
+    assertThat(ModelUtils.fieldValuesEqual(first, second)).isFalse();
+  }
+
+  @Test
+  public void testHashFieldValues_matchesHashOfFieldValues() {
+    ArrayTestClass testInstance = new ArrayTestClass();
+    testInstance.ints = new int[] {1, 2, 3};
+    assertThat(ModelUtils.hashFieldValues(testInstance))
+        .isEqualTo(Arrays.hashCode(ModelUtils.getFieldValues(testInstance).values().toArray()));
+  }
 }
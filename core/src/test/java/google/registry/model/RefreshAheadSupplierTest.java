@@ -0,0 +1,194 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.monitoring.metrics.contrib.LongMetricSubject.assertThat;
+import static google.registry.testing.JUnitBackports.assertThrows;
+
+import google.registry.monitoring.whitebox.CacheMetrics;
+import google.registry.testing.FakeClock;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.joda.time.Duration;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link RefreshAheadSupplier}. */
+@RunWith(JUnit4.class)
+public final class RefreshAheadSupplierTest {
+
+  private final FakeClock clock = new FakeClock();
+  private final Queue<Runnable> pendingRefreshes = new ArrayDeque<>();
+  private final AtomicInteger loadCount = new AtomicInteger();
+  private boolean failLoads;
+
+  private final RefreshAheadSupplier<Integer> supplier =
+      new RefreshAheadSupplier<>(
+          "test",
+          () -> {
+            if (failLoads) {
+              throw new IllegalStateException("load failed");
+            }
+            return loadCount.incrementAndGet();
+          },
+          Duration.standardMinutes(10),
+          Duration.standardHours(1),
+          pendingRefreshes::add,
+          clock);
+
+  @Before
+  public void before() {
+    CacheMetrics.cacheLookups.reset();
+  }
+
+  @Test
+  public void testGet_loadsOnceWhileFresh() {
+    assertThat(supplier.get()).isEqualTo(1);
+    clock.advanceBy(Duration.standardMinutes(9));
+    assertThat(supplier.get()).isEqualTo(1);
+    assertThat(pendingRefreshes).isEmpty();
+    assertThat(CacheMetrics.cacheLookups)
+        .hasValueForLabels(1, "test", "MISS")
+        .and()
+        .hasValueForLabels(1, "test", "HIT")
+        .and()
+        .hasNoOtherValues();
+  }
+
+  @Test
+  public void testGet_servesStaleValueWhileRefreshing() {
+    assertThat(supplier.get()).isEqualTo(1);
+    clock.advanceBy(Duration.standardMinutes(10));
+    assertThat(supplier.get()).isEqualTo(1);
+    assertThat(supplier.get()).isEqualTo(1);
+    // Only a single refresh is kicked off, however many callers see the stale value.
+    assertThat(pendingRefreshes).hasSize(1);
+    assertThat(loadCount.get()).isEqualTo(1);
+    pendingRefreshes.remove().run();
+    assertThat(supplier.get()).isEqualTo(2);
+    assertThat(CacheMetrics.cacheLookups)
+        .hasValueForLabels(1, "test", "MISS")
+        .and()
+        .hasValueForLabels(2, "test", "STALE_HIT")
+        .and()
+        .hasValueForLabels(1, "test", "HIT")
+        .and()
+        .hasNoOtherValues();
+  }
+
+  @Test
+  public void testGet_failedRefreshKeepsStaleValue() {
+    assertThat(supplier.get()).isEqualTo(1);
+    clock.advanceBy(Duration.standardMinutes(10));
+    assertThat(supplier.get()).isEqualTo(1);
+    failLoads = true;
+    pendingRefreshes.remove().run();
+    assertThat(supplier.get()).isEqualTo(1);
+    // The failed refresh doesn't prevent the next one from being kicked off.
+    assertThat(pendingRefreshes).hasSize(1);
+  }
+
+  @Test
+  public void testGet_executorRejectsRefresh_refreshesInline() {
+    AtomicInteger scheduleAttempts = new AtomicInteger();
+    RefreshAheadSupplier<Integer> rejectingSupplier =
+        new RefreshAheadSupplier<>(
+            "test",
+            loadCount::incrementAndGet,
+            Duration.standardMinutes(10),
+            Duration.standardHours(1),
+            command -> {
+              scheduleAttempts.incrementAndGet();
+              throw new IllegalStateException("no background threads");
+            },
+            clock);
+    assertThat(rejectingSupplier.get()).isEqualTo(1);
+    clock.advanceBy(Duration.standardMinutes(10));
+    assertThat(rejectingSupplier.get()).isEqualTo(2);
+    assertThat(rejectingSupplier.get()).isEqualTo(2);
+    // The rejection doesn't prevent the next refresh from being attempted.
+    clock.advanceBy(Duration.standardMinutes(10));
+    assertThat(rejectingSupplier.get()).isEqualTo(3);
+    assertThat(scheduleAttempts.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testGet_executorRejectsRefreshAndRefreshFails_servesStaleValue() {
+    RefreshAheadSupplier<Integer> rejectingSupplier =
+        new RefreshAheadSupplier<>(
+            "test",
+            () -> {
+              if (failLoads) {
+                throw new IllegalStateException("load failed");
+              }
+              return loadCount.incrementAndGet();
+            },
+            Duration.standardMinutes(10),
+            Duration.standardHours(1),
+            command -> {
+              throw new IllegalStateException("no background threads");
+            },
+            clock);
+    assertThat(rejectingSupplier.get()).isEqualTo(1);
+    clock.advanceBy(Duration.standardMinutes(10));
+    failLoads = true;
+    assertThat(rejectingSupplier.get()).isEqualTo(1);
+    failLoads = false;
+    assertThat(rejectingSupplier.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testGet_blocksOnceMaxStalenessIsReached() {
+    assertThat(supplier.get()).isEqualTo(1);
+    clock.advanceBy(Duration.standardHours(1));
+    assertThat(supplier.get()).isEqualTo(2);
+    assertThat(pendingRefreshes).isEmpty();
+    assertThat(CacheMetrics.cacheLookups)
+        .hasValueForLabels(2, "test", "MISS")
+        .and()
+        .hasNoOtherValues();
+  }
+
+  @Test
+  public void testGet_blockingLoadFailurePropagates() {
+    failLoads = true;
+    IllegalStateException thrown = assertThrows(IllegalStateException.class, supplier::get);
+    assertThat(thrown).hasMessageThat().isEqualTo("load failed");
+    failLoads = false;
+    assertThat(supplier.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testFailure_maxStalenessShorterThanRefresh() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                new RefreshAheadSupplier<>(
+                    "test",
+                    () -> 1,
+                    Duration.standardMinutes(10),
+                    Duration.standardMinutes(5),
+                    Runnable::run,
+                    clock));
+    assertThat(thrown)
+        .hasMessageThat()
+        .isEqualTo("Maximum staleness must not be shorter than the refresh duration");
+  }
+}
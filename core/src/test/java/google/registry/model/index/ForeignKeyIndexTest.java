@@ -16,7 +16,9 @@ package google.registry.model.index;
 
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth8.assertThat;
+import static com.google.monitoring.metrics.contrib.LongMetricSubject.assertThat;
 import static google.registry.model.EppResourceUtils.loadByForeignKey;
+import static google.registry.model.index.ForeignKeyIndexMetrics.cacheLookups;
 import static google.registry.model.ofy.ObjectifyService.ofy;
 import static google.registry.testing.DatastoreHelper.createTld;
 import static google.registry.testing.DatastoreHelper.deleteResource;
@@ -27,8 +29,10 @@ import static google.registry.testing.DatastoreHelper.persistResource;
 import static google.registry.util.DateTimeUtils.END_OF_TIME;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.googlecode.objectify.Key;
 import google.registry.model.EntityTestCase;
+import google.registry.model.EppResource;
 import google.registry.model.contact.ContactResource;
 import google.registry.model.host.HostResource;
 import google.registry.model.index.ForeignKeyIndex.ForeignKeyHostIndex;
@@ -231,4 +235,71 @@ public class ForeignKeyIndexTest extends EntityTestCase {
             clock.nowUtc()))
         .containsExactly("contactid2", loadContactFki("contactid2"));
   }
+
+  @Test
+  public void test_loadCached_recordsHitsAndMisses() {
+    cacheLookups.reset();
+    persistActiveHost("ns1.example.com");
+    ForeignKeyIndex.loadCached(
+        HostResource.class, ImmutableList.of("ns1.example.com", "ns2.example.com"), clock.nowUtc());
+    ForeignKeyIndex.loadCached(
+        HostResource.class, ImmutableList.of("ns1.example.com", "ns3.example.com"), clock.nowUtc());
+    assertThat(cacheLookups)
+        .hasValueForLabels(1, "HostResource", "HIT")
+        .and()
+        .hasValueForLabels(3, "HostResource", "MISS")
+        .and()
+        .hasNoOtherValues();
+  }
+
+  @Test
+  public void test_loadCached_cachesAreIndependentPerType() {
+    persistActiveContact("someid");
+    ForeignKeyIndex<ContactResource> contactFki = loadContactFki("someid");
+    assertThat(
+            ForeignKeyIndex.loadCached(
+                ContactResource.class, ImmutableList.of("someid"), clock.nowUtc()))
+        .containsExactly("someid", contactFki);
+    assertThat(
+            ForeignKeyIndex.loadCached(
+                HostResource.class, ImmutableList.of("someid"), clock.nowUtc()))
+        .isEmpty();
+  }
+
+  @Test
+  public void test_prefetchCached_loadsAllTypesIntoCache() {
+    cacheLookups.reset();
+    persistActiveHost("ns1.example.com");
+    persistActiveContact("contactid1");
+    ForeignKeyIndex<HostResource> hostFki = loadHostFki("ns1.example.com");
+    ForeignKeyIndex<ContactResource> contactFki = loadContactFki("contactid1");
+    ForeignKeyIndex.prefetchCached(
+        new ImmutableSetMultimap.Builder<Class<? extends EppResource>, String>()
+            .putAll(HostResource.class, "ns1.example.com", "ns2.example.com")
+            .put(ContactResource.class, "contactid1")
+            .build());
+    deleteResource(hostFki);
+    deleteResource(contactFki);
+    persistActiveHost("ns2.example.com");
+    assertThat(
+            ForeignKeyIndex.loadCached(
+                HostResource.class,
+                ImmutableList.of("ns1.example.com", "ns2.example.com"),
+                clock.nowUtc()))
+        .containsExactly("ns1.example.com", hostFki);
+    assertThat(
+            ForeignKeyIndex.loadCached(
+                ContactResource.class, ImmutableList.of("contactid1"), clock.nowUtc()))
+        .containsExactly("contactid1", contactFki);
+    assertThat(cacheLookups)
+        .hasValueForLabels(2, "HostResource", "PREFETCHED")
+        .and()
+        .hasValueForLabels(1, "ContactResource", "PREFETCHED")
+        .and()
+        .hasValueForLabels(2, "HostResource", "HIT")
+        .and()
+        .hasValueForLabels(1, "ContactResource", "HIT")
+        .and()
+        .hasNoOtherValues();
+  }
 }
@@ -0,0 +1,111 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.ofy;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.testing.JUnitBackports.assertThrows;
+
+import google.registry.testing.FakeClock;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Random;
+import org.joda.time.Duration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link CommitLogBucketChooser}. */
+@RunWith(JUnit4.class)
+public class CommitLogBucketChooserTest {
+
+  private final FakeClock clock = new FakeClock();
+
+  /** A {@link Random} that returns a predetermined sequence of ints. */
+  private static class FakeRandom extends Random {
+    private final Queue<Integer> values = new ArrayDeque<>();
+
+    void enqueue(Integer... ints) {
+      values.addAll(Arrays.asList(ints));
+    }
+
+    @Override
+    public int nextInt(int bound) {
+      int value = values.remove();
+      assertThat(value).isLessThan(bound);
+      return value;
+    }
+  }
+
+  private final FakeRandom random = new FakeRandom();
+  private final CommitLogBucketChooser chooser = new CommitLogBucketChooser(() -> 5, clock, random);
+
+  @Test
+  public void testChooseBucketId_noContention_choosesFirstSample() {
+    // Samples bucket index 1, then index (1 + 1 + 2) % 5 = 4.
+    random.enqueue(1, 2);
+    assertThat(chooser.chooseBucketId()).isEqualTo(2);
+  }
+
+  @Test
+  public void testChooseBucketId_secondSampleWrapsAround() {
+    // Samples bucket index 3, then index (3 + 1 + 3) % 5 = 2.
+    random.enqueue(3, 3);
+    chooser.recordContention(4);
+    assertThat(chooser.chooseBucketId()).isEqualTo(3);
+  }
+
+  @Test
+  public void testChooseBucketId_avoidsContendedBucket() {
+    chooser.recordContention(2);
+    random.enqueue(1, 2);
+    assertThat(chooser.chooseBucketId()).isEqualTo(5);
+  }
+
+  @Test
+  public void testChooseBucketId_choosesLessContendedBucket() {
+    chooser.recordContention(2);
+    chooser.recordContention(5);
+    chooser.recordContention(5);
+    random.enqueue(1, 2);
+    assertThat(chooser.chooseBucketId()).isEqualTo(2);
+  }
+
+  @Test
+  public void testChooseBucketId_contentionDecays() {
+    chooser.recordContention(2);
+    chooser.recordContention(2);
+    chooser.recordContention(5);
+    // After one half-life bucket 2 has decayed to 1, and bucket 5 to 0.5 before its next recording.
+    clock.advanceBy(Duration.standardSeconds(30));
+    chooser.recordContention(5);
+    random.enqueue(1, 2);
+    assertThat(chooser.chooseBucketId()).isEqualTo(2);
+  }
+
+  @Test
+  public void testChooseBucketId_singleBucket() {
+    CommitLogBucketChooser singleBucketChooser =
+        new CommitLogBucketChooser(() -> 1, clock, random);
+    assertThat(singleBucketChooser.chooseBucketId()).isEqualTo(1);
+  }
+
+  @Test
+  public void testRecordContention_invalidBucketId() {
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, () -> chooser.recordContention(6));
+    assertThat(thrown).hasMessageThat().isEqualTo("6 not in [1, 5]");
+  }
+}
@@ -17,6 +17,7 @@ package google.registry.model.ofy;
 import static com.google.appengine.api.datastore.DatastoreServiceFactory.getDatastoreService;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.util.concurrent.Uninterruptibles.sleepUninterruptibly;
+import static com.google.monitoring.metrics.contrib.LongMetricSubject.assertThat;
 import static google.registry.model.common.EntityGroupRoot.getCrossTldKey;
 import static google.registry.model.ofy.ObjectifyService.ofy;
 import static google.registry.model.ofy.Ofy.getBaseEntityClassFromEntityOrKey;
@@ -35,6 +36,7 @@ import com.google.appengine.api.datastore.DatastoreFailureException;
 import com.google.appengine.api.datastore.DatastoreTimeoutException;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.taskqueue.TransientFailureException;
+import com.google.common.base.Suppliers;
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.annotation.Id;
 import com.googlecode.objectify.annotation.OnLoad;
@@ -49,6 +51,7 @@ import google.registry.model.transaction.TransactionManager.Work;
 import google.registry.testing.AppEngineRule;
 import google.registry.testing.DatastoreHelper;
 import google.registry.testing.FakeClock;
+import google.registry.testing.InjectRule;
 import google.registry.util.SystemClock;
 import java.util.ConcurrentModificationException;
 import org.joda.time.DateTime;
@@ -66,6 +69,9 @@ public class OfyTest {
   public final AppEngineRule appEngine = AppEngineRule.builder()
       .withDatastore()
       .build();
+
+  @Rule public final InjectRule inject = new InjectRule();
+
   /** An entity to use in save and delete tests. */
   private HistoryEntry someObject;
 
@@ -79,6 +85,10 @@ public class OfyTest {
         .setTrid(Trid.create("client", "server"))
         .setXmlBytes("<xml></xml>".getBytes(UTF_8))
         .build();
+    // Don't count the writes made while setting up the test.
+    CommitLogMetrics.bucketWrites.reset();
+    CommitLogMetrics.bucketContentionRetries.reset();
+    CommitLogMetrics.timestampInversions.reset();
     // This can't be initialized earlier because namespaces need the AppEngineRule to work.
   }
 
@@ -96,6 +106,10 @@ public class OfyTest {
                 "Timestamp inversion between transaction time (%s) and entities rooted under:\n"
                     + "{Key<?>(ContactResource(\"2-ROID\"))=%s}",
                 groupTimestamp, groupTimestamp));
+    assertThat(CommitLogMetrics.timestampInversions)
+        .hasAnyValueForLabels("BACKUP_GROUP_ROOT")
+        .and()
+        .hasNoOtherValues();
   }
 
   @Test
@@ -322,6 +336,36 @@ public class OfyTest {
     ofy().transactCommitLoggedWork(commitLoggedWork);
   }
 
+  @Test
+  public void testTransact_commitFailsAfterWritingBucket_recordsContention() {
+    inject.setStaticField(CommitLogBucket.class, "bucketIdSupplier", Suppliers.ofInstance(4));
+    // A commit logged work that fails to commit on its first attempt, after writing its bucket.
+    CommitLoggedWork<Void> commitLoggedWork =
+        new CommitLoggedWork<Void>(
+            () -> {
+              ofy().save().entity(someObject);
+              return null;
+            },
+            new SystemClock()) {
+          boolean firstCallToRun = true;
+
+          @Override
+          public void run() {
+            super.run();
+            if (firstCallToRun) {
+              firstCallToRun = false;
+              throw new ConcurrentModificationException();
+            }
+          }
+        };
+    ofy().transactCommitLoggedWork(commitLoggedWork);
+    assertThat(CommitLogMetrics.bucketContentionRetries)
+        .hasValueForLabels(1, "4")
+        .and()
+        .hasNoOtherValues();
+    assertThat(CommitLogMetrics.bucketWrites).hasValueForLabels(1, "4").and().hasNoOtherValues();
+  }
+
   void doReadOnlyRetryTest(final RuntimeException e) {
     assertThat(tm().transactNewReadOnly(new Work<Integer>() {
 
@@ -77,4 +77,20 @@ public class RegistriesTest {
     // Substring tld matches aren't considered.
     assertThat(Registries.findTldForName(InternetDomainName.from("example.barfoo"))).isEmpty();
   }
+
+  @Test
+  public void testFindTldForCanonicalName() {
+    initTestTlds();
+    assertThat(Registries.findTldForCanonicalName("example.foo")).hasValue("foo");
+    assertThat(Registries.findTldForCanonicalName("ns1.x.y.a.b.c")).hasValue("a.b.c");
+    // We don't have an "example" tld.
+    assertThat(Registries.findTldForCanonicalName("foo.example")).isEmpty();
+    // A tld is not a match for itself.
+    assertThat(Registries.findTldForCanonicalName("foo")).isEmpty();
+    // The name must match the entire tld.
+    assertThat(Registries.findTldForCanonicalName("x.y.a.b")).isEmpty();
+    assertThat(Registries.findTldForCanonicalName("x.y.b.c")).isEmpty();
+    // Substring tld matches aren't considered.
+    assertThat(Registries.findTldForCanonicalName("example.barfoo")).isEmpty();
+  }
 }
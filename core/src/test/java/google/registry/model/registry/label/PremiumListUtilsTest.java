@@ -22,6 +22,8 @@ import static google.registry.model.ofy.ObjectifyService.ofy;
 import static google.registry.model.registry.label.DomainLabelMetrics.PremiumListCheckOutcome.BLOOM_FILTER_NEGATIVE;
 import static google.registry.model.registry.label.DomainLabelMetrics.PremiumListCheckOutcome.CACHED_NEGATIVE;
 import static google.registry.model.registry.label.DomainLabelMetrics.PremiumListCheckOutcome.CACHED_POSITIVE;
+import static google.registry.model.registry.label.DomainLabelMetrics.PremiumListCheckOutcome.PRELOADED_NEGATIVE;
+import static google.registry.model.registry.label.DomainLabelMetrics.PremiumListCheckOutcome.PRELOADED_POSITIVE;
 import static google.registry.model.registry.label.DomainLabelMetrics.PremiumListCheckOutcome.UNCACHED_NEGATIVE;
 import static google.registry.model.registry.label.DomainLabelMetrics.PremiumListCheckOutcome.UNCACHED_POSITIVE;
 import static google.registry.model.registry.label.DomainLabelMetrics.premiumListChecks;
@@ -29,6 +31,7 @@ import static google.registry.model.registry.label.DomainLabelMetrics.premiumLis
 import static google.registry.model.registry.label.PremiumListUtils.deletePremiumList;
 import static google.registry.model.registry.label.PremiumListUtils.doesPremiumListExist;
 import static google.registry.model.registry.label.PremiumListUtils.getPremiumPrice;
+import static google.registry.model.registry.label.PremiumListUtils.getPremiumPrices;
 import static google.registry.model.registry.label.PremiumListUtils.savePremiumListAndEntries;
 import static google.registry.model.transaction.TransactionManagerFactory.tm;
 import static google.registry.testing.DatastoreHelper.createTld;
@@ -42,6 +45,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.googlecode.objectify.Key;
+import google.registry.config.RegistryConfig;
 import google.registry.dns.writer.VoidDnsWriter;
 import google.registry.model.pricing.StaticPremiumListPricingEngine;
 import google.registry.model.registry.Registry;
@@ -69,6 +73,7 @@ public class PremiumListUtilsTest {
       new TestCacheRule.Builder()
           .withPremiumListsCache(standardDays(1))
           .withPremiumListEntriesCache(standardDays(1))
+          .withPremiumPriceTablesCache(standardDays(1))
           .build();
 
   @Before
@@ -227,6 +232,81 @@ public class PremiumListUtilsTest {
         .hasNoOtherValues();
   }
 
+  @Test
+  public void testGetPremiumPrice_preloaded() {
+    boolean origIsPreloadEnabled = RegistryConfig.isPremiumListPreloadEnabled();
+    try {
+      RegistryConfig.overrideIsPremiumListPreloadEnabledForTesting(true);
+      assertThat(getPremiumPrice("rich", Registry.get("tld"))).hasValue(Money.parse("USD 1999"));
+      assertThat(getPremiumPrice("icann", Registry.get("tld"))).hasValue(Money.parse("JPY 100"));
+      assertThat(getPremiumPrice("johnny-be-goode", Registry.get("tld")))
+          .hasValue(Money.parse("USD 20.50"));
+      assertThat(getPremiumPrice("blah", Registry.get("tld"))).isEmpty();
+      assertThat(premiumListChecks)
+          .hasValueForLabels(3, "tld", "tld", PRELOADED_POSITIVE.toString())
+          .and()
+          .hasValueForLabels(1, "tld", "tld", PRELOADED_NEGATIVE.toString())
+          .and()
+          .hasNoOtherValues();
+      assertThat(
+              PremiumList.cachePremiumPriceTables
+                  .getIfPresent(PremiumList.getCached("tld").get().getRevisionKey())
+                  .size())
+          .isEqualTo(4);
+    } finally {
+      RegistryConfig.overrideIsPremiumListPreloadEnabledForTesting(origIsPreloadEnabled);
+    }
+  }
+
+  @Test
+  public void testGetPremiumPrice_preloaded_newRevisionIsLoaded() {
+    boolean origIsPreloadEnabled = RegistryConfig.isPremiumListPreloadEnabled();
+    try {
+      RegistryConfig.overrideIsPremiumListPreloadEnabledForTesting(true);
+      Registry registry = Registry.get("tld");
+      PremiumList pl = persistPremiumList("tld", "genius,USD 10", "dolt,JPY 1000");
+      assertThat(getPremiumPrice("dolt", registry)).hasValue(Money.parse("JPY 1000"));
+      savePremiumListAndEntries(pl, ImmutableList.of("genius,USD 10", "savant,USD 90"));
+      assertThat(getPremiumPrice("savant", registry)).hasValue(Money.parse("USD 90"));
+      assertThat(getPremiumPrice("dolt", registry)).isEmpty();
+    } finally {
+      RegistryConfig.overrideIsPremiumListPreloadEnabledForTesting(origIsPreloadEnabled);
+    }
+  }
+
+  @Test
+  public void testGetPremiumPrices_batch() {
+    assertThat(getPremiumPrice("rich", Registry.get("tld"))).hasValue(Money.parse("USD 1999"));
+    premiumListChecks.reset();
+    assertThat(
+            getPremiumPrices(ImmutableList.of("rich", "lol", "icann", "blah"), Registry.get("tld")))
+        .containsExactly(
+            "rich", Money.parse("USD 1999"),
+            "lol", Money.parse("USD 999"),
+            "icann", Money.parse("JPY 100"));
+    assertThat(premiumListChecks)
+        .hasValueForLabels(1, "tld", "tld", CACHED_POSITIVE.toString())
+        .and()
+        .hasValueForLabels(2, "tld", "tld", UNCACHED_POSITIVE.toString())
+        .and()
+        .hasValueForLabels(1, "tld", "tld", BLOOM_FILTER_NEGATIVE.toString())
+        .and()
+        .hasNoOtherValues();
+  }
+
+  @Test
+  public void testGetPremiumPrices_batch_noPremiumListConfigured() {
+    createTld("ghost");
+    persistResource(
+        new Registry.Builder()
+            .setTldStr("ghost")
+            .setPremiumPricingEngine(StaticPremiumListPricingEngine.NAME)
+            .setDnsWriters(ImmutableSet.of(VoidDnsWriter.NAME))
+            .build());
+    assertThat(getPremiumPrices(ImmutableList.of("rich"), Registry.get("ghost"))).isEmpty();
+    assertThat(premiumListChecks).hasNoOtherValues();
+  }
+
   @Test
   public void testSave_removedPremiumListEntries_areNoLongerInDatastore() {
     Registry registry = Registry.get("tld");
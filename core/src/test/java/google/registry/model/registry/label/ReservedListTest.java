@@ -31,6 +31,7 @@ import static google.registry.testing.DatastoreHelper.persistResource;
 import static google.registry.testing.JUnitBackports.assertThrows;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import google.registry.model.ofy.Ofy;
 import google.registry.model.registry.Registry;
@@ -169,6 +170,41 @@ public class ReservedListTest {
     assertThat(getReservationTypes("snowcrash", "tld")).containsExactly(FULLY_BLOCKED);
   }
 
+  @Test
+  public void testGetReservationTypes_batch() {
+    ReservedList rl1 =
+        persistReservedList("reserved1", "lol,NAME_COLLISION # yup", "cat,FULLY_BLOCKED");
+    ReservedList rl2 =
+        persistReservedList("reserved2", "lol,ALLOWED_IN_SUNRISE", "snowcrash,FULLY_BLOCKED");
+    createTld("tld");
+    persistResource(Registry.get("tld").asBuilder().setReservedLists(rl1, rl2).build());
+
+    ImmutableMap<String, ImmutableSet<ReservationType>> reservationTypes =
+        getReservationTypes(ImmutableSet.of("lol", "cat", "snowcrash", "doge"), "tld");
+    assertThat(reservationTypes.keySet()).containsExactly("lol", "cat", "snowcrash", "doge");
+    assertThat(reservationTypes.get("lol")).containsExactly(NAME_COLLISION, ALLOWED_IN_SUNRISE);
+    assertThat(reservationTypes.get("cat")).containsExactly(FULLY_BLOCKED);
+    assertThat(reservationTypes.get("snowcrash")).containsExactly(FULLY_BLOCKED);
+    assertThat(reservationTypes.get("doge")).isEmpty();
+    assertThat(reservedListChecks)
+        .hasValueForLabels(1, "tld", "0", "(none)", "(none)")
+        .and()
+        .hasValueForLabels(1, "tld", "2", "reserved1", NAME_COLLISION.toString())
+        .and()
+        .hasValueForLabels(1, "tld", "1", "reserved1", FULLY_BLOCKED.toString())
+        .and()
+        .hasValueForLabels(1, "tld", "1", "reserved2", FULLY_BLOCKED.toString())
+        .and()
+        .hasNoOtherValues();
+  }
+
+  @Test
+  public void testGetReservationTypes_batch_emptyLabelIsBlocked() {
+    assertThat(getReservationTypes(ImmutableSet.of("", "doodle"), "tld"))
+        .containsExactly("", ImmutableSet.of(FULLY_BLOCKED), "doodle", ImmutableSet.of());
+    verifyUnreservedCheckCount(1);
+  }
+
 
   @Test
   public void testGetReservationTypes_worksAfterReservedListRemovedUsingSet() {
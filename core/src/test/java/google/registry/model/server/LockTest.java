@@ -14,6 +14,7 @@
 
 package google.registry.model.server;
 
+import static com.google.common.collect.ImmutableSortedSet.toImmutableSortedSet;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth8.assertThat;
 import static google.registry.model.server.Lock.LockState.FREE;
@@ -21,11 +22,18 @@ import static google.registry.model.server.Lock.LockState.IN_USE;
 import static google.registry.model.server.Lock.LockState.OWNER_DIED;
 import static google.registry.model.server.Lock.LockState.TIMED_OUT;
 import static google.registry.testing.JUnitBackports.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Ordering;
+import com.google.common.flogger.LoggerConfig;
+import com.google.common.testing.TestLogHandler;
 import google.registry.model.ofy.Ofy;
 import google.registry.model.server.Lock.LockState;
 import google.registry.testing.AppEngineRule;
@@ -33,6 +41,7 @@ import google.registry.testing.FakeClock;
 import google.registry.testing.InjectRule;
 import google.registry.util.RequestStatusChecker;
 import java.util.Optional;
+import java.util.stream.IntStream;
 import org.joda.time.Duration;
 import org.junit.After;
 import org.junit.Before;
@@ -59,7 +68,14 @@ public class LockTest {
   private Optional<Lock> acquire(String tld, Duration leaseLength, LockState expectedLockState) {
     Lock.lockMetrics = mock(LockMetrics.class);
     Optional<Lock> lock = Lock.acquire(RESOURCE_NAME, tld, leaseLength, requestStatusChecker, true);
-    verify(Lock.lockMetrics).recordAcquire(RESOURCE_NAME, tld, expectedLockState);
+    verify(Lock.lockMetrics)
+        .recordAcquire(
+            eq(RESOURCE_NAME),
+            eq(tld),
+            eq(expectedLockState),
+            eq(lock.isPresent()),
+            eq(1),
+            any(Duration.class));
     verifyNoMoreInteractions(Lock.lockMetrics);
     Lock.lockMetrics = null;
     return lock;
@@ -137,6 +153,74 @@ public class LockTest {
     assertThat(acquire("b", ONE_DAY, IN_USE)).isEmpty();
   }
 
+  @Test
+  public void testAcquireAll() {
+    Lock.lockMetrics = mock(LockMetrics.class);
+    ImmutableSortedSet<String> resourceNames = ImmutableSortedSet.of("bar", "baz");
+    Optional<ImmutableList<Lock>> locks =
+        Lock.acquireAll(resourceNames, "tld", ONE_DAY, requestStatusChecker, true);
+    assertThat(locks).isPresent();
+    assertThat(locks.get().stream().map(lock -> lock.resourceName))
+        .containsExactly("bar", "baz")
+        .inOrder();
+    // We can't get either lock again at the same time.
+    assertThat(Lock.acquire("bar", "tld", ONE_DAY, requestStatusChecker, true)).isEmpty();
+    assertThat(Lock.acquire("baz", "tld", ONE_DAY, requestStatusChecker, true)).isEmpty();
+    // But once they're released, they're available.
+    locks.get().forEach(Lock::release);
+    assertThat(Lock.acquireAll(resourceNames, "tld", ONE_DAY, requestStatusChecker, true))
+        .isPresent();
+  }
+
+  @Test
+  public void testAcquireAll_oneLockInUse_acquiresNone() {
+    Lock.lockMetrics = mock(LockMetrics.class);
+    assertThat(Lock.acquire("baz", "tld", ONE_DAY, requestStatusChecker, true)).isPresent();
+    assertThat(
+            Lock.acquireAll(
+                ImmutableSortedSet.of("bar", "baz"), "tld", ONE_DAY, requestStatusChecker, true))
+        .isEmpty();
+    verify(Lock.lockMetrics)
+        .recordAcquire(eq("bar"), eq("tld"), eq(FREE), eq(false), eq(1), any(Duration.class));
+    verify(Lock.lockMetrics)
+        .recordAcquire(eq("baz"), eq("tld"), eq(IN_USE), eq(false), eq(1), any(Duration.class));
+    // The free lock wasn't acquired either.
+    assertThat(Lock.acquire("bar", "tld", ONE_DAY, requestStatusChecker, true)).isPresent();
+  }
+
+  @Test
+  public void testAcquireAll_oneLockInUse_doesNotLogFreeLockAsAcquired() {
+    Lock.lockMetrics = mock(LockMetrics.class);
+    assertThat(Lock.acquire("baz", "tld", ONE_DAY, requestStatusChecker, true)).isPresent();
+    TestLogHandler logHandler = new TestLogHandler();
+    LoggerConfig.getConfig(Lock.class).addHandler(logHandler);
+    try {
+      assertThat(
+              Lock.acquireAll(
+                  ImmutableSortedSet.of("bar", "baz"), "tld", ONE_DAY, requestStatusChecker, true))
+          .isEmpty();
+    } finally {
+      LoggerConfig.getConfig(Lock.class).removeHandler(logHandler);
+    }
+    assertThat(
+            logHandler.getStoredLogRecords().stream()
+                .anyMatch(record -> record.getMessage().startsWith("acquire succeeded")))
+        .isFalse();
+  }
+
+  @Test
+  public void testFailure_acquireAll_tooManyLocks() {
+    ImmutableSortedSet<String> resourceNames =
+        IntStream.range(0, Lock.MAX_LOCKS_PER_TRANSACTION + 1)
+            .mapToObj(i -> "lock" + i)
+            .collect(toImmutableSortedSet(Ordering.natural()));
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> Lock.acquireAll(resourceNames, "tld", ONE_DAY, requestStatusChecker, true));
+    assertThat(thrown).hasMessageThat().isEqualTo("Cannot acquire more than 25 locks at once");
+  }
+
   @Test
   public void testFailure_emptyResourceName() {
     IllegalArgumentException thrown =
@@ -0,0 +1,77 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.tmch;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ClaimsLabelIndex}. */
+@RunWith(JUnit4.class)
+public final class ClaimsLabelIndexTest {
+
+  private final ClaimsLabelIndex index =
+      ClaimsLabelIndex.create(
+          ImmutableMap.of(
+              "lolcat", "2013112500/7/4/8/dIHW0DiuybvhdP8kIz",
+              "xn----7sbejwbn3axu3d", "2013112500/1/2/3/abcdefghijklmnopqr",
+              "a", "1",
+              "aa", "2",
+              "b", "3"));
+
+  @Test
+  public void testGetClaimKey() {
+    assertThat(index.getClaimKey("lolcat")).hasValue("2013112500/7/4/8/dIHW0DiuybvhdP8kIz");
+    assertThat(index.getClaimKey("xn----7sbejwbn3axu3d"))
+        .hasValue("2013112500/1/2/3/abcdefghijklmnopqr");
+    assertThat(index.getClaimKey("a")).hasValue("1");
+    assertThat(index.getClaimKey("aa")).hasValue("2");
+    assertThat(index.getClaimKey("b")).hasValue("3");
+  }
+
+  @Test
+  public void testGetClaimKey_unclaimedLabels() {
+    assertThat(index.getClaimKey("")).isEmpty();
+    assertThat(index.getClaimKey("aaa")).isEmpty();
+    assertThat(index.getClaimKey("lolca")).isEmpty();
+    assertThat(index.getClaimKey("zzz")).isEmpty();
+  }
+
+  @Test
+  public void testToMap_isSortedByLabel() {
+    assertThat(index.size()).isEqualTo(5);
+    assertThat(index.toMap().keySet())
+        .containsExactly("a", "aa", "b", "lolcat", "xn----7sbejwbn3axu3d")
+        .inOrder();
+  }
+
+  @Test
+  public void testEmpty() {
+    ClaimsLabelIndex empty = ClaimsLabelIndex.create(ImmutableMap.of());
+    assertThat(empty.size()).isEqualTo(0);
+    assertThat(empty.getClaimKey("a")).isEmpty();
+    assertThat(empty.toMap()).isEmpty();
+  }
+
+  @Test
+  public void testEquals() {
+    assertThat(ClaimsLabelIndex.create(ImmutableMap.of("b", "2", "a", "1")))
+        .isEqualTo(ClaimsLabelIndex.create(ImmutableMap.of("a", "1", "b", "2")));
+  }
+}
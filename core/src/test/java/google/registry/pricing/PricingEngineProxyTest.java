@@ -15,8 +15,11 @@
 package google.registry.pricing;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
 import static google.registry.pricing.PricingEngineProxy.getDomainCreateCost;
 import static google.registry.pricing.PricingEngineProxy.getDomainRenewCost;
+import static google.registry.pricing.PricingEngineProxy.getPricesForDomainName;
+import static google.registry.pricing.PricingEngineProxy.getPricesForDomainNames;
 import static google.registry.pricing.PricingEngineProxy.isDomainPremium;
 import static google.registry.testing.DatastoreHelper.createTld;
 import static google.registry.testing.DatastoreHelper.persistPremiumList;
@@ -25,7 +28,10 @@ import static google.registry.testing.JUnitBackports.assertThrows;
 import static google.registry.util.DateTimeUtils.START_OF_TIME;
 import static org.joda.money.CurrencyUnit.USD;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedMap;
+import google.registry.model.pricing.PremiumPricingEngine.DomainPrices;
 import google.registry.model.registry.Registry;
 import google.registry.model.registry.label.PremiumList;
 import google.registry.testing.AppEngineRule;
@@ -136,6 +142,33 @@ public class PricingEngineProxyTest {
         .isEqualTo(Money.of(USD, 200));
   }
 
+  @Test
+  public void testGetPricesForDomainNames_matchesSingleDomainPrices() {
+    createTld("example");
+    ImmutableList<String> domainNames =
+        ImmutableList.of("rich.moka", "espresso.moka", "rich.example", "poor.example");
+    ImmutableMap<String, DomainPrices> prices =
+        getPricesForDomainNames(domainNames, clock.nowUtc());
+    assertThat(prices.keySet()).containsExactlyElementsIn(domainNames);
+    for (String domainName : domainNames) {
+      DomainPrices expected = getPricesForDomainName(domainName, clock.nowUtc());
+      DomainPrices actual = prices.get(domainName);
+      assertThat(actual.isPremium()).isEqualTo(expected.isPremium());
+      assertThat(actual.getCreateCost()).isEqualTo(expected.getCreateCost());
+      assertThat(actual.getRenewCost()).isEqualTo(expected.getRenewCost());
+      assertThat(actual.getFeeClass()).isEqualTo(expected.getFeeClass());
+    }
+    assertThat(prices.get("rich.moka").getCreateCost()).isEqualTo(Money.of(USD, 100));
+    assertThat(prices.get("rich.moka").getFeeClass()).hasValue("premium");
+    assertThat(prices.get("espresso.moka").isPremium()).isFalse();
+    assertThat(prices.get("espresso.moka").getFeeClass()).isEmpty();
+  }
+
+  @Test
+  public void testGetPricesForDomainNames_empty() {
+    assertThat(getPricesForDomainNames(ImmutableList.of(), clock.nowUtc())).isEmpty();
+  }
+
   @Test
   public void testFailure_cantLoadPricingEngine() {
     createTld("example");
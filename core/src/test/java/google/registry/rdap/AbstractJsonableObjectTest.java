@@ -54,6 +54,27 @@ public final class AbstractJsonableObjectTest {
   }
 
 
+  private static final class Counter extends AbstractJsonableObject {
+    @JsonableElement final int count;
+
+    Counter(int count) {
+      this.count = count;
+    }
+
+    @JsonableElement
+    String label() {
+      return "counter " + count;
+    }
+  }
+
+  @Test
+  public void testSameClass_serializesEachInstanceValues() {
+    assertThat(new Counter(1).toJson())
+        .isEqualTo(createJson("{'count':1,'label':'counter 1'}"));
+    assertThat(new Counter(2).toJson())
+        .isEqualTo(createJson("{'count':2,'label':'counter 2'}"));
+  }
+
   @Test
   public void testDateTime() {
     Jsonable jsonable = new AbstractJsonableObject() {
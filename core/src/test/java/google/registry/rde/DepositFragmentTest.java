@@ -0,0 +1,53 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.util.SerializeUtils.deserialize;
+import static google.registry.util.SerializeUtils.serialize;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link DepositFragment}. */
+@RunWith(JUnit4.class)
+public final class DepositFragmentTest {
+
+  @Test
+  public void testSerialization_roundTrips() {
+    DepositFragment fragment =
+        DepositFragment.create(
+            RdeResourceType.DOMAIN, "<rdeDomain:domain>ü</rdeDomain:domain>", "");
+    assertThat(deserialize(DepositFragment.class, serialize(fragment))).isEqualTo(fragment);
+  }
+
+  @Test
+  public void testSerialization_roundTripsErrorFragment() {
+    DepositFragment fragment = DepositFragment.create(RdeResourceType.HOST, "", "broken host");
+    assertThat(deserialize(DepositFragment.class, serialize(fragment))).isEqualTo(fragment);
+  }
+
+  @Test
+  public void testSerialization_isSmallerThanXml() {
+    String xml =
+        Strings.repeat(
+            "<rdeContact:contact><rdeContact:id>sh8013</rdeContact:id></rdeContact:contact>\n",
+            20);
+    DepositFragment fragment = DepositFragment.create(RdeResourceType.CONTACT, xml, "");
+    assertThat(serialize(fragment).length).isLessThan(xml.length());
+  }
+}
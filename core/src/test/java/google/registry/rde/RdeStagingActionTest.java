@@ -46,6 +46,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.net.InetAddresses;
+import google.registry.gcs.GcsUtils;
 import google.registry.keyring.api.Keyring;
 import google.registry.keyring.api.PgpHelper;
 import google.registry.model.common.Cursor;
@@ -139,6 +140,13 @@ public class RdeStagingActionTest extends MapreduceTestCase<RdeStagingAction> {
     action.reducerFactory.bucket = "rde-bucket";
     action.reducerFactory.lockTimeout = Duration.standardHours(1);
     action.reducerFactory.stagingKeyBytes = PgpHelper.convertPublicKeyToBytes(encryptKey);
+    action.streamer = new RdeStagingStreamer();
+    action.streamer.taskQueueUtils = new TaskQueueUtils(new Retrier(new SystemSleeper(), 1));
+    action.streamer.lockHandler = new FakeLockHandler(true);
+    action.streamer.cloudStorage = new GcsUtils(gcsService, 0);
+    action.streamer.bucket = "rde-bucket";
+    action.streamer.lockTimeout = Duration.standardHours(1);
+    action.streamer.stagingKey = encryptKey;
     action.pendingDepositChecker = new PendingDepositChecker();
     action.pendingDepositChecker.brdaDayOfWeek = DateTimeConstants.TUESDAY;
     action.pendingDepositChecker.brdaInterval = Duration.standardDays(7);
@@ -353,7 +361,7 @@ public class RdeStagingActionTest extends MapreduceTestCase<RdeStagingAction> {
   public void testMapReduce_validHostResources_getPutInDeposit() throws Exception {
     clock.setTo(DateTime.parse("1999-12-31TZ"));
     createTldWithEscrowEnabled("lol");
-    makeHostResource(clock, "ns1.cat.lol", "feed::a:bee");
+    makeHostResource(clock, "ns1.kuss.lol", "feed::a:bee");
     makeHostResource(clock, "ns2.cat.lol", "3.1.33.7");
 
     clock.setTo(DateTime.parse("2000-01-01TZ"));
@@ -373,7 +381,7 @@ public class RdeStagingActionTest extends MapreduceTestCase<RdeStagingAction> {
     XjcRdeHeader header = extractAndRemoveContentWithType(XjcRdeHeader.class, deposit);
 
     assertThat(asList(host1.getName(), host2.getName()))
-        .containsExactly("ns1.cat.lol", "ns2.cat.lol");
+        .containsExactly("ns1.kuss.lol", "ns2.cat.lol");
     assertThat(asList(host1.getAddrs().get(0).getValue(), host2.getAddrs().get(0).getValue()))
         .containsExactly("feed::a:bee", "3.1.33.7");
 
@@ -396,7 +404,7 @@ public class RdeStagingActionTest extends MapreduceTestCase<RdeStagingAction> {
   public void testMapReduce_defaultTestFixtureRegistrars_getPutInDeposit() throws Exception {
     clock.setTo(DateTime.parse("1999-12-31TZ"));
     createTldWithEscrowEnabled("lol");
-    makeHostResource(clock, "ns1.cat.lol", "feed::a:bee");
+    makeHostResource(clock, "ns1.kuss.lol", "feed::a:bee");
 
     clock.setTo(DateTime.parse("2000-01-01TZ"));
     action.run();
@@ -815,6 +823,124 @@ public class RdeStagingActionTest extends MapreduceTestCase<RdeStagingAction> {
     doManualModeMapReduceTest(42, ImmutableSet.of("lol", "slug"));
   }
 
+  @Test
+  public void testStreaming_bunchOfResources_headerHasCorrectCounts() throws Exception {
+    clock.setTo(DateTime.parse("1999-12-31TZ"));
+    createTldWithEscrowEnabled("lol");
+    makeDomainBase(clock, "lol");
+
+    clock.setTo(DateTime.parse("2000-01-01TZ"));
+    action.streaming = true;
+    action.run();
+    assertThat(response.getStatus()).isEqualTo(200);
+    assertNoTasksEnqueued("mapreduce");
+
+    XjcRdeDeposit deposit =
+        unmarshal(
+            XjcRdeDeposit.class, Ghostryde.decode(readGcsFile(gcsService, XML_FILE), decryptKey));
+    XjcRdeHeader header = extractAndRemoveContentWithType(XjcRdeHeader.class, deposit);
+
+    assertThat(header.getTld()).isEqualTo("lol");
+    assertThat(mapifyCounts(header))
+        .containsExactly(
+            RdeResourceType.CONTACT.getUri(),
+            3L,
+            RdeResourceType.DOMAIN.getUri(),
+            1L,
+            RdeResourceType.HOST.getUri(),
+            2L,
+            RdeResourceType.REGISTRAR.getUri(),
+            2L,
+            RdeResourceType.IDN.getUri(),
+            (long) IdnTableEnum.values().length);
+  }
+
+  @Test
+  public void testStreaming_twoTldsInSmallBatches_writesEachResourceToItsDeposits()
+      throws Exception {
+    clock.setTo(DateTime.parse("1999-12-31TZ"));
+    createTldWithEscrowEnabled("boggle");
+    makeDomainBase(clock, "boggle");
+    makeHostResource(clock, "ns1.dein.boggle", "a:fed::cafe");
+    createTldWithEscrowEnabled("lol");
+    makeDomainBase(clock, "lol");
+    makeHostResource(clock, "ns1.kuss.lol", "face::feed");
+
+    clock.setTo(DateTime.parse("2000-01-01TZ"));
+    action.streaming = true;
+    action.streamer.batchSize = 1;
+    action.run();
+
+    String boggleDeposit = readXml("boggle_2000-01-01_full_S1_R0.xml.ghostryde");
+    assertThat(boggleDeposit).contains("love.boggle");
+    assertThat(boggleDeposit).doesNotContain("love.lol");
+    assertThat(boggleDeposit).contains("ns1.dein.boggle");
+    assertThat(boggleDeposit).contains("ns1.kuss.lol");
+
+    String lolDeposit = readXml("lol_2000-01-01_full_S1_R0.xml.ghostryde");
+    assertThat(lolDeposit).contains("love.lol");
+    assertThat(lolDeposit).doesNotContain("love.boggle");
+    assertThat(lolDeposit).contains("ns1.dein.boggle");
+    assertThat(lolDeposit).contains("ns1.kuss.lol");
+  }
+
+  @Test
+  public void testStreaming_onBrdaDay_advancesBothCursorsAndEnqueuesBothTasks() throws Exception {
+    clock.setTo(DateTime.parse("1999-12-31TZ"));
+    createTldWithEscrowEnabled("lol");
+    makeDomainBase(clock, "lol");
+    setCursor(Registry.get("lol"), RDE_STAGING, DateTime.parse("2000-01-04TZ"));
+    setCursor(Registry.get("lol"), BRDA, DateTime.parse("2000-01-04TZ"));
+    clock.setTo(DateTime.parse("2000-01-04TZ")); // Tuesday
+    action.streaming = true;
+    action.run();
+    assertThat(
+            ofy()
+                .load()
+                .key(Cursor.createKey(RDE_STAGING, Registry.get("lol")))
+                .now()
+                .getCursorTime())
+        .isEqualTo(DateTime.parse("2000-01-05TZ"));
+    assertThat(ofy().load().key(Cursor.createKey(BRDA, Registry.get("lol"))).now().getCursorTime())
+        .isEqualTo(DateTime.parse("2000-01-11TZ"));
+    assertTasksEnqueued("rde-upload",
+        new TaskMatcher()
+            .url(RdeUploadAction.PATH)
+            .param(RequestParameters.PARAM_TLD, "lol"));
+    assertTasksEnqueued("brda",
+        new TaskMatcher()
+            .url(BrdaCopyAction.PATH)
+            .param(RequestParameters.PARAM_TLD, "lol")
+            .param(RdeModule.PARAM_WATERMARK, "2000-01-04T00:00:00.000Z"));
+
+    String brdaDeposit = readXml("lol_2000-01-04_thin_S1_R0.xml.ghostryde");
+    assertThat(brdaDeposit).contains("love.lol");
+    assertThat(brdaDeposit).doesNotContain("<rdeHost:name>");
+    assertThat(brdaDeposit).doesNotContain("<rdeContact:email>");
+  }
+
+  @Test
+  public void testStreaming_lockInUse_doesNotStageOrAdvanceCursor() throws Exception {
+    clock.setTo(DateTime.parse("1999-12-31TZ"));
+    createTldWithEscrowEnabled("lol");
+    makeDomainBase(clock, "lol");
+    setCursor(Registry.get("lol"), RDE_STAGING, DateTime.parse("2000-01-01TZ"));
+
+    clock.setTo(DateTime.parse("2000-01-01TZ"));
+    action.streaming = true;
+    action.streamer.lockHandler = new FakeLockHandler(false);
+    action.run();
+    assertThat(gcsService.getMetadata(XML_FILE)).isNull();
+    assertThat(
+            ofy()
+                .load()
+                .key(Cursor.createKey(RDE_STAGING, Registry.get("lol")))
+                .now()
+                .getCursorTime())
+        .isEqualTo(DateTime.parse("2000-01-01TZ"));
+    assertNoTasksEnqueued("rde-upload");
+  }
+
   private String readXml(String objectName) throws IOException, PGPException {
     GcsFilename file = new GcsFilename("rde-bucket", objectName);
     return new String(Ghostryde.decode(readGcsFile(gcsService, file), decryptKey), UTF_8);
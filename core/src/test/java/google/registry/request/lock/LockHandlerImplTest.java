@@ -20,6 +20,8 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
 import google.registry.model.server.Lock;
 import google.registry.testing.AppEngineRule;
 import google.registry.testing.FakeClock;
@@ -87,6 +89,28 @@ public final class LockHandlerImplTest {
     return lockHandler.executeWithLocks(callable, "tld", ONE_DAY, "resourceName");
   }
 
+  private boolean executeWithMultipleLocks(
+      Callable<Void> callable, final @Nullable ImmutableList<Lock> acquiredLocks) {
+    LockHandlerImpl lockHandler = new LockHandlerImpl(new RequestStatusCheckerImpl(), clock) {
+      private static final long serialVersionUID = 0L;
+      @Override
+      Optional<Lock> acquire(String resourceName, String tld, Duration leaseLength) {
+        throw new AssertionError("Locks should be acquired in a single batch");
+      }
+
+      @Override
+      Optional<ImmutableList<Lock>> acquireAll(
+          ImmutableSortedSet<String> lockNames, String tld, Duration leaseLength) {
+        assertThat(lockNames).containsExactly("a", "b", "c").inOrder();
+        assertThat(tld).isEqualTo("tld");
+        assertThat(leaseLength).isEqualTo(ONE_DAY);
+        return Optional.ofNullable(acquiredLocks);
+      }
+    };
+
+    return lockHandler.executeWithLocks(callable, "tld", ONE_DAY, "c", "a", "b");
+  }
+
   @Before public void setUp() {
   }
 
@@ -147,4 +171,23 @@ public final class LockHandlerImplTest {
     assertThat(executeWithLocks(countingCallable, lock)).isFalse();
     assertThat(countingCallable.numCalled).isEqualTo(0);
   }
+
+  @Test
+  public void testMultipleLocksSucceed() {
+    ImmutableList<Lock> locks =
+        ImmutableList.of(mock(Lock.class), mock(Lock.class), mock(Lock.class));
+    CountingCallable countingCallable = new CountingCallable();
+    assertThat(executeWithMultipleLocks(countingCallable, locks)).isTrue();
+    assertThat(countingCallable.numCalled).isEqualTo(1);
+    for (Lock lock : locks) {
+      verify(lock, times(1)).release();
+    }
+  }
+
+  @Test
+  public void testMultipleLocksFailed() {
+    CountingCallable countingCallable = new CountingCallable();
+    assertThat(executeWithMultipleLocks(countingCallable, null)).isFalse();
+    assertThat(countingCallable.numCalled).isEqualTo(0);
+  }
 }
@@ -81,6 +81,13 @@ public class TestCacheRule extends ExternalResource {
       return this;
     }
 
+    public Builder withPremiumPriceTablesCache(Duration expiry) {
+      cacheHandlerMap.put(
+          "PremiumList.cachePremiumPriceTables",
+          new TestCacheHandler(PremiumList::setPremiumPriceTablesCacheForTest, expiry));
+      return this;
+    }
+
     public TestCacheRule build() {
       return new TestCacheRule(ImmutableList.copyOf(cacheHandlerMap.values()));
     }
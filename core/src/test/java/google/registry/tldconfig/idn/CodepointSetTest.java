@@ -0,0 +1,77 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.tldconfig.idn;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.testing.JUnitBackports.assertThrows;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link CodepointSet}. */
+@RunWith(JUnit4.class)
+public class CodepointSetTest {
+
+  @Test
+  public void testContains_acrossWordsBlocksAndPlanes() {
+    CodepointSet set =
+        new CodepointSet.Builder()
+            .add('a')
+            .add(0x7f)
+            .add(0x80)
+            .add(0x3042) // Hiragana A
+            .add(0x20000) // First CJK Extension B ideograph, outside the BMP
+            .add(Character.MAX_CODE_POINT)
+            .build();
+    assertThat(set.contains('a')).isTrue();
+    assertThat(set.contains(0x7f)).isTrue();
+    assertThat(set.contains(0x80)).isTrue();
+    assertThat(set.contains(0x3042)).isTrue();
+    assertThat(set.contains(0x20000)).isTrue();
+    assertThat(set.contains(Character.MAX_CODE_POINT)).isTrue();
+    assertThat(set.contains('b')).isFalse();
+    assertThat(set.contains(0x3043)).isFalse();
+    assertThat(set.contains(0x20001)).isFalse();
+    // Codepoints that differ only in bits above the word index must not alias each other.
+    assertThat(set.contains('a' + 0x100)).isFalse();
+    assertThat(set.contains('a' + 0x40)).isFalse();
+  }
+
+  @Test
+  public void testContains_outOfRange() {
+    CodepointSet set = new CodepointSet.Builder().add(0).build();
+    assertThat(set.contains(0)).isTrue();
+    assertThat(set.contains(-1)).isFalse();
+    assertThat(set.contains(Character.MAX_CODE_POINT + 1)).isFalse();
+  }
+
+  @Test
+  public void testBuild_laterAddsDontAffectBuiltSet() {
+    CodepointSet.Builder builder = new CodepointSet.Builder().add('a');
+    CodepointSet set = builder.build();
+    builder.add('b');
+    assertThat(set.contains('b')).isFalse();
+  }
+
+  @Test
+  public void testFailure_invalidCodepoint() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> new CodepointSet.Builder().add(Character.MAX_CODE_POINT + 1));
+    assertThat(thrown).hasMessageThat().isEqualTo("Invalid codepoint: 1114112");
+  }
+}
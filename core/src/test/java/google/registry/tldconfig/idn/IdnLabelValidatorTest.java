@@ -109,4 +109,19 @@ public class IdnLabelValidatorTest {
     assertThat(idnLabelValidator.findValidIdnTableForTld("foo", "tld")).isPresent();
     assertThat(idnLabelValidator.findValidIdnTableForTld("みんな", "tld")).isEmpty();
   }
+
+  @Test
+  public void testReturnsFirstMatchingTable() {
+    idnLabelValidator =
+        new IdnLabelValidator(
+            ImmutableMap.of(
+                "tld", ImmutableList.of(IdnTableEnum.EXTENDED_LATIN, IdnTableEnum.JA),
+                "reversed", ImmutableList.of(IdnTableEnum.JA, IdnTableEnum.EXTENDED_LATIN)));
+    // Plain ASCII labels are valid in both tables, so the order the tables are configured in wins.
+    assertThat(idnLabelValidator.findValidIdnTableForTld("foo", "tld")).hasValue("extended_latin");
+    assertThat(idnLabelValidator.findValidIdnTableForTld("foo", "reversed")).hasValue("ja");
+    assertThat(idnLabelValidator.findValidIdnTableForTld("みんな", "tld")).hasValue("ja");
+    assertThat(idnLabelValidator.findValidIdnTableForTld("abcdefghæ", "reversed"))
+        .hasValue("extended_latin");
+  }
 }
@@ -21,6 +21,7 @@ import google.registry.testing.AppEngineRule;
 import google.registry.tools.LevelDbFileBuilder.Property;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
 import org.junit.Rule;
 import org.junit.Test;
@@ -77,4 +78,61 @@ public class CompareDbBackupsTest {
     assertThat(output)
         .containsMatch("(?s)1 records were removed.*eeny.*1 records were added.*blutzy");
   }
+
+  @Test
+  public void testCompare_backupsLargerThanPartitions_splitsPartitionsAndFindsAllDifferences()
+      throws Exception {
+    File dump1 = tempFs.newFolder("dump1");
+    File dump2 = tempFs.newFolder("dump2");
+    // Entities 0 to 299 are in the first backup, and 100 to 399 are in the second, with entity 200
+    // changed. Each backup is spread over two files.
+    writeEntities(new File(dump1, "data1"), 0, 150, -1);
+    writeEntities(new File(dump1, "data2"), 150, 300, -1);
+    writeEntities(new File(dump2, "data1"), 100, 250, 200);
+    writeEntities(new File(dump2, "data2"), 250, 400, 200);
+
+    // Far smaller partitions than the backups, and too few of them at once, so that most of the
+    // partitions need to be split again before they can be diffed.
+    long partitionSizeBytes = 1024;
+    CompareDbBackups compareDbBackups = new CompareDbBackups(partitionSizeBytes, 4);
+    compareDbBackups.compare(dump1, dump2, new PrintStream(stdout));
+    String output = new String(stdout.toByteArray(), UTF_8);
+    assertThat(output).contains("First backup: 300 records");
+    assertThat(output).contains("Second backup: 300 records");
+    assertThat(output)
+        .containsMatch("(?s)101 records were removed.*value = 200.*101 records were added.*");
+    assertThat(output).containsMatch("(?s)records were added.*value = -200");
+    assertThat(compareDbBackups.getLargestDiffedPartitionBytes()).isGreaterThan(0L);
+    assertThat(compareDbBackups.getLargestDiffedPartitionBytes())
+        .isAtMost(2 * partitionSizeBytes);
+  }
+
+  @Test
+  public void testCompare_identicalBackups_noDifferences() throws Exception {
+    File dump1 = tempFs.newFolder("dump1");
+    File dump2 = tempFs.newFolder("dump2");
+    writeEntities(new File(dump1, "data"), 0, 100, -1);
+    writeEntities(new File(dump2, "data"), 0, 100, -1);
+
+    new CompareDbBackups(1024, 4).compare(dump1, dump2, new PrintStream(stdout));
+    String output = new String(stdout.toByteArray(), UTF_8);
+    assertThat(output).contains("First backup: 100 records");
+    assertThat(output).contains("Second backup: 100 records");
+    assertThat(output).doesNotContain("were removed");
+    assertThat(output).doesNotContain("were added");
+  }
+
+  /**
+   * Writes a LevelDB file of entities with IDs in the given range, whose "value" property is their
+   * ID, except for the entity with the changed ID, whose value is negated.
+   */
+  private static void writeEntities(File file, int fromId, int toId, int changedId)
+      throws IOException {
+    LevelDbFileBuilder builder = new LevelDbFileBuilder(file);
+    for (int id = fromId; id < toId; id++) {
+      builder.addEntityProto(
+          BASE_ID + id, Property.create("value", (long) (id == changedId ? -id : id)));
+    }
+    builder.build();
+  }
 }
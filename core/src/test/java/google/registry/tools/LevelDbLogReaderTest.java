@@ -14,6 +14,7 @@
 
 package google.registry.tools;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.truth.Truth.assertThat;
 import static google.registry.tools.LevelDbUtil.MAX_RECORD;
 import static google.registry.tools.LevelDbUtil.addRecord;
@@ -22,9 +23,14 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.primitives.Bytes;
 import google.registry.tools.LevelDbLogReader.ChunkType;
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.List;
+import java.util.stream.Stream;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
@@ -32,6 +38,8 @@ import org.junit.runners.JUnit4;
 @RunWith(JUnit4.class)
 public final class LevelDbLogReaderTest {
 
+  @Rule public final TemporaryFolder tempFs = new TemporaryFolder();
+
   // Size of the test record.  Any value < 256 will do.
   private static final int TEST_RECORD_SIZE = 231;
 
@@ -102,6 +110,53 @@ public final class LevelDbLogReaderTest {
     assertThat(reader.getRecords()).hasSize(block0.recordCount + block1.recordCount);
   }
 
+  @Test
+  public void testReadRecords_matchesReadFrom() throws IOException {
+    TestBlock block0 = makeBlockOfRepeatingBytes(0);
+    TestBlock block1 = makeBlockOfRepeatingBytes(138);
+    byte[] data = Bytes.concat(block0.data, block1.data);
+    File file = tempFs.newFile();
+    Files.write(file.toPath(), data);
+
+    LevelDbLogReader reader = new LevelDbLogReader();
+    reader.readFrom(new ByteArrayInputStream(data));
+    ImmutableList<byte[]> streamed;
+    try (Stream<byte[]> records = LevelDbLogReader.readRecords(file.toPath())) {
+      streamed = records.collect(toImmutableList());
+    }
+    assertThat(streamed).hasSize(block0.recordCount + block1.recordCount);
+    for (int i = 0; i < streamed.size(); i++) {
+      assertThat(streamed.get(i)).isEqualTo(reader.getRecords().get(i));
+    }
+  }
+
+  @Test
+  public void testReadRecords_recordSpanningBlocks() throws IOException {
+    byte[] first = new byte[LevelDbLogReader.BLOCK_SIZE];
+    addRecord(first, 0, ChunkType.FIRST, MAX_RECORD, (byte) 1);
+    byte[] last = new byte[LevelDbLogReader.BLOCK_SIZE];
+    int pos = addRecord(last, 0, ChunkType.LAST, TEST_RECORD_SIZE, (byte) 2);
+    addRecord(last, pos, ChunkType.FULL, TEST_RECORD_SIZE, (byte) 3);
+    File file = tempFs.newFile();
+    Files.write(file.toPath(), Bytes.concat(first, last));
+
+    ImmutableList<byte[]> records;
+    try (Stream<byte[]> stream = LevelDbLogReader.readRecords(file.toPath())) {
+      records = stream.collect(toImmutableList());
+    }
+    assertThat(records).hasSize(2);
+    assertThat(records.get(0)).hasLength(MAX_RECORD + TEST_RECORD_SIZE);
+    assertThat(records.get(1)).hasLength(TEST_RECORD_SIZE);
+  }
+
+  @Test
+  public void testReadRecords_emptyFile() throws IOException {
+    File file = tempFs.newFile();
+    try (Stream<byte[]> records = LevelDbLogReader.readRecords(file.toPath())) {
+      assertThat(records.count()).isEqualTo(0);
+    }
+  }
+
   @Test
   public void testChunkTypesToCode() {
     // Verify that we're translating chunk types to code values correctly.z
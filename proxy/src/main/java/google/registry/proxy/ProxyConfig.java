@@ -101,6 +101,7 @@ public class ProxyConfig {
   public static class HttpsRelay {
     public int port;
     public int maxMessageLengthBytes;
+    public int maxIdleConnectionsPerEventLoop;
   }
 
   /** Configuration options that apply to Stackdriver monitoring metrics. */
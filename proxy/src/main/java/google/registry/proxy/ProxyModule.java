@@ -36,6 +36,7 @@ import google.registry.proxy.ProxyConfig.Environment;
 import google.registry.proxy.WebWhoisProtocolsModule.HttpWhoisProtocol;
 import google.registry.proxy.WebWhoisProtocolsModule.HttpsWhoisProtocol;
 import google.registry.proxy.WhoisProtocolModule.WhoisProtocol;
+import google.registry.proxy.handler.BackendChannelPool;
 import google.registry.proxy.handler.ProxyProtocolHandler;
 import google.registry.util.Clock;
 import google.registry.util.GoogleCredentialsBundle;
@@ -343,5 +344,7 @@ public class ProxyModule {
     Set<FrontendProtocol> protocols();
 
     MetricReporter metricReporter();
+
+    BackendChannelPool.Factory backendChannelPoolFactory();
   }
 }
@@ -14,20 +14,20 @@
 
 package google.registry.proxy;
 
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static google.registry.proxy.Protocol.PROTOCOL_KEY;
+import static google.registry.proxy.handler.BackendChannelPool.BACKEND_CHANNEL_POOL_KEY;
 import static google.registry.proxy.handler.RelayHandler.RELAY_BUFFER_KEY;
-import static google.registry.proxy.handler.RelayHandler.RELAY_CHANNEL_KEY;
-import static google.registry.proxy.handler.RelayHandler.writeToRelayChannel;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.flogger.FluentLogger;
 import com.google.monitoring.metrics.MetricReporter;
-import google.registry.proxy.Protocol.BackendProtocol;
 import google.registry.proxy.Protocol.FrontendProtocol;
 import google.registry.proxy.ProxyConfig.Environment;
 import google.registry.proxy.ProxyModule.ProxyComponent;
-import io.netty.bootstrap.Bootstrap;
+import google.registry.proxy.handler.BackendChannelPool;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
@@ -45,7 +45,6 @@ import io.netty.util.internal.logging.InternalLoggerFactory;
 import io.netty.util.internal.logging.JdkLoggerFactory;
 import java.util.ArrayDeque;
 import java.util.HashMap;
-import java.util.Queue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import javax.inject.Provider;
@@ -61,11 +60,17 @@ public class ProxyServer implements Runnable {
   private static final int MAX_SOCKET_BACKLOG = 128;
 
   private final ImmutableSet<FrontendProtocol> protocols;
+  private final ImmutableMap<FrontendProtocol, BackendChannelPool> backendChannelPools;
   private final HashMap<Integer, Channel> portToChannelMap = new HashMap<>();
   private final EventLoopGroup eventGroup = new NioEventLoopGroup();
 
   ProxyServer(ProxyComponent proxyComponent) {
     this.protocols = ImmutableSet.copyOf(proxyComponent.protocols());
+    BackendChannelPool.Factory poolFactory = proxyComponent.backendChannelPoolFactory();
+    this.backendChannelPools =
+        protocols.stream()
+            .filter(FrontendProtocol::hasBackend)
+            .collect(toImmutableMap(protocol -> protocol, poolFactory::create));
   }
 
   /**
@@ -77,13 +82,22 @@ public class ProxyServer implements Runnable {
    *   <li>Determine the {@link FrontendProtocol} of the inbound {@link Channel} from its parent
    *       {@link Channel}, i. e. the {@link Channel} that binds to local port and listens.
    *   <li>Add handlers for the {@link FrontendProtocol} to the inbound {@link Channel}.
-   *   <li>Establish an outbound {@link Channel} that serves as the relay channel of the inbound
-   *       {@link Channel}, as specified by {@link FrontendProtocol#relayProtocol}.
-   *   <li>After the outbound {@link Channel} connects successfully, enable {@link
-   *       ChannelOption#AUTO_READ} on the inbound {@link Channel} to start reading.
+   *   <li>If the {@link FrontendProtocol} has a backend, attach the {@link BackendChannelPool} that
+   *       lends the inbound {@link Channel} an outbound {@link Channel} for each request, as
+   *       specified by {@link FrontendProtocol#relayProtocol}.
+   *   <li>Enable {@link ChannelOption#AUTO_READ} on the inbound {@link Channel} to start reading.
+   *       Requests read before an outbound {@link Channel} is available wait in the relay buffer.
    * </ol>
    */
   private static class ServerChannelInitializer extends ChannelInitializer<NioSocketChannel> {
+
+    private final ImmutableMap<FrontendProtocol, BackendChannelPool> backendChannelPools;
+
+    ServerChannelInitializer(
+        ImmutableMap<FrontendProtocol, BackendChannelPool> backendChannelPools) {
+      this.backendChannelPools = backendChannelPools;
+    }
+
     @Override
     protected void initChannel(NioSocketChannel inboundChannel) throws Exception {
       // Add inbound channel handlers.
@@ -93,39 +107,13 @@ public class ProxyServer implements Runnable {
       inboundChannel.attr(RELAY_BUFFER_KEY).set(new ArrayDeque<>());
       addHandlers(inboundChannel.pipeline(), inboundProtocol.handlerProviders());
 
-      if (!inboundProtocol.hasBackend()) {
-        // If the frontend has no backend to relay to (health check, web WHOIS redirect, etc), start
-        // reading immediately.
-        inboundChannel.config().setAutoRead(true);
-      } else {
+      if (inboundProtocol.hasBackend()) {
         logger.atInfo().log(
             "Connection established: %s %s", inboundProtocol.name(), inboundChannel);
-        // Connect to the relay (outbound) channel specified by the BackendProtocol.
-        BackendProtocol outboundProtocol = inboundProtocol.relayProtocol();
-        Bootstrap bootstrap =
-            new Bootstrap()
-                // Use the same thread to connect to the relay channel, therefore avoiding
-                // synchronization handling due to interactions between the two channels
-                .group(inboundChannel.eventLoop())
-                .channel(NioSocketChannel.class)
-                .handler(
-                    new ChannelInitializer<NioSocketChannel>() {
-                      @Override
-                      protected void initChannel(NioSocketChannel outboundChannel)
-                          throws Exception {
-                        addHandlers(
-                            outboundChannel.pipeline(), outboundProtocol.handlerProviders());
-                      }
-                    })
-                .option(ChannelOption.SO_KEEPALIVE, true)
-                // Outbound channel relays to inbound channel.
-                .attr(RELAY_CHANNEL_KEY, inboundChannel)
-                .attr(PROTOCOL_KEY, outboundProtocol);
-
-        connectOutboundChannel(bootstrap, inboundProtocol, outboundProtocol, inboundChannel);
-        // If the inbound connection is closed, close its outbound relay connection as well. There
-        // is no way to recover from an inbound connection termination, as the connection can only
-        // be initiated by the client.
+        // Outbound channels are borrowed from the pool one request at a time.
+        inboundChannel
+            .attr(BACKEND_CHANNEL_POOL_KEY)
+            .set(backendChannelPools.get(inboundProtocol));
         ChannelFuture unusedChannelFuture =
             inboundChannel
                 .closeFuture()
@@ -133,15 +121,10 @@ public class ProxyServer implements Runnable {
                     (future) -> {
                       logger.atInfo().log(
                           "Connection terminated: %s %s", inboundProtocol.name(), inboundChannel);
-                      // Check if there's a relay connection. In case that the outbound connection
-                      // is not successful, this attribute is not set.
-                      Channel outboundChannel = inboundChannel.attr(RELAY_CHANNEL_KEY).get();
-                      if (outboundChannel != null) {
-                        ChannelFuture unusedChannelFuture2 = outboundChannel.close();
-                      }
-                      // If the frontend channel is closed and there are messages remaining in the
-                      // buffer, we should make sure that they are released (if the messages are
-                      // reference counted).
+                      // The outbound channel lent to this connection, if any, goes back to the
+                      // pool once its response arrives, so it is not closed here. If the frontend
+                      // channel is closed and there are messages remaining in the buffer, we should
+                      // make sure that they are released (if the messages are reference counted).
                       inboundChannel
                           .attr(RELAY_BUFFER_KEY)
                           .get()
@@ -154,89 +137,8 @@ public class ProxyServer implements Runnable {
                               });
                     });
       }
-    }
-
-    /**
-     * Establishes an outbound relay channel and sets the relevant metadata on both channels.
-     *
-     * <p>This method also adds a listener that is called when the established outbound connection
-     * is closed. The outbound connection to GAE is *not* guaranteed to persist. In case that the
-     * outbound connection closes but the inbound connection is still active, the listener calls
-     * this function again to re-establish another outbound connection. The metadata is also reset
-     * so that the inbound channel knows to relay to the new outbound channel.
-     */
-    private static void connectOutboundChannel(
-        Bootstrap bootstrap,
-        FrontendProtocol inboundProtocol,
-        BackendProtocol outboundProtocol,
-        NioSocketChannel inboundChannel) {
-      ChannelFuture outboundChannelFuture =
-          bootstrap.connect(outboundProtocol.host(), outboundProtocol.port());
-      outboundChannelFuture.addListener(
-          (ChannelFuture future) -> {
-            if (future.isSuccess()) {
-              // Outbound connection is successful, now we can set the metadata to couple these two
-              // connections together.
-              Channel outboundChannel = future.channel();
-              // Inbound channel relays to outbound channel.
-              inboundChannel.attr(RELAY_CHANNEL_KEY).set(outboundChannel);
-              // Outbound channel established successfully, inbound channel can start reading.
-              // This setter also calls channel.read() to request read operation.
-              inboundChannel.config().setAutoRead(true);
-              logger.atInfo().log(
-                  "Relay established: %s <-> %s\nFRONTEND: %s\nBACKEND: %s",
-                  inboundProtocol.name(), outboundProtocol.name(), inboundChannel, outboundChannel);
-              // Now that we have a functional relay channel to the backend, if there's any
-              // buffered requests, send them off to the relay channel. We need to obtain a copy
-              // of the messages and clear the queue first, because if the relay is not successful,
-              // the message will be written back to the queue, causing an infinite loop.
-              Queue<Object> relayBuffer = inboundChannel.attr(RELAY_BUFFER_KEY).get();
-              Object[] messages = relayBuffer.toArray();
-              relayBuffer.clear();
-              for (Object msg : messages) {
-                logger.atInfo().log(
-                    "Relay retried: %s <-> %s\nFRONTEND: %s\nBACKEND: %s\nHASH: %s",
-                    inboundProtocol.name(),
-                    outboundProtocol.name(),
-                    inboundChannel,
-                    outboundChannel,
-                    msg.hashCode());
-                writeToRelayChannel(inboundChannel, outboundChannel, msg, true);
-              }
-              // When this outbound connection is closed, try reconnecting if the inbound connection
-              // is still active.
-              ChannelFuture unusedChannelFuture =
-                  outboundChannel
-                      .closeFuture()
-                      .addListener(
-                          (ChannelFuture future2) -> {
-                            if (inboundChannel.isActive()) {
-                              logger.atInfo().log(
-                                  "Relay interrupted: %s <-> %s\nFRONTEND: %s\nBACKEND: %s",
-                                  inboundProtocol.name(),
-                                  outboundProtocol.name(),
-                                  inboundChannel,
-                                  outboundChannel);
-                              connectOutboundChannel(
-                                  bootstrap, inboundProtocol, outboundProtocol, inboundChannel);
-                            } else {
-                              logger.atInfo().log(
-                                  "Relay terminated: %s <-> %s\nFRONTEND: %s\nBACKEND: %s",
-                                  inboundProtocol.name(),
-                                  outboundProtocol.name(),
-                                  inboundChannel,
-                                  outboundChannel);
-                            }
-                          });
-            } else {
-              // We cannot connect to GAE for unknown reasons, no relay can be done so drop the
-              // inbound connection as well.
-              logger.atSevere().withCause(future.cause()).log(
-                  "Cannot connect to relay channel for %s channel: %s.",
-                  inboundProtocol.name(), inboundChannel);
-              ChannelFuture unusedFuture = inboundChannel.close();
-            }
-          });
+      // This setter also calls channel.read() to request read operation.
+      inboundChannel.config().setAutoRead(true);
     }
 
     private static void addHandlers(
@@ -255,10 +157,10 @@ public class ProxyServer implements Runnable {
           new ServerBootstrap()
               .group(eventGroup)
               .channel(NioServerSocketChannel.class)
-              .childHandler(new ServerChannelInitializer())
+              .childHandler(new ServerChannelInitializer(backendChannelPools))
               .option(ChannelOption.SO_BACKLOG, MAX_SOCKET_BACKLOG)
               .childOption(ChannelOption.SO_KEEPALIVE, true)
-              // Do not read before relay channel is established.
+              // Do not read before the handlers are added to the channel.
               .childOption(ChannelOption.AUTO_READ, false);
 
       // Bind to each port specified in portToHandlersMap.
@@ -0,0 +1,269 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy.handler;
+
+import static google.registry.proxy.Protocol.PROTOCOL_KEY;
+import static google.registry.proxy.handler.RelayHandler.RELAY_BUFFER_KEY;
+import static google.registry.proxy.handler.RelayHandler.RELAY_CHANNEL_KEY;
+import static google.registry.proxy.handler.RelayHandler.writeToRelayChannel;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.FluentLogger;
+import google.registry.proxy.Protocol.BackendProtocol;
+import google.registry.proxy.Protocol.FrontendProtocol;
+import google.registry.proxy.ProxyConfig;
+import google.registry.proxy.metric.BackendMetrics;
+import google.registry.util.Clock;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.AttributeKey;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import org.joda.time.DateTime;
+
+/**
+ * A pool of backend channels shared by all frontend channels of a {@link FrontendProtocol}.
+ *
+ * <p>Without a pool, every frontend channel holds its own backend channel for as long as it is
+ * open, and reconnects (paying for another TLS handshake) whenever the backend closes it. With a
+ * pool, a frontend channel only borrows a backend channel for a single request and response, and
+ * then gives it back so that another frontend channel can reuse the connection.
+ *
+ * <p>Idle backend channels are kept separately for each {@link EventLoop}, and a frontend channel
+ * only borrows backend channels of its own event loop. Both channels of a relay are therefore
+ * always handled by the same thread, like they are when each frontend channel has its own backend
+ * channel, and none of the state here needs to be synchronized.
+ *
+ * <p>A frontend channel has at most one request in flight at a time. Further requests wait in its
+ * {@link RelayHandler#RELAY_BUFFER_KEY relay buffer} until the response to the previous one has
+ * been relayed back. This keeps responses in the order of the requests, even though consecutive
+ * requests may be sent on different backend channels. Session cookies are unaffected, because they
+ * are stored by the {@link HttpsRelayServiceHandler} of the frontend channel, not by the backend
+ * channel.
+ */
+public class BackendChannelPool {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** Key used to retrieve the {@link BackendChannelPool} a channel borrows from or belongs to. */
+  public static final AttributeKey<BackendChannelPool> BACKEND_CHANNEL_POOL_KEY =
+      AttributeKey.valueOf("BACKEND_CHANNEL_POOL_KEY");
+
+  /** Key used to mark a frontend channel that is waiting for a backend channel. */
+  private static final AttributeKey<Boolean> ACQUIRING_KEY = AttributeKey.valueOf("ACQUIRING_KEY");
+
+  private final FrontendProtocol frontendProtocol;
+  private final BackendProtocol backendProtocol;
+  private final int maxIdleChannelsPerEventLoop;
+  private final BackendMetrics metrics;
+  private final Clock clock;
+  private final Map<EventLoop, Deque<Channel>> idleChannels = new ConcurrentHashMap<>();
+
+  private BackendChannelPool(
+      FrontendProtocol frontendProtocol,
+      int maxIdleChannelsPerEventLoop,
+      BackendMetrics metrics,
+      Clock clock) {
+    this.frontendProtocol = frontendProtocol;
+    this.backendProtocol = frontendProtocol.relayProtocol();
+    this.maxIdleChannelsPerEventLoop = maxIdleChannelsPerEventLoop;
+    this.metrics = metrics;
+    this.clock = clock;
+  }
+
+  /**
+   * Relays a request from a frontend channel to a backend channel borrowed from the pool.
+   *
+   * <p>The request is sent right away if the frontend channel has no other request in flight.
+   * Otherwise it is sent once the responses to the requests before it have been relayed back.
+   */
+  public void relayRequest(Channel frontendChannel, Object msg) {
+    frontendChannel.attr(RELAY_BUFFER_KEY).get().add(msg);
+    relayNextRequest(frontendChannel);
+  }
+
+  /**
+   * Returns a backend channel to the pool once its response has been relayed to the frontend.
+   *
+   * <p>This also sends the next request waiting on the frontend channel, if there is one.
+   */
+  public void release(Channel backendChannel) {
+    Channel frontendChannel = backendChannel.attr(RELAY_CHANNEL_KEY).getAndSet(null);
+    if (frontendChannel != null) {
+      frontendChannel.attr(RELAY_CHANNEL_KEY).set(null);
+    }
+    if (backendChannel.isActive()) {
+      Deque<Channel> idle = getIdleChannels(backendChannel.eventLoop());
+      if (idle.size() < maxIdleChannelsPerEventLoop) {
+        // Reuse the most recently used channel first, as it's the least likely to have been
+        // closed by the backend for being idle.
+        idle.addFirst(backendChannel);
+      } else {
+        ChannelFuture unusedFuture = backendChannel.close();
+      }
+    }
+    if (frontendChannel != null) {
+      relayNextRequest(frontendChannel);
+    }
+  }
+
+  private void relayNextRequest(Channel frontendChannel) {
+    if (!frontendChannel.isActive()
+        || frontendChannel.attr(RELAY_CHANNEL_KEY).get() != null
+        || Boolean.TRUE.equals(frontendChannel.attr(ACQUIRING_KEY).get())
+        || frontendChannel.attr(RELAY_BUFFER_KEY).get().isEmpty()) {
+      return;
+    }
+    frontendChannel.attr(ACQUIRING_KEY).set(true);
+    DateTime acquireStartTime = clock.nowUtc();
+    Deque<Channel> idle = getIdleChannels(frontendChannel.eventLoop());
+    while (!idle.isEmpty()) {
+      Channel backendChannel = idle.removeFirst();
+      if (backendChannel.isActive()) {
+        lend(frontendChannel, backendChannel, acquireStartTime, true);
+        return;
+      }
+    }
+    connect(frontendChannel, acquireStartTime);
+  }
+
+  private void connect(Channel frontendChannel, DateTime acquireStartTime) {
+    ChannelFuture connectFuture =
+        new Bootstrap()
+            // Use the same thread as the frontend channel, so that the relay between the two
+            // channels doesn't need synchronization.
+            .group(frontendChannel.eventLoop())
+            .channel(NioSocketChannel.class)
+            .handler(
+                new ChannelInitializer<NioSocketChannel>() {
+                  @Override
+                  protected void initChannel(NioSocketChannel backendChannel) throws Exception {
+                    addHandlers(backendChannel, backendProtocol.handlerProviders());
+                  }
+                })
+            .option(ChannelOption.SO_KEEPALIVE, true)
+            // The backend channel relays to the frontend channel it is lent to.
+            .attr(RELAY_CHANNEL_KEY, frontendChannel)
+            .attr(PROTOCOL_KEY, backendProtocol)
+            .attr(BACKEND_CHANNEL_POOL_KEY, this)
+            .connect(backendProtocol.host(), backendProtocol.port());
+    connectFuture.addListener(
+        (ChannelFuture future) -> {
+          if (future.isSuccess()) {
+            Channel backendChannel = future.channel();
+            metrics.backendConnectionOpened(frontendProtocol.name(), backendChannel);
+            ChannelFuture unusedFuture =
+                backendChannel.closeFuture().addListener(unused -> onClose(backendChannel));
+            lend(frontendChannel, backendChannel, acquireStartTime, false);
+          } else {
+            // We cannot connect to GAE for unknown reasons, no relay can be done so drop the
+            // frontend connection as well.
+            frontendChannel.attr(ACQUIRING_KEY).set(false);
+            logger.atSevere().withCause(future.cause()).log(
+                "Cannot connect to relay channel for %s channel: %s.",
+                frontendProtocol.name(), frontendChannel);
+            ChannelFuture unusedFuture = frontendChannel.close();
+          }
+        });
+  }
+
+  private void lend(
+      Channel frontendChannel,
+      Channel backendChannel,
+      DateTime acquireStartTime,
+      boolean reused) {
+    frontendChannel.attr(ACQUIRING_KEY).set(false);
+    metrics.backendChannelLent(
+        frontendProtocol.name(),
+        clock.nowUtc().getMillis() - acquireStartTime.getMillis(),
+        reused);
+    backendChannel.attr(RELAY_CHANNEL_KEY).set(frontendChannel);
+    frontendChannel.attr(RELAY_CHANNEL_KEY).set(backendChannel);
+    Deque<Object> relayBuffer = frontendChannel.attr(RELAY_BUFFER_KEY).get();
+    if (!frontendChannel.isActive() || relayBuffer.isEmpty()) {
+      // The frontend channel was closed while it waited for the backend channel.
+      release(backendChannel);
+      return;
+    }
+    writeToRelayChannel(frontendChannel, backendChannel, relayBuffer.removeFirst(), false);
+  }
+
+  /**
+   * Cleans up after a backend channel is closed, which GAE may do at any time.
+   *
+   * <p>If the channel was lent to a frontend channel that is still open, the frontend channel
+   * borrows another backend channel for its waiting requests. A request that was already sent on
+   * the closed channel is not retried, as it may already have been processed.
+   */
+  private void onClose(Channel backendChannel) {
+    getIdleChannels(backendChannel.eventLoop()).remove(backendChannel);
+    Channel frontendChannel = backendChannel.attr(RELAY_CHANNEL_KEY).getAndSet(null);
+    if (frontendChannel != null
+        && frontendChannel.attr(RELAY_CHANNEL_KEY).get() == backendChannel) {
+      logger.atInfo().log(
+          "Relay interrupted: %s <-> %s\nFRONTEND: %s\nBACKEND: %s",
+          frontendProtocol.name(), backendProtocol.name(), frontendChannel, backendChannel);
+      frontendChannel.attr(RELAY_CHANNEL_KEY).set(null);
+      relayNextRequest(frontendChannel);
+    }
+  }
+
+  private Deque<Channel> getIdleChannels(EventLoop eventLoop) {
+    return idleChannels.computeIfAbsent(eventLoop, unused -> new ArrayDeque<>());
+  }
+
+  @VisibleForTesting
+  int getIdleChannelCount(EventLoop eventLoop) {
+    return getIdleChannels(eventLoop).size();
+  }
+
+  private static void addHandlers(
+      Channel channel, ImmutableList<Provider<? extends ChannelHandler>> handlerProviders) {
+    for (Provider<? extends ChannelHandler> handlerProvider : handlerProviders) {
+      channel.pipeline().addLast(handlerProvider.get());
+    }
+  }
+
+  /** Injectable factory for creating a {@link BackendChannelPool} for a frontend protocol. */
+  public static class Factory {
+
+    private final ProxyConfig config;
+    private final BackendMetrics metrics;
+    private final Clock clock;
+
+    @Inject
+    Factory(ProxyConfig config, BackendMetrics metrics, Clock clock) {
+      this.config = config;
+      this.metrics = metrics;
+      this.clock = clock;
+    }
+
+    public BackendChannelPool create(FrontendProtocol frontendProtocol) {
+      return new BackendChannelPool(
+          frontendProtocol, config.httpsRelay.maxIdleConnectionsPerEventLoop, metrics, clock);
+    }
+  }
+}
@@ -52,7 +52,6 @@ public class BackendMetricsHandler extends ChannelDuplexHandler {
 
   private String relayedProtocolName;
   private String clientCertHash;
-  private Channel relayedChannel;
 
   /**
    * A queue that saves the time at which a request is sent to the GAE app.
@@ -77,16 +76,6 @@ public class BackendMetricsHandler extends ChannelDuplexHandler {
     this.metrics = metrics;
   }
 
-  @Override
-  public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
-    // Backend channel is always established after a frontend channel is connected, so this call
-    // should always return a non-null relay channel.
-    relayedChannel = ctx.channel().attr(RELAY_CHANNEL_KEY).get();
-    checkNotNull(relayedChannel, "No frontend channel found.");
-    relayedProtocolName = relayedChannel.attr(PROTOCOL_KEY).get().name();
-    super.channelRegistered(ctx);
-  }
-
   @Override
   public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
     checkArgument(msg instanceof FullHttpResponse, "Incoming response must be FullHttpResponse.");
@@ -103,21 +92,29 @@ public class BackendMetricsHandler extends ChannelDuplexHandler {
   public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
       throws Exception {
     checkArgument(msg instanceof FullHttpRequest, "Outgoing request must be FullHttpRequest.");
+    // A backend channel from the BackendChannelPool is lent to a frontend channel for each request,
+    // so the frontend channel is looked up for every request rather than once per backend channel.
+    // Its response is received before the backend channel can be lent to another frontend.
+    Channel relayedChannel = ctx.channel().attr(RELAY_CHANNEL_KEY).get();
+    checkNotNull(relayedChannel, "No frontend channel found.");
+    relayedProtocolName = relayedChannel.attr(PROTOCOL_KEY).get().name();
     // For WHOIS, client certificate hash is always set to "none".
     // For EPP, the client hash attribute is set upon handshake completion, before the first HELLO
     // is sent to the server. Therefore the first call to write() with HELLO payload has access to
     // the hash in its channel attribute.
-    if (clientCertHash == null) {
-      clientCertHash =
-          Optional.ofNullable(relayedChannel.attr(CLIENT_CERTIFICATE_HASH_KEY).get())
-              .orElse("none");
-    }
+    clientCertHash =
+        Optional.ofNullable(relayedChannel.attr(CLIENT_CERTIFICATE_HASH_KEY).get())
+            .orElse("none");
     FullHttpRequest request = (FullHttpRequest) msg;
 
     // Record request size now because the content would have read by the time the listener is
     // called and the readable bytes would be zero by then.
     int bytes = request.content().readableBytes();
 
+    // The listener may run after another request has been written, so it uses this one's labels.
+    String protocolName = relayedProtocolName;
+    String certHash = clientCertHash;
+
     // Record sent time before write finishes allows us to take network latency into account.
     DateTime sentTime = clock.nowUtc();
     ChannelFuture unusedFuture =
@@ -126,7 +123,7 @@ public class BackendMetricsHandler extends ChannelDuplexHandler {
                 future -> {
                   if (future.isSuccess()) {
                     // Only instrument request metrics when the request is actually sent to GAE.
-                    metrics.requestSent(relayedProtocolName, clientCertHash, bytes);
+                    metrics.requestSent(protocolName, certHash, bytes);
                     requestSentTimeQueue.add(sentTime);
                   }
                 });
@@ -25,7 +25,7 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
-import io.netty.handler.codec.ByteToMessageCodec;
+import io.netty.handler.codec.MessageToMessageCodec;
 import io.netty.handler.codec.http.DefaultFullHttpRequest;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
@@ -56,10 +56,15 @@ import javax.net.ssl.SSLHandshakeException;
  * of the next outbound handler in the channel pipeline, which eventually writes the response bytes
  * to the remote peer of this channel.
  *
+ * <p>Both directions avoid copying payload bytes: the request content is a retained slice of the
+ * inbound frame, and the response content is passed through as-is after being retained, so the
+ * only copies made per round trip are the ones done by the SSL and HTTP codecs.
+ *
  * <p>This handler is session aware and will store all the session cookies that the are contained in
  * the HTTP response headers, which are added back to headers of subsequent HTTP requests.
  */
-public abstract class HttpsRelayServiceHandler extends ByteToMessageCodec<FullHttpResponse> {
+public abstract class HttpsRelayServiceHandler
+    extends MessageToMessageCodec<ByteBuf, FullHttpResponse> {
 
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
@@ -93,18 +98,21 @@ public abstract class HttpsRelayServiceHandler extends ByteToMessageCodec<FullHt
    * <p>This default method creates a bare-bone {@link FullHttpRequest} that may need to be
    * modified, e. g. adding headers specific for each protocol.
    *
+   * <p>The content of the returned request is a retained slice of {@code byteBuf}, which is
+   * released when the request is.
+   *
    * @param byteBuf inbound message.
    */
   protected FullHttpRequest decodeFullHttpRequest(ByteBuf byteBuf) {
     FullHttpRequest request =
-        new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, relayPath);
+        new DefaultFullHttpRequest(
+            HttpVersion.HTTP_1_1, HttpMethod.POST, relayPath, byteBuf.retainedSlice());
     request
         .headers()
         .set(HttpHeaderNames.USER_AGENT, "Proxy")
         .set(HttpHeaderNames.HOST, relayHost)
         .set(HttpHeaderNames.AUTHORIZATION, "Bearer " + accessTokenSupplier.get())
         .setInt(HttpHeaderNames.CONTENT_LENGTH, byteBuf.readableBytes());
-    request.content().writeBytes(byteBuf);
     return request;
   }
 
@@ -158,13 +166,15 @@ public abstract class HttpsRelayServiceHandler extends ByteToMessageCodec<FullHt
   }
 
   @Override
-  protected void encode(ChannelHandlerContext ctx, FullHttpResponse response, ByteBuf byteBuf)
+  protected void encode(ChannelHandlerContext ctx, FullHttpResponse response, List<Object> out)
       throws Exception {
     if (!response.status().equals(HttpResponseStatus.OK)) {
       throw new NonOkHttpResponseException(response, ctx.channel());
     }
     saveCookies(response);
-    byteBuf.writeBytes(encodeFullHttpResponse(response));
+    // The response is released by the encoder once this method returns, so the content needs to
+    // be retained to outlive it.
+    out.add(encodeFullHttpResponse(response).retain());
   }
 
   /** Terminates connection upon inbound exception. */
@@ -15,8 +15,10 @@
 package google.registry.proxy.handler;
 
 import static google.registry.proxy.Protocol.PROTOCOL_KEY;
+import static google.registry.proxy.handler.BackendChannelPool.BACKEND_CHANNEL_POOL_KEY;
 
 import com.google.common.flogger.FluentLogger;
+import google.registry.proxy.Protocol.FrontendProtocol;
 import google.registry.proxy.handler.QuotaHandler.OverQuotaException;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
@@ -29,17 +31,20 @@ import io.netty.util.AttributeKey;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ReferenceCounted;
 import java.util.Deque;
-import java.util.Queue;
 import javax.inject.Inject;
 
 /**
  * Receives inbound massage of type {@code I}, and writes it to the {@code relayChannel} stored in
  * the inbound channel's attribute.
+ *
+ * <p>If the channel has a {@link BackendChannelPool}, a frontend channel instead hands the message
+ * to the pool to relay, and a backend channel returns itself to the pool after relaying it.
  */
 public class RelayHandler<I> extends SimpleChannelInboundHandler<I> {
 
   /**
-   * A queue that saves messages that failed to be relayed.
+   * A queue that saves messages that failed to be relayed, or that are waiting for a backend
+   * channel from the {@link BackendChannelPool}.
    *
    * <p>This queue is null for channels that should not retry on failure, i. e. backend channels.
    *
@@ -64,12 +69,22 @@ public class RelayHandler<I> extends SimpleChannelInboundHandler<I> {
   @Override
   protected void channelRead0(ChannelHandlerContext ctx, I msg) throws Exception {
     Channel channel = ctx.channel();
+    BackendChannelPool pool = channel.attr(BACKEND_CHANNEL_POOL_KEY).get();
+    if (pool != null && channel.attr(PROTOCOL_KEY).get() instanceof FrontendProtocol) {
+      // The frontend channel borrows a backend channel from the pool for each request.
+      pool.relayRequest(channel, msg);
+      return;
+    }
     Channel relayChannel = channel.attr(RELAY_CHANNEL_KEY).get();
     if (relayChannel == null) {
       logger.atSevere().log("Relay channel not specified for channel: %s", channel);
       ChannelFuture unusedFuture = channel.close();
     } else {
       writeToRelayChannel(channel, relayChannel, msg, false);
+      if (pool != null) {
+        // The response has been relayed, so the backend channel can serve other frontend channels.
+        pool.release(channel);
+      }
     }
   }
 
@@ -111,16 +126,16 @@ public class RelayHandler<I> extends SimpleChannelInboundHandler<I> {
                         msg.hashCode());
                     // If we cannot write to the relay channel and the originating channel has
                     // a relay buffer (i. e. we tried to relay the frontend to the backend), store
-                    // the message in the buffer for retry later. The relay channel (backend) should
-                    // be killed (if it is not already dead, usually the relay is unsuccessful
-                    // because the connection is closed), and a new backend channel will re-connect
-                    // as long as the frontend channel is open. Otherwise, we are relaying from the
-                    // backend to the frontend, and this relay failure cannot be recovered from: we
-                    // should just kill the relay (frontend) channel, which in turn will kill the
-                    // backend channel.
-                    Queue<Object> relayBuffer = channel.attr(RELAY_BUFFER_KEY).get();
+                    // the message in the buffer for retry later. It goes to the head of the
+                    // buffer, since any other buffered messages were received after it. The relay
+                    // channel (backend) should be killed (if it is not already dead, usually the
+                    // relay is unsuccessful because the connection is closed), and another backend
+                    // channel will be borrowed as long as the frontend channel is open. Otherwise,
+                    // we are relaying from the backend to the frontend, and this relay failure
+                    // cannot be recovered from: we should just kill the relay (frontend) channel.
+                    Deque<Object> relayBuffer = channel.attr(RELAY_BUFFER_KEY).get();
                     if (relayBuffer != null) {
-                      channel.attr(RELAY_BUFFER_KEY).get().add(msg);
+                      relayBuffer.addFirst(msg);
                     } else {
                       // We are not going to retry, decrement a counter to allow the message to be
                       // freed by Netty, if the message is reference counted.
@@ -14,6 +14,8 @@
 
 package google.registry.proxy.metric;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.monitoring.metrics.CustomFitter;
 import com.google.monitoring.metrics.EventMetric;
@@ -21,9 +23,17 @@ import com.google.monitoring.metrics.ExponentialFitter;
 import com.google.monitoring.metrics.FibonacciFitter;
 import com.google.monitoring.metrics.IncrementableMetric;
 import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.Metric;
 import com.google.monitoring.metrics.MetricRegistryImpl;
 import google.registry.util.NonFinalForTesting;
+import io.netty.channel.Channel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -93,6 +103,50 @@ public class BackendMetrics {
               LABELS,
               DEFAULT_LATENCY_FITTER);
 
+  private static final ImmutableSet<LabelDescriptor> POOL_LABELS =
+      ImmutableSet.of(LabelDescriptor.create("protocol", "Name of the protocol."));
+
+  private static final ConcurrentMap<ImmutableList<String>, ChannelGroup> poolConnections =
+      new ConcurrentHashMap<>();
+
+  static final Metric<Long> poolConnectionsGauge =
+      MetricRegistryImpl.getDefault()
+          .newGauge(
+              "/proxy/backend/pool_connections",
+              "Number of open connections in the backend connection pool.",
+              "Pool Connections",
+              POOL_LABELS,
+              () ->
+                  poolConnections
+                      .entrySet()
+                      .stream()
+                      .collect(
+                          ImmutableMap.toImmutableMap(
+                              Map.Entry::getKey, entry -> (long) entry.getValue().size())),
+              Long.class);
+
+  static final EventMetric poolWaitTimeMs =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/proxy/backend/pool_wait_time_ms",
+              "Time a request waits for a connection from the backend connection pool.",
+              "Wait Time Milliseconds",
+              POOL_LABELS,
+              DEFAULT_LATENCY_FITTER);
+
+  static final IncrementableMetric poolLendsCounter =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/proxy/backend/pool_lends",
+              "Total number of times a connection is lent from the backend connection pool.",
+              "Lends",
+              ImmutableSet.<LabelDescriptor>builder()
+                  .addAll(POOL_LABELS)
+                  .add(
+                      LabelDescriptor.create(
+                          "reused", "Whether the connection was reused rather than opened."))
+                  .build());
+
   @Inject
   BackendMetrics() {}
 
@@ -108,6 +162,9 @@ public class BackendMetrics {
     responseBytes.reset();
     responsesCounter.reset();
     latencyMs.reset();
+    poolConnections.clear();
+    poolWaitTimeMs.reset();
+    poolLendsCounter.reset();
   }
 
   @NonFinalForTesting
@@ -123,4 +180,20 @@ public class BackendMetrics {
     responseBytes.record(response.content().readableBytes(), protocol, certHash);
     responsesCounter.increment(protocol, certHash, response.status().toString());
   }
+
+  @NonFinalForTesting
+  public void backendConnectionOpened(String protocol, Channel channel) {
+    // Closed channels are removed from the group automatically.
+    poolConnections
+        .computeIfAbsent(
+            ImmutableList.of(protocol),
+            labels -> new DefaultChannelGroup(GlobalEventExecutor.INSTANCE))
+        .add(channel);
+  }
+
+  @NonFinalForTesting
+  public void backendChannelLent(String protocol, long waitTime, boolean reused) {
+    poolWaitTimeMs.record(waitTime, protocol);
+    poolLendsCounter.increment(protocol, String.valueOf(reused));
+  }
 }
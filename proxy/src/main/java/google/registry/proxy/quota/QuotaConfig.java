@@ -14,7 +14,9 @@
 
 package google.registry.proxy.quota;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static google.registry.proxy.quota.TokenStore.MAX_TOKEN_AMOUNT;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMap;
@@ -47,6 +49,16 @@ public class QuotaConfig {
     quota.customQuota.forEach(
         quotaGroup -> quotaGroup.userId.forEach(userId -> mapBuilder.put(userId, quotaGroup)));
     customQuotaMap = mapBuilder.build();
+    checkTokenAmount(defaultQuota);
+    quota.customQuota.forEach(QuotaConfig::checkTokenAmount);
+  }
+
+  private static void checkTokenAmount(QuotaGroup quotaGroup) {
+    checkArgument(
+        quotaGroup.tokenAmount <= MAX_TOKEN_AMOUNT,
+        "Token amount %s exceeds the maximum of %s",
+        quotaGroup.tokenAmount,
+        MAX_TOKEN_AMOUNT);
   }
 
   @VisibleForTesting
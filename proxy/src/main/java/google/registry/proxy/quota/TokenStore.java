@@ -17,6 +17,7 @@ package google.registry.proxy.quota;
 import static google.registry.proxy.quota.QuotaConfig.SENTINEL_UNLIMITED_TOKENS;
 import static java.lang.StrictMath.max;
 import static java.lang.StrictMath.min;
+import static org.joda.time.DateTimeZone.UTC;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
@@ -26,6 +27,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.concurrent.ThreadSafe;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -43,6 +45,13 @@ import org.joda.time.Duration;
  * #put} takes place. It also exposes a {@link #refresh} method that goes through each entry in the
  * store and purges stale entries, in order to prevent the token store from growing too large.
  *
+ * <p>The token count and the refill time of each user are packed into a single {@link AtomicLong}
+ * and updated with compare-and-set loops, so that taking or returning a token neither locks a map
+ * bin nor allocates intermediate objects. This matters most during a connection flood, which is
+ * exactly when quota is being enforced. The token count occupies the upper {@value
+ * #TOKEN_COUNT_BITS} bits (signed, so that {@link QuotaConfig#SENTINEL_UNLIMITED_TOKENS} can be
+ * stored) and the refill time in epoch milliseconds occupies the rest.
+ *
  * <p>There should be one token store for each protocol.
  */
 @ThreadSafe
@@ -61,19 +70,28 @@ public class TokenStore {
     abstract DateTime timestamp();
   }
 
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** Number of bits used to store the (signed) token count in a packed entry. */
+  private static final int TOKEN_COUNT_BITS = 22;
+
+  private static final int TIMESTAMP_BITS = Long.SIZE - TOKEN_COUNT_BITS;
+
+  private static final long TIMESTAMP_MASK = (1L << TIMESTAMP_BITS) - 1;
+
+  /** The largest token amount that can be stored in a packed entry. */
+  static final int MAX_TOKEN_AMOUNT = (1 << (TOKEN_COUNT_BITS - 1)) - 1;
+
   /**
-   * A wrapper to get around Java lambda's closure limitation.
+   * Packed value of an entry that has been purged by {@link #refresh}.
    *
-   * <p>Use the class to modify the value of a local variable captured by an lambda.
+   * <p>It decodes to a token count that can never be stored otherwise. A {@link #take} or {@link
+   * #put} that races with the purge observes this value and acts as if the entry were absent.
    */
-  private static class Wrapper<T> {
-    T value;
-  }
-
-  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  private static final long REMOVED = Long.MIN_VALUE;
 
-  /** A map of {@code userId} to available tokens, timestamped at last refill time. */
-  private final ConcurrentHashMap<String, TimestampedInteger> tokensMap = new ConcurrentHashMap<>();
+  /** A map of {@code userId} to packed available tokens, timestamped at last refill time. */
+  private final ConcurrentHashMap<String, AtomicLong> tokensMap = new ConcurrentHashMap<>();
 
   private final QuotaConfig config;
   private final ScheduledExecutorService refreshExecutor;
@@ -85,6 +103,23 @@ public class TokenStore {
     this.clock = clock;
   }
 
+  private static long pack(int tokenCount, long refillTimeMillis) {
+    return ((long) tokenCount << TIMESTAMP_BITS) | (refillTimeMillis & TIMESTAMP_MASK);
+  }
+
+  private static int tokenCount(long packed) {
+    return (int) (packed >> TIMESTAMP_BITS);
+  }
+
+  private static long refillTimeMillis(long packed) {
+    return packed & TIMESTAMP_MASK;
+  }
+
+  /** Returns true if the packed entry is due for a refill at {@code nowMillis}. */
+  private static boolean needsRefill(long packed, long nowMillis, long refillPeriodMillis) {
+    return refillPeriodMillis != 0 && nowMillis - refillTimeMillis(packed) >= refillPeriodMillis;
+  }
+
   /**
    * Attempts to take one token from the token store.
    *
@@ -101,36 +136,51 @@ public class TokenStore {
    *     which the granted one is taken.
    */
   TimestampedInteger take(String userId) {
-    Wrapper<TimestampedInteger> grantedToken = new Wrapper<>();
-    tokensMap.compute(
-        userId,
-        (user, availableTokens) -> {
-          DateTime now = clock.nowUtc();
+    long now = clock.nowUtc().getMillis();
+    // Checks if the user is provisioned with unlimited tokens.
+    boolean unlimited = config.hasUnlimitedTokens(userId);
+    int tokenAmount = unlimited ? SENTINEL_UNLIMITED_TOKENS : config.getTokenAmount(userId);
+    long refillPeriodMillis = config.getRefillPeriod(userId).getMillis();
+    while (true) {
+      AtomicLong tokens = tokensMap.get(userId);
+      if (tokens == null) {
+        AtomicLong newEntry = new AtomicLong(pack(tokenAmount, now));
+        tokens = tokensMap.putIfAbsent(userId, newEntry);
+        if (tokens == null) {
+          tokens = newEntry;
+        }
+      }
+      for (long availableTokens = tokens.get();
+          availableTokens != REMOVED;
+          availableTokens = tokens.get()) {
+        int grantedTokenCount;
+        long newTokens;
+        if (unlimited) {
+          grantedTokenCount = 1;
+          newTokens = pack(SENTINEL_UNLIMITED_TOKENS, now);
+        } else {
           int currentTokenCount;
-          DateTime refillTime;
-          // Checks if the user is provisioned with unlimited tokens.
-          if (config.hasUnlimitedTokens(user)) {
-            grantedToken.value = TimestampedInteger.create(1, now);
-            return TimestampedInteger.create(SENTINEL_UNLIMITED_TOKENS, now);
-          }
-          // Checks if the entry exists.
-          if (availableTokens == null
-              // Or if refill is enabled and the entry needs to be refilled.
-              || (!config.getRefillPeriod(user).isEqual(Duration.ZERO)
-                  && !new Duration(availableTokens.timestamp(), now)
-                      .isShorterThan(config.getRefillPeriod(user)))) {
-            currentTokenCount = config.getTokenAmount(user);
+          long refillTime;
+          // Checks if refill is enabled and the entry needs to be refilled.
+          if (needsRefill(availableTokens, now, refillPeriodMillis)) {
+            currentTokenCount = tokenAmount;
             refillTime = now;
           } else {
-            currentTokenCount = availableTokens.value();
-            refillTime = availableTokens.timestamp();
+            currentTokenCount = tokenCount(availableTokens);
+            refillTime = refillTimeMillis(availableTokens);
           }
           int newTokenCount = max(0, currentTokenCount - 1);
-          grantedToken.value =
-              TimestampedInteger.create(currentTokenCount - newTokenCount, refillTime);
-          return TimestampedInteger.create(newTokenCount, refillTime);
-        });
-    return grantedToken.value;
+          grantedTokenCount = currentTokenCount - newTokenCount;
+          newTokens = pack(newTokenCount, refillTime);
+        }
+        if (tokens.compareAndSet(availableTokens, newTokens)) {
+          return TimestampedInteger.create(
+              grantedTokenCount, new DateTime(refillTimeMillis(newTokens), UTC));
+        }
+      }
+      // The entry was purged by a concurrent refresh, make sure it is gone and start over.
+      tokensMap.remove(userId, tokens);
+    }
   }
 
   /**
@@ -145,32 +195,42 @@ public class TokenStore {
    *     one is taken from.
    */
   void put(String userId, DateTime returnedTokenRefillTime) {
-    tokensMap.computeIfPresent(
-        userId,
-        (user, availableTokens) -> {
-          DateTime now = clock.nowUtc();
-          int currentTokenCount = availableTokens.value();
-          DateTime refillTime = availableTokens.timestamp();
-          int newTokenCount;
-          // Check if quota is unlimited.
-          if (!config.hasUnlimitedTokens(userId)) {
-            // Check if refill is enabled and a refill is needed.
-            if (!config.getRefillPeriod(user).isEqual(Duration.ZERO)
-                && !new Duration(availableTokens.timestamp(), now)
-                    .isShorterThan(config.getRefillPeriod(user))) {
-              currentTokenCount = config.getTokenAmount(user);
-              refillTime = now;
-            }
-            // If the returned token comes from the current pool, add it back, otherwise discard it.
-            newTokenCount =
-                returnedTokenRefillTime.equals(refillTime)
-                    ? min(currentTokenCount + 1, config.getTokenAmount(userId))
-                    : currentTokenCount;
-          } else {
-            newTokenCount = SENTINEL_UNLIMITED_TOKENS;
-          }
-          return TimestampedInteger.create(newTokenCount, refillTime);
-        });
+    AtomicLong tokens = tokensMap.get(userId);
+    if (tokens == null) {
+      return;
+    }
+    long now = clock.nowUtc().getMillis();
+    boolean unlimited = config.hasUnlimitedTokens(userId);
+    int tokenAmount = unlimited ? SENTINEL_UNLIMITED_TOKENS : config.getTokenAmount(userId);
+    long refillPeriodMillis = config.getRefillPeriod(userId).getMillis();
+    long returnedTokenRefillTimeMillis = returnedTokenRefillTime.getMillis();
+    long availableTokens;
+    long newTokens;
+    do {
+      availableTokens = tokens.get();
+      if (availableTokens == REMOVED) {
+        return;
+      }
+      int currentTokenCount = tokenCount(availableTokens);
+      long refillTime = refillTimeMillis(availableTokens);
+      int newTokenCount;
+      // Check if quota is unlimited.
+      if (!unlimited) {
+        // Check if refill is enabled and a refill is needed.
+        if (needsRefill(availableTokens, now, refillPeriodMillis)) {
+          currentTokenCount = tokenAmount;
+          refillTime = now;
+        }
+        // If the returned token comes from the current pool, add it back, otherwise discard it.
+        newTokenCount =
+            returnedTokenRefillTimeMillis == refillTime
+                ? min(currentTokenCount + 1, tokenAmount)
+                : currentTokenCount;
+      } else {
+        newTokenCount = SENTINEL_UNLIMITED_TOKENS;
+      }
+      newTokens = pack(newTokenCount, refillTime);
+    } while (!tokens.compareAndSet(availableTokens, newTokens));
   }
 
   /**
@@ -182,13 +242,20 @@ public class TokenStore {
    * the refill period is much shorter than the refresh period, so the last refill time should serve
    * as a good proxy for last update time as the actual update time cannot be one refill period
    * later from the refill time, otherwise another refill would have been performed.
+   *
+   * <p>An entry is first marked as removed and only then taken out of the map, so that a
+   * concurrent {@link #take} or {@link #put} never updates an entry that is no longer in the map.
    */
   void refresh() {
+    long now = clock.nowUtc().getMillis();
+    long refreshPeriodMillis = config.getRefreshPeriod().getMillis();
     tokensMap.forEach(
-        (user, availableTokens) -> {
-          if (!new Duration(availableTokens.timestamp(), clock.nowUtc())
-              .isShorterThan(config.getRefreshPeriod())) {
-            tokensMap.remove(user);
+        (user, tokens) -> {
+          long availableTokens = tokens.get();
+          if (availableTokens != REMOVED
+              && now - refillTimeMillis(availableTokens) >= refreshPeriodMillis
+              && tokens.compareAndSet(availableTokens, REMOVED)) {
+            tokensMap.remove(user, tokens);
           }
         });
   }
@@ -217,6 +284,12 @@ public class TokenStore {
    */
   @VisibleForTesting
   TimestampedInteger getTokenForTests(String userId) {
-    return tokensMap.get(userId);
+    AtomicLong tokens = tokensMap.get(userId);
+    long availableTokens = tokens == null ? REMOVED : tokens.get();
+    if (availableTokens == REMOVED) {
+      return null;
+    }
+    return TimestampedInteger.create(
+        tokenCount(availableTokens), new DateTime(refillTimeMillis(availableTokens), UTC));
   }
 }
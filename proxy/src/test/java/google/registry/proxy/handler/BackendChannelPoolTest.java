@@ -0,0 +1,235 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy.handler;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.proxy.Protocol.PROTOCOL_KEY;
+import static google.registry.proxy.ProxyConfig.Environment.LOCAL;
+import static google.registry.proxy.ProxyConfig.getProxyConfig;
+import static google.registry.proxy.handler.BackendChannelPool.BACKEND_CHANNEL_POOL_KEY;
+import static google.registry.proxy.handler.RelayHandler.RELAY_BUFFER_KEY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import com.google.common.collect.ImmutableList;
+import google.registry.proxy.Protocol;
+import google.registry.proxy.Protocol.FrontendProtocol;
+import google.registry.proxy.ProxyConfig;
+import google.registry.proxy.metric.BackendMetrics;
+import google.registry.testing.FakeClock;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.ReferenceCountUtil;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Provider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Unit tests for {@link BackendChannelPool}.
+ *
+ * <p>The pool connects to an echo server over the loopback interface, and relays to it from a
+ * local frontend channel. All channels run on the same single-threaded {@link EventLoop}.
+ */
+@RunWith(JUnit4.class)
+public class BackendChannelPoolTest {
+
+  private static final String FRONTEND_NAME = "FRONTEND";
+
+  private final EventLoopGroup eventLoopGroup = new NioEventLoopGroup(1);
+  private final EventLoop eventLoop = eventLoopGroup.next();
+  private final BackendMetrics metrics = mock(BackendMetrics.class);
+  private final FakeClock fakeClock = new FakeClock();
+  private final ProxyConfig config = getProxyConfig(LOCAL);
+  private final LocalAddress localAddress = new LocalAddress("BACKEND_CHANNEL_POOL_TEST");
+  private final BlockingQueue<String> responses = new LinkedBlockingQueue<>();
+
+  private FrontendProtocol frontendProtocol;
+  private Channel clientChannel;
+
+  @Before
+  public void setUp() {
+    Channel backendServerChannel =
+        new ServerBootstrap()
+            .group(eventLoopGroup)
+            .channel(NioServerSocketChannel.class)
+            .childHandler(
+                new ChannelInitializer<SocketChannel>() {
+                  @Override
+                  protected void initChannel(SocketChannel ch) {
+                    ch.pipeline().addLast(new EchoHandler());
+                  }
+                })
+            .bind(new InetSocketAddress("127.0.0.1", 0))
+            .syncUninterruptibly()
+            .channel();
+    ImmutableList<Provider<? extends ChannelHandler>> relayHandlerProviders =
+        ImmutableList.of(() -> new RelayHandler<>(ByteBuf.class));
+    frontendProtocol =
+        Protocol.frontendBuilder()
+            .name(FRONTEND_NAME)
+            .port(0)
+            .handlerProviders(relayHandlerProviders)
+            .relayProtocol(
+                Protocol.backendBuilder()
+                    .name("BACKEND")
+                    .host("127.0.0.1")
+                    .port(((InetSocketAddress) backendServerChannel.localAddress()).getPort())
+                    .handlerProviders(relayHandlerProviders)
+                    .build())
+            .build();
+  }
+
+  @After
+  public void tearDown() {
+    eventLoopGroup.shutdownGracefully().syncUninterruptibly();
+  }
+
+  /** Sets up a frontend channel that relays to the backend through the pool. */
+  private BackendChannelPool setUpFrontend() {
+    BackendChannelPool pool =
+        new BackendChannelPool.Factory(config, metrics, fakeClock).create(frontendProtocol);
+    ChannelFuture unusedFuture =
+        new ServerBootstrap()
+            .group(eventLoopGroup)
+            .channel(LocalServerChannel.class)
+            .childHandler(
+                new ChannelInitializer<LocalChannel>() {
+                  @Override
+                  protected void initChannel(LocalChannel ch) {
+                    ch.attr(PROTOCOL_KEY).set(frontendProtocol);
+                    ch.attr(RELAY_BUFFER_KEY).set(new ArrayDeque<>());
+                    ch.attr(BACKEND_CHANNEL_POOL_KEY).set(pool);
+                    ch.pipeline().addLast(new RelayHandler<>(ByteBuf.class));
+                  }
+                })
+            .bind(localAddress)
+            .syncUninterruptibly();
+    clientChannel =
+        new Bootstrap()
+            .group(eventLoopGroup)
+            .channel(LocalChannel.class)
+            .handler(
+                new ChannelInboundHandlerAdapter() {
+                  @Override
+                  public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                    responses.add(((ByteBuf) msg).toString(UTF_8));
+                    ReferenceCountUtil.release(msg);
+                  }
+                })
+            .connect(localAddress)
+            .syncUninterruptibly()
+            .channel();
+    return pool;
+  }
+
+  private String sendRequest(String request) throws Exception {
+    ChannelFuture unusedFuture =
+        clientChannel.writeAndFlush(Unpooled.copiedBuffer(request, UTF_8)).syncUninterruptibly();
+    return responses.poll(5, TimeUnit.SECONDS);
+  }
+
+  /** Runs on the event loop, where the idle channels are accessed. */
+  private int getIdleChannelCount(BackendChannelPool pool) throws Exception {
+    return eventLoop.submit(() -> pool.getIdleChannelCount(eventLoop)).get();
+  }
+
+  @Test
+  public void testSuccess_relayRequest_opensConnection() throws Exception {
+    BackendChannelPool pool = setUpFrontend();
+    assertThat(sendRequest("hello")).isEqualTo("hello");
+    assertThat(getIdleChannelCount(pool)).isEqualTo(1);
+    verify(metrics).backendConnectionOpened(eq(FRONTEND_NAME), any(Channel.class));
+    verify(metrics).backendChannelLent(FRONTEND_NAME, 0, false);
+    verifyNoMoreInteractions(metrics);
+  }
+
+  @Test
+  public void testSuccess_relayRequests_reusesConnection() throws Exception {
+    BackendChannelPool pool = setUpFrontend();
+    assertThat(sendRequest("hello")).isEqualTo("hello");
+    assertThat(sendRequest("world")).isEqualTo("world");
+    assertThat(getIdleChannelCount(pool)).isEqualTo(1);
+    verify(metrics).backendConnectionOpened(eq(FRONTEND_NAME), any(Channel.class));
+    verify(metrics).backendChannelLent(FRONTEND_NAME, 0, false);
+    verify(metrics).backendChannelLent(FRONTEND_NAME, 0, true);
+    verifyNoMoreInteractions(metrics);
+  }
+
+  @Test
+  public void testSuccess_idleConnectionClosed_opensNewConnection() throws Exception {
+    BackendChannelPool pool = setUpFrontend();
+    assertThat(sendRequest("hello")).isEqualTo("hello");
+    ArgumentCaptor<Channel> backendChannel = ArgumentCaptor.forClass(Channel.class);
+    verify(metrics).backendConnectionOpened(eq(FRONTEND_NAME), backendChannel.capture());
+    // The backend may close an idle connection at any time.
+    ChannelFuture unusedFuture = backendChannel.getValue().close().syncUninterruptibly();
+    assertThat(getIdleChannelCount(pool)).isEqualTo(0);
+
+    assertThat(sendRequest("world")).isEqualTo("world");
+    assertThat(getIdleChannelCount(pool)).isEqualTo(1);
+    verify(metrics, times(2)).backendConnectionOpened(eq(FRONTEND_NAME), any(Channel.class));
+    verify(metrics, times(2)).backendChannelLent(FRONTEND_NAME, 0, false);
+    verifyNoMoreInteractions(metrics);
+  }
+
+  @Test
+  public void testSuccess_tooManyIdleConnections_closesConnection() throws Exception {
+    config.httpsRelay.maxIdleConnectionsPerEventLoop = 0;
+    BackendChannelPool pool = setUpFrontend();
+    assertThat(sendRequest("hello")).isEqualTo("hello");
+    ArgumentCaptor<Channel> backendChannel = ArgumentCaptor.forClass(Channel.class);
+    verify(metrics).backendConnectionOpened(eq(FRONTEND_NAME), backendChannel.capture());
+    ChannelFuture unusedFuture = backendChannel.getValue().closeFuture().syncUninterruptibly();
+    assertThat(getIdleChannelCount(pool)).isEqualTo(0);
+  }
+
+  /** A handler that writes back whatever it reads. */
+  private static class EchoHandler extends ChannelInboundHandlerAdapter {
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+      ChannelFuture unusedFuture = ctx.writeAndFlush(msg);
+    }
+  }
+}
@@ -230,4 +230,35 @@ public class BackendMetricsHandlerTest {
     verify(metrics).responseReceived(RELAYED_PROTOCOL_NAME, CLIENT_CERT_HASH, response3, latency3);
     verifyNoMoreInteractions(metrics);
   }
+
+  @Test
+  public void testSuccess_frontendChannelChanges() {
+    // A pooled backend channel is lent to a different frontend channel for the second request.
+    EmbeddedChannel otherFrontendChannel = new EmbeddedChannel();
+    otherFrontendChannel.attr(PROTOCOL_KEY).set(frontendProtocol);
+    otherFrontendChannel.attr(CLIENT_CERTIFICATE_HASH_KEY).set("other_hash");
+    FullHttpRequest request1 = makeHttpPostRequest("request 1", HOST, "/");
+    FullHttpResponse response1 = makeHttpResponse("response 1", HttpResponseStatus.OK);
+    FullHttpRequest request2 = makeHttpPostRequest("request 22", HOST, "/");
+    FullHttpResponse response2 = makeHttpResponse("response 22", HttpResponseStatus.OK);
+
+    assertThat(channel.writeOutbound(request1)).isTrue();
+    assertHttpRequestEquivalent(request1, channel.readOutbound());
+    assertThat(channel.writeInbound(response1)).isTrue();
+    assertHttpResponseEquivalent(response1, channel.readInbound());
+
+    channel.attr(RELAY_CHANNEL_KEY).set(otherFrontendChannel);
+    assertThat(channel.writeOutbound(request2)).isTrue();
+    assertHttpRequestEquivalent(request2, channel.readOutbound());
+    assertThat(channel.writeInbound(response2)).isTrue();
+    assertHttpResponseEquivalent(response2, channel.readInbound());
+
+    verify(metrics)
+        .requestSent(RELAYED_PROTOCOL_NAME, CLIENT_CERT_HASH, request1.content().readableBytes());
+    verify(metrics).responseReceived(RELAYED_PROTOCOL_NAME, CLIENT_CERT_HASH, response1, 0);
+    verify(metrics)
+        .requestSent(RELAYED_PROTOCOL_NAME, "other_hash", request2.content().readableBytes());
+    verify(metrics).responseReceived(RELAYED_PROTOCOL_NAME, "other_hash", response2, 0);
+    verifyNoMoreInteractions(metrics);
+  }
 }
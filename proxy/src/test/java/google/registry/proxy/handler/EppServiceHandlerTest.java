@@ -37,6 +37,7 @@ import io.netty.channel.DefaultChannelId;
 import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.cookie.Cookie;
@@ -225,6 +226,32 @@ public class EppServiceHandlerTest {
     assertThat(channel.isActive()).isTrue();
   }
 
+  @Test
+  public void testSuccess_sendRequestToNextHandler_withoutCopyingContent() throws Exception {
+    setHandshakeSuccess();
+    // First inbound message is hello.
+    channel.readInbound();
+    ByteBuf inboundBuffer = Unpooled.wrappedBuffer("<epp>stuff</epp>".getBytes(UTF_8));
+    channel.writeInbound(inboundBuffer);
+    FullHttpRequest request = channel.readInbound();
+    // The request content is a view of the inbound buffer, which is kept alive by the request.
+    assertThat(request.content().unwrap()).isSameInstanceAs(inboundBuffer);
+    assertThat(inboundBuffer.refCnt()).isEqualTo(1);
+    request.release();
+    assertThat(inboundBuffer.refCnt()).isEqualTo(0);
+  }
+
+  @Test
+  public void testSuccess_sendResponseToNextHandler_withoutCopyingContent() throws Exception {
+    setHandshakeSuccess();
+    FullHttpResponse response = makeEppHttpResponse("<epp>stuff</epp>", HttpResponseStatus.OK);
+    channel.writeOutbound(response);
+    ByteBuf outboundBuffer = channel.readOutbound();
+    assertThat(outboundBuffer).isSameInstanceAs(response.content());
+    assertThat(outboundBuffer.refCnt()).isEqualTo(1);
+    outboundBuffer.release();
+  }
+
   @Test
   public void testSuccess_sendResponseToNextHandler() throws Exception {
     setHandshakeSuccess();
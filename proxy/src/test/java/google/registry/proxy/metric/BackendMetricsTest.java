@@ -20,6 +20,9 @@ import static google.registry.proxy.TestUtils.makeHttpPostRequest;
 import static google.registry.proxy.TestUtils.makeHttpResponse;
 
 import com.google.common.collect.ImmutableSet;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.DefaultChannelId;
+import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
@@ -170,4 +173,40 @@ public class BackendMetricsTest {
         .and()
         .hasNoOtherValues();
   }
+
+  @Test
+  public void testSuccess_poolConnections() {
+    EmbeddedChannel channel1 = new EmbeddedChannel();
+    EmbeddedChannel channel2 = new EmbeddedChannel(DefaultChannelId.newInstance());
+    metrics.backendConnectionOpened(protocol, channel1);
+    metrics.backendConnectionOpened(protocol, channel2);
+    assertThat(BackendMetrics.poolConnectionsGauge)
+        .hasValueForLabels(2, protocol)
+        .and()
+        .hasNoOtherValues();
+
+    ChannelFuture unusedFuture = channel1.close();
+    assertThat(BackendMetrics.poolConnectionsGauge)
+        .hasValueForLabels(1, protocol)
+        .and()
+        .hasNoOtherValues();
+  }
+
+  @Test
+  public void testSuccess_poolLends() {
+    metrics.backendChannelLent(protocol, 15, false);
+    metrics.backendChannelLent(protocol, 0, true);
+    metrics.backendChannelLent(protocol, 0, true);
+
+    assertThat(BackendMetrics.poolLendsCounter)
+        .hasValueForLabels(1, protocol, "false")
+        .and()
+        .hasValueForLabels(2, protocol, "true")
+        .and()
+        .hasNoOtherValues();
+    assertThat(BackendMetrics.poolWaitTimeMs)
+        .hasDataSetForLabels(ImmutableSet.of(15, 0, 0), protocol)
+        .and()
+        .hasNoOtherValues();
+  }
 }
@@ -89,4 +89,13 @@ public class QuotaConfigTest {
             IllegalArgumentException.class, () -> loadQuotaConfig("quota_config_duplicate.yaml"));
     assertThat(e).hasMessageThat().contains("Multiple entries with same key");
   }
+
+  @Test
+  public void testFailure_tokenAmountTooLarge() {
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> loadQuotaConfig("quota_config_too_many_tokens.yaml"));
+    assertThat(e).hasMessageThat().contains("Token amount 10000000 exceeds the maximum");
+  }
 }
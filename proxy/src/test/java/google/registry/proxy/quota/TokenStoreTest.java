@@ -25,12 +25,14 @@ import static org.mockito.Mockito.when;
 import google.registry.proxy.quota.TokenStore.TimestampedInteger;
 import google.registry.testing.FakeClock;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.junit.Before;
@@ -296,6 +298,28 @@ public class TokenStoreTest {
         .isEqualTo(TimestampedInteger.create(4, time3));
   }
 
+  @Test
+  public void testSuccess_concurrency_singleUser_noTokenGrantedTwice() throws Exception {
+    when(quotaConfig.getTokenAmount(user)).thenReturn(100);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    AtomicInteger grantedTokens = new AtomicInteger();
+    Runnable[] tasks = new Runnable[8];
+    Arrays.fill(
+        tasks,
+        (Runnable)
+            () -> {
+              for (int i = 0; i < 50; i++) {
+                grantedTokens.addAndGet(tokenStore.take(user).value());
+              }
+            });
+    submitAndWaitForTasks(executor, tasks);
+    executor.shutdown();
+    // 400 tokens were requested, but only 100 were available.
+    assertThat(grantedTokens.get()).isEqualTo(100);
+    assertThat(tokenStore.getTokenForTests(user))
+        .isEqualTo(TimestampedInteger.create(0, clock.nowUtc()));
+  }
+
   @Test
   public void testSuccess_scheduleRefresh() throws Exception {
     when(quotaConfig.getRefreshPeriod()).thenReturn(Duration.standardSeconds(5));